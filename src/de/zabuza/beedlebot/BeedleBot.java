@@ -220,8 +220,10 @@ public final class BeedleBot {
 				throw new EmptyUserCredentialsException();
 			}
 
-			// Create the store
+			// Create the store, serving expired prices stale such that
+			// analyzing does not wait for the remote services
 			this.mStore = new Store(username, world);
+			this.mStore.setServingStalePrices(true);
 
 			// Create Freewar API
 			final EBrowser browser = browserSettingsProvider.getBrowser();
@@ -0,0 +1,28 @@
+package de.zabuza.beedlebot.exceptions;
+
+/**
+ * Exception that is thrown whenever a thread got interrupted while waiting for
+ * item price lookups to complete.
+ * 
+ * @author Zabuza {@literal <zabuza.dev@gmail.com>}
+ *
+ */
+public final class ItemPriceLookupInterruptedException extends IllegalStateException {
+
+	/**
+	 * Serial version UID.
+	 */
+	private static final long serialVersionUID = 1L;
+
+	/**
+	 * Creates a new instance of this exception to be thrown whenever a thread
+	 * got interrupted while waiting for item price lookups to complete.
+	 * 
+	 * @param cause
+	 *            The exact cause that lead to this problem
+	 */
+	public ItemPriceLookupInterruptedException(final InterruptedException cause) {
+		super(cause);
+	}
+
+}
@@ -0,0 +1,54 @@
+package de.zabuza.beedlebot.exceptions;
+
+import java.io.IOException;
+import java.util.Optional;
+
+/**
+ * Exception that is thrown whenever the service that is used to register item
+ * purchases is temporarily unavailable, for example because of an error of the
+ * server or because it throttles the requests, such that the purchases should
+ * be retried later.
+ * 
+ * @author Zabuza {@literal <zabuza.dev@gmail.com>}
+ *
+ */
+public final class PurchaseRegisterUnavailableException extends IOException {
+
+	/**
+	 * Serial version UID.
+	 */
+	private static final long serialVersionUID = 1L;
+
+	/**
+	 * The time in milliseconds the server asked to wait before retrying or
+	 * <tt>null</tt> if it did not ask for a time.
+	 */
+	private final Long mRetryAfterMillis;
+
+	/**
+	 * Creates a new instance of this exception to be thrown whenever the
+	 * service that is used to register item purchases is temporarily
+	 * unavailable.
+	 * 
+	 * @param message
+	 *            The message describing the answer of the service
+	 * @param retryAfterMillis
+	 *            If present the time in milliseconds the server asked to wait
+	 *            before retrying
+	 */
+	public PurchaseRegisterUnavailableException(final String message, final Optional<Long> retryAfterMillis) {
+		super(message);
+		this.mRetryAfterMillis = retryAfterMillis.orElse(null);
+	}
+
+	/**
+	 * If present gets the time in milliseconds the server asked to wait before
+	 * retrying.
+	 * 
+	 * @return If present the time in milliseconds to wait before retrying
+	 */
+	public Optional<Long> getRetryAfterMillis() {
+		return Optional.ofNullable(this.mRetryAfterMillis);
+	}
+
+}
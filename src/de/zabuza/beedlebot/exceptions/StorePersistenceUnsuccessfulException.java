@@ -0,0 +1,33 @@
+package de.zabuza.beedlebot.exceptions;
+
+import java.io.IOException;
+
+/**
+ * Exception that is thrown whenever persisting data that is kept by the store
+ * next to its cache, like the global standard shop prices, the volatility of
+ * player prices or the sightings at the central traders depot, was
+ * unsuccessful.
+ * 
+ * @author Zabuza {@literal <zabuza.dev@gmail.com>}
+ *
+ */
+public final class StorePersistenceUnsuccessfulException extends IllegalStateException {
+
+	/**
+	 * Serial version UID.
+	 */
+	private static final long serialVersionUID = 1L;
+
+	/**
+	 * Creates a new instance of this exception to be thrown whenever
+	 * persisting data that is kept by the store next to its cache was
+	 * unsuccessful.
+	 * 
+	 * @param cause
+	 *            The exact cause that lead to this problem
+	 */
+	public StorePersistenceUnsuccessfulException(final IOException cause) {
+		super(cause);
+	}
+
+}
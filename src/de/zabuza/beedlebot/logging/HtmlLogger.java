@@ -253,7 +253,7 @@ public final class HtmlLogger implements ILogger {
 	 * @see de.zabuza.beedlebot.logging.ILogger#flush()
 	 */
 	@Override
-	public void flush() {
+	public synchronized void flush() {
 		if (this.mMessageBuffer.isEmpty()) {
 			return;
 		}
@@ -297,7 +297,7 @@ public final class HtmlLogger implements ILogger {
 	 * de.zabuza.beedlebot.logging.ELogLevel)
 	 */
 	@Override
-	public void log(final String message, final ELogLevel level) {
+	public synchronized void log(final String message, final ELogLevel level) {
 		// Do not log debug if not enabled
 		if (level == ELogLevel.DEBUG && !isDebugEnabled()) {
 			return;
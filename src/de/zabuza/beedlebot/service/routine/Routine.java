@@ -453,6 +453,9 @@ public final class Routine {
 		this.mPhase = phase;
 
 		if (this.mPhase != oldPhase) {
+			// Only use the idle time of waiting for a delivery to prefetch
+			// item prices
+			this.mStore.setPrefetching(this.mPhase == EPhase.AWAITING_DELIVERY);
 			this.mPushDataService.updateActiveData();
 		}
 	}
@@ -1,6 +1,11 @@
 package de.zabuza.beedlebot.service.routine.tasks;
 
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.Set;
 
 import org.openqa.selenium.WebDriver;
 
@@ -81,6 +86,13 @@ public final class AnalyzeTask implements ITask {
 	 * The suffix of when the content ends.
 	 */
 	private static final String CONTENT_NEEDLE_SUC = "Zurck";
+	/**
+	 * The wall-clock budget of one scan of a category, in milliseconds. Items
+	 * whose price data can not be resolved within the budget are skipped,
+	 * their lookup finishes in the background such that a later scan finds
+	 * them in the cache.
+	 */
+	private static final long SCAN_LATENCY_BUDGET_MILLIS = 1_500;
 	/**
 	 * The driver to use for accessing browser contents.
 	 */
@@ -109,6 +121,11 @@ public final class AnalyzeTask implements ITask {
 	 * The result of this task.
 	 */
 	private final AnalyzeResult mResult;
+	/**
+	 * The timestamp of when the task was started, used to track the latency
+	 * budget of the scan.
+	 */
+	private long mStartTimestamp;
 	/**
 	 * The store to use for accessing item price data.
 	 */
@@ -179,6 +196,7 @@ public final class AnalyzeTask implements ITask {
 		if (this.mLogger.isDebugEnabled()) {
 			this.mLogger.logDebug("Starting AnalyzeTask");
 		}
+		this.mStartTimestamp = System.currentTimeMillis();
 
 		// Open category
 		final boolean wasClicked = this.mNavigator.openItemCategory(this.mItemCategory);
@@ -203,7 +221,10 @@ public final class AnalyzeTask implements ITask {
 
 	/**
 	 * Processes the given raw page content and extracts and processes all
-	 * contained items.
+	 * contained items. The price data of all items is resolved at once after
+	 * all lines have been extracted, such that lookups of unknown items can be
+	 * processed concurrently. Items that can not be priced within the latency
+	 * budget of the scan are skipped.
 	 * 
 	 * @param content
 	 *            The raw page content to process
@@ -231,6 +252,10 @@ public final class AnalyzeTask implements ITask {
 
 		final String itemContent = content.substring(startIndex, endIndex);
 		final String[] itemContentLines = itemContent.split(CONTENT_LINE_SPLIT_PATTERN);
+
+		// Extract all item lines
+		final List<ItemLine> itemLines = new ArrayList<>();
+		final Set<String> itemNames = new LinkedHashSet<>();
 		for (final String itemContentLine : itemContentLines) {
 			// Reject if line does not begin with validator
 			if (!itemContentLine.startsWith(CONTENT_LINE_VALIDATOR)) {
@@ -286,8 +311,33 @@ public final class AnalyzeTask implements ITask {
 			// Extract is magical state
 			final boolean isMagical = itemContentLine.contains(CONTENT_IS_MAGICAL_PRESENCE);
 
+			itemLines.add(new ItemLine(itemName, itemCost, id, purchaseAnchorDecoded, isMagical));
+			this.mStore.recordDepotSighting(itemName, this.mItemCategory, itemCost);
+			itemNames.add(itemName);
+		}
+
+		// Resolve the price data of all items at once, within the remaining
+		// latency budget of the scan
+		final long remainingBudget = Math.max(0,
+				SCAN_LATENCY_BUDGET_MILLIS - (System.currentTimeMillis() - this.mStartTimestamp));
+		final Map<String, ItemPrice> itemNameToPriceData = this.mStore.getItemPrices(itemNames, remainingBudget);
+
+		for (final ItemLine itemLine : itemLines) {
+			final String itemName = itemLine.getName();
+			final int itemCost = itemLine.getCost();
+
+			// Skip items whose price data is not known, because its lookup was
+			// deferred, a price service is unavailable or the item has no
+			// standard shop price
+			final ItemPrice itemPriceData = itemNameToPriceData.get(itemName);
+			if (itemPriceData == null) {
+				if (this.mLogger.isDebugEnabled()) {
+					this.mLogger.logDebug("Skipping item without price data: " + itemName);
+				}
+				continue;
+			}
+
 			// Determine profit
-			final ItemPrice itemPriceData = this.mStore.getItemPrice(itemName);
 			final boolean isConsideredForShop = this.mStore.isItemConsideredForShop(itemName, itemCost, itemPriceData);
 			final int itemProfit;
 			if (isConsideredForShop) {
@@ -302,8 +352,8 @@ public final class AnalyzeTask implements ITask {
 				}
 			}
 
-			final Item item = new Item(itemName, itemCost, itemProfit, id, purchaseAnchorDecoded, isMagical,
-					isConsideredForShop, itemPriceData, this.mItemCategory);
+			final Item item = new Item(itemName, itemCost, itemProfit, itemLine.getId(), itemLine.getPurchaseAnchor(),
+					itemLine.isMagical(), isConsideredForShop, itemPriceData, this.mItemCategory);
 
 			// Add the item to the analyze result if accepted
 			if (Store.isItemAcceptedForPurchase(item)) {
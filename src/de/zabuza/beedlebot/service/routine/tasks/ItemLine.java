@@ -0,0 +1,133 @@
+package de.zabuza.beedlebot.service.routine.tasks;
+
+/**
+ * Class that represents a line of the central traders depot which contains an
+ * item, extracted from the raw page content but not yet enriched with price
+ * data.
+ * 
+ * @author Zabuza {@literal <zabuza.dev@gmail.com>}
+ *
+ */
+public final class ItemLine {
+	/**
+	 * The cost of the item at the central traders depot.
+	 */
+	private final int mCost;
+	/**
+	 * The id of the item in the game.
+	 */
+	private final int mId;
+	/**
+	 * Whether the item is a magical item or not.
+	 */
+	private final boolean mIsMagical;
+	/**
+	 * The name of the item.
+	 */
+	private final String mName;
+	/**
+	 * The anchor reference to purchase the item from the central traders depot.
+	 */
+	private final String mPurchaseAnchor;
+
+	/**
+	 * Creates a new item line that represents the item with the given data at
+	 * the central traders depot.
+	 * 
+	 * @param name
+	 *            The name of the item
+	 * @param cost
+	 *            The cost of the item at the central traders depot
+	 * @param id
+	 *            The id of the item in the game
+	 * @param purchaseAnchor
+	 *            The anchor reference to purchase the item from the central
+	 *            traders depot
+	 * @param isMagical
+	 *            Whether the item is a magical item or not
+	 */
+	public ItemLine(final String name, final int cost, final int id, final String purchaseAnchor,
+			final boolean isMagical) {
+		this.mName = name;
+		this.mCost = cost;
+		this.mId = id;
+		this.mPurchaseAnchor = purchaseAnchor;
+		this.mIsMagical = isMagical;
+	}
+
+	/**
+	 * Gets the cost of the item at the central traders depot.
+	 * 
+	 * @return The cost of the item at the central traders depot
+	 */
+	public int getCost() {
+		return this.mCost;
+	}
+
+	/**
+	 * Gets the id of the item in the game.
+	 * 
+	 * @return The id of the item in the game
+	 */
+	public int getId() {
+		return this.mId;
+	}
+
+	/**
+	 * Gets the name of the item.
+	 * 
+	 * @return The name of the item
+	 */
+	public String getName() {
+		return this.mName;
+	}
+
+	/**
+	 * Gets the anchor reference to purchase the item from the central traders
+	 * depot.
+	 * 
+	 * @return The anchor reference to purchase the item from the central
+	 *         traders depot
+	 */
+	public String getPurchaseAnchor() {
+		return this.mPurchaseAnchor;
+	}
+
+	/**
+	 * Whether the item is a magical item or not.
+	 * 
+	 * @return <tt>True</tt> if the item is a magical item, <tt>false</tt> if
+	 *         not
+	 */
+	public boolean isMagical() {
+		return this.mIsMagical;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see java.lang.Object#toString()
+	 */
+	@Override
+	public String toString() {
+		final StringBuilder builder = new StringBuilder();
+		builder.append("ItemLine [cost=");
+		builder.append(this.mCost);
+		builder.append(", id=");
+		builder.append(this.mId);
+		builder.append(", isMagical=");
+		builder.append(this.mIsMagical);
+		builder.append(", ");
+		if (this.mName != null) {
+			builder.append("name=");
+			builder.append(this.mName);
+			builder.append(", ");
+		}
+		if (this.mPurchaseAnchor != null) {
+			builder.append("purchaseAnchor=");
+			builder.append(this.mPurchaseAnchor);
+		}
+		builder.append("]");
+		return builder.toString();
+	}
+}
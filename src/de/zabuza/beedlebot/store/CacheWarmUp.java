@@ -0,0 +1,123 @@
+package de.zabuza.beedlebot.store;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import de.zabuza.beedlebot.logging.ILogger;
+import de.zabuza.beedlebot.logging.LoggerFactory;
+import de.zabuza.beedlebot.logging.LoggerUtil;
+
+/**
+ * Thread that warms up the cache of a {@link Store} once after startup. It
+ * revalidates the cached price data of the items most often seen at the
+ * central traders depot in previous sessions, as recorded by the
+ * {@link SightingsTable}, such that the first analyze of the depot gets cache
+ * hits for most of its items. Items are looked up in batches, most often seen
+ * first. Call {@link #start()} to start the thread and {@link #stopWarmUp()}
+ * to stop it.
+ * 
+ * @author Zabuza {@literal <zabuza.dev@gmail.com>}
+ *
+ */
+public final class CacheWarmUp extends Thread {
+	/**
+	 * The maximal amount of items that are looked up with one batch.
+	 */
+	private static final int BATCH_SIZE_MAX = 50;
+	/**
+	 * The maximal amount of most often seen items that are warmed up.
+	 */
+	private static final int ITEMS_MAX = 200;
+	/**
+	 * The name of the thread.
+	 */
+	private static final String NAME = "BeedleBot-CacheWarmUp";
+
+	/**
+	 * Internal flag whether the warm-up should run or not. If set to
+	 * <tt>false</tt> the warm-up stops before its next batch.
+	 */
+	private volatile boolean mDoRun;
+	/**
+	 * The logger to use for logging.
+	 */
+	private final ILogger mLogger;
+	/**
+	 * The table of the items seen at the depot.
+	 */
+	private final SightingsTable mSightingsTable;
+	/**
+	 * The store whose cache to warm up.
+	 */
+	private final Store mStore;
+
+	/**
+	 * Creates a new warm-up for the cache of the given store. Call
+	 * {@link #start()} to start the thread and {@link #stopWarmUp()} to stop
+	 * it.
+	 * 
+	 * @param store
+	 *            The store whose cache to warm up
+	 * @param sightingsTable
+	 *            The table of the items seen at the depot
+	 */
+	public CacheWarmUp(final Store store, final SightingsTable sightingsTable) {
+		super(NAME);
+		setDaemon(true);
+		this.mStore = store;
+		this.mSightingsTable = sightingsTable;
+		this.mLogger = LoggerFactory.getLogger();
+		this.mDoRun = true;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see java.lang.Thread#run()
+	 */
+	@Override
+	public void run() {
+		try {
+			final long validityTimestamp = System.currentTimeMillis();
+			final List<String> itemNames = this.mSightingsTable.getMostSeenItemNames(ITEMS_MAX);
+			final List<String> batch = new ArrayList<>(BATCH_SIZE_MAX);
+			int warmedUpItems = 0;
+			for (final String itemName : itemNames) {
+				if (!this.mDoRun) {
+					return;
+				}
+				if (this.mStore.getTiersToPrefetch(itemName, validityTimestamp) == 0) {
+					continue;
+				}
+				batch.add(itemName);
+				if (batch.size() < BATCH_SIZE_MAX) {
+					continue;
+				}
+				this.mStore.warmUpItemPrices(batch, validityTimestamp);
+				warmedUpItems += batch.size();
+				batch.clear();
+			}
+			if (this.mDoRun && !batch.isEmpty()) {
+				this.mStore.warmUpItemPrices(batch, validityTimestamp);
+				warmedUpItems += batch.size();
+			}
+
+			this.mLogger.logInfo("Warmed up cache entries of most often seen items: " + warmedUpItems + " of "
+					+ itemNames.size());
+		} catch (final Exception e) {
+			// Log the error unless stopped, the cache then fills on demand
+			if (this.mDoRun) {
+				this.mLogger.logError("Error while warming up the cache: " + LoggerUtil.getStackTrace(e));
+			}
+		}
+	}
+
+	/**
+	 * Requests the warm-up to stop. Does not block, a running lookup is
+	 * interrupted.
+	 */
+	public void stopWarmUp() {
+		this.mDoRun = false;
+		interrupt();
+	}
+}
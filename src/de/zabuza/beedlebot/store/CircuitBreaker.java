@@ -0,0 +1,184 @@
+package de.zabuza.beedlebot.store;
+
+/**
+ * Circuit breaker that guards the requests a {@link StoreHttpClient} sends to
+ * a single host. After {@link #FAILURE_THRESHOLD} consecutive failures the
+ * circuit opens and requests are rejected immediately, instead of waiting for
+ * the timeouts of an unavailable host. After a cool-down a single trial
+ * request is let through, if it succeeds the circuit closes again, else the
+ * cool-down starts over. The class is thread-safe.
+ * 
+ * @author Zabuza {@literal <zabuza.dev@gmail.com>}
+ *
+ */
+public final class CircuitBreaker {
+	/**
+	 * The time in milliseconds an open circuit rejects requests before a trial
+	 * request is let through.
+	 */
+	public static final long COOL_DOWN_MILLIS = 30_000;
+	/**
+	 * The amount of consecutive failures after which the circuit opens.
+	 */
+	public static final int FAILURE_THRESHOLD = 5;
+
+	/**
+	 * The amount of consecutive failures since the last success.
+	 */
+	private int mConsecutiveFailures;
+	/**
+	 * The name of the host guarded by the circuit breaker.
+	 */
+	private final String mHost;
+	/**
+	 * The timestamp of when the circuit opened the last time.
+	 */
+	private long mOpenedTimestamp;
+	/**
+	 * The amount of requests that were rejected because the circuit was open.
+	 */
+	private long mRejections;
+	/**
+	 * The current state of the circuit.
+	 */
+	private ECircuitState mState;
+
+	/**
+	 * Creates a new closed circuit breaker for the given host.
+	 * 
+	 * @param host
+	 *            The name of the host guarded by the circuit breaker
+	 */
+	public CircuitBreaker(final String host) {
+		this.mHost = host;
+		this.mState = ECircuitState.CLOSED;
+		this.mConsecutiveFailures = 0;
+		this.mOpenedTimestamp = 0;
+		this.mRejections = 0;
+	}
+
+	/**
+	 * Whether a request may be sent to the host or not. If the cool-down of
+	 * an open circuit expired, the call lets a single trial request through.
+	 * 
+	 * @param now
+	 *            The current timestamp
+	 * @return <tt>True</tt> if the request may be sent, <tt>false</tt> if it
+	 *         should be rejected
+	 */
+	public synchronized boolean allowRequest(final long now) {
+		switch (this.mState) {
+		case CLOSED:
+			return true;
+		case OPEN:
+			if (now - this.mOpenedTimestamp >= COOL_DOWN_MILLIS) {
+				this.mState = ECircuitState.HALF_OPEN;
+				return true;
+			}
+			break;
+		case HALF_OPEN:
+			// The trial request is still outstanding
+			break;
+		default:
+			throw new AssertionError();
+		}
+		this.mRejections++;
+		return false;
+	}
+
+	/**
+	 * Gets the name of the host guarded by the circuit breaker.
+	 * 
+	 * @return The name of the host
+	 */
+	public String getHost() {
+		return this.mHost;
+	}
+
+	/**
+	 * Gets the amount of requests that were rejected because the circuit was
+	 * open.
+	 * 
+	 * @return The amount of rejected requests
+	 */
+	public synchronized long getRejections() {
+		return this.mRejections;
+	}
+
+	/**
+	 * Gets the current state of the circuit.
+	 * 
+	 * @return The current state of the circuit
+	 */
+	public synchronized ECircuitState getState() {
+		return this.mState;
+	}
+
+	/**
+	 * Records that a request was cancelled by the client, which tells nothing
+	 * about the host. If it was the trial request, the next request is let
+	 * through as trial request instead, since the cool-down already expired.
+	 */
+	public synchronized void recordCancellation() {
+		if (this.mState == ECircuitState.HALF_OPEN) {
+			this.mState = ECircuitState.OPEN;
+		}
+	}
+
+	/**
+	 * Records that a request failed. Opens the circuit if the trial request
+	 * failed or if there were too many consecutive failures.
+	 * 
+	 * @param now
+	 *            The current timestamp
+	 * @return <tt>True</tt> if the circuit opened due to the failure,
+	 *         <tt>false</tt> otherwise
+	 */
+	public synchronized boolean recordFailure(final long now) {
+		this.mConsecutiveFailures++;
+		if (this.mState == ECircuitState.OPEN) {
+			return false;
+		}
+		if (this.mState == ECircuitState.HALF_OPEN || this.mConsecutiveFailures >= FAILURE_THRESHOLD) {
+			this.mState = ECircuitState.OPEN;
+			this.mOpenedTimestamp = now;
+			return true;
+		}
+		return false;
+	}
+
+	/**
+	 * Records that a request succeeded, which closes the circuit.
+	 * 
+	 * @return <tt>True</tt> if the circuit closed due to the success,
+	 *         <tt>false</tt> if it already was closed
+	 */
+	public synchronized boolean recordSuccess() {
+		this.mConsecutiveFailures = 0;
+		if (this.mState == ECircuitState.CLOSED) {
+			return false;
+		}
+		this.mState = ECircuitState.CLOSED;
+		return true;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see java.lang.Object#toString()
+	 */
+	@Override
+	public synchronized String toString() {
+		final StringBuilder builder = new StringBuilder();
+		builder.append("CircuitBreaker [consecutiveFailures=");
+		builder.append(this.mConsecutiveFailures);
+		builder.append(", host=");
+		builder.append(this.mHost);
+		builder.append(", rejections=");
+		builder.append(this.mRejections);
+		builder.append(", state=");
+		builder.append(this.mState);
+		builder.append("]");
+		return builder.toString();
+	}
+}
@@ -0,0 +1,58 @@
+package de.zabuza.beedlebot.store;
+
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Callable;
+
+/**
+ * Task that looks up the price data of several items of a {@link Store} and
+ * caches the result. If the caller does not want to wait for it anymore
+ * because its latency budget is exhausted, the task finishes in the
+ * background and later calls find the price data in the cache.
+ * 
+ * @author Zabuza {@literal <zabuza.dev@gmail.com>}
+ *
+ */
+public final class DeferredItemPricesLookup implements Callable<Map<String, ItemPrice>> {
+	/**
+	 * The names of the items to lookup their price data.
+	 */
+	private final Set<String> mItemNames;
+	/**
+	 * Data-structure which maps item names to their expired cached price data,
+	 * if present.
+	 */
+	private final Map<String, ItemPrice> mNameToExpiredItemPrice;
+	/**
+	 * The store whose cache to fill.
+	 */
+	private final Store mStore;
+
+	/**
+	 * Creates a new task that looks up the price data of the given items.
+	 * 
+	 * @param store
+	 *            The store whose cache to fill
+	 * @param itemNames
+	 *            The names of the items to lookup their price data
+	 * @param nameToExpiredItemPrice
+	 *            Data-structure which maps item names to their expired cached
+	 *            price data, if present
+	 */
+	public DeferredItemPricesLookup(final Store store, final Set<String> itemNames,
+			final Map<String, ItemPrice> nameToExpiredItemPrice) {
+		this.mStore = store;
+		this.mItemNames = itemNames;
+		this.mNameToExpiredItemPrice = nameToExpiredItemPrice;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see java.util.concurrent.Callable#call()
+	 */
+	@Override
+	public Map<String, ItemPrice> call() {
+		return this.mStore.resolveDeferredItemPrices(this.mItemNames, this.mNameToExpiredItemPrice);
+	}
+}
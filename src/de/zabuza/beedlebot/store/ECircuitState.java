@@ -0,0 +1,23 @@
+package de.zabuza.beedlebot.store;
+
+/**
+ * All states of a {@link CircuitBreaker}.
+ * 
+ * @author Zabuza {@literal <zabuza.dev@gmail.com>}
+ *
+ */
+public enum ECircuitState {
+	/**
+	 * Requests are sent, failures are counted.
+	 */
+	CLOSED,
+	/**
+	 * A single trial request is sent after the cool-down, its outcome decides
+	 * whether the circuit closes or opens again.
+	 */
+	HALF_OPEN,
+	/**
+	 * Requests are rejected without being sent until the cool-down expired.
+	 */
+	OPEN
+}
@@ -0,0 +1,278 @@
+package de.zabuza.beedlebot.store;
+
+import java.io.InterruptedIOException;
+
+/**
+ * Rate limiter that throttles the requests a {@link StoreHttpClient} sends to
+ * a single endpoint of a host, given by its path. A token bucket bounds the
+ * request rate, allowing short bursts, and an adaptive limit bounds the amount
+ * of concurrent requests. The concurrency limit follows the observed behavior
+ * of the endpoint, it increases additively by about one per round of
+ * successful requests and decreases multiplicatively on errors, throttling
+ * answers or latencies far above the usual latency of the endpoint. The class
+ * is thread-safe.
+ * 
+ * @author Zabuza {@literal <zabuza.dev@gmail.com>}
+ *
+ */
+public final class HostRateLimiter {
+	/**
+	 * The maximal amount of tokens the bucket holds, i.e. the maximal burst of
+	 * requests sent at once.
+	 */
+	public static final int BUCKET_CAPACITY = 10;
+	/**
+	 * The amount of tokens added to the bucket per second, i.e. the sustained
+	 * request rate.
+	 */
+	public static final double TOKENS_PER_SECOND = 10.0;
+	/**
+	 * The factor the concurrency limit is multiplied with when the endpoint
+	 * shows signs of overload.
+	 */
+	private static final double DECREASE_FACTOR = 0.5;
+	/**
+	 * The minimal time in milliseconds between two decreases of the
+	 * concurrency limit, such that the failures of requests that were sent
+	 * concurrently only count once.
+	 */
+	private static final long DECREASE_INTERVAL_MILLIS = 1_000;
+	/**
+	 * The initial concurrency limit.
+	 */
+	private static final double INITIAL_LIMIT = 4.0;
+	/**
+	 * The factor by which the latency of a request needs to exceed the usual
+	 * latency of the endpoint to count as sign of overload.
+	 */
+	private static final double LATENCY_TOLERANCE_FACTOR = 3.0;
+	/**
+	 * The maximal concurrency limit.
+	 */
+	private static final double MAX_LIMIT = 16.0;
+	/**
+	 * The minimal concurrency limit.
+	 */
+	private static final double MIN_LIMIT = 1.0;
+	/**
+	 * The factor to convert nanoseconds into milliseconds.
+	 */
+	private static final long NANOS_PER_MILLI = 1_000_000;
+	/**
+	 * The weight of a new latency sample in the smoothed usual latency.
+	 */
+	private static final double SMOOTHING_WEIGHT = 0.1;
+
+	/**
+	 * The path of the endpoint throttled by the rate limiter.
+	 */
+	private final String mEndpoint;
+	/**
+	 * The name of the host of the endpoint throttled by the rate limiter.
+	 */
+	private final String mHost;
+	/**
+	 * The amount of requests that are currently sent.
+	 */
+	private int mInFlight;
+	/**
+	 * The timestamp in nanoseconds of when the concurrency limit was decreased
+	 * the last time.
+	 */
+	private long mLastDecreaseNanos;
+	/**
+	 * The timestamp in nanoseconds of when the bucket was refilled the last
+	 * time.
+	 */
+	private long mLastRefillNanos;
+	/**
+	 * The current concurrency limit.
+	 */
+	private double mLimit;
+	/**
+	 * The smoothed latency in nanoseconds of successful requests or
+	 * <tt>0</tt> if not known yet.
+	 */
+	private double mSmoothedLatencyNanos;
+	/**
+	 * The amount of tokens in the bucket.
+	 */
+	private double mTokens;
+	/**
+	 * The total time in milliseconds requests waited for a permit.
+	 */
+	private long mWaitedMillis;
+
+	/**
+	 * Creates a new rate limiter for the given endpoint of a host with a full
+	 * bucket.
+	 * 
+	 * @param host
+	 *            The name of the host of the endpoint throttled by the rate
+	 *            limiter
+	 * @param endpoint
+	 *            The path of the endpoint throttled by the rate limiter
+	 */
+	public HostRateLimiter(final String host, final String endpoint) {
+		this.mHost = host;
+		this.mEndpoint = endpoint;
+		this.mTokens = BUCKET_CAPACITY;
+		this.mLimit = INITIAL_LIMIT;
+		this.mInFlight = 0;
+		this.mSmoothedLatencyNanos = 0;
+		this.mLastRefillNanos = System.nanoTime();
+		this.mLastDecreaseNanos = this.mLastRefillNanos;
+		this.mWaitedMillis = 0;
+	}
+
+	/**
+	 * Waits until a request may be sent to the endpoint, i.e. until the bucket
+	 * holds a token and the concurrency limit is not reached, and takes the
+	 * permit. Every acquired permit must be released with
+	 * {@link #release(long, boolean)}.
+	 * 
+	 * @throws InterruptedIOException
+	 *             If the thread got interrupted while waiting
+	 */
+	public synchronized void acquire() throws InterruptedIOException {
+		final long startNanos = System.nanoTime();
+		try {
+			while (true) {
+				refill(System.nanoTime());
+				if (this.mInFlight < (int) this.mLimit && this.mTokens >= 1) {
+					break;
+				}
+
+				if (this.mInFlight < (int) this.mLimit) {
+					// Wait until the next token is available
+					final long waitMillis = (long) Math.ceil((1 - this.mTokens) * 1_000 / TOKENS_PER_SECOND);
+					this.wait(Math.max(1, waitMillis));
+				} else {
+					// Wait until a request completes
+					this.wait();
+				}
+			}
+		} catch (final InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException("Interrupted while waiting for a request permit of " + this.mHost
+					+ this.mEndpoint);
+		}
+
+		this.mTokens--;
+		this.mInFlight++;
+		this.mWaitedMillis += (System.nanoTime() - startNanos) / NANOS_PER_MILLI;
+	}
+
+	/**
+	 * Gets the current concurrency limit.
+	 * 
+	 * @return The current concurrency limit
+	 */
+	public synchronized int getConcurrencyLimit() {
+		return (int) this.mLimit;
+	}
+
+	/**
+	 * Gets the path of the endpoint throttled by the rate limiter.
+	 * 
+	 * @return The path of the endpoint
+	 */
+	public String getEndpoint() {
+		return this.mEndpoint;
+	}
+
+	/**
+	 * Gets the name of the host of the endpoint throttled by the rate limiter.
+	 * 
+	 * @return The name of the host
+	 */
+	public String getHost() {
+		return this.mHost;
+	}
+
+	/**
+	 * Releases a permit acquired with {@link #acquire()} and adapts the
+	 * concurrency limit to the outcome of the request.
+	 * 
+	 * @param latencyNanos
+	 *            The latency of the request in nanoseconds
+	 * @param wasSuccessful
+	 *            <tt>True</tt> if the host answered the request without
+	 *            showing signs of overload, <tt>false</tt> if the request
+	 *            failed, timed out or was answered with an error of the server
+	 *            or a throttling answer
+	 */
+	public synchronized void release(final long latencyNanos, final boolean wasSuccessful) {
+		this.mInFlight--;
+
+		final boolean isLatencyTolerable = this.mSmoothedLatencyNanos == 0
+				|| latencyNanos <= LATENCY_TOLERANCE_FACTOR * this.mSmoothedLatencyNanos;
+		if (wasSuccessful && isLatencyTolerable) {
+			// Additive increase, by about one per round of requests
+			this.mLimit = Math.min(MAX_LIMIT, this.mLimit + 1 / this.mLimit);
+		} else {
+			final long now = System.nanoTime();
+			if (now - this.mLastDecreaseNanos >= DECREASE_INTERVAL_MILLIS * NANOS_PER_MILLI) {
+				// Multiplicative decrease
+				this.mLimit = Math.max(MIN_LIMIT, this.mLimit * DECREASE_FACTOR);
+				this.mLastDecreaseNanos = now;
+			}
+		}
+
+		if (wasSuccessful) {
+			if (this.mSmoothedLatencyNanos == 0) {
+				this.mSmoothedLatencyNanos = latencyNanos;
+			} else {
+				this.mSmoothedLatencyNanos += SMOOTHING_WEIGHT * (latencyNanos - this.mSmoothedLatencyNanos);
+			}
+		}
+
+		this.notifyAll();
+	}
+
+	/**
+	 * Releases a permit acquired with {@link #acquire()} of a request that was
+	 * cancelled by the client. The concurrency limit is not adapted, since the
+	 * request tells nothing about the host.
+	 */
+	public synchronized void releaseCancelled() {
+		this.mInFlight--;
+		this.notifyAll();
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see java.lang.Object#toString()
+	 */
+	@Override
+	public synchronized String toString() {
+		final StringBuilder builder = new StringBuilder();
+		builder.append("HostRateLimiter [host=");
+		builder.append(this.mHost);
+		builder.append(", endpoint=");
+		builder.append(this.mEndpoint);
+		builder.append(", inFlight=");
+		builder.append(this.mInFlight);
+		builder.append(", limit=");
+		builder.append((int) this.mLimit);
+		builder.append(", smoothedLatencyMillis=");
+		builder.append((long) this.mSmoothedLatencyNanos / NANOS_PER_MILLI);
+		builder.append(", waitedMillis=");
+		builder.append(this.mWaitedMillis);
+		builder.append("]");
+		return builder.toString();
+	}
+
+	/**
+	 * Refills the bucket with the tokens that accrued since the last refill.
+	 * 
+	 * @param now
+	 *            The current timestamp in nanoseconds
+	 */
+	private void refill(final long now) {
+		final double accruedTokens = (now - this.mLastRefillNanos) * TOKENS_PER_SECOND / (1_000 * NANOS_PER_MILLI);
+		this.mTokens = Math.min(BUCKET_CAPACITY, this.mTokens + accruedTokens);
+		this.mLastRefillNanos = now;
+	}
+}
@@ -0,0 +1,149 @@
+package de.zabuza.beedlebot.store;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Latency accounting of all requests a {@link StoreHttpClient} has sent to a
+ * single host. The class is thread-safe.
+ * 
+ * @author Zabuza {@literal <zabuza.dev@gmail.com>}
+ *
+ */
+public final class HostStatistics {
+	/**
+	 * The amount of requests that failed, i.e. that did not receive a
+	 * response at all.
+	 */
+	private final AtomicLong mFailures;
+	/**
+	 * The name of the host.
+	 */
+	private final String mHost;
+	/**
+	 * The maximal latency of a single request in nanoseconds.
+	 */
+	private final AtomicLong mMaxLatencyNanos;
+	/**
+	 * The amount of requests sent to the host.
+	 */
+	private final AtomicLong mRequests;
+	/**
+	 * The total latency of all requests in nanoseconds.
+	 */
+	private final AtomicLong mTotalLatencyNanos;
+
+	/**
+	 * Creates new empty statistics for the given host.
+	 * 
+	 * @param host
+	 *            The name of the host
+	 */
+	public HostStatistics(final String host) {
+		this.mHost = host;
+		this.mRequests = new AtomicLong(0);
+		this.mFailures = new AtomicLong(0);
+		this.mTotalLatencyNanos = new AtomicLong(0);
+		this.mMaxLatencyNanos = new AtomicLong(0);
+	}
+
+	/**
+	 * Gets the average latency of a request in milliseconds.
+	 * 
+	 * @return The average latency of a request in milliseconds or
+	 *         <tt>zero</tt> if there were no requests yet
+	 */
+	public long getAverageLatencyMillis() {
+		final long requests = this.mRequests.get();
+		if (requests == 0) {
+			return 0;
+		}
+		return TimeUnit.NANOSECONDS.toMillis(this.mTotalLatencyNanos.get() / requests);
+	}
+
+	/**
+	 * Gets the amount of requests that failed, i.e. that did not receive a
+	 * response at all.
+	 * 
+	 * @return The amount of requests that failed
+	 */
+	public long getFailures() {
+		return this.mFailures.get();
+	}
+
+	/**
+	 * Gets the name of the host.
+	 * 
+	 * @return The name of the host
+	 */
+	public String getHost() {
+		return this.mHost;
+	}
+
+	/**
+	 * Gets the maximal latency of a single request in milliseconds.
+	 * 
+	 * @return The maximal latency of a single request in milliseconds
+	 */
+	public long getMaxLatencyMillis() {
+		return TimeUnit.NANOSECONDS.toMillis(this.mMaxLatencyNanos.get());
+	}
+
+	/**
+	 * Gets the amount of requests sent to the host.
+	 * 
+	 * @return The amount of requests sent to the host
+	 */
+	public long getRequests() {
+		return this.mRequests.get();
+	}
+
+	/**
+	 * Records a request that was sent to the host.
+	 * 
+	 * @param latencyNanos
+	 *            The latency of the request in nanoseconds, from opening the
+	 *            connection until the response was read completely
+	 * @param wasSuccessful
+	 *            <tt>True</tt> if the request received a response,
+	 *            <tt>false</tt> if it failed
+	 */
+	public void recordRequest(final long latencyNanos, final boolean wasSuccessful) {
+		this.mRequests.incrementAndGet();
+		if (!wasSuccessful) {
+			this.mFailures.incrementAndGet();
+		}
+		this.mTotalLatencyNanos.addAndGet(latencyNanos);
+
+		long currentMax = this.mMaxLatencyNanos.get();
+		while (latencyNanos > currentMax && !this.mMaxLatencyNanos.compareAndSet(currentMax, latencyNanos)) {
+			currentMax = this.mMaxLatencyNanos.get();
+		}
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see java.lang.Object#toString()
+	 */
+	@Override
+	public String toString() {
+		final StringBuilder builder = new StringBuilder();
+		builder.append("HostStatistics [");
+		if (this.mHost != null) {
+			builder.append("host=");
+			builder.append(this.mHost);
+			builder.append(", ");
+		}
+		builder.append("requests=");
+		builder.append(getRequests());
+		builder.append(", failures=");
+		builder.append(getFailures());
+		builder.append(", averageLatencyMillis=");
+		builder.append(getAverageLatencyMillis());
+		builder.append(", maxLatencyMillis=");
+		builder.append(getMaxLatencyMillis());
+		builder.append("]");
+		return builder.toString();
+	}
+}
@@ -0,0 +1,271 @@
+package de.zabuza.beedlebot.store;
+
+import java.nio.charset.Charset;
+import java.nio.charset.IllegalCharsetNameException;
+import java.nio.charset.StandardCharsets;
+import java.nio.charset.UnsupportedCharsetException;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.Collections;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Optional;
+
+/**
+ * Response to a request sent with a {@link StoreHttpClient}. The body of the
+ * response is already completely read and decompressed.
+ * 
+ * @author Zabuza {@literal <zabuza.dev@gmail.com>}
+ *
+ */
+public final class HttpResponse {
+	/**
+	 * The parameter of a content type header that specifies the char-set.
+	 */
+	private static final String CONTENT_TYPE_CHARSET_PARAMETER = "charset=";
+	/**
+	 * The name of the content type header.
+	 */
+	private static final String HEADER_CONTENT_TYPE = "content-type";
+	/**
+	 * The name of the header that tells how long to wait before retrying.
+	 */
+	private static final String HEADER_RETRY_AFTER = "retry-after";
+	/**
+	 * The factor to convert seconds into milliseconds.
+	 */
+	private static final long MILLIS_PER_SECOND = 1_000;
+	/**
+	 * The status code that indicates that the resource was not modified since
+	 * the version given by the validators of a conditional request.
+	 */
+	private static final int STATUS_CODE_NOT_MODIFIED = 304;
+	/**
+	 * The status code that indicates that the server timed out waiting for
+	 * the request.
+	 */
+	private static final int STATUS_CODE_REQUEST_TIMEOUT = 408;
+	/**
+	 * The smallest status code that indicates an error of the server.
+	 */
+	private static final int STATUS_CODE_SERVER_ERROR_START = 500;
+	/**
+	 * The smallest status code that does not indicate success anymore.
+	 */
+	private static final int STATUS_CODE_SUCCESS_END = 300;
+	/**
+	 * The smallest status code that indicates success.
+	 */
+	private static final int STATUS_CODE_SUCCESS_START = 200;
+	/**
+	 * The status code that indicates that the client sent too many requests.
+	 */
+	private static final int STATUS_CODE_TOO_MANY_REQUESTS = 429;
+
+	/**
+	 * The raw body of the response, already decompressed.
+	 */
+	private final byte[] mBody;
+	/**
+	 * Data-structure that maps lower case header names to their values.
+	 */
+	private final Map<String, String> mHeaders;
+	/**
+	 * The status code of the response.
+	 */
+	private final int mStatusCode;
+
+	/**
+	 * Creates a new response with the given data.
+	 * 
+	 * @param statusCode
+	 *            The status code of the response
+	 * @param headers
+	 *            Data-structure that maps lower case header names to their
+	 *            values
+	 * @param body
+	 *            The raw body of the response, already decompressed
+	 */
+	public HttpResponse(final int statusCode, final Map<String, String> headers, final byte[] body) {
+		this.mStatusCode = statusCode;
+		this.mHeaders = headers;
+		this.mBody = body;
+	}
+
+	/**
+	 * Gets the raw body of the response, already decompressed.
+	 * 
+	 * @return The raw body of the response
+	 */
+	public byte[] getBody() {
+		return this.mBody;
+	}
+
+	/**
+	 * Gets the body of the response as text. The text is decoded with the
+	 * char-set given by the content type of the response or with UTF-8 if the
+	 * response does not specify a known char-set.
+	 * 
+	 * @return The body of the response as text
+	 */
+	public String getBodyAsText() {
+		return new String(this.mBody, getCharset());
+	}
+
+	/**
+	 * If present gets the value of the header with the given name.
+	 * 
+	 * @param name
+	 *            The name of the header, case insensitive
+	 * @return If present the value of the header with the given name
+	 */
+	public Optional<String> getHeader(final String name) {
+		return Optional.ofNullable(this.mHeaders.get(name.toLowerCase(Locale.ROOT)));
+	}
+
+	/**
+	 * Gets an unmodifiable view of all headers of the response.
+	 * 
+	 * @return Data-structure that maps lower case header names to their values
+	 */
+	public Map<String, String> getHeaders() {
+		return Collections.unmodifiableMap(this.mHeaders);
+	}
+
+	/**
+	 * If present gets the time in milliseconds the server asked to wait before
+	 * retrying the request, given by the <tt>Retry-After</tt> header either as
+	 * amount of seconds or as date.
+	 * 
+	 * @param now
+	 *            The current timestamp, used to convert a date into a time to
+	 *            wait
+	 * @return If present the time in milliseconds to wait before retrying, not
+	 *         present if the header is missing or malformed
+	 */
+	public Optional<Long> getRetryAfterMillis(final long now) {
+		final Optional<String> retryAfter = getHeader(HEADER_RETRY_AFTER);
+		if (!retryAfter.isPresent()) {
+			return Optional.empty();
+		}
+		final String value = retryAfter.get().trim();
+		try {
+			final long seconds = Math.min(Math.max(0, Long.parseLong(value)), Long.MAX_VALUE / MILLIS_PER_SECOND);
+			return Optional.of(Long.valueOf(seconds * MILLIS_PER_SECOND));
+		} catch (final NumberFormatException e) {
+			// Try the date format
+		}
+		try {
+			final long retryTimestamp = ZonedDateTime.parse(value, DateTimeFormatter.RFC_1123_DATE_TIME).toInstant()
+					.toEpochMilli();
+			return Optional.of(Long.valueOf(Math.max(0, retryTimestamp - now)));
+		} catch (final DateTimeParseException e) {
+			return Optional.empty();
+		}
+	}
+
+	/**
+	 * Gets the status code of the response.
+	 * 
+	 * @return The status code of the response
+	 */
+	public int getStatusCode() {
+		return this.mStatusCode;
+	}
+
+	/**
+	 * Whether the response indicates that the requested resource was not
+	 * modified since the version given by the validators of a conditional
+	 * request.
+	 * 
+	 * @return <tt>True</tt> if the resource was not modified, <tt>false</tt>
+	 *         otherwise
+	 */
+	public boolean isNotModified() {
+		return this.mStatusCode == STATUS_CODE_NOT_MODIFIED;
+	}
+
+	/**
+	 * Whether the status code of the response indicates that the request
+	 * failed temporarily and should be retried later or not. This is the case
+	 * for errors of the server, timeouts of the server and throttling answers.
+	 * 
+	 * @return <tt>True</tt> if the request should be retried, <tt>false</tt>
+	 *         if not
+	 */
+	public boolean isRetryable() {
+		return isServerError() || this.mStatusCode == STATUS_CODE_REQUEST_TIMEOUT
+				|| this.mStatusCode == STATUS_CODE_TOO_MANY_REQUESTS;
+	}
+
+	/**
+	 * Whether the status code of the response indicates an error of the
+	 * server or not. Such errors are usually temporary, unlike errors of the
+	 * client.
+	 * 
+	 * @return <tt>True</tt> if the status code indicates an error of the
+	 *         server, <tt>false</tt> if not
+	 */
+	public boolean isServerError() {
+		return this.mStatusCode >= STATUS_CODE_SERVER_ERROR_START;
+	}
+
+	/**
+	 * Whether the status code of the response indicates success or not.
+	 * 
+	 * @return <tt>True</tt> if the status code indicates success,
+	 *         <tt>false</tt> if not
+	 */
+	public boolean isSuccessful() {
+		return this.mStatusCode >= STATUS_CODE_SUCCESS_START && this.mStatusCode < STATUS_CODE_SUCCESS_END;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see java.lang.Object#toString()
+	 */
+	@Override
+	public String toString() {
+		final StringBuilder builder = new StringBuilder();
+		builder.append("HttpResponse [statusCode=");
+		builder.append(this.mStatusCode);
+		builder.append(", bodyLength=");
+		builder.append(this.mBody.length);
+		builder.append("]");
+		return builder.toString();
+	}
+
+	/**
+	 * Gets the char-set given by the content type of the response or UTF-8 if
+	 * the response does not specify a known char-set.
+	 * 
+	 * @return The char-set of the body
+	 */
+	private Charset getCharset() {
+		final Optional<String> contentType = getHeader(HEADER_CONTENT_TYPE);
+		if (!contentType.isPresent()) {
+			return StandardCharsets.UTF_8;
+		}
+
+		final String contentTypeText = contentType.get().toLowerCase(Locale.ROOT);
+		final int charsetStart = contentTypeText.indexOf(CONTENT_TYPE_CHARSET_PARAMETER);
+		if (charsetStart == -1) {
+			return StandardCharsets.UTF_8;
+		}
+
+		String charsetName = contentTypeText.substring(charsetStart + CONTENT_TYPE_CHARSET_PARAMETER.length());
+		final int charsetEnd = charsetName.indexOf(';');
+		if (charsetEnd != -1) {
+			charsetName = charsetName.substring(0, charsetEnd);
+		}
+		charsetName = charsetName.replace("\"", "").trim();
+
+		try {
+			return Charset.forName(charsetName);
+		} catch (final IllegalCharsetNameException | UnsupportedCharsetException e) {
+			return StandardCharsets.UTF_8;
+		}
+	}
+}
@@ -0,0 +1,138 @@
+package de.zabuza.beedlebot.store;
+
+import java.util.Iterator;
+import java.util.Map.Entry;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Table of outstanding fetches of remote resources, keyed by the name of the
+ * resource. Concurrent or back-to-back callers that ask for the same resource
+ * share one fetch instead of each sending their own request. The first caller
+ * registers its {@link SharedFetch} and is responsible for completing it,
+ * all further callers wait for its result. Successful results are shared for
+ * a short retention time after completion, failures are not shared beyond
+ * the callers that already wait. The class is thread-safe.
+ * 
+ * @author Zabuza {@literal <zabuza.dev@gmail.com>}
+ * 
+ * @param <V>
+ *            The type of the result of the fetches
+ */
+public final class InFlightTable<V> {
+	/**
+	 * Data-structure that maps keys of resources to their outstanding or
+	 * recently completed fetch.
+	 */
+	private final ConcurrentMap<String, SharedFetch<V>> mKeyToFetch;
+	/**
+	 * The time in milliseconds the result of a completed fetch is shared.
+	 */
+	private final long mRetentionMillis;
+	/**
+	 * The amount of callers that shared the fetch of another caller instead of
+	 * sending their own request.
+	 */
+	private final AtomicLong mSharedFetches;
+
+	/**
+	 * Creates a new empty table.
+	 * 
+	 * @param retentionMillis
+	 *            The time in milliseconds the result of a completed fetch is
+	 *            shared
+	 */
+	public InFlightTable(final long retentionMillis) {
+		this.mRetentionMillis = retentionMillis;
+		this.mKeyToFetch = new ConcurrentHashMap<>();
+		this.mSharedFetches = new AtomicLong(0);
+	}
+
+	/**
+	 * Completes the given registered fetch with the given result. All callers
+	 * waiting for it get the result. The fetch stays registered for its key
+	 * until its retention time is over.
+	 * 
+	 * @param fetch
+	 *            The fetch to complete
+	 * @param result
+	 *            The result of the fetch
+	 */
+	public void complete(final SharedFetch<V> fetch, final V result) {
+		fetch.complete(result);
+		removeExpired();
+	}
+
+	/**
+	 * Completes the given fetch, which was registered for the given key, with
+	 * the given exception. All callers waiting for it get the exception, later
+	 * callers send a new request.
+	 * 
+	 * @param key
+	 *            The key of the resource
+	 * @param fetch
+	 *            The fetch to complete
+	 * @param exception
+	 *            The exception the fetch failed with
+	 */
+	public void fail(final String key, final SharedFetch<V> fetch, final Throwable exception) {
+		this.mKeyToFetch.remove(key, fetch);
+		fetch.fail(exception);
+	}
+
+	/**
+	 * Gets the amount of callers that shared the fetch of another caller
+	 * instead of sending their own request.
+	 * 
+	 * @return The amount of callers that shared a fetch
+	 */
+	public long getSharedFetches() {
+		return this.mSharedFetches.get();
+	}
+
+	/**
+	 * Registers the given fetch for the resource with the given key, unless
+	 * there already is an outstanding or recently completed fetch for it. In
+	 * the latter case the caller should wait for the returned fetch with
+	 * {@link SharedFetch#await()}, else it must send the request itself and
+	 * complete its fetch with {@link #complete(SharedFetch, Object)}
+	 * or {@link #fail(String, SharedFetch, Throwable)}.
+	 * 
+	 * @param key
+	 *            The key of the resource
+	 * @param fetch
+	 *            The new outstanding fetch of the caller
+	 * @return If present the fetch to share, if not present the given fetch
+	 *         got registered and needs to be completed by the caller
+	 */
+	public Optional<SharedFetch<V>> register(final String key, final SharedFetch<V> fetch) {
+		while (true) {
+			final SharedFetch<V> existingFetch = this.mKeyToFetch.putIfAbsent(key, fetch);
+			if (existingFetch == null) {
+				return Optional.empty();
+			}
+			if (!existingFetch.isExpired(System.currentTimeMillis(), this.mRetentionMillis)) {
+				this.mSharedFetches.incrementAndGet();
+				return Optional.of(existingFetch);
+			}
+			if (this.mKeyToFetch.replace(key, existingFetch, fetch)) {
+				return Optional.empty();
+			}
+		}
+	}
+
+	/**
+	 * Removes all fetches whose results should not be shared anymore.
+	 */
+	private void removeExpired() {
+		final long now = System.currentTimeMillis();
+		final Iterator<Entry<String, SharedFetch<V>>> iterator = this.mKeyToFetch.entrySet().iterator();
+		while (iterator.hasNext()) {
+			if (iterator.next().getValue().isExpired(now, this.mRetentionMillis)) {
+				iterator.remove();
+			}
+		}
+	}
+}
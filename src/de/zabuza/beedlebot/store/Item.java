@@ -173,6 +173,30 @@ public final class Item {
 		return this.mIsMagical;
 	}
 
+	/**
+	 * Whether the price data of the item is degraded or not, i.e. whether it
+	 * is a fallback of the {@link Store} served while a price service is
+	 * unavailable.
+	 * 
+	 * @return <tt>True</tt> if the price data of the item is degraded,
+	 *         <tt>false</tt> if not
+	 */
+	public boolean isPriceDegraded() {
+		return this.mStorePriceData.isDegraded();
+	}
+
+	/**
+	 * Whether the price data of the item is stale or not, i.e. whether it was
+	 * served from the cache of the {@link Store} although it is expired, while
+	 * a refresh is pending in the background.
+	 * 
+	 * @return <tt>True</tt> if the price data of the item is stale,
+	 *         <tt>false</tt> if not
+	 */
+	public boolean isPriceStale() {
+		return this.mStorePriceData.isStale();
+	}
+
 	/*
 	 * (non-Javadoc)
 	 * 
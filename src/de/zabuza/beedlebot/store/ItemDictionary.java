@@ -2,8 +2,8 @@ package de.zabuza.beedlebot.store;
 
 import java.util.HashMap;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.Map;
-import java.util.Map.Entry;
 import java.util.Optional;
 import java.util.Set;
 
@@ -15,9 +15,20 @@ import java.util.Set;
  *
  */
 public final class ItemDictionary {
+	/**
+	 * The maximal amount of recently applied item names whose unique
+	 * representation is remembered.
+	 */
+	private static final int RECENT_ITEM_NAMES_CAPACITY = 1_024;
+
+	/**
+	 * Matcher compiled from {@link #mItemNamePatterns}.
+	 */
+	private final ItemNamePatternMatcher mItemNamePatternMatcher;
 	/**
 	 * Data-structure which maps item name patterns for non-unique items to
-	 * their unique representations.
+	 * their unique representations, ordered by priority. If several patterns
+	 * match an item, the pattern registered first wins.
 	 */
 	private final Map<String, String> mItemNamePatterns;
 	/**
@@ -34,6 +45,11 @@ public final class ItemDictionary {
 	 * Data-structure which maps item names to explicit player prices.
 	 */
 	private final Map<String, Integer> mPlayerPrices;
+	/**
+	 * Cache of recently applied item names and their unique representation.
+	 * Guarded by its own lock.
+	 */
+	private final RecentItemNameCache mRecentItemNames;
 	/**
 	 * Data-structure which maps item names to explicit standard shop prices.
 	 */
@@ -45,7 +61,7 @@ public final class ItemDictionary {
 	public ItemDictionary() {
 		this.mStandardShopPrices = new HashMap<>();
 		this.mPlayerPrices = new HashMap<>();
-		this.mItemNamePatterns = new HashMap<>();
+		this.mItemNamePatterns = new LinkedHashMap<>();
 		this.mItemsRegisteredForShop = new HashSet<>();
 		this.mItemsRegisteredForPlayer = new HashSet<>();
 
@@ -56,23 +72,33 @@ public final class ItemDictionary {
 		initializeItemsRegisteredForPlayer();
 
 		initializeItemNamePatterns();
+		this.mItemNamePatternMatcher = new ItemNamePatternMatcher(this.mItemNamePatterns);
+		this.mRecentItemNames = new RecentItemNameCache(RECENT_ITEM_NAMES_CAPACITY);
 	}
 
 	/**
 	 * Applies known item name patterns to the given item name in order to get a
-	 * unique representation of it in case it is a non unique item.
+	 * unique representation of it in case it is a non unique item. If several
+	 * patterns match, the pattern registered first wins. The method is
+	 * thread-safe.
 	 * 
 	 * @param itemName
 	 *            The name of the item to apply the patterns to
 	 * @return A unique representation name of the given item
 	 */
 	public String applyItemNamePatterns(final String itemName) {
-		for (final Entry<String, String> entry : this.mItemNamePatterns.entrySet()) {
-			if (itemName.matches(entry.getKey())) {
-				return entry.getValue();
+		synchronized (this.mRecentItemNames) {
+			final String representation = this.mRecentItemNames.get(itemName);
+			if (representation != null) {
+				return representation;
 			}
 		}
-		return itemName;
+
+		final String representation = this.mItemNamePatternMatcher.match(itemName).orElse(itemName);
+		synchronized (this.mRecentItemNames) {
+			this.mRecentItemNames.put(itemName, representation);
+		}
+		return representation;
 	}
 
 	/**
@@ -167,13 +193,15 @@ public final class ItemDictionary {
 
 	/**
 	 * Initializes the data-structure that maps item name patterns with their
-	 * unique representation name.
+	 * unique representation name. Patterns are registered by priority, more
+	 * specific patterns must precede patterns that also match their items.
 	 */
 	private void initializeItemNamePatterns() {
 		this.mItemNamePatterns.put(".*Gewebeprobe.*", "Gewebeprobe");
 		this.mItemNamePatterns.put(".*Puppe.*", "Puppe von Beispieluser");
 		this.mItemNamePatterns.put(".*personalisierter Hinzauber.*", "Hinzauber zu Beispielspieler");
 		this.mItemNamePatterns.put(".*Zeichnung.*", "Zeichnung von Beispiel-NPC");
+		this.mItemNamePatterns.put(".*Foliant.*", "Foliant der Blutprobenwesen");
 		this.mItemNamePatterns.put(".*Blutprobe.*", "Blutprobe");
 		this.mItemNamePatterns.put(".*Seelenstein.*", "Seelenstein von Beispielopfer");
 		this.mItemNamePatterns.put(".*Wein.*", "Wein von Beispielsponsor");
@@ -189,7 +217,6 @@ public final class ItemDictionary {
 		this.mItemNamePatterns.put(".*Notizblock.*", "Notizblock");
 		this.mItemNamePatterns.put(".*Freundschaftsring.*", "Freundschaftsring");
 		this.mItemNamePatterns.put(".*Ehering.*", "Ehering");
-		this.mItemNamePatterns.put(".*Foliant.*", "Foliant der Blutprobenwesen");
 		this.mItemNamePatterns.put(".*Hirtenstab.*", "Hirtenstab");
 		this.mItemNamePatterns.put(".*Knorpel-Monster aus Draht.*", "Knorpel-Monster aus Draht (Item)");
 		this.mItemNamePatterns.put(".*Schatztruhe.*", "Zaubertruhe");
@@ -0,0 +1,251 @@
+package de.zabuza.beedlebot.store;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Optional;
+import java.util.Queue;
+import java.util.regex.Pattern;
+
+/**
+ * Matches item names against an ordered set of item name patterns in one pass.
+ * Patterns of the form <tt>.*literal.*</tt>, which are nearly all of them, are
+ * compiled into a single Aho-Corasick automaton that finds all contained
+ * literals at once. The remaining patterns are compiled once as regular
+ * expressions. If several patterns match, the one declared first wins. The
+ * class is immutable and thus thread-safe.
+ * 
+ * @author Zabuza {@literal <zabuza.dev@gmail.com>}
+ *
+ */
+public final class ItemNamePatternMatcher {
+	/**
+	 * The priority used for nodes of the automaton that do not end a literal,
+	 * lower than every actual priority.
+	 */
+	private static final int NO_PRIORITY = Integer.MAX_VALUE;
+	/**
+	 * Characters that have a special meaning in regular expressions.
+	 */
+	private static final String REGEX_META_CHARACTERS = "\\^$.|?*+()[]{}";
+	/**
+	 * The index of the root node of the automaton.
+	 */
+	private static final int ROOT = 0;
+	/**
+	 * The wildcard a literal pattern starts and ends with.
+	 */
+	private static final String WILDCARD = ".*";
+
+	/**
+	 * If the given pattern is of the form <tt>.*literal.*</tt> gets the
+	 * literal.
+	 * 
+	 * @param pattern
+	 *            The pattern in question
+	 * @return If the pattern is a containment check of a literal, the literal
+	 */
+	private static Optional<String> extractLiteral(final String pattern) {
+		if (pattern.length() <= 2 * WILDCARD.length() || !pattern.startsWith(WILDCARD)
+				|| !pattern.endsWith(WILDCARD)) {
+			return Optional.empty();
+		}
+		final String literal = pattern.substring(WILDCARD.length(), pattern.length() - WILDCARD.length());
+		for (int i = 0; i < literal.length(); i++) {
+			if (REGEX_META_CHARACTERS.indexOf(literal.charAt(i)) != -1) {
+				return Optional.empty();
+			}
+		}
+		return Optional.of(literal);
+	}
+
+	/**
+	 * Data-structure that maps the index of each node of the automaton to the
+	 * highest priority, i.e. lowest value, of all literals that end at the
+	 * node or at a node of its failure chain.
+	 */
+	private final int[] mBestPriority;
+	/**
+	 * Data-structure that maps the index of each node of the automaton to its
+	 * children by the character of the edge.
+	 */
+	private final List<Map<Character, Integer>> mChildren;
+	/**
+	 * Data-structure that maps the index of each node of the automaton to the
+	 * node of the longest proper suffix that is also contained in the
+	 * automaton.
+	 */
+	private final int[] mFailure;
+	/**
+	 * Patterns that are no literal containment checks, compiled as regular
+	 * expressions.
+	 */
+	private final Pattern[] mRegexPatterns;
+	/**
+	 * The priority of the patterns in {@link #mRegexPatterns}.
+	 */
+	private final int[] mRegexPriorities;
+	/**
+	 * The representation of each pattern, indexed by its priority.
+	 */
+	private final String[] mRepresentations;
+
+	/**
+	 * Compiles a matcher for the given patterns.
+	 * 
+	 * @param patternToRepresentation
+	 *            Data-structure that maps regular expression patterns to the
+	 *            unique representation of the items they match, ordered by
+	 *            priority, the first pattern has the highest priority
+	 */
+	public ItemNamePatternMatcher(final Map<String, String> patternToRepresentation) {
+		this.mRepresentations = new String[patternToRepresentation.size()];
+		this.mChildren = new ArrayList<>();
+		this.mChildren.add(new HashMap<>());
+		final List<Integer> nodePriorities = new ArrayList<>();
+		nodePriorities.add(Integer.valueOf(NO_PRIORITY));
+		final List<Pattern> regexPatterns = new ArrayList<>();
+		final List<Integer> regexPriorities = new ArrayList<>();
+
+		int priority = 0;
+		for (final Entry<String, String> entry : patternToRepresentation.entrySet()) {
+			this.mRepresentations[priority] = entry.getValue();
+			final Optional<String> literal = extractLiteral(entry.getKey());
+			if (literal.isPresent()) {
+				addLiteral(literal.get(), priority, nodePriorities);
+			} else {
+				regexPatterns.add(Pattern.compile(entry.getKey()));
+				regexPriorities.add(Integer.valueOf(priority));
+			}
+			priority++;
+		}
+
+		this.mRegexPatterns = regexPatterns.toArray(new Pattern[regexPatterns.size()]);
+		this.mRegexPriorities = new int[regexPriorities.size()];
+		for (int i = 0; i < this.mRegexPriorities.length; i++) {
+			this.mRegexPriorities[i] = regexPriorities.get(i).intValue();
+		}
+
+		this.mFailure = new int[this.mChildren.size()];
+		this.mBestPriority = new int[this.mChildren.size()];
+		for (int i = 0; i < this.mBestPriority.length; i++) {
+			this.mBestPriority[i] = nodePriorities.get(i).intValue();
+		}
+		buildFailureLinks();
+	}
+
+	/**
+	 * Matches the given item name against all patterns.
+	 * 
+	 * @param itemName
+	 *            The name of the item to match
+	 * @return If a pattern matches, the representation of the matching pattern
+	 *         with the highest priority
+	 */
+	public Optional<String> match(final String itemName) {
+		int bestPriority = NO_PRIORITY;
+
+		int node = ROOT;
+		for (int i = 0; i < itemName.length(); i++) {
+			node = transition(node, itemName.charAt(i));
+			bestPriority = Math.min(bestPriority, this.mBestPriority[node]);
+		}
+
+		for (int i = 0; i < this.mRegexPatterns.length; i++) {
+			if (this.mRegexPriorities[i] >= bestPriority) {
+				break;
+			}
+			if (this.mRegexPatterns[i].matcher(itemName).matches()) {
+				bestPriority = this.mRegexPriorities[i];
+				break;
+			}
+		}
+
+		if (bestPriority == NO_PRIORITY) {
+			return Optional.empty();
+		}
+		return Optional.of(this.mRepresentations[bestPriority]);
+	}
+
+	/**
+	 * Adds the given literal to the trie of the automaton.
+	 * 
+	 * @param literal
+	 *            The literal to add
+	 * @param priority
+	 *            The priority of the pattern of the literal
+	 * @param nodePriorities
+	 *            Data-structure that maps the index of each node to the
+	 *            highest priority of the literals ending at it
+	 */
+	private void addLiteral(final String literal, final int priority, final List<Integer> nodePriorities) {
+		int node = ROOT;
+		for (int i = 0; i < literal.length(); i++) {
+			final Character character = Character.valueOf(literal.charAt(i));
+			final Integer child = this.mChildren.get(node).get(character);
+			if (child != null) {
+				node = child.intValue();
+				continue;
+			}
+			final int newNode = this.mChildren.size();
+			this.mChildren.add(new HashMap<>());
+			nodePriorities.add(Integer.valueOf(NO_PRIORITY));
+			this.mChildren.get(node).put(character, Integer.valueOf(newNode));
+			node = newNode;
+		}
+		if (priority < nodePriorities.get(node).intValue()) {
+			nodePriorities.set(node, Integer.valueOf(priority));
+		}
+	}
+
+	/**
+	 * Builds the failure links of the automaton by a breadth-first traversal
+	 * of the trie and propagates the priorities of the literals along them.
+	 */
+	private void buildFailureLinks() {
+		final Queue<Integer> queue = new ArrayDeque<>();
+		for (final Integer child : this.mChildren.get(ROOT).values()) {
+			this.mFailure[child.intValue()] = ROOT;
+			queue.add(child);
+		}
+
+		while (!queue.isEmpty()) {
+			final int node = queue.poll().intValue();
+			for (final Entry<Character, Integer> edge : this.mChildren.get(node).entrySet()) {
+				final int child = edge.getValue().intValue();
+				final int failure = transition(this.mFailure[node], edge.getKey().charValue());
+				this.mFailure[child] = failure;
+				this.mBestPriority[child] = Math.min(this.mBestPriority[child], this.mBestPriority[failure]);
+				queue.add(edge.getValue());
+			}
+		}
+	}
+
+	/**
+	 * Gets the node the automaton moves to from the given node when reading
+	 * the given character. Only valid for nodes whose failure link is already
+	 * built.
+	 * 
+	 * @param node
+	 *            The current node
+	 * @param character
+	 *            The character to read
+	 * @return The node after reading the character
+	 */
+	private int transition(final int node, final char character) {
+		int current = node;
+		while (true) {
+			final Integer child = this.mChildren.get(current).get(Character.valueOf(character));
+			if (child != null) {
+				return child.intValue();
+			}
+			if (current == ROOT) {
+				return ROOT;
+			}
+			current = this.mFailure[current];
+		}
+	}
+}
@@ -21,7 +21,19 @@ public final class ItemPrice implements Serializable, Cloneable {
 	 */
 	private boolean mIsCached;
 	/**
-	 * The timestamp of when the data represented by this object was retrieved
+	 * Whether the item price data is a fallback served while a price service
+	 * is unavailable, i.e. expired or incomplete data. Not serialized since it
+	 * only describes how the data was served.
+	 */
+	private transient boolean mIsDegraded;
+	/**
+	 * Whether the item price data was served from a cache although it is
+	 * expired, while a refresh is pending in the background. Not serialized
+	 * since it only describes how the data was served.
+	 */
+	private transient boolean mIsStale;
+	/**
+	 * The timestamp of when the standard shop price of this item was retrieved
 	 * from outside of a cache.
 	 */
 	private final long mLookupTimestamp;
@@ -33,6 +45,13 @@ public final class ItemPrice implements Serializable, Cloneable {
 	 * The player price of this item.
 	 */
 	private final PlayerPrice mPlayerPrice;
+	/**
+	 * The timestamp of when the player price of this item was retrieved from
+	 * outside of a cache, also if the item turned out to have no player price.
+	 * Is <tt>zero</tt> for data serialized by older versions, such that their
+	 * player price is considered to be expired.
+	 */
+	private final long mPlayerPriceLookupTimestamp;
 	/**
 	 * The standard shop price of this item.
 	 */
@@ -74,10 +93,37 @@ public final class ItemPrice implements Serializable, Cloneable {
 	 */
 	public ItemPrice(final String name, final int standardShopPrice, final PlayerPrice playerPrice,
 			final boolean isCached, final long lookupTimestamp) {
+		this(name, standardShopPrice, playerPrice, isCached, lookupTimestamp, lookupTimestamp);
+	}
+
+	/**
+	 * Creates a new item price data for the given item whose standard shop
+	 * price and player price were retrieved at different times.
+	 * 
+	 * @param name
+	 *            The name of the item
+	 * @param standardShopPrice
+	 *            The standard shop price of the item
+	 * @param playerPrice
+	 *            The player price of the item or <tt>null</tt> if the item has
+	 *            no player price
+	 * @param isCached
+	 *            Whether the item price data was retrieved from a cache or not
+	 * @param standardShopPriceLookupTimestamp
+	 *            The timestamp of when the standard shop price was retrieved
+	 *            from outside of a cache
+	 * @param playerPriceLookupTimestamp
+	 *            The timestamp of when the player price was retrieved from
+	 *            outside of a cache
+	 */
+	public ItemPrice(final String name, final int standardShopPrice, final PlayerPrice playerPrice,
+			final boolean isCached, final long standardShopPriceLookupTimestamp,
+			final long playerPriceLookupTimestamp) {
 		this.mName = name;
 		this.mStandardShopPrice = standardShopPrice;
 		this.mPlayerPrice = playerPrice;
-		this.mLookupTimestamp = lookupTimestamp;
+		this.mLookupTimestamp = standardShopPriceLookupTimestamp;
+		this.mPlayerPriceLookupTimestamp = playerPriceLookupTimestamp;
 		this.mIsCached = isCached;
 	}
 
@@ -89,23 +135,28 @@ public final class ItemPrice implements Serializable, Cloneable {
 	@Override
 	public ItemPrice clone() {
 		final Optional<PlayerPrice> playerPrice = getPlayerPrice();
+		PlayerPrice clonedPlayerPrice = null;
 		if (playerPrice.isPresent()) {
-			final PlayerPrice clonedPlayerPrice = playerPrice.get().clone();
-			return new ItemPrice(getName(), getStandardShopPrice(), clonedPlayerPrice, isCached(),
-					getLookupTimestamp());
+			clonedPlayerPrice = playerPrice.get().clone();
 		}
-		return new ItemPrice(getName(), getStandardShopPrice(), isCached(), getLookupTimestamp());
+		final ItemPrice clonedItemPrice = new ItemPrice(getName(), getStandardShopPrice(), clonedPlayerPrice,
+				isCached(), getStandardShopPriceLookupTimestamp(), getPlayerPriceLookupTimestamp());
+		clonedItemPrice.setIsStale(isStale());
+		clonedItemPrice.setIsDegraded(isDegraded());
+		return clonedItemPrice;
 	}
 
 	/**
 	 * Gets the timestamp of when the data represented by this object was
-	 * retrieved from outside of a cache.
+	 * retrieved from outside of a cache. If the standard shop price and the
+	 * player price were retrieved at different times, the older timestamp is
+	 * returned.
 	 * 
 	 * @return The timestamp of when the data represented by this object was
 	 *         retrieved from outside of a cache
 	 */
 	public long getLookupTimestamp() {
-		return this.mLookupTimestamp;
+		return Math.min(this.mLookupTimestamp, this.mPlayerPriceLookupTimestamp);
 	}
 
 	/**
@@ -129,6 +180,17 @@ public final class ItemPrice implements Serializable, Cloneable {
 		return Optional.empty();
 	}
 
+	/**
+	 * Gets the timestamp of when the player price of this item was retrieved
+	 * from outside of a cache, also if the item has no player price.
+	 * 
+	 * @return The timestamp of when the player price was retrieved from
+	 *         outside of a cache
+	 */
+	public long getPlayerPriceLookupTimestamp() {
+		return this.mPlayerPriceLookupTimestamp;
+	}
+
 	/**
 	 * Gets the standard shop price of this item.
 	 * 
@@ -138,6 +200,17 @@ public final class ItemPrice implements Serializable, Cloneable {
 		return this.mStandardShopPrice;
 	}
 
+	/**
+	 * Gets the timestamp of when the standard shop price of this item was
+	 * retrieved from outside of a cache.
+	 * 
+	 * @return The timestamp of when the standard shop price was retrieved from
+	 *         outside of a cache
+	 */
+	public long getStandardShopPriceLookupTimestamp() {
+		return this.mLookupTimestamp;
+	}
+
 	/**
 	 * Whether the item has a player price or not.
 	 * 
@@ -158,6 +231,28 @@ public final class ItemPrice implements Serializable, Cloneable {
 		return this.mIsCached;
 	}
 
+	/**
+	 * Whether the item price data is a fallback served while a price service
+	 * is unavailable, i.e. expired or incomplete data.
+	 * 
+	 * @return <tt>True</tt> if the item price data is degraded, <tt>false</tt>
+	 *         if not
+	 */
+	public boolean isDegraded() {
+		return this.mIsDegraded;
+	}
+
+	/**
+	 * Whether the item price data was served from a cache although it is
+	 * expired, while a refresh is pending in the background.
+	 * 
+	 * @return <tt>True</tt> if the item price data is stale, <tt>false</tt>
+	 *         if not
+	 */
+	public boolean isStale() {
+		return this.mIsStale;
+	}
+
 	/**
 	 * Sets whether the item price data was retrieved from a cache or not.
 	 * 
@@ -169,6 +264,30 @@ public final class ItemPrice implements Serializable, Cloneable {
 		this.mIsCached = isCached;
 	}
 
+	/**
+	 * Sets whether the item price data is a fallback served while a price
+	 * service is unavailable, i.e. expired or incomplete data.
+	 * 
+	 * @param isDegraded
+	 *            <tt>True</tt> if the item price data is degraded,
+	 *            <tt>false</tt> if not
+	 */
+	public void setIsDegraded(final boolean isDegraded) {
+		this.mIsDegraded = isDegraded;
+	}
+
+	/**
+	 * Sets whether the item price data was served from a cache although it is
+	 * expired, while a refresh is pending in the background.
+	 * 
+	 * @param isStale
+	 *            <tt>True</tt> if the item price data is stale, <tt>false</tt>
+	 *            if not
+	 */
+	public void setIsStale(final boolean isStale) {
+		this.mIsStale = isStale;
+	}
+
 	/*
 	 * (non-Javadoc)
 	 * 
@@ -179,6 +298,10 @@ public final class ItemPrice implements Serializable, Cloneable {
 		final StringBuilder builder = new StringBuilder();
 		builder.append("ItemPrice [isCached=");
 		builder.append(this.mIsCached);
+		builder.append(", isDegraded=");
+		builder.append(this.mIsDegraded);
+		builder.append(", isStale=");
+		builder.append(this.mIsStale);
 		builder.append(", lookupTimestamp=");
 		builder.append(this.mLookupTimestamp);
 		builder.append(", ");
@@ -192,6 +315,9 @@ public final class ItemPrice implements Serializable, Cloneable {
 			builder.append(this.mPlayerPrice);
 			builder.append(", ");
 		}
+		builder.append("playerPriceLookupTimestamp=");
+		builder.append(this.mPlayerPriceLookupTimestamp);
+		builder.append(", ");
 		builder.append("standardShopPrice=");
 		builder.append(this.mStandardShopPrice);
 		builder.append("]");
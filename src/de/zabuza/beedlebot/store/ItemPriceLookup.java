@@ -0,0 +1,53 @@
+package de.zabuza.beedlebot.store;
+
+import java.util.Optional;
+import java.util.concurrent.Callable;
+
+/**
+ * Task that looks up the price data of a given item from outside of the cache
+ * of a {@link Store}. Used to resolve several item prices concurrently. If
+ * expired cached price data is given only its expired tiers are looked up.
+ * 
+ * @author Zabuza {@literal <zabuza.dev@gmail.com>}
+ *
+ */
+public final class ItemPriceLookup implements Callable<ItemPrice> {
+	/**
+	 * If present the expired cached price data of the item.
+	 */
+	private final Optional<ItemPrice> mExpiredItemPrice;
+	/**
+	 * The name of the item to lookup its price data.
+	 */
+	private final String mItemName;
+	/**
+	 * The store to use for looking up the price data.
+	 */
+	private final Store mStore;
+
+	/**
+	 * Creates a new task that looks up the price data of the given item.
+	 * 
+	 * @param store
+	 *            The store to use for looking up the price data
+	 * @param itemName
+	 *            The name of the item to lookup its price data
+	 * @param expiredItemPrice
+	 *            If present the expired cached price data of the item
+	 */
+	public ItemPriceLookup(final Store store, final String itemName, final Optional<ItemPrice> expiredItemPrice) {
+		this.mStore = store;
+		this.mItemName = itemName;
+		this.mExpiredItemPrice = expiredItemPrice;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see java.util.concurrent.Callable#call()
+	 */
+	@Override
+	public ItemPrice call() {
+		return this.mStore.lookupItemPrice(this.mItemName, this.mExpiredItemPrice);
+	}
+}
@@ -0,0 +1,51 @@
+package de.zabuza.beedlebot.store;
+
+/**
+ * Task that refreshes the expired cached price data of a given item of a
+ * {@link Store} in the background, while the stale data is already being
+ * served.
+ * 
+ * @author Zabuza {@literal <zabuza.dev@gmail.com>}
+ *
+ */
+public final class ItemPriceRefresh implements Runnable {
+	/**
+	 * The expired cached price data of the item.
+	 */
+	private final ItemPrice mExpiredItemPrice;
+	/**
+	 * The name of the item to refresh its price data.
+	 */
+	private final String mItemName;
+	/**
+	 * The store whose cache to refresh.
+	 */
+	private final Store mStore;
+
+	/**
+	 * Creates a new task that refreshes the expired cached price data of the
+	 * given item.
+	 * 
+	 * @param store
+	 *            The store whose cache to refresh
+	 * @param itemName
+	 *            The name of the item to refresh its price data
+	 * @param expiredItemPrice
+	 *            The expired cached price data of the item
+	 */
+	public ItemPriceRefresh(final Store store, final String itemName, final ItemPrice expiredItemPrice) {
+		this.mStore = store;
+		this.mItemName = itemName;
+		this.mExpiredItemPrice = expiredItemPrice;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see java.lang.Runnable#run()
+	 */
+	@Override
+	public void run() {
+		this.mStore.refreshItemPrice(this.mItemName, this.mExpiredItemPrice);
+	}
+}
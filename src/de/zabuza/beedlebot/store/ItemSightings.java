@@ -0,0 +1,141 @@
+package de.zabuza.beedlebot.store;
+
+import java.util.Arrays;
+
+/**
+ * Statistics of how often an item was seen at the central traders depot, as
+ * kept by a {@link SightingsTable}. Holds the amount of sightings by item
+ * category, when the item was seen the last time and its typical cost.
+ * Instances are immutable, use {@link #record(EItemCategory, int, long)} to
+ * add a sighting.
+ * 
+ * @author Zabuza {@literal <zabuza.dev@gmail.com>}
+ *
+ */
+public final class ItemSightings {
+	/**
+	 * The weight of the cost of a new sighting in the typical cost.
+	 */
+	private static final double COST_SMOOTHING_WEIGHT = 0.2;
+
+	/**
+	 * The amount of sightings by the ordinal of the item category.
+	 */
+	private final int[] mCategoryToSightings;
+	/**
+	 * The timestamp of when the item was seen the last time.
+	 */
+	private final long mLastSeenTimestamp;
+	/**
+	 * The typical cost of the item at the depot, smoothed over its sightings.
+	 */
+	private final int mTypicalCost;
+
+	/**
+	 * Creates new statistics of an item that was not seen yet.
+	 */
+	public ItemSightings() {
+		this(new int[EItemCategory.values().length], 0, 0);
+	}
+
+	/**
+	 * Creates new statistics of an item.
+	 * 
+	 * @param categoryToSightings
+	 *            The amount of sightings by the ordinal of the item category,
+	 *            not copied
+	 * @param lastSeenTimestamp
+	 *            The timestamp of when the item was seen the last time
+	 * @param typicalCost
+	 *            The typical cost of the item at the depot
+	 */
+	public ItemSightings(final int[] categoryToSightings, final long lastSeenTimestamp, final int typicalCost) {
+		this.mCategoryToSightings = categoryToSightings;
+		this.mLastSeenTimestamp = lastSeenTimestamp;
+		this.mTypicalCost = typicalCost;
+	}
+
+	/**
+	 * Gets the timestamp of when the item was seen the last time.
+	 * 
+	 * @return The timestamp of when the item was seen the last time
+	 */
+	public long getLastSeenTimestamp() {
+		return this.mLastSeenTimestamp;
+	}
+
+	/**
+	 * Gets the amount of times the item was seen in the given category.
+	 * 
+	 * @param category
+	 *            The category in question
+	 * @return The amount of sightings in the category
+	 */
+	public int getSightings(final EItemCategory category) {
+		return this.mCategoryToSightings[category.ordinal()];
+	}
+
+	/**
+	 * Gets the amount of times the item was seen in any category.
+	 * 
+	 * @return The total amount of sightings
+	 */
+	public int getTotalSightings() {
+		int totalSightings = 0;
+		for (final int sightings : this.mCategoryToSightings) {
+			totalSightings += sightings;
+		}
+		return totalSightings;
+	}
+
+	/**
+	 * Gets the typical cost of the item at the depot, smoothed over its
+	 * sightings.
+	 * 
+	 * @return The typical cost of the item
+	 */
+	public int getTypicalCost() {
+		return this.mTypicalCost;
+	}
+
+	/**
+	 * Creates the statistics that result from adding the given sighting to
+	 * these statistics.
+	 * 
+	 * @param category
+	 *            The category the item was seen in
+	 * @param cost
+	 *            The cost of the item
+	 * @param timestamp
+	 *            The timestamp of the sighting
+	 * @return The updated statistics
+	 */
+	public ItemSightings record(final EItemCategory category, final int cost, final long timestamp) {
+		final int[] categoryToSightings = Arrays.copyOf(this.mCategoryToSightings, this.mCategoryToSightings.length);
+		categoryToSightings[category.ordinal()]++;
+
+		int typicalCost = cost;
+		if (getTotalSightings() > 0) {
+			typicalCost = (int) Math.round(this.mTypicalCost + COST_SMOOTHING_WEIGHT * (cost - this.mTypicalCost));
+		}
+		return new ItemSightings(categoryToSightings, Math.max(timestamp, this.mLastSeenTimestamp), typicalCost);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see java.lang.Object#toString()
+	 */
+	@Override
+	public String toString() {
+		final StringBuilder builder = new StringBuilder();
+		builder.append("ItemSightings [categoryToSightings=");
+		builder.append(Arrays.toString(this.mCategoryToSightings));
+		builder.append(", lastSeenTimestamp=");
+		builder.append(this.mLastSeenTimestamp);
+		builder.append(", typicalCost=");
+		builder.append(this.mTypicalCost);
+		builder.append("]");
+		return builder.toString();
+	}
+}
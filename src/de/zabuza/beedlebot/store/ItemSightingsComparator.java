@@ -0,0 +1,30 @@
+package de.zabuza.beedlebot.store;
+
+import java.util.Comparator;
+import java.util.Map.Entry;
+
+/**
+ * Comparator that orders entries of item names and their sightings descending
+ * by the total amount of sightings, such that the most often seen items come
+ * first. Items seen equally often are ordered by when they were seen the last
+ * time, most recently seen first.
+ * 
+ * @author Zabuza {@literal <zabuza.dev@gmail.com>}
+ *
+ */
+public final class ItemSightingsComparator implements Comparator<Entry<String, ItemSightings>> {
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see java.util.Comparator#compare(java.lang.Object, java.lang.Object)
+	 */
+	@Override
+	public int compare(final Entry<String, ItemSightings> first, final Entry<String, ItemSightings> second) {
+		final int sightingsComparison = Integer.compare(second.getValue().getTotalSightings(),
+				first.getValue().getTotalSightings());
+		if (sightingsComparison != 0) {
+			return sightingsComparison;
+		}
+		return Long.compare(second.getValue().getLastSeenTimestamp(), first.getValue().getLastSeenTimestamp());
+	}
+}
@@ -0,0 +1,60 @@
+package de.zabuza.beedlebot.store;
+
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Factory that creates the daemon threads used by a {@link Store} for looking
+ * up item price data in the background. Daemon threads ensure that pending
+ * lookups never prevent the tool from shutting down.
+ * 
+ * @author Zabuza {@literal <zabuza.dev@gmail.com>}
+ *
+ */
+public final class LookupThreadFactory implements ThreadFactory {
+	/**
+	 * The default prefix of the names of created threads.
+	 */
+	private static final String THREAD_NAME_PRE = "BeedleBot-PriceLookup-";
+
+	/**
+	 * The number of the next thread to create.
+	 */
+	private final AtomicInteger mNextThreadNumber;
+	/**
+	 * The prefix of the names of created threads.
+	 */
+	private final String mThreadNamePrefix;
+
+	/**
+	 * Creates a new factory that creates daemon threads for looking up item
+	 * price data.
+	 */
+	public LookupThreadFactory() {
+		this(THREAD_NAME_PRE);
+	}
+
+	/**
+	 * Creates a new factory that creates daemon threads for looking up item
+	 * price data whose names start with the given prefix.
+	 * 
+	 * @param threadNamePrefix
+	 *            The prefix of the names of created threads
+	 */
+	public LookupThreadFactory(final String threadNamePrefix) {
+		this.mThreadNamePrefix = threadNamePrefix;
+		this.mNextThreadNumber = new AtomicInteger(1);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see java.util.concurrent.ThreadFactory#newThread(java.lang.Runnable)
+	 */
+	@Override
+	public Thread newThread(final Runnable runnable) {
+		final Thread thread = new Thread(runnable, this.mThreadNamePrefix + this.mNextThreadNumber.getAndIncrement());
+		thread.setDaemon(true);
+		return thread;
+	}
+}
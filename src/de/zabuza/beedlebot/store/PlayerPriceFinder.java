@@ -1,11 +1,22 @@
 package de.zabuza.beedlebot.store;
 
 import java.io.IOException;
-import java.io.InputStreamReader;
+import java.io.StringReader;
+import java.net.HttpURLConnection;
 import java.net.URL;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Map.Entry;
 import java.util.Optional;
+import java.util.Set;
 
+import com.google.gson.JsonElement;
 import com.google.gson.JsonObject;
+import com.google.gson.JsonParseException;
+import com.google.gson.JsonParser;
 import com.google.gson.JsonStreamParser;
 
 import de.zabuza.beedlebot.exceptions.PlayerPriceServiceAnswerWrongFormatException;
@@ -16,16 +27,30 @@ import de.zabuza.sparkle.freewar.EWorld;
 
 /**
  * Service which finds player prices for given items. Use
- * {@link #findPlayerPrice(String, EWorld)} to access the service.
+ * {@link #findPlayerPrice(String, EWorld)} or
+ * {@link #findPlayerPrices(Collection, EWorld)} to access the service.
  * 
  * @author Zabuza {@literal <zabuza.dev@gmail.com>}
  *
  */
 public final class PlayerPriceFinder {
+	/**
+	 * The separator between item name and world in keys of fetches.
+	 */
+	private static final String FETCH_KEY_WORLD_SEPARATOR = "@";
+	/**
+	 * The time in milliseconds the result of a completed fetch is shared with
+	 * back-to-back lookups of the same item.
+	 */
+	private static final long FETCH_RETENTION = 60_000;
 	/**
 	 * The query key for an item name value.
 	 */
 	private static final String QUERY_PARAMETER_ITEM = "item";
+	/**
+	 * The query key for one of several item name values of a batch request.
+	 */
+	private static final String QUERY_PARAMETER_ITEMS = "items[]";
 	/**
 	 * The query key for a world value.
 	 */
@@ -42,7 +67,87 @@ public final class PlayerPriceFinder {
 	 * The path to the file that offers the service on the server.
 	 */
 	private static final String SERVER_FILE = "itemPrice.php";
+	/**
+	 * The path to the file that offers the batch service on the server.
+	 */
+	private static final String SERVER_FILE_BATCH = "itemPrices.php";
+
+	/**
+	 * Gets the answer of the service to the given query. The connection is
+	 * established with the given client.
+	 * 
+	 * @param httpClient
+	 *            The client to use for sending the query
+	 * @param url
+	 *            The query to send
+	 * @return The answer of the service
+	 * @throws IOException
+	 *             If the service is unavailable or answered with an
+	 *             unexpected status code
+	 */
+	private static String fetchAnswer(final StoreHttpClient httpClient, final URL url) throws IOException {
+		final HttpResponse response = httpClient.get(url);
+		if (!response.isSuccessful()) {
+			throw new IOException("Unexpected answer of " + url + ": " + response);
+		}
+		return response.getBodyAsText();
+	}
+
+	/**
+	 * Whether the given answer to a batch request definitely indicates that
+	 * the server does not support batch requests. Other failures, like errors
+	 * of the server or throttling answers, are temporary and do not count.
+	 * 
+	 * @param response
+	 *            The answer to a batch request
+	 * @return <tt>True</tt> if the server does not support batch requests,
+	 *         <tt>false</tt> if not
+	 */
+	private static boolean isBatchUnsupported(final HttpResponse response) {
+		final int statusCode = response.getStatusCode();
+		return statusCode == HttpURLConnection.HTTP_BAD_REQUEST || statusCode == HttpURLConnection.HTTP_NOT_FOUND
+				|| statusCode == HttpURLConnection.HTTP_NOT_IMPLEMENTED;
+	}
+
+	/**
+	 * Parses the given answer of the service for a single item into player
+	 * price data.
+	 * 
+	 * @param element
+	 *            The answer of the service for a single item
+	 * @param world
+	 *            The world the answer belongs to
+	 * @return If present the player price data contained in the answer, if not
+	 *         present the service knows no player price for the item
+	 */
+	private static Optional<PlayerPrice> parsePlayerPrice(final JsonObject element, final EWorld world) {
+		// No price known
+		if (!element.has(RESULT_KEY_PRICE)) {
+			return Optional.empty();
+		}
+
+		final int price = element.get(RESULT_KEY_PRICE).getAsInt();
+		final long timestamp = StoreUtil.secondsToMillis(element.get(RESULT_KEY_TIMESTAMP).getAsLong());
 
+		return Optional.of(new PlayerPrice(price, timestamp, world));
+	}
+
+	/**
+	 * The client to use for sending requests.
+	 */
+	private final StoreHttpClient mHttpClient;
+	/**
+	 * Table of outstanding fetches of items, keyed by item name and world, see
+	 * {@link #buildFetchKey(String, EWorld)}.
+	 */
+	private final InFlightTable<Optional<PlayerPrice>> mInFlightFetches;
+	/**
+	 * Whether the server is assumed to support batch requests or not. Set to
+	 * <tt>false</tt> once the server answered a batch request with a status
+	 * code that indicates that the batch service does not exist, all further
+	 * requests are then sent for each item separately.
+	 */
+	private volatile boolean mIsBatchSupported;
 	/**
 	 * The dictionary to use for exceptional items.
 	 */
@@ -51,22 +156,53 @@ public final class PlayerPriceFinder {
 	 * The logger to use for logging
 	 */
 	private final ILogger mLogger;
+	/**
+	 * URL to the server that provides the player price service.
+	 */
+	private final String mServerUrl;
 
 	/**
 	 * Creates a new player price finder that is able to find player price data
-	 * to a given item. Use {@link #findPlayerPrice(String, EWorld)} to access
-	 * the service.
+	 * to a given item. Use {@link #findPlayerPrice(String, EWorld)} or
+	 * {@link #findPlayerPrices(Collection, EWorld)} to access the service.
 	 * 
 	 * @param itemDictionary
 	 *            The dictionary to use for exceptional items
+	 * @param httpClient
+	 *            The client to use for sending requests
 	 */
-	public PlayerPriceFinder(final ItemDictionary itemDictionary) {
+	public PlayerPriceFinder(final ItemDictionary itemDictionary, final StoreHttpClient httpClient) {
+		this(itemDictionary, httpClient, StoreUtil.SERVER_URL);
+	}
+
+	/**
+	 * Creates a new player price finder that is able to find player price data
+	 * to a given item by using the service of the given server. Use
+	 * {@link #findPlayerPrice(String, EWorld)} or
+	 * {@link #findPlayerPrices(Collection, EWorld)} to access the service.
+	 * 
+	 * @param itemDictionary
+	 *            The dictionary to use for exceptional items
+	 * @param httpClient
+	 *            The client to use for sending requests
+	 * @param serverUrl
+	 *            URL to the server that provides the player price service,
+	 *            like {@link StoreUtil#SERVER_URL}. It must end with a slash.
+	 */
+	public PlayerPriceFinder(final ItemDictionary itemDictionary, final StoreHttpClient httpClient,
+			final String serverUrl) {
 		this.mItemDictionary = itemDictionary;
+		this.mHttpClient = httpClient;
+		this.mServerUrl = serverUrl;
+		this.mIsBatchSupported = true;
+		this.mInFlightFetches = new InFlightTable<>(FETCH_RETENTION);
 		this.mLogger = LoggerFactory.getLogger();
 	}
 
 	/**
 	 * Tries to find player price data for the given item in the given world.
+	 * Lookups of the same item that run concurrently or back-to-back share one
+	 * fetch.
 	 * 
 	 * @param itemName
 	 *            The name of the item to find its player price
@@ -95,41 +231,333 @@ public final class PlayerPriceFinder {
 			return Optional.of(new PlayerPrice(price, timestampNow, world));
 		}
 
-		final int worldAsNumber = StoreUtil.worldToNumber(world);
+		// Share the fetch with other lookups of the same item
+		final String fetchKey = buildFetchKey(itemName, world);
+		final SharedFetch<Optional<PlayerPrice>> fetch = new SharedFetch<>();
+		final Optional<SharedFetch<Optional<PlayerPrice>>> sharedFetch = this.mInFlightFetches.register(fetchKey,
+				fetch);
+		if (sharedFetch.isPresent()) {
+			if (this.mLogger.isDebugEnabled()) {
+				this.mLogger.logDebug("Sharing player price fetch: " + itemName + ", " + world);
+			}
+			return sharedFetch.get().await();
+		}
+
+		try {
+			final Optional<PlayerPrice> playerPrice = fetchPlayerPrice(itemName, world);
+			this.mInFlightFetches.complete(fetch, playerPrice);
+			return playerPrice;
+		} catch (final RuntimeException | Error e) {
+			this.mInFlightFetches.fail(fetchKey, fetch, e);
+			throw e;
+		}
+	}
+
+	/**
+	 * Tries to find player price data for all given items in the given world.
+	 * All items are resolved with one request to the batch service of the
+	 * server. If the server does not support batch requests the method falls
+	 * back to {@link #findPlayerPrice(String, EWorld)} for each item and uses
+	 * this mode for all further requests. If the server answers a batch
+	 * request with an error or a throttling answer, the service counts as
+	 * unavailable and the next call tries the batch service again. An answer
+	 * that can not be parsed only falls back to single requests for this
+	 * call. Fetches are shared with concurrent or back-to-back lookups of the
+	 * same items, like {@link #findPlayerPrice(String, EWorld)} does, only
+	 * the other items are requested.
+	 * 
+	 * @param itemNames
+	 *            The names of the items to find their player prices
+	 * @param world
+	 *            The world of where to find the player price data for
+	 * @return Data-structure which maps item names to their player price data
+	 *         in the given world. Items without a known player price are not
+	 *         contained.
+	 * @throws PlayerPriceServiceAnswerWrongFormatException
+	 *             When the service used to fetch the player price data sends an
+	 *             answer that is in the wrong format such that it could not be
+	 *             parsed correctly
+	 * @throws PlayerPriceServiceUnavailableException
+	 *             When the service that is used to fetch player price data is
+	 *             unavailable such that a connection could not be established
+	 */
+	public Map<String, PlayerPrice> findPlayerPrices(final Collection<String> itemNames, final EWorld world)
+			throws PlayerPriceServiceAnswerWrongFormatException, PlayerPriceServiceUnavailableException {
+		if (this.mLogger.isDebugEnabled()) {
+			this.mLogger.logDebug("Finding player prices: " + itemNames + ", " + world);
+		}
+
+		final Map<String, PlayerPrice> nameToPlayerPrice = new HashMap<>();
+
+		// Process exceptional items
+		final Set<String> itemNamesToRequest = new LinkedHashSet<>();
+		for (final String itemName : itemNames) {
+			if (this.mItemDictionary.containsPlayerPrice(itemName)) {
+				final int price = this.mItemDictionary.getPlayerPrice(itemName).get().intValue();
+				final long timestampNow = System.currentTimeMillis();
+				nameToPlayerPrice.put(itemName, new PlayerPrice(price, timestampNow, world));
+			} else {
+				itemNamesToRequest.add(itemName);
+			}
+		}
+
+		if (itemNamesToRequest.isEmpty()) {
+			return nameToPlayerPrice;
+		}
+
+		// Share fetches with other lookups of the same items
+		final Map<String, SharedFetch<Optional<PlayerPrice>>> nameToFetch = new LinkedHashMap<>();
+		final Map<String, SharedFetch<Optional<PlayerPrice>>> nameToSharedFetch = new LinkedHashMap<>();
+		for (final String itemName : itemNamesToRequest) {
+			final SharedFetch<Optional<PlayerPrice>> fetch = new SharedFetch<>();
+			final Optional<SharedFetch<Optional<PlayerPrice>>> sharedFetch = this.mInFlightFetches
+					.register(buildFetchKey(itemName, world), fetch);
+			if (sharedFetch.isPresent()) {
+				nameToSharedFetch.put(itemName, sharedFetch.get());
+			} else {
+				nameToFetch.put(itemName, fetch);
+			}
+		}
+
+		final Map<String, Optional<PlayerPrice>> nameToFetchedPlayerPrice = new HashMap<>();
+		if (!nameToFetch.isEmpty()) {
+			try {
+				nameToFetchedPlayerPrice.putAll(fetchPlayerPrices(nameToFetch.keySet(), world));
+			} catch (final RuntimeException | Error e) {
+				for (final Entry<String, SharedFetch<Optional<PlayerPrice>>> entry : nameToFetch.entrySet()) {
+					this.mInFlightFetches.fail(buildFetchKey(entry.getKey(), world), entry.getValue(), e);
+				}
+				throw e;
+			}
+			for (final Entry<String, SharedFetch<Optional<PlayerPrice>>> entry : nameToFetch.entrySet()) {
+				this.mInFlightFetches.complete(entry.getValue(), nameToFetchedPlayerPrice.get(entry.getKey()));
+			}
+		}
+		for (final Entry<String, SharedFetch<Optional<PlayerPrice>>> entry : nameToSharedFetch.entrySet()) {
+			nameToFetchedPlayerPrice.put(entry.getKey(), entry.getValue().await());
+		}
+
+		for (final Entry<String, Optional<PlayerPrice>> entry : nameToFetchedPlayerPrice.entrySet()) {
+			if (entry.getValue().isPresent()) {
+				nameToPlayerPrice.put(entry.getKey(), entry.getValue().get());
+			}
+		}
+		return nameToPlayerPrice;
+	}
+
+	/**
+	 * Gets the amount of lookups that shared the outstanding fetch of another
+	 * lookup of the same item instead of sending their own request.
+	 * 
+	 * @return The amount of lookups that shared a fetch
+	 */
+	public long getSharedFetches() {
+		return this.mInFlightFetches.getSharedFetches();
+	}
+
+	/**
+	 * Whether the server is assumed to support batch requests as used by
+	 * {@link #findPlayerPrices(Collection, EWorld)} or not. This is the case
+	 * until the server answered a batch request with a status code that
+	 * indicates that the batch service does not exist.
+	 * 
+	 * @return <tt>True</tt> if the server is assumed to support batch requests,
+	 *         <tt>false</tt> if not
+	 */
+	public boolean isBatchSupported() {
+		return this.mIsBatchSupported;
+	}
+
+	/**
+	 * Builds the key of the fetch of the given item in the given world, as
+	 * used by the table of outstanding fetches.
+	 * 
+	 * @param itemName
+	 *            The name of the item
+	 * @param world
+	 *            The world of the player price data
+	 * @return The key of the fetch
+	 */
+	private String buildFetchKey(final String itemName, final EWorld world) {
+		return itemName + FETCH_KEY_WORLD_SEPARATOR + world;
+	}
+
+	/**
+	 * Builds the base of a query to the given file of the player price service
+	 * which already contains the given world parameter.
+	 * 
+	 * @param serverFile
+	 *            The path to the file that offers the service on the server
+	 * @param world
+	 *            The world to query
+	 * @return The base of the query, additional parameters need to be
+	 *         appended with {@link StoreUtil#QUERY_SEPARATOR}
+	 */
+	private StringBuilder buildQueryBase(final String serverFile, final EWorld world) {
+		final StringBuilder queryBuilder = new StringBuilder();
+		queryBuilder.append(this.mServerUrl);
+		queryBuilder.append(StoreUtil.PLAYER_PRICE_SERVICE);
+		queryBuilder.append(serverFile);
+		queryBuilder.append(StoreUtil.QUERY_BEGIN);
+		queryBuilder.append(QUERY_PARAMETER_WORLD);
+		queryBuilder.append(StoreUtil.QUERY_ALLOCATION);
+		queryBuilder.append(StoreUtil.worldToNumber(world));
+		return queryBuilder;
+	}
+
+	/**
+	 * Fetches the player price data for the given item in the given world
+	 * from the service.
+	 * 
+	 * @param itemName
+	 *            The name of the item to fetch its player price
+	 * @param world
+	 *            The world of where to fetch the player price data for
+	 * @return If present the player price data for the given item in the given
+	 *         world, if not present there is no
+	 * @throws PlayerPriceServiceAnswerWrongFormatException
+	 *             When the service used to fetch the player price data sends an
+	 *             answer that is in the wrong format such that it could not be
+	 *             parsed correctly
+	 * @throws PlayerPriceServiceUnavailableException
+	 *             When the service that is used to fetch player price data is
+	 *             unavailable such that a connection could not be established
+	 */
+	private Optional<PlayerPrice> fetchPlayerPrice(final String itemName, final EWorld world)
+			throws PlayerPriceServiceAnswerWrongFormatException, PlayerPriceServiceUnavailableException {
 		final String encodedItemName = StoreUtil.encodeUtf8(itemName);
 		try {
-			final StringBuilder queryBuilder = new StringBuilder();
-			queryBuilder.append(StoreUtil.SERVER_URL);
-			queryBuilder.append(StoreUtil.PLAYER_PRICE_SERVICE);
-			queryBuilder.append(SERVER_FILE);
-			queryBuilder.append(StoreUtil.QUERY_BEGIN);
-			queryBuilder.append(QUERY_PARAMETER_WORLD);
-			queryBuilder.append(StoreUtil.QUERY_ALLOCATION);
-			queryBuilder.append(worldAsNumber);
+			final StringBuilder queryBuilder = buildQueryBase(SERVER_FILE, world);
 			queryBuilder.append(StoreUtil.QUERY_SEPARATOR);
 			queryBuilder.append(QUERY_PARAMETER_ITEM);
 			queryBuilder.append(StoreUtil.QUERY_ALLOCATION);
 			queryBuilder.append(encodedItemName);
 
 			final URL url = new URL(queryBuilder.toString());
-			final JsonStreamParser parser = new JsonStreamParser(new InputStreamReader(url.openStream()));
+			final JsonStreamParser parser = new JsonStreamParser(new StringReader(fetchAnswer(this.mHttpClient, url)));
 
 			if (!parser.hasNext()) {
 				throw new PlayerPriceServiceAnswerWrongFormatException(itemName, world);
 			}
 
-			final JsonObject element = parser.next().getAsJsonObject();
+			return parsePlayerPrice(parser.next().getAsJsonObject(), world);
+		} catch (final IOException e) {
+			throw new PlayerPriceServiceUnavailableException(e);
+		}
+	}
+
+	/**
+	 * Fetches the player price data for all given items in the given world
+	 * from the service. Uses the batch service while the server supports it,
+	 * else or if its answer can not be parsed the items are fetched one by
+	 * one.
+	 * 
+	 * @param itemNames
+	 *            The names of the items to fetch their player prices
+	 * @param world
+	 *            The world of where to fetch the player price data for
+	 * @return Data-structure which maps all given item names to their player
+	 *         price data in the given world, if not present there is no
+	 * @throws PlayerPriceServiceAnswerWrongFormatException
+	 *             When the service used to fetch the player price data sends an
+	 *             answer that is in the wrong format such that it could not be
+	 *             parsed correctly
+	 * @throws PlayerPriceServiceUnavailableException
+	 *             When the service that is used to fetch player price data is
+	 *             unavailable such that a connection could not be established
+	 */
+	private Map<String, Optional<PlayerPrice>> fetchPlayerPrices(final Collection<String> itemNames,
+			final EWorld world)
+			throws PlayerPriceServiceAnswerWrongFormatException, PlayerPriceServiceUnavailableException {
+		final Map<String, Optional<PlayerPrice>> nameToPlayerPrice = new HashMap<>();
+
+		// Try to use the batch service
+		if (this.mIsBatchSupported) {
+			final Optional<Map<String, PlayerPrice>> batchResult = requestPlayerPrices(itemNames, world);
+			if (batchResult.isPresent()) {
+				for (final String itemName : itemNames) {
+					nameToPlayerPrice.put(itemName, Optional.ofNullable(batchResult.get().get(itemName)));
+				}
+				return nameToPlayerPrice;
+			}
+		}
 
-			// No price known
-			if (!element.has(RESULT_KEY_PRICE)) {
+		// Fall back to single requests
+		for (final String itemName : itemNames) {
+			nameToPlayerPrice.put(itemName, fetchPlayerPrice(itemName, world));
+		}
+		return nameToPlayerPrice;
+	}
+
+	/**
+	 * Requests player price data for all given items with one request to the
+	 * batch service of the server. The service answers with an object that
+	 * maps item names to the same objects the single item service answers
+	 * with. If the answer indicates that the server does not support batch
+	 * requests, they are disabled for all further requests.
+	 * 
+	 * @param itemNames
+	 *            The names of the items to request their player prices
+	 * @param world
+	 *            The world of where to find the player price data for
+	 * @return If present data-structure which maps item names to their player
+	 *         price data, items without a known player price are not
+	 *         contained. If not present the batch answer can not be used
+	 *         and the items need to be requested one by one.
+	 * @throws PlayerPriceServiceUnavailableException
+	 *             When the service that is used to fetch player price data is
+	 *             unavailable such that a connection could not be established
+	 *             or when it answered with an error or a throttling answer
+	 */
+	private Optional<Map<String, PlayerPrice>> requestPlayerPrices(final Collection<String> itemNames,
+			final EWorld world) throws PlayerPriceServiceUnavailableException {
+		try {
+			final StringBuilder queryBuilder = buildQueryBase(SERVER_FILE_BATCH, world);
+			final String itemParameter = StoreUtil.encodeUtf8(QUERY_PARAMETER_ITEMS);
+			for (final String itemName : itemNames) {
+				queryBuilder.append(StoreUtil.QUERY_SEPARATOR);
+				queryBuilder.append(itemParameter);
+				queryBuilder.append(StoreUtil.QUERY_ALLOCATION);
+				queryBuilder.append(StoreUtil.encodeUtf8(itemName));
+			}
+
+			final URL url = new URL(queryBuilder.toString());
+			final HttpResponse response = this.mHttpClient.get(url);
+			if (isBatchUnsupported(response)) {
+				this.mLogger.logInfo("Player price batch service unsupported, falling back to single requests: "
+						+ response);
+				this.mIsBatchSupported = false;
 				return Optional.empty();
 			}
+			if (!response.isSuccessful()) {
+				// Errors of the server and throttling are temporary, the batch
+				// service is used again by the next call
+				throw new IOException("Unexpected answer of " + url + ": " + response);
+			}
 
-			final int price = element.get(RESULT_KEY_PRICE).getAsInt();
-			final long timestamp = StoreUtil.secondsToMillis(element.get(RESULT_KEY_TIMESTAMP).getAsLong());
+			JsonElement answer;
+			try {
+				answer = new JsonParser().parse(response.getBodyAsText());
+			} catch (final JsonParseException e) {
+				answer = null;
+			}
+			if (answer == null || !answer.isJsonObject()) {
+				this.mLogger.logError(
+						"Unparsable answer of player price batch service, using single requests: " + response);
+				return Optional.empty();
+			}
 
-			final PlayerPrice playerPrice = new PlayerPrice(price, timestamp, world);
-			return Optional.of(playerPrice);
+			final Map<String, PlayerPrice> nameToPlayerPrice = new HashMap<>();
+			for (final Entry<String, JsonElement> entry : answer.getAsJsonObject().entrySet()) {
+				if (!entry.getValue().isJsonObject()) {
+					continue;
+				}
+				final Optional<PlayerPrice> playerPrice = parsePlayerPrice(entry.getValue().getAsJsonObject(), world);
+				if (playerPrice.isPresent()) {
+					nameToPlayerPrice.put(entry.getKey(), playerPrice.get());
+				}
+			}
+			return Optional.of(nameToPlayerPrice);
 		} catch (final IOException e) {
 			throw new PlayerPriceServiceUnavailableException(e);
 		}
@@ -0,0 +1,88 @@
+package de.zabuza.beedlebot.store;
+
+/**
+ * Volatility of the player price of an item, i.e. how much its player price
+ * changed on average between two lookups, as tracked by a
+ * {@link PlayerPriceVolatilityTracker}. Instances are immutable, use
+ * {@link #update(double, double)} to add an observation.
+ * 
+ * @author Zabuza {@literal <zabuza.dev@gmail.com>}
+ *
+ */
+public final class PlayerPriceVolatility {
+	/**
+	 * The smoothed drift of the player price, i.e. its absolute change per
+	 * day.
+	 */
+	private final double mDriftPerDay;
+	/**
+	 * The amount of observed changes between two lookups.
+	 */
+	private final int mObservations;
+
+	/**
+	 * Creates a new volatility of a player price.
+	 * 
+	 * @param driftPerDay
+	 *            The smoothed drift of the player price, i.e. its absolute
+	 *            change per day
+	 * @param observations
+	 *            The amount of observed changes between two lookups
+	 */
+	public PlayerPriceVolatility(final double driftPerDay, final int observations) {
+		this.mDriftPerDay = driftPerDay;
+		this.mObservations = observations;
+	}
+
+	/**
+	 * Gets the smoothed drift of the player price, i.e. its absolute change
+	 * per day.
+	 * 
+	 * @return The smoothed drift of the player price per day
+	 */
+	public double getDriftPerDay() {
+		return this.mDriftPerDay;
+	}
+
+	/**
+	 * Gets the amount of observed changes between two lookups.
+	 * 
+	 * @return The amount of observed changes
+	 */
+	public int getObservations() {
+		return this.mObservations;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see java.lang.Object#toString()
+	 */
+	@Override
+	public String toString() {
+		final StringBuilder builder = new StringBuilder();
+		builder.append("PlayerPriceVolatility [driftPerDay=");
+		builder.append(this.mDriftPerDay);
+		builder.append(", observations=");
+		builder.append(this.mObservations);
+		builder.append("]");
+		return builder.toString();
+	}
+
+	/**
+	 * Creates the volatility that results from adding the given observed
+	 * drift to this volatility.
+	 * 
+	 * @param driftPerDay
+	 *            The observed drift of the player price between two lookups,
+	 *            i.e. its absolute change per day
+	 * @param smoothingWeight
+	 *            The weight of the observed drift in the smoothed drift,
+	 *            between <tt>0</tt> and <tt>1</tt>
+	 * @return The updated volatility
+	 */
+	public PlayerPriceVolatility update(final double driftPerDay, final double smoothingWeight) {
+		return new PlayerPriceVolatility(this.mDriftPerDay + smoothingWeight * (driftPerDay - this.mDriftPerDay),
+				this.mObservations + 1);
+	}
+}
@@ -0,0 +1,354 @@
+package de.zabuza.beedlebot.store;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedOutputStream;
+
+import de.zabuza.beedlebot.exceptions.StorePersistenceUnsuccessfulException;
+import de.zabuza.beedlebot.logging.ILogger;
+import de.zabuza.beedlebot.logging.LoggerFactory;
+import de.zabuza.beedlebot.logging.LoggerUtil;
+import de.zabuza.sparkle.freewar.EWorld;
+
+/**
+ * Tracks how much the player prices of the items of a world change between
+ * two lookups and derives the validity of the player price tier of each item
+ * from it. The validity is chosen such that the player price is expected to
+ * drift by {@link #TOLERATED_DRIFT} until it is looked up again. Since the
+ * drift is measured in absolute gold, volatile and valuable items, whose
+ * changes affect the profit of purchases the most, are looked up more often
+ * than stable cheap items. Items with too few observations get the default
+ * validity. The tracker is persisted in its own file per world, along with
+ * the snapshots of the {@link StoreCache}. The class is thread-safe.
+ * 
+ * @author Zabuza {@literal <zabuza.dev@gmail.com>}
+ *
+ */
+public final class PlayerPriceVolatilityTracker {
+	/**
+	 * The drift of a player price in gold that is tolerated until it is looked
+	 * up again.
+	 */
+	public static final int TOLERATED_DRIFT = 100;
+	/**
+	 * The amount of bytes the checksum at the end of the file occupies.
+	 */
+	private static final int CHECKSUM_BYTES = Long.BYTES;
+	/**
+	 * The amount of days a player price lookup is valid for items with too few
+	 * observations.
+	 */
+	private static final int DEFAULT_LOOKUP_VALIDITY_DAYS = 10;
+	/**
+	 * The prefix of the path to the file of the tracker.
+	 */
+	private static final String FILEPATH_PRE = "playerPriceVolatility_";
+	/**
+	 * The suffix of the path to the file of the tracker.
+	 */
+	private static final String FILEPATH_SUFF = ".bin";
+	/**
+	 * The suffix of the path to the file of the tracker while it is written.
+	 */
+	private static final String FILEPATH_TEMPORARY_SUFF = ".tmp";
+	/**
+	 * The current version of the file format.
+	 */
+	private static final short FORMAT_VERSION = 1;
+	/**
+	 * The magic number the file starts with, <tt>BBPV</tt> in ASCII.
+	 */
+	private static final int MAGIC_NUMBER = 0x42425056;
+	/**
+	 * The maximal amount of days a player price lookup is valid.
+	 */
+	private static final int MAX_LOOKUP_VALIDITY_DAYS = 30;
+	/**
+	 * The minimal amount of days a player price lookup is valid.
+	 */
+	private static final int MIN_LOOKUP_VALIDITY_DAYS = 1;
+	/**
+	 * The minimal time in milliseconds between two lookups a drift is computed
+	 * for, such that lookups in quick succession do not yield an exaggerated
+	 * drift.
+	 */
+	private static final long MIN_OBSERVATION_INTERVAL = TimeUnit.HOURS.toMillis(1);
+	/**
+	 * The amount of observations needed before the validity of an item is
+	 * derived from its drift.
+	 */
+	private static final int MIN_OBSERVATIONS = 2;
+	/**
+	 * The factor by which a player price itself, measured from the timestamp
+	 * of the player price, stays valid longer than its lookup.
+	 */
+	private static final int PLAYER_PRICE_VALIDITY_FACTOR = 3;
+	/**
+	 * The weight of a new observation in the smoothed drift.
+	 */
+	private static final double SMOOTHING_WEIGHT = 0.3;
+	/**
+	 * Data-structure that maps worlds to their tracker.
+	 */
+	private static final ConcurrentMap<EWorld, PlayerPriceVolatilityTracker> WORLD_TO_TRACKER =
+			new ConcurrentHashMap<>();
+
+	/**
+	 * Gets the reference to the tracker of the given world. The tracker is
+	 * loaded from its file on first access.
+	 * 
+	 * @param world
+	 *            The world of the tracker
+	 * @return The reference to the tracker of the world
+	 */
+	public static synchronized PlayerPriceVolatilityTracker getInstance(final EWorld world) {
+		PlayerPriceVolatilityTracker tracker = WORLD_TO_TRACKER.get(world);
+		if (tracker == null) {
+			tracker = new PlayerPriceVolatilityTracker(world);
+			tracker.load();
+			WORLD_TO_TRACKER.put(world, tracker);
+		}
+
+		return tracker;
+	}
+
+	/**
+	 * The path to the file of the tracker.
+	 */
+	private final Path mFile;
+	/**
+	 * Whether the tracker contains observations that were not persisted yet
+	 * or not.
+	 */
+	private boolean mIsDirty;
+	/**
+	 * The logger to use for logging.
+	 */
+	private final ILogger mLogger;
+	/**
+	 * Data-structure that maps item names to the volatility of their player
+	 * price.
+	 */
+	private final Map<String, PlayerPriceVolatility> mNameToVolatility;
+	/**
+	 * Lock that is held while the tracker is persisted, such that only one
+	 * thread writes the file at a time.
+	 */
+	private final Object mPersistLock;
+
+	/**
+	 * Creates a new empty tracker for the given world. Use
+	 * {@link #getInstance(EWorld)} to get the tracker of a world.
+	 * 
+	 * @param world
+	 *            The world of the tracker
+	 */
+	private PlayerPriceVolatilityTracker(final EWorld world) {
+		this.mFile = Paths.get(FILEPATH_PRE + world + FILEPATH_SUFF);
+		this.mNameToVolatility = new HashMap<>();
+		this.mLogger = LoggerFactory.getLogger();
+		this.mIsDirty = false;
+		this.mPersistLock = new Object();
+	}
+
+	/**
+	 * Gets the time in milliseconds a player price lookup of the item with
+	 * the given name is valid, derived from the volatility of its player
+	 * price.
+	 * 
+	 * @param itemName
+	 *            The name of the item
+	 * @return The time in milliseconds a player price lookup of the item is
+	 *         valid
+	 */
+	public synchronized long getPlayerPriceLookupValidity(final String itemName) {
+		final PlayerPriceVolatility volatility = this.mNameToVolatility.get(itemName);
+		if (volatility == null || volatility.getObservations() < MIN_OBSERVATIONS) {
+			return TimeUnit.DAYS.toMillis(DEFAULT_LOOKUP_VALIDITY_DAYS);
+		}
+
+		double validityDays = MAX_LOOKUP_VALIDITY_DAYS;
+		if (volatility.getDriftPerDay() > 0) {
+			validityDays = Math.min(validityDays, TOLERATED_DRIFT / volatility.getDriftPerDay());
+		}
+		validityDays = Math.max(validityDays, MIN_LOOKUP_VALIDITY_DAYS);
+		return (long) (validityDays * TimeUnit.DAYS.toMillis(1));
+	}
+
+	/**
+	 * Gets the time in milliseconds the player price of the item with the
+	 * given name is valid, measured from the timestamp of the player price
+	 * itself instead of its lookup. Scales with the validity of a lookup.
+	 * 
+	 * @param itemName
+	 *            The name of the item
+	 * @return The time in milliseconds the player price of the item is valid
+	 */
+	public long getPlayerPriceValidity(final String itemName) {
+		return PLAYER_PRICE_VALIDITY_FACTOR * getPlayerPriceLookupValidity(itemName);
+	}
+
+	/**
+	 * Persists the tracker if it contains observations that were not
+	 * persisted yet. The file is replaced atomically.
+	 * 
+	 * @throws StorePersistenceUnsuccessfulException
+	 *             If persisting the tracker was unsuccessful
+	 */
+	public void persist() throws StorePersistenceUnsuccessfulException {
+		synchronized (this.mPersistLock) {
+			final Map<String, PlayerPriceVolatility> nameToVolatility;
+			synchronized (this) {
+				if (!this.mIsDirty) {
+					return;
+				}
+				this.mIsDirty = false;
+				nameToVolatility = new HashMap<>(this.mNameToVolatility);
+			}
+
+			try {
+				writeFile(nameToVolatility);
+			} catch (final IOException e) {
+				synchronized (this) {
+					this.mIsDirty = true;
+				}
+				throw new StorePersistenceUnsuccessfulException(e);
+			}
+		}
+	}
+
+	/**
+	 * Records the change of the player price of the item with the given name
+	 * between two lookups.
+	 * 
+	 * @param itemName
+	 *            The name of the item
+	 * @param previousPrice
+	 *            The player price of the previous lookup
+	 * @param previousLookupTimestamp
+	 *            The timestamp of the previous lookup
+	 * @param price
+	 *            The player price of the current lookup
+	 * @param lookupTimestamp
+	 *            The timestamp of the current lookup
+	 */
+	public synchronized void recordLookup(final String itemName, final int previousPrice,
+			final long previousLookupTimestamp, final int price, final long lookupTimestamp) {
+		final long interval = Math.max(lookupTimestamp - previousLookupTimestamp, MIN_OBSERVATION_INTERVAL);
+		final double driftPerDay = Math.abs(price - previousPrice) * (double) TimeUnit.DAYS.toMillis(1) / interval;
+
+		final PlayerPriceVolatility volatility = this.mNameToVolatility.get(itemName);
+		if (volatility == null) {
+			this.mNameToVolatility.put(itemName, new PlayerPriceVolatility(driftPerDay, 1));
+		} else {
+			this.mNameToVolatility.put(itemName, volatility.update(driftPerDay, SMOOTHING_WEIGHT));
+		}
+		this.mIsDirty = true;
+	}
+
+	/**
+	 * Gets the amount of items whose volatility is tracked.
+	 * 
+	 * @return The amount of tracked items
+	 */
+	public synchronized int size() {
+		return this.mNameToVolatility.size();
+	}
+
+	/**
+	 * Loads the content of the file of the tracker, if it exists. An
+	 * unreadable file is logged and ignored, it gets replaced when the
+	 * tracker is persisted.
+	 */
+	private void load() {
+		if (!Files.exists(this.mFile)) {
+			return;
+		}
+		try {
+			final byte[] content = Files.readAllBytes(this.mFile);
+			if (content.length < CHECKSUM_BYTES) {
+				throw new IOException("Player price volatility file is truncated: " + this.mFile);
+			}
+			final int contentLength = content.length - CHECKSUM_BYTES;
+			final CRC32 checksum = new CRC32();
+			checksum.update(content, 0, contentLength);
+			if (checksum.getValue() != ByteBuffer.wrap(content, contentLength, CHECKSUM_BYTES).getLong()) {
+				throw new IOException("Player price volatility file is corrupted: " + this.mFile);
+			}
+
+			final DataInputStream input = new DataInputStream(new ByteArrayInputStream(content, 0, contentLength));
+			if (input.readInt() != MAGIC_NUMBER) {
+				throw new IOException("File is no player price volatility file: " + this.mFile);
+			}
+			final short version = input.readShort();
+			if (version != FORMAT_VERSION) {
+				throw new IOException("Unsupported player price volatility file version " + version + ": "
+						+ this.mFile);
+			}
+
+			final int size = input.readInt();
+			final Map<String, PlayerPriceVolatility> nameToVolatility = new HashMap<>(size);
+			for (int i = 0; i < size; i++) {
+				final String itemName = input.readUTF();
+				final double driftPerDay = input.readDouble();
+				nameToVolatility.put(itemName, new PlayerPriceVolatility(driftPerDay, input.readInt()));
+			}
+			synchronized (this) {
+				this.mNameToVolatility.putAll(nameToVolatility);
+			}
+			this.mLogger.logInfo("Loaded player price volatilities: " + nameToVolatility.size());
+		} catch (final IOException e) {
+			this.mLogger.logError("Error while loading player price volatilities: " + LoggerUtil.getStackTrace(e));
+		}
+	}
+
+	/**
+	 * Writes the given volatilities to the file of the tracker, replacing it
+	 * atomically.
+	 * 
+	 * @param nameToVolatility
+	 *            Data-structure that maps item names to the volatility of
+	 *            their player price
+	 * @throws IOException
+	 *             If an I/O-Exception occurred while writing the file
+	 */
+	private void writeFile(final Map<String, PlayerPriceVolatility> nameToVolatility) throws IOException {
+		final Path temporaryPath = Paths.get(this.mFile.toString() + FILEPATH_TEMPORARY_SUFF);
+		final CRC32 checksum = new CRC32();
+		try (final DataOutputStream output = new DataOutputStream(new CheckedOutputStream(
+				new BufferedOutputStream(new FileOutputStream(temporaryPath.toFile())), checksum))) {
+			output.writeInt(MAGIC_NUMBER);
+			output.writeShort(FORMAT_VERSION);
+			output.writeInt(nameToVolatility.size());
+			for (final Entry<String, PlayerPriceVolatility> entry : nameToVolatility.entrySet()) {
+				output.writeUTF(entry.getKey());
+				output.writeDouble(entry.getValue().getDriftPerDay());
+				output.writeInt(entry.getValue().getObservations());
+			}
+			output.writeLong(checksum.getValue());
+		}
+
+		try {
+			Files.move(temporaryPath, this.mFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		} catch (final AtomicMoveNotSupportedException e) {
+			Files.move(temporaryPath, this.mFile, StandardCopyOption.REPLACE_EXISTING);
+		}
+	}
+}
@@ -0,0 +1,57 @@
+package de.zabuza.beedlebot.store;
+
+import java.util.Collection;
+import java.util.Map;
+import java.util.concurrent.Callable;
+
+import de.zabuza.sparkle.freewar.EWorld;
+
+/**
+ * Task that looks up the player prices of several items at once by using
+ * {@link PlayerPriceFinder#findPlayerPrices(Collection, EWorld)}. Items that
+ * are fetched by a concurrent lookup already share its fetch.
+ * 
+ * @author Zabuza {@literal <zabuza.dev@gmail.com>}
+ *
+ */
+public final class PlayerPricesLookup implements Callable<Map<String, PlayerPrice>> {
+	/**
+	 * The names of the items to lookup their player prices.
+	 */
+	private final Collection<String> mItemNames;
+	/**
+	 * The service to use for finding the player prices.
+	 */
+	private final PlayerPriceFinder mPlayerPriceFinder;
+	/**
+	 * The world to lookup the player prices for.
+	 */
+	private final EWorld mWorld;
+
+	/**
+	 * Creates a new task that looks up the player prices of the given items.
+	 * 
+	 * @param playerPriceFinder
+	 *            The service to use for finding the player prices
+	 * @param itemNames
+	 *            The names of the items to lookup their player prices
+	 * @param world
+	 *            The world to lookup the player prices for
+	 */
+	public PlayerPricesLookup(final PlayerPriceFinder playerPriceFinder, final Collection<String> itemNames,
+			final EWorld world) {
+		this.mPlayerPriceFinder = playerPriceFinder;
+		this.mItemNames = itemNames;
+		this.mWorld = world;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see java.util.concurrent.Callable#call()
+	 */
+	@Override
+	public Map<String, PlayerPrice> call() {
+		return this.mPlayerPriceFinder.findPlayerPrices(this.mItemNames, this.mWorld);
+	}
+}
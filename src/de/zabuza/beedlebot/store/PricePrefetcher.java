@@ -0,0 +1,310 @@
+package de.zabuza.beedlebot.store;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+
+import de.zabuza.beedlebot.logging.ILogger;
+import de.zabuza.beedlebot.logging.LoggerFactory;
+import de.zabuza.beedlebot.logging.LoggerUtil;
+
+/**
+ * Thread that uses idle time of the bot to refresh cached item price data of a
+ * {@link Store} that is close to expiry. Items that were seen most often at the
+ * central traders depot, as recorded by the {@link SightingsTable}, are
+ * refreshed first. The prefetcher only sends requests while it is active, see
+ * {@link #setActive(boolean)}, and never more than its request budget allows,
+ * see {@link #setRequestsPerMinute(int)}. Call {@link #start()} to start the
+ * thread and {@link #stopPrefetcher()} to stop it.
+ * 
+ * @author Zabuza {@literal <zabuza.dev@gmail.com>}
+ *
+ */
+public final class PricePrefetcher extends Thread {
+	/**
+	 * The length of the window the request budget refers to in milliseconds.
+	 */
+	private static final long BUDGET_WINDOW = 60_000;
+	/**
+	 * The default amount of requests the prefetcher may send per minute.
+	 */
+	private static final int DEFAULT_REQUESTS_PER_MINUTE = 20;
+	/**
+	 * The margin in milliseconds by which cached data is refreshed before it
+	 * actually expires.
+	 */
+	private static final long EXPIRY_MARGIN = TimeUnit.DAYS.toMillis(2);
+	/**
+	 * The time to wait in milliseconds before searching again when there is
+	 * no item that needs to be prefetched.
+	 */
+	private static final long IDLE_INTERVAL = 30_000;
+	/**
+	 * The name of the thread.
+	 */
+	private static final String NAME = "BeedleBot-PricePrefetcher";
+	/**
+	 * The time in milliseconds an item is not prefetched again after an
+	 * attempt, such that items whose refresh fails do not use up the budget.
+	 */
+	private static final long RETRY_INTERVAL = 600_000;
+
+	/**
+	 * Internal flag whether the prefetcher should run or not. If set to
+	 * <tt>false</tt> the prefetcher will not enter the next iteration of its
+	 * life cycle and stop.
+	 */
+	private volatile boolean mDoRun;
+	/**
+	 * Whether the prefetcher is active, i.e. allowed to send requests, or not.
+	 */
+	private volatile boolean mIsActive;
+	/**
+	 * Data-structure that maps item names to the timestamp of the last
+	 * attempt to prefetch them. Only accessed by the prefetcher thread.
+	 */
+	private final Map<String, Long> mItemNameToLastAttempt;
+	/**
+	 * Lock to wait on while the prefetcher is inactive or idle, notified when
+	 * the state of the prefetcher changes.
+	 */
+	private final Object mLock;
+	/**
+	 * The logger to use for logging.
+	 */
+	private final ILogger mLogger;
+	/**
+	 * The amount of requests the prefetcher may send per minute.
+	 */
+	private volatile int mRequestsPerMinute;
+	/**
+	 * The table of the items seen at the depot, which ranks the items to
+	 * prefetch.
+	 */
+	private final SightingsTable mSightingsTable;
+	/**
+	 * The store whose cache to prefetch.
+	 */
+	private final Store mStore;
+	/**
+	 * The amount of requests sent in the current budget window.
+	 */
+	private int mWindowRequests;
+	/**
+	 * The timestamp of when the current budget window started.
+	 */
+	private long mWindowStart;
+
+	/**
+	 * Creates a new inactive prefetcher for the given store. Call
+	 * {@link #start()} to start the thread and {@link #stopPrefetcher()} to
+	 * stop it.
+	 * 
+	 * @param store
+	 *            The store whose cache to prefetch
+	 * @param sightingsTable
+	 *            The table of the items seen at the depot
+	 */
+	public PricePrefetcher(final Store store, final SightingsTable sightingsTable) {
+		super(NAME);
+		setDaemon(true);
+		this.mStore = store;
+		this.mSightingsTable = sightingsTable;
+		this.mLogger = LoggerFactory.getLogger();
+		this.mLock = new Object();
+		this.mItemNameToLastAttempt = new HashMap<>();
+		this.mRequestsPerMinute = DEFAULT_REQUESTS_PER_MINUTE;
+		this.mIsActive = false;
+		this.mDoRun = true;
+		this.mWindowStart = 0;
+		this.mWindowRequests = 0;
+	}
+
+	/**
+	 * Gets the amount of requests the prefetcher may send per minute.
+	 * 
+	 * @return The amount of requests the prefetcher may send per minute
+	 */
+	public int getRequestsPerMinute() {
+		return this.mRequestsPerMinute;
+	}
+
+	/**
+	 * Whether the prefetcher is active, i.e. allowed to send requests, or not.
+	 * 
+	 * @return <tt>True</tt> if the prefetcher is active, <tt>false</tt> if not
+	 */
+	public boolean isActive() {
+		return this.mIsActive;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see java.lang.Thread#run()
+	 */
+	@Override
+	public void run() {
+		while (this.mDoRun) {
+			try {
+				if (!this.mIsActive) {
+					waitWhileInactive();
+					continue;
+				}
+
+				// Renew the budget if the window elapsed
+				final long now = System.currentTimeMillis();
+				if (now - this.mWindowStart >= BUDGET_WINDOW) {
+					this.mWindowStart = now;
+					this.mWindowRequests = 0;
+				}
+				final int requestsPerMinute = this.mRequestsPerMinute;
+				final int remainingRequests = requestsPerMinute - this.mWindowRequests;
+				if (remainingRequests <= 0) {
+					waitWhileActive(this.mWindowStart + BUDGET_WINDOW - now);
+					continue;
+				}
+
+				final long validityTimestamp = now + EXPIRY_MARGIN;
+				final Optional<String> itemName = selectNextItem(now, validityTimestamp, remainingRequests);
+				if (!itemName.isPresent()) {
+					waitWhileActive(IDLE_INTERVAL);
+					continue;
+				}
+
+				// The routine may have left the idle phase in the meantime
+				if (!this.mIsActive) {
+					continue;
+				}
+				this.mItemNameToLastAttempt.put(itemName.get(), Long.valueOf(now));
+				this.mWindowRequests += this.mStore.getTiersToPrefetch(itemName.get(), validityTimestamp);
+				if (this.mLogger.isDebugEnabled()) {
+					this.mLogger.logDebug("Prefetching item price: " + itemName.get());
+				}
+				this.mStore.prefetchItemPrice(itemName.get(), validityTimestamp);
+
+				// Spread the requests over the budget window
+				waitWhileActive(BUDGET_WINDOW / requestsPerMinute);
+			} catch (final InterruptedException e) {
+				this.mDoRun = false;
+			} catch (final Exception e) {
+				// Log the error but continue
+				this.mLogger.logError("Error while prefetching item prices: " + LoggerUtil.getStackTrace(e));
+			}
+		}
+	}
+
+	/**
+	 * Sets whether the prefetcher is active, i.e. allowed to send requests, or
+	 * not. An inactive prefetcher does not send further requests until it is
+	 * activated again.
+	 * 
+	 * @param isActive
+	 *            <tt>True</tt> if the prefetcher should be active,
+	 *            <tt>false</tt> if not
+	 */
+	public void setActive(final boolean isActive) {
+		if (this.mIsActive == isActive) {
+			return;
+		}
+		synchronized (this.mLock) {
+			this.mIsActive = isActive;
+			this.mLock.notifyAll();
+		}
+	}
+
+	/**
+	 * Sets the amount of requests the prefetcher may send per minute. A
+	 * prefetch of an item costs one request for each of its price tiers that
+	 * needs to be looked up.
+	 * 
+	 * @param requestsPerMinute
+	 *            The amount of requests the prefetcher may send per minute,
+	 *            must be positive
+	 * @throws IllegalArgumentException
+	 *             If the given amount is not positive
+	 */
+	public void setRequestsPerMinute(final int requestsPerMinute) throws IllegalArgumentException {
+		if (requestsPerMinute <= 0) {
+			throw new IllegalArgumentException("The request budget must be positive: " + requestsPerMinute);
+		}
+		this.mRequestsPerMinute = requestsPerMinute;
+	}
+
+	/**
+	 * Requests the prefetcher to stop. It will end its life cycle after the
+	 * currently running prefetch.
+	 */
+	public void stopPrefetcher() {
+		synchronized (this.mLock) {
+			this.mDoRun = false;
+			this.mIsActive = false;
+			this.mLock.notifyAll();
+		}
+	}
+
+	/**
+	 * Selects the next item to prefetch, which is the most often seen item, see
+	 * {@link SightingsTable#getMostSeenItemNames(int)}, whose cached price data
+	 * is not valid anymore at the given timestamp, that was not attempted
+	 * recently and whose prefetch fits into the remaining budget.
+	 * 
+	 * @param now
+	 *            The current timestamp
+	 * @param validityTimestamp
+	 *            The timestamp at which the price data should still be valid
+	 * @param remainingRequests
+	 *            The amount of requests remaining in the current budget window
+	 * @return If present the name of the next item to prefetch
+	 */
+	private Optional<String> selectNextItem(final long now, final long validityTimestamp,
+			final int remainingRequests) {
+		// The table ranks a snapshot, analyzes record sightings concurrently
+		for (final String itemName : this.mSightingsTable.getMostSeenItemNames(Integer.MAX_VALUE)) {
+			final Long lastAttempt = this.mItemNameToLastAttempt.get(itemName);
+			if (lastAttempt != null && now - lastAttempt.longValue() < RETRY_INTERVAL) {
+				continue;
+			}
+
+			final int tiers = this.mStore.getTiersToPrefetch(itemName, validityTimestamp);
+			if (tiers > 0 && tiers <= remainingRequests) {
+				return Optional.of(itemName);
+			}
+		}
+		return Optional.empty();
+	}
+
+	/**
+	 * Waits the given time or until the prefetcher gets inactive or stopped.
+	 * 
+	 * @param millis
+	 *            The time to wait in milliseconds
+	 * @throws InterruptedException
+	 *             If the thread got interrupted while waiting
+	 */
+	private void waitWhileActive(final long millis) throws InterruptedException {
+		if (millis <= 0) {
+			return;
+		}
+		synchronized (this.mLock) {
+			if (this.mDoRun && this.mIsActive) {
+				this.mLock.wait(millis);
+			}
+		}
+	}
+
+	/**
+	 * Waits until the prefetcher gets active or stopped.
+	 * 
+	 * @throws InterruptedException
+	 *             If the thread got interrupted while waiting
+	 */
+	private void waitWhileInactive() throws InterruptedException {
+		synchronized (this.mLock) {
+			while (this.mDoRun && !this.mIsActive) {
+				this.mLock.wait();
+			}
+		}
+	}
+}
@@ -0,0 +1,397 @@
+package de.zabuza.beedlebot.store;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.UTFDataFormatException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Deque;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+
+import de.zabuza.beedlebot.logging.ILogger;
+import de.zabuza.beedlebot.logging.LoggerFactory;
+import de.zabuza.beedlebot.logging.LoggerUtil;
+import de.zabuza.sparkle.freewar.EWorld;
+
+/**
+ * Durable queue of item purchases that wait to be registered in the database.
+ * Every purchase is appended to a journal file and flushed immediately before
+ * it is queued, and only removed from the journal once it was acknowledged
+ * after a successful registration. Pending purchases of a previous session are
+ * restored when the outbox is opened, such that no purchase is lost when the
+ * server is unreachable or the tool is closed. The journal is truncated
+ * whenever the outbox runs empty. The class is thread-safe.
+ * 
+ * @author Zabuza {@literal <zabuza.dev@gmail.com>}
+ *
+ */
+public final class PurchaseOutbox {
+	/**
+	 * The prefix of the path of the journal file.
+	 */
+	private static final String FILEPATH_JOURNAL_PRE = "purchaseOutbox_";
+	/**
+	 * The suffix of the path of the journal file.
+	 */
+	private static final String FILEPATH_JOURNAL_SUFF = ".journal";
+	/**
+	 * Type of a record that acknowledges that a purchase was registered.
+	 */
+	private static final byte RECORD_ACKNOWLEDGE = 2;
+	/**
+	 * Type of a record that queues a purchase.
+	 */
+	private static final byte RECORD_ENQUEUE = 1;
+
+	/**
+	 * Gets the journal file of the outbox of the given world.
+	 * 
+	 * @param world
+	 *            The world of the outbox
+	 * @return The journal file of the outbox of the given world
+	 */
+	public static File getJournalFile(final EWorld world) {
+		return new File(FILEPATH_JOURNAL_PRE + world + FILEPATH_JOURNAL_SUFF);
+	}
+
+	/**
+	 * Opens the outbox of the given world, see {@link #open(File)}.
+	 * 
+	 * @param world
+	 *            The world of the outbox
+	 * @return The opened outbox
+	 */
+	public static PurchaseOutbox open(final EWorld world) {
+		return open(getJournalFile(world));
+	}
+
+	/**
+	 * Opens the outbox that uses the given journal file and restores the
+	 * purchases that are still pending from it. An incomplete record at the
+	 * end of the journal, as left by a crash while appending, is dropped.
+	 * 
+	 * @param journalFile
+	 *            The journal file of the outbox, created if it does not exist
+	 * @return The opened outbox
+	 */
+	public static PurchaseOutbox open(final File journalFile) {
+		final PurchaseOutbox outbox = new PurchaseOutbox(journalFile);
+		outbox.restore();
+		return outbox;
+	}
+
+	/**
+	 * Reads the next record from the given input and applies it to the given
+	 * pending purchases. The record is only applied once it was read
+	 * completely.
+	 * 
+	 * @param input
+	 *            The input to read the record from
+	 * @param idToPendingRecord
+	 *            Data-structure that maps ids to the pending purchases, in
+	 *            queue order
+	 * @throws IOException
+	 *             If an I/O-Exception occurred while reading the record
+	 * @throws IllegalArgumentException
+	 *             If the record is of an unknown format
+	 */
+	private static void replayRecord(final DataInputStream input, final Map<Long, PurchaseRecord> idToPendingRecord)
+			throws IOException, IllegalArgumentException {
+		final byte type = input.readByte();
+		switch (type) {
+		case RECORD_ENQUEUE:
+			final long id = input.readLong();
+			final int size = input.readInt();
+			final Map<String, String> arguments = new LinkedHashMap<>();
+			for (int i = 0; i < size; i++) {
+				final String key = input.readUTF();
+				arguments.put(key, input.readUTF());
+			}
+			idToPendingRecord.put(Long.valueOf(id), new PurchaseRecord(id, arguments));
+			break;
+		case RECORD_ACKNOWLEDGE:
+			idToPendingRecord.remove(Long.valueOf(input.readLong()));
+			break;
+		default:
+			throw new IllegalArgumentException("Unknown outbox record type: " + type);
+		}
+	}
+
+	/**
+	 * The journal file of the outbox.
+	 */
+	private final File mFile;
+	/**
+	 * Whether the outbox is closed or not.
+	 */
+	private boolean mIsClosed;
+	/**
+	 * The logger to use for logging.
+	 */
+	private final ILogger mLogger;
+	/**
+	 * The id of the next queued purchase.
+	 */
+	private long mNextId;
+	/**
+	 * The stream to append records to the journal or <tt>null</tt> if the
+	 * journal is not open.
+	 */
+	private DataOutputStream mOutput;
+	/**
+	 * The purchases that wait to be registered, oldest first.
+	 */
+	private final Deque<PurchaseRecord> mPendingRecords;
+
+	/**
+	 * Creates a new empty outbox that uses the given journal file. Use
+	 * {@link #open(File)} to open an outbox.
+	 * 
+	 * @param file
+	 *            The journal file of the outbox
+	 */
+	private PurchaseOutbox(final File file) {
+		this.mFile = file;
+		this.mLogger = LoggerFactory.getLogger();
+		this.mPendingRecords = new ArrayDeque<>();
+		this.mNextId = 0;
+		this.mIsClosed = false;
+	}
+
+	/**
+	 * Acknowledges that the given purchases were registered and removes them
+	 * from the outbox. The acknowledgements are written to the journal at
+	 * once.
+	 * 
+	 * @param records
+	 *            The purchases to acknowledge
+	 */
+	public synchronized void acknowledge(final Collection<PurchaseRecord> records) {
+		final List<PurchaseRecord> removedRecords = new ArrayList<>(records.size());
+		for (final PurchaseRecord record : records) {
+			if (this.mPendingRecords.remove(record)) {
+				removedRecords.add(record);
+			}
+		}
+		if (removedRecords.isEmpty()) {
+			return;
+		}
+
+		try {
+			if (this.mPendingRecords.isEmpty()) {
+				truncateJournal();
+			} else if (this.mOutput != null) {
+				for (final PurchaseRecord record : removedRecords) {
+					this.mOutput.writeByte(RECORD_ACKNOWLEDGE);
+					this.mOutput.writeLong(record.getId());
+				}
+				this.mOutput.flush();
+			}
+		} catch (final IOException e) {
+			handleJournalError(e);
+		}
+	}
+
+	/**
+	 * Waits until a purchase is pending and then collects further purchases
+	 * for the given window, or until the given amount is pending. Gets the
+	 * oldest pending purchases without removing them, use
+	 * {@link #acknowledge(Collection)} to remove them once they were
+	 * registered. Purchases that are pending already, for example restored
+	 * ones, are returned without waiting for the window.
+	 * 
+	 * @param maxSize
+	 *            The maximal amount of purchases to get
+	 * @param windowMillis
+	 *            The time in milliseconds to collect further purchases after
+	 *            the first one arrived
+	 * @return The oldest pending purchases, at least one
+	 * @throws InterruptedException
+	 *             If the thread got interrupted while waiting or the outbox was
+	 *             closed
+	 */
+	public synchronized List<PurchaseRecord> awaitBatch(final int maxSize, final long windowMillis)
+			throws InterruptedException {
+		boolean wasEmpty = false;
+		while (this.mPendingRecords.isEmpty() && !this.mIsClosed) {
+			wasEmpty = true;
+			this.wait();
+		}
+
+		if (wasEmpty) {
+			final long windowEnd = System.currentTimeMillis() + windowMillis;
+			long remainingWindow = windowMillis;
+			while (this.mPendingRecords.size() < maxSize && !this.mIsClosed && remainingWindow > 0) {
+				this.wait(remainingWindow);
+				remainingWindow = windowEnd - System.currentTimeMillis();
+			}
+		}
+		if (this.mIsClosed) {
+			throw new InterruptedException();
+		}
+
+		final List<PurchaseRecord> records = new ArrayList<>(Math.min(maxSize, this.mPendingRecords.size()));
+		final Iterator<PurchaseRecord> pendingRecords = this.mPendingRecords.iterator();
+		while (pendingRecords.hasNext() && records.size() < maxSize) {
+			records.add(pendingRecords.next());
+		}
+		return records;
+	}
+
+	/**
+	 * Closes the outbox. Pending purchases stay in the journal and are
+	 * restored the next time the outbox is opened. Threads waiting for a
+	 * purchase are released.
+	 */
+	public synchronized void close() {
+		this.mIsClosed = true;
+		this.notifyAll();
+		closeJournal();
+	}
+
+	/**
+	 * Queues the purchase with the given request arguments. The purchase is
+	 * written to the journal before it is queued. If the journal can not be
+	 * written the purchase is still queued in memory and the error is logged.
+	 * 
+	 * @param arguments
+	 *            The arguments of the request that registers the purchase
+	 * @return The queued purchase
+	 */
+	public synchronized PurchaseRecord enqueue(final Map<String, String> arguments) {
+		final PurchaseRecord record = new PurchaseRecord(this.mNextId, new LinkedHashMap<>(arguments));
+		this.mNextId++;
+
+		if (this.mOutput != null) {
+			try {
+				this.mOutput.writeByte(RECORD_ENQUEUE);
+				this.mOutput.writeLong(record.getId());
+				this.mOutput.writeInt(record.getArguments().size());
+				for (final Entry<String, String> argument : record.getArguments().entrySet()) {
+					this.mOutput.writeUTF(argument.getKey());
+					this.mOutput.writeUTF(argument.getValue());
+				}
+				this.mOutput.flush();
+			} catch (final IOException e) {
+				handleJournalError(e);
+			}
+		}
+
+		this.mPendingRecords.addLast(record);
+		this.notifyAll();
+		return record;
+	}
+
+	/**
+	 * Gets the amount of purchases that wait to be registered.
+	 * 
+	 * @return The amount of pending purchases
+	 */
+	public synchronized int size() {
+		return this.mPendingRecords.size();
+	}
+
+	/**
+	 * Closes the journal if it is open. Errors are logged.
+	 */
+	private void closeJournal() {
+		if (this.mOutput == null) {
+			return;
+		}
+		try {
+			this.mOutput.close();
+		} catch (final IOException e) {
+			this.mLogger.logError("Error while closing purchase outbox: " + LoggerUtil.getStackTrace(e));
+		}
+		this.mOutput = null;
+	}
+
+	/**
+	 * Handles an error while writing the journal. The journal is closed, such
+	 * that the outbox continues in memory only.
+	 * 
+	 * @param e
+	 *            The error that occurred
+	 */
+	private void handleJournalError(final IOException e) {
+		this.mLogger.logError("Error while writing purchase outbox, continuing in memory: "
+				+ LoggerUtil.getStackTrace(e));
+		closeJournal();
+	}
+
+	/**
+	 * Restores the pending purchases from the journal, if present, and opens
+	 * the journal for appending. Errors are logged, the outbox then continues
+	 * in memory only.
+	 */
+	private synchronized void restore() {
+		try {
+			if (this.mFile.exists()) {
+				final byte[] content = Files.readAllBytes(this.mFile.toPath());
+				final ByteArrayInputStream bytes = new ByteArrayInputStream(content);
+				final DataInputStream input = new DataInputStream(bytes);
+				final Map<Long, PurchaseRecord> idToPendingRecord = new LinkedHashMap<>();
+				int validLength = 0;
+				try {
+					while (bytes.available() > 0) {
+						replayRecord(input, idToPendingRecord);
+						validLength = content.length - bytes.available();
+					}
+				} catch (final EOFException | UTFDataFormatException | IllegalArgumentException e) {
+					// Incomplete or corrupted record at the end, drop it
+					try (final FileChannel channel = FileChannel.open(this.mFile.toPath(),
+							StandardOpenOption.WRITE)) {
+						channel.truncate(validLength);
+					}
+				}
+
+				for (final PurchaseRecord record : idToPendingRecord.values()) {
+					this.mPendingRecords.addLast(record);
+					this.mNextId = Math.max(this.mNextId, record.getId() + 1);
+				}
+				if (!this.mPendingRecords.isEmpty()) {
+					this.mLogger.logInfo("Restored pending purchases: " + this.mPendingRecords.size());
+				}
+			}
+
+			this.mOutput = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(this.mFile, true)));
+			if (this.mPendingRecords.isEmpty()) {
+				truncateJournal();
+			}
+		} catch (final IOException e) {
+			handleJournalError(e);
+		}
+	}
+
+	/**
+	 * Truncates the journal, used when no purchase is pending anymore. Ids
+	 * are not reset, such that acknowledgements can never refer to a wrong
+	 * purchase.
+	 * 
+	 * @throws IOException
+	 *             If an I/O-Exception occurred while truncating the journal
+	 */
+	private void truncateJournal() throws IOException {
+		if (this.mOutput == null) {
+			return;
+		}
+		this.mOutput.flush();
+		try (final FileChannel channel = FileChannel.open(this.mFile.toPath(), StandardOpenOption.WRITE)) {
+			channel.truncate(0);
+		}
+	}
+}
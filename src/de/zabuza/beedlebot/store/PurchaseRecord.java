@@ -0,0 +1,70 @@
+package de.zabuza.beedlebot.store;
+
+import java.util.Collections;
+import java.util.Map;
+
+/**
+ * Record of an item purchase that waits in a {@link PurchaseOutbox} to be
+ * registered in the database. Holds the arguments of the request to send,
+ * such that the record does not depend on the item price data anymore.
+ * 
+ * @author Zabuza {@literal <zabuza.dev@gmail.com>}
+ *
+ */
+public final class PurchaseRecord {
+	/**
+	 * The arguments of the request that registers the purchase.
+	 */
+	private final Map<String, String> mArguments;
+	/**
+	 * The unique id of the record in its outbox.
+	 */
+	private final long mId;
+
+	/**
+	 * Creates a new record of an item purchase.
+	 * 
+	 * @param id
+	 *            The unique id of the record in its outbox
+	 * @param arguments
+	 *            The arguments of the request that registers the purchase
+	 */
+	public PurchaseRecord(final long id, final Map<String, String> arguments) {
+		this.mId = id;
+		this.mArguments = Collections.unmodifiableMap(arguments);
+	}
+
+	/**
+	 * Gets the arguments of the request that registers the purchase.
+	 * 
+	 * @return The unmodifiable arguments of the request
+	 */
+	public Map<String, String> getArguments() {
+		return this.mArguments;
+	}
+
+	/**
+	 * Gets the unique id of the record in its outbox.
+	 * 
+	 * @return The unique id of the record
+	 */
+	public long getId() {
+		return this.mId;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see java.lang.Object#toString()
+	 */
+	@Override
+	public String toString() {
+		final StringBuilder builder = new StringBuilder();
+		builder.append("PurchaseRecord [arguments=");
+		builder.append(this.mArguments);
+		builder.append(", id=");
+		builder.append(this.mId);
+		builder.append("]");
+		return builder.toString();
+	}
+}
@@ -1,22 +1,36 @@
 package de.zabuza.beedlebot.store;
 
+import java.io.File;
 import java.io.IOException;
-import java.net.MalformedURLException;
+import java.net.HttpURLConnection;
 import java.net.URL;
+import java.nio.charset.StandardCharsets;
 import java.util.HashMap;
+import java.util.List;
 
-import de.zabuza.beedlebot.exceptions.PurchaseRegisterServiceUnavailableException;
+import de.zabuza.beedlebot.exceptions.PurchaseRegisterUnavailableException;
 import de.zabuza.beedlebot.logging.ILogger;
 import de.zabuza.beedlebot.logging.LoggerFactory;
 import de.zabuza.sparkle.freewar.EWorld;
 
 /**
- * Service that registers item purchases in a database.
+ * Service that registers item purchases in a database. Purchases are not sent
+ * in the purchase loop, they are queued in a durable {@link PurchaseOutbox}
+ * which is drained by a {@link PurchaseRegisterSender} in the background.
+ * Several purchases are registered with one gzip compressed batch request,
+ * whose body holds one form-encoded purchase per line. If the server does not
+ * support the batch format, purchases are registered one by one instead. Call
+ * {@link #start()} to start sending and {@link #shutdown()} to stop it.
  * 
  * @author Zabuza {@literal <zabuza.dev@gmail.com>}
  *
  */
 public final class PurchaseRegister {
+	/**
+	 * The argument that marks a request as batch and holds the version of the
+	 * batch format.
+	 */
+	private static final String ARG_BATCH = "batch";
 	/**
 	 * The argument for the cost of a purchased item.
 	 */
@@ -69,15 +83,68 @@ public final class PurchaseRegister {
 	 * The argument for the world the player price data of the item belongs to.
 	 */
 	private static final String ARG_WORLD = "world";
+	/**
+	 * The type of the content of a batch request.
+	 */
+	private static final String BATCH_CONTENT_TYPE = "text/plain; charset=UTF-8";
+	/**
+	 * The separator between the purchases of a batch request.
+	 */
+	private static final char BATCH_RECORD_SEPARATOR = '\n';
+	/**
+	 * The version of the batch format.
+	 */
+	private static final int BATCH_VERSION = 1;
 	/**
 	 * The path to the file that offers the service on the server.
 	 */
 	private static final String SERVER_FILE = "registerPurchase.php";
+	/**
+	 * The status code of an answer that rejects the type of the content of a
+	 * request.
+	 */
+	private static final int STATUS_CODE_UNSUPPORTED_MEDIA_TYPE = 415;
 
+	/**
+	 * Whether the given status code of an answer to a batch request indicates
+	 * that the server does not support batches or not.
+	 * 
+	 * @param statusCode
+	 *            The status code of the answer
+	 * @return <tt>True</tt> if the server does not support batches,
+	 *         <tt>false</tt> otherwise
+	 */
+	private static boolean isBatchUnsupported(final int statusCode) {
+		return statusCode == HttpURLConnection.HTTP_BAD_REQUEST || statusCode == STATUS_CODE_UNSUPPORTED_MEDIA_TYPE
+				|| statusCode == HttpURLConnection.HTTP_NOT_IMPLEMENTED;
+	}
+
+	/**
+	 * The client to use for sending requests.
+	 */
+	private final StoreHttpClient mHttpClient;
+	/**
+	 * Whether the server supports batch requests or not. Set to
+	 * <tt>false</tt> once the server rejected a batch.
+	 */
+	private volatile boolean mIsBatchSupported;
 	/**
 	 * The logger to use for logging.
 	 */
 	private final ILogger mLogger;
+	/**
+	 * The outbox that holds the purchases which wait to be registered.
+	 */
+	private final PurchaseOutbox mOutbox;
+	/**
+	 * The sender that registers the purchases of the outbox in the
+	 * background.
+	 */
+	private final PurchaseRegisterSender mSender;
+	/**
+	 * URL to the server that provides the BeedleBot service.
+	 */
+	private final String mServerUrl;
 	/**
 	 * The user that purchases items registered with this object.
 	 */
@@ -90,65 +157,219 @@ public final class PurchaseRegister {
 
 	/**
 	 * Creates a new purchase register that is able to register item purchases
-	 * in a database.
+	 * in a database. Purchases which are still pending from a previous session
+	 * are restored from the outbox and sent once {@link #start()} was called.
 	 * 
 	 * @param user
 	 *            The user that purchases items registered with this object
 	 * @param world
 	 *            The world the player price data of items registered with this
 	 *            object belongs to
+	 * @param httpClient
+	 *            The client to use for sending requests
 	 */
-	public PurchaseRegister(final String user, final EWorld world) {
+	public PurchaseRegister(final String user, final EWorld world, final StoreHttpClient httpClient) {
+		this(user, world, httpClient, StoreUtil.SERVER_URL, PurchaseOutbox.getJournalFile(world));
+	}
+
+	/**
+	 * Creates a new purchase register that is able to register item purchases
+	 * in a database provided by the given server. Purchases which are still
+	 * pending from a previous session are restored from the outbox with the
+	 * given journal file and sent once {@link #start()} was called.
+	 * 
+	 * @param user
+	 *            The user that purchases items registered with this object
+	 * @param world
+	 *            The world the player price data of items registered with this
+	 *            object belongs to
+	 * @param httpClient
+	 *            The client to use for sending requests
+	 * @param serverUrl
+	 *            URL to the server that provides the BeedleBot service, like
+	 *            {@link StoreUtil#SERVER_URL}. It must end with a slash.
+	 * @param outboxJournalFile
+	 *            The journal file of the outbox, like the one of the world
+	 *            given by {@link PurchaseOutbox#getJournalFile(EWorld)}
+	 */
+	public PurchaseRegister(final String user, final EWorld world, final StoreHttpClient httpClient,
+			final String serverUrl, final File outboxJournalFile) {
 		this.mUser = user;
+		this.mServerUrl = serverUrl;
 		this.mWorld = world;
+		this.mHttpClient = httpClient;
 		this.mLogger = LoggerFactory.getLogger();
+		this.mIsBatchSupported = true;
+		this.mOutbox = PurchaseOutbox.open(outboxJournalFile);
+		this.mSender = new PurchaseRegisterSender(this, this.mOutbox);
+	}
+
+	/**
+	 * Gets the amount of purchases that wait to be registered.
+	 * 
+	 * @return The amount of pending purchases
+	 */
+	public int getPendingPurchases() {
+		return this.mOutbox.size();
+	}
+
+	/**
+	 * Whether the server is considered to support batch requests or not. This
+	 * is the case until it answered a batch with a status code indicating
+	 * that it does not support the batch format.
+	 * 
+	 * @return <tt>True</tt> if batches are used, <tt>false</tt> if purchases
+	 *         are registered one by one
+	 */
+	public boolean isBatchSupported() {
+		return this.mIsBatchSupported;
 	}
 
 	/**
-	 * Registers the purchase of the given item in a database.
+	 * Queues the purchase of the given item to be registered in a database.
+	 * Does not block on the network, the purchase is written to the durable
+	 * outbox and sent in the background.
 	 * 
 	 * @param item
 	 *            The item whose purchase is to be registered
-	 * @throws PurchaseRegisterServiceUnavailableException
-	 *             When the service used to register the purchase is unavailable
-	 *             such that a connection could not be established.
 	 */
-	public void registerPurchase(final Item item) throws PurchaseRegisterServiceUnavailableException {
+	public void registerPurchase(final Item item) {
 		if (this.mLogger.isDebugEnabled()) {
 			this.mLogger.logDebug("Register purchase: " + item);
 		}
 
-		try {
-			final URL url = new URL(StoreUtil.SERVER_URL + StoreUtil.BEEDLE_BOT_SERVICE + SERVER_FILE);
-			final HashMap<String, String> arguments = new HashMap<>();
-			final ItemPrice itemPrice = item.getStorePriceData();
-
-			final String emptyText = "";
-
-			// Put data
-			arguments.put(ARG_ID, item.getId() + emptyText);
-			arguments.put(ARG_USER, this.mUser);
-			arguments.put(ARG_WORLD, StoreUtil.worldToNumber(this.mWorld) + emptyText);
-			arguments.put(ARG_ITEM, item.getName());
-			arguments.put(ARG_COST, item.getCost() + emptyText);
-			arguments.put(ARG_PROFIT, item.getProfit() + emptyText);
-			arguments.put(ARG_STANDARD_SHOP_PRICE, itemPrice.getStandardShopPrice() + emptyText);
-			if (itemPrice.hasPlayerPrice()) {
-				final PlayerPrice playerPrice = itemPrice.getPlayerPrice().get();
-				arguments.put(ARG_PLAYER_PRICE, playerPrice.getPrice() + emptyText);
-				arguments.put(ARG_TS_PLAYER_PRICE, StoreUtil.millisToSeconds(playerPrice.getTimestamp()) + emptyText);
-			}
-			arguments.put(ARG_IS_CONSIDERED_FOR_SHOP, item.isConsideredForShop() + emptyText);
-			arguments.put(ARG_WAS_CACHED, itemPrice.isCached() + emptyText);
-			arguments.put(ARG_TS_CACHE, StoreUtil.millisToSeconds(itemPrice.getLookupTimestamp()) + emptyText);
-
-			try {
-				StoreUtil.sendPostRequest(url, arguments);
-			} catch (final IOException e) {
-				throw new PurchaseRegisterServiceUnavailableException(e);
+		final HashMap<String, String> arguments = new HashMap<>();
+		final ItemPrice itemPrice = item.getStorePriceData();
+
+		final String emptyText = "";
+
+		// Put data
+		arguments.put(ARG_ID, item.getId() + emptyText);
+		arguments.put(ARG_USER, this.mUser);
+		arguments.put(ARG_WORLD, StoreUtil.worldToNumber(this.mWorld) + emptyText);
+		arguments.put(ARG_ITEM, item.getName());
+		arguments.put(ARG_COST, item.getCost() + emptyText);
+		arguments.put(ARG_PROFIT, item.getProfit() + emptyText);
+		arguments.put(ARG_STANDARD_SHOP_PRICE, itemPrice.getStandardShopPrice() + emptyText);
+		if (itemPrice.hasPlayerPrice()) {
+			final PlayerPrice playerPrice = itemPrice.getPlayerPrice().get();
+			arguments.put(ARG_PLAYER_PRICE, playerPrice.getPrice() + emptyText);
+			arguments.put(ARG_TS_PLAYER_PRICE, StoreUtil.millisToSeconds(playerPrice.getTimestamp()) + emptyText);
+		}
+		arguments.put(ARG_IS_CONSIDERED_FOR_SHOP, item.isConsideredForShop() + emptyText);
+		arguments.put(ARG_WAS_CACHED, itemPrice.isCached() + emptyText);
+		arguments.put(ARG_TS_CACHE, StoreUtil.millisToSeconds(itemPrice.getLookupTimestamp()) + emptyText);
+
+		this.mOutbox.enqueue(arguments);
+	}
+
+	/**
+	 * Stops sending purchases and closes the outbox. Purchases that were not
+	 * registered yet stay in the outbox and are sent by the next session.
+	 * Afterwards this object should not be used anymore.
+	 */
+	public void shutdown() {
+		this.mSender.stopSender();
+		this.mOutbox.close();
+	}
+
+	/**
+	 * Starts sending the purchases of the outbox in the background.
+	 */
+	public void start() {
+		this.mSender.start();
+	}
+
+	/**
+	 * Sends the given purchase to the database. Answers of the server that
+	 * indicate an error of the client are logged, the purchase counts as sent
+	 * then since retrying would not help. Errors of the server, timeouts of
+	 * the server and throttling answers are retried. The method is used by the
+	 * {@link PurchaseRegisterSender}.
+	 * 
+	 * @param record
+	 *            The purchase to send
+	 * @throws PurchaseRegisterUnavailableException
+	 *             When the server answered that it is temporarily unavailable,
+	 *             such that the purchase should be retried, possibly after the
+	 *             time the server asked for
+	 * @throws IOException
+	 *             When the service used to register the purchase is
+	 *             unavailable, such that the purchase should be retried
+	 */
+	void sendPurchase(final PurchaseRecord record) throws PurchaseRegisterUnavailableException, IOException {
+		final URL url = new URL(this.mServerUrl + StoreUtil.BEEDLE_BOT_SERVICE + SERVER_FILE);
+		final HttpResponse response = this.mHttpClient.postForm(url, record.getArguments());
+		if (response.isRetryable()) {
+			throw new PurchaseRegisterUnavailableException("Server unavailable while registering purchase: " + response,
+					response.getRetryAfterMillis(System.currentTimeMillis()));
+		}
+		if (!response.isSuccessful()) {
+			// Log the problem but continue
+			this.mLogger.logError("Unexpected answer while registering purchase: " + response);
+		}
+	}
+
+	/**
+	 * Sends the given purchases to the database with one gzip compressed batch
+	 * request. If the server answers that it does not support the batch
+	 * format, with <tt>400</tt>, <tt>415</tt> or <tt>501</tt>, batches are not
+	 * used anymore and the purchases need to be sent one by one with
+	 * {@link #sendPurchase(PurchaseRecord)}. Other answers that indicate an
+	 * error of the client are logged, the purchases count as sent then like
+	 * they do for {@link #sendPurchase(PurchaseRecord)}. Sending them again
+	 * one by one could register purchases twice, if the server did register
+	 * some of them. Errors of the server, timeouts of the server and
+	 * throttling answers are retried. The method is used by the
+	 * {@link PurchaseRegisterSender}.
+	 * 
+	 * @param records
+	 *            The purchases to send
+	 * @return <tt>True</tt> if all purchases count as sent, <tt>false</tt> if
+	 *         they need to be sent one by one since the server does not
+	 *         support batches
+	 * @throws PurchaseRegisterUnavailableException
+	 *             When the server answered that it is temporarily unavailable,
+	 *             such that the purchases should be retried, possibly after the
+	 *             time the server asked for
+	 * @throws IOException
+	 *             When the service used to register the purchases is
+	 *             unavailable, such that the purchases should be retried
+	 */
+	boolean sendPurchases(final List<PurchaseRecord> records) throws PurchaseRegisterUnavailableException, IOException {
+		if (!this.mIsBatchSupported) {
+			return false;
+		}
+
+		final StringBuilder body = new StringBuilder();
+		for (final PurchaseRecord record : records) {
+			if (body.length() > 0) {
+				body.append(BATCH_RECORD_SEPARATOR);
 			}
-		} catch (final MalformedURLException e) {
-			throw new PurchaseRegisterServiceUnavailableException(e);
+			StoreUtil.appendFormEncoded(body, record.getArguments());
 		}
+
+		final URL url = new URL(this.mServerUrl + StoreUtil.BEEDLE_BOT_SERVICE + SERVER_FILE
+				+ StoreUtil.QUERY_BEGIN + ARG_BATCH + StoreUtil.QUERY_ALLOCATION + BATCH_VERSION);
+		final HttpResponse response = this.mHttpClient.postCompressed(url,
+				body.toString().getBytes(StandardCharsets.UTF_8), BATCH_CONTENT_TYPE);
+		if (response.isSuccessful()) {
+			return true;
+		}
+		if (isBatchUnsupported(response.getStatusCode())) {
+			this.mLogger.logInfo("Server does not support batches of purchases, registering them one by one: "
+					+ response);
+			this.mIsBatchSupported = false;
+			return false;
+		}
+		if (response.isRetryable()) {
+			throw new PurchaseRegisterUnavailableException(
+					"Server unavailable while registering purchases: " + response,
+					response.getRetryAfterMillis(System.currentTimeMillis()));
+		}
+
+		// Log the problem but continue
+		this.mLogger.logError("Unexpected answer while registering batch of purchases: " + response);
+		return true;
 	}
 }
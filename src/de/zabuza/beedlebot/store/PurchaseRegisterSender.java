@@ -0,0 +1,151 @@
+package de.zabuza.beedlebot.store;
+
+import java.io.IOException;
+import java.util.Collections;
+import java.util.List;
+import java.util.Optional;
+
+import de.zabuza.beedlebot.exceptions.PurchaseRegisterUnavailableException;
+import de.zabuza.beedlebot.logging.ILogger;
+import de.zabuza.beedlebot.logging.LoggerFactory;
+import de.zabuza.beedlebot.logging.LoggerUtil;
+
+/**
+ * Thread that drains a {@link PurchaseOutbox} by registering the pending
+ * purchases in the database, oldest first. Purchases that arrive within a
+ * short window are collected and registered with one batch request, or one
+ * by one if the server does not support batches. If the service is
+ * unavailable or an unexpected error occurs, the purchases are retried with
+ * exponential backoff, but not before the time the server asked for. They stay in the outbox until they
+ * were registered. The thread is a daemon, pending purchases are durable and
+ * sent by the next session. Call {@link #start()} to start the thread and
+ * {@link #stopSender()} to stop it.
+ * 
+ * @author Zabuza {@literal <zabuza.dev@gmail.com>}
+ *
+ */
+public final class PurchaseRegisterSender extends Thread {
+	/**
+	 * The time to wait in milliseconds before the first retry of a purchase
+	 * whose registration failed.
+	 */
+	private static final long BACKOFF_INITIAL = 1_000;
+	/**
+	 * The maximal time to wait in milliseconds before retrying a purchase
+	 * whose registration failed.
+	 */
+	private static final long BACKOFF_MAX = 300_000;
+	/**
+	 * The maximal amount of purchases that are registered with one request.
+	 */
+	private static final int BATCH_SIZE_MAX = 50;
+	/**
+	 * The time in milliseconds to collect further purchases after the first
+	 * one arrived, before they are registered.
+	 */
+	private static final long BATCH_WINDOW = 2_000;
+	/**
+	 * The name of the thread.
+	 */
+	private static final String NAME = "BeedleBot-PurchaseRegisterSender";
+
+	/**
+	 * The time to wait in milliseconds before the next retry.
+	 */
+	private long mBackoff;
+	/**
+	 * Internal flag whether the sender should run or not. If set to
+	 * <tt>false</tt> the sender will not enter the next iteration of its life
+	 * cycle and stop.
+	 */
+	private volatile boolean mDoRun;
+	/**
+	 * The logger to use for logging.
+	 */
+	private final ILogger mLogger;
+	/**
+	 * The outbox to drain.
+	 */
+	private final PurchaseOutbox mOutbox;
+	/**
+	 * The register to use for registering purchases.
+	 */
+	private final PurchaseRegister mPurchaseRegister;
+
+	/**
+	 * Creates a new sender that drains the given outbox. Call {@link #start()}
+	 * to start the thread and {@link #stopSender()} to stop it.
+	 * 
+	 * @param purchaseRegister
+	 *            The register to use for registering purchases
+	 * @param outbox
+	 *            The outbox to drain
+	 */
+	public PurchaseRegisterSender(final PurchaseRegister purchaseRegister, final PurchaseOutbox outbox) {
+		super(NAME);
+		setDaemon(true);
+		this.mPurchaseRegister = purchaseRegister;
+		this.mOutbox = outbox;
+		this.mLogger = LoggerFactory.getLogger();
+		this.mBackoff = BACKOFF_INITIAL;
+		this.mDoRun = true;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see java.lang.Thread#run()
+	 */
+	@Override
+	public void run() {
+		while (this.mDoRun) {
+			try {
+				final List<PurchaseRecord> records = this.mOutbox.awaitBatch(BATCH_SIZE_MAX, BATCH_WINDOW);
+				try {
+					if (records.size() > 1 && this.mPurchaseRegister.sendPurchases(records)) {
+						this.mOutbox.acknowledge(records);
+					} else {
+						for (final PurchaseRecord record : records) {
+							this.mPurchaseRegister.sendPurchase(record);
+							this.mOutbox.acknowledge(Collections.singletonList(record));
+						}
+					}
+				} catch (final IOException e) {
+					// Do not retry before the time the server asked for
+					long retryDelay = this.mBackoff;
+					if (e instanceof PurchaseRegisterUnavailableException) {
+						final Optional<Long> retryAfter = ((PurchaseRegisterUnavailableException) e)
+								.getRetryAfterMillis();
+						if (retryAfter.isPresent()) {
+							retryDelay = Math.max(retryDelay, Math.min(retryAfter.get().longValue(), BACKOFF_MAX));
+						}
+					}
+					this.mLogger.logError("Purchase register unavailable, retrying in " + retryDelay + "ms: " + e);
+					Thread.sleep(retryDelay);
+					this.mBackoff = Math.min(2 * this.mBackoff, BACKOFF_MAX);
+					continue;
+				} catch (final RuntimeException e) {
+					// Keep the sender alive, the purchases stay in the outbox
+					this.mLogger.logError("Error while registering purchases, retrying in " + this.mBackoff + "ms: "
+							+ LoggerUtil.getStackTrace(e));
+					Thread.sleep(this.mBackoff);
+					this.mBackoff = Math.min(2 * this.mBackoff, BACKOFF_MAX);
+					continue;
+				}
+
+				this.mBackoff = BACKOFF_INITIAL;
+			} catch (final InterruptedException e) {
+				this.mDoRun = false;
+			}
+		}
+	}
+
+	/**
+	 * Requests the sender to stop. Does not block, a pending purchase stays in
+	 * the outbox.
+	 */
+	public void stopSender() {
+		this.mDoRun = false;
+		interrupt();
+	}
+}
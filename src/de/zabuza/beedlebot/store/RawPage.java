@@ -0,0 +1,129 @@
+package de.zabuza.beedlebot.store;
+
+import java.util.Optional;
+
+/**
+ * Entry of the {@link RawPageArchive} that refers to the archived raw page of
+ * an item, as fetched from the FwWiki, together with the validators the wiki
+ * sent along with the page. The content itself is stored under its hash, use
+ * {@link RawPageArchive#readContent(RawPage)} to read it.
+ * 
+ * @author Zabuza {@literal <zabuza.dev@gmail.com>}
+ *
+ */
+public final class RawPage {
+	/**
+	 * The hash of the content of the page, which addresses the content in the
+	 * archive.
+	 */
+	private final String mContentHash;
+	/**
+	 * The entity tag of the page or <tt>null</tt> if not known.
+	 */
+	private final String mEntityTag;
+	/**
+	 * The timestamp of when the page was fetched.
+	 */
+	private final long mFetchTimestamp;
+	/**
+	 * The unique representation name of the item the page belongs to.
+	 */
+	private final String mItemName;
+	/**
+	 * The last modification date of the page or <tt>null</tt> if not known.
+	 */
+	private final String mLastModified;
+
+	/**
+	 * Creates a new entry that refers to the archived raw page of an item.
+	 * 
+	 * @param itemName
+	 *            The unique representation name of the item the page belongs
+	 *            to, see {@link ItemDictionary#applyItemNamePatterns(String)}
+	 * @param contentHash
+	 *            The hash of the content of the page
+	 * @param fetchTimestamp
+	 *            The timestamp of when the page was fetched
+	 * @param entityTag
+	 *            The entity tag of the page or <tt>null</tt> if not known
+	 * @param lastModified
+	 *            The last modification date of the page or <tt>null</tt> if
+	 *            not known
+	 */
+	public RawPage(final String itemName, final String contentHash, final long fetchTimestamp,
+			final String entityTag, final String lastModified) {
+		this.mItemName = itemName;
+		this.mContentHash = contentHash;
+		this.mFetchTimestamp = fetchTimestamp;
+		this.mEntityTag = entityTag;
+		this.mLastModified = lastModified;
+	}
+
+	/**
+	 * Gets the hash of the content of the page, which addresses the content
+	 * in the archive.
+	 * 
+	 * @return The hash of the content of the page
+	 */
+	public String getContentHash() {
+		return this.mContentHash;
+	}
+
+	/**
+	 * If present gets the entity tag of the page.
+	 * 
+	 * @return If present the entity tag of the page
+	 */
+	public Optional<String> getEntityTag() {
+		return Optional.ofNullable(this.mEntityTag);
+	}
+
+	/**
+	 * Gets the timestamp of when the page was fetched.
+	 * 
+	 * @return The timestamp of when the page was fetched
+	 */
+	public long getFetchTimestamp() {
+		return this.mFetchTimestamp;
+	}
+
+	/**
+	 * Gets the unique representation name of the item the page belongs to.
+	 * 
+	 * @return The unique representation name of the item
+	 */
+	public String getItemName() {
+		return this.mItemName;
+	}
+
+	/**
+	 * If present gets the last modification date of the page.
+	 * 
+	 * @return If present the last modification date of the page
+	 */
+	public Optional<String> getLastModified() {
+		return Optional.ofNullable(this.mLastModified);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see java.lang.Object#toString()
+	 */
+	@Override
+	public String toString() {
+		final StringBuilder builder = new StringBuilder();
+		builder.append("RawPage [contentHash=");
+		builder.append(this.mContentHash);
+		builder.append(", entityTag=");
+		builder.append(this.mEntityTag);
+		builder.append(", fetchTimestamp=");
+		builder.append(this.mFetchTimestamp);
+		builder.append(", itemName=");
+		builder.append(this.mItemName);
+		builder.append(", lastModified=");
+		builder.append(this.mLastModified);
+		builder.append("]");
+		return builder.toString();
+	}
+}
@@ -0,0 +1,443 @@
+package de.zabuza.beedlebot.store;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UTFDataFormatException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+import de.zabuza.beedlebot.logging.ILogger;
+import de.zabuza.beedlebot.logging.LoggerFactory;
+import de.zabuza.beedlebot.logging.LoggerUtil;
+
+/**
+ * Global archive of the raw item pages fetched from the FwWiki, such that
+ * standard shop prices can be extracted again without network access, see
+ * {@link StandardShopPriceReextractor}. The archive is shared by the
+ * {@link Store}s of all worlds. Page contents are stored GZIP compressed under
+ * the SHA-256 hash of their content, such that unchanged pages and pages
+ * shared by several items are stored only once. An append-only index maps the
+ * unique representation name of an item to the hash of its latest page and
+ * the validators of the page, later records of an item replace earlier ones.
+ * Archiving never breaks a lookup, errors are logged. The class is
+ * thread-safe.
+ * 
+ * @author Zabuza {@literal <zabuza.dev@gmail.com>}
+ *
+ */
+public final class RawPageArchive {
+	/**
+	 * The path to the directory of the archive.
+	 */
+	private static final String DIRECTORY = "rawPages";
+	/**
+	 * The name of the directory that contains the page contents.
+	 */
+	private static final String DIRECTORY_OBJECTS = "objects";
+	/**
+	 * The name of the index file.
+	 */
+	private static final String FILENAME_INDEX = "index.journal";
+	/**
+	 * The name of the index file while it is rewritten.
+	 */
+	private static final String FILENAME_INDEX_TEMPORARY = "index.tmp";
+	/**
+	 * The algorithm used to hash page contents.
+	 */
+	private static final String HASH_ALGORITHM = "SHA-256";
+	/**
+	 * The amount of leading hash characters that name the subdirectory of a
+	 * page content, such that directories stay small.
+	 */
+	private static final int HASH_PREFIX_LENGTH = 2;
+	/**
+	 * The file extension of page contents.
+	 */
+	private static final String OBJECT_EXTENSION = ".gz";
+	/**
+	 * Type of a record that archives the page of an item.
+	 */
+	private static final byte RECORD_ARCHIVE = 1;
+	/**
+	 * Singleton for the global archive instance.
+	 */
+	private static RawPageArchive archiveInstance = null;
+
+	/**
+	 * Gets the reference to the global archive instance.
+	 * 
+	 * @return The reference to the global archive instance
+	 */
+	public static synchronized RawPageArchive getInstance() {
+		if (archiveInstance == null) {
+			archiveInstance = new RawPageArchive(Paths.get(DIRECTORY));
+		}
+
+		return archiveInstance;
+	}
+
+	/**
+	 * Computes the hash of the given page content, which addresses the
+	 * content in the archive.
+	 * 
+	 * @param content
+	 *            The content to hash, encoded in UTF-8
+	 * @return The hash of the content as lowercase hexadecimal text
+	 */
+	private static String hash(final byte[] content) {
+		final MessageDigest digest;
+		try {
+			digest = MessageDigest.getInstance(HASH_ALGORITHM);
+		} catch (final NoSuchAlgorithmException e) {
+			// Every Java platform is required to support the algorithm
+			throw new IllegalStateException(e);
+		}
+		final byte[] hash = digest.digest(content);
+
+		final StringBuilder hashText = new StringBuilder(2 * hash.length);
+		for (final byte hashByte : hash) {
+			hashText.append(Character.forDigit((hashByte >> 4) & 0xF, 16));
+			hashText.append(Character.forDigit(hashByte & 0xF, 16));
+		}
+		return hashText.toString();
+	}
+
+	/**
+	 * Moves the given file to the given target, atomically if supported by
+	 * the file system.
+	 * 
+	 * @param source
+	 *            The file to move
+	 * @param target
+	 *            The target to move the file to, replaced if it exists
+	 * @throws IOException
+	 *             If an I/O-Exception occurred while moving the file
+	 */
+	private static void move(final Path source, final Path target) throws IOException {
+		try {
+			Files.move(source, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		} catch (final AtomicMoveNotSupportedException e) {
+			Files.move(source, target, StandardCopyOption.REPLACE_EXISTING);
+		}
+	}
+
+	/**
+	 * Reads a string that was written by
+	 * {@link #writeOptionalString(DataOutputStream, String)}.
+	 * 
+	 * @param input
+	 *            The stream to read from
+	 * @return The string or <tt>null</tt> if it was not present
+	 * @throws IOException
+	 *             If an I/O-Exception occurred while reading
+	 */
+	private static String readOptionalString(final DataInputStream input) throws IOException {
+		if (!input.readBoolean()) {
+			return null;
+		}
+		return input.readUTF();
+	}
+
+	/**
+	 * Reads the next record from the given input and applies it to the given
+	 * index. The record is only applied once it was read completely.
+	 * 
+	 * @param input
+	 *            The input to read the record from
+	 * @param nameToPage
+	 *            Data-structure that maps item names to their latest page
+	 * @throws IOException
+	 *             If an I/O-Exception occurred while reading the record
+	 * @throws IllegalArgumentException
+	 *             If the record is of an unknown format
+	 */
+	private static void replayRecord(final DataInputStream input, final Map<String, RawPage> nameToPage)
+			throws IOException, IllegalArgumentException {
+		final byte type = input.readByte();
+		if (type != RECORD_ARCHIVE) {
+			throw new IllegalArgumentException("Unknown raw page index record type: " + type);
+		}
+		final String itemName = input.readUTF();
+		final String contentHash = input.readUTF();
+		final long fetchTimestamp = input.readLong();
+		final String entityTag = readOptionalString(input);
+		final String lastModified = readOptionalString(input);
+		// Keep the index in order of the latest record of an item
+		nameToPage.remove(itemName);
+		nameToPage.put(itemName, new RawPage(itemName, contentHash, fetchTimestamp, entityTag, lastModified));
+	}
+
+	/**
+	 * Serializes the given entry as record of the index.
+	 * 
+	 * @param page
+	 *            The entry to serialize
+	 * @return The record of the entry
+	 * @throws IOException
+	 *             If an I/O-Exception occurred while serializing
+	 */
+	private static byte[] toRecord(final RawPage page) throws IOException {
+		final ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		try (final DataOutputStream output = new DataOutputStream(bytes)) {
+			output.writeByte(RECORD_ARCHIVE);
+			output.writeUTF(page.getItemName());
+			output.writeUTF(page.getContentHash());
+			output.writeLong(page.getFetchTimestamp());
+			writeOptionalString(output, page.getEntityTag().orElse(null));
+			writeOptionalString(output, page.getLastModified().orElse(null));
+		}
+		return bytes.toByteArray();
+	}
+
+	/**
+	 * Writes the given optional string, such that it can be read by
+	 * {@link #readOptionalString(DataInputStream)}.
+	 * 
+	 * @param output
+	 *            The stream to write to
+	 * @param text
+	 *            The string to write or <tt>null</tt> if not present
+	 * @throws IOException
+	 *             If an I/O-Exception occurred while writing
+	 */
+	private static void writeOptionalString(final DataOutputStream output, final String text) throws IOException {
+		output.writeBoolean(text != null);
+		if (text != null) {
+			output.writeUTF(text);
+		}
+	}
+
+	/**
+	 * The directory of the archive.
+	 */
+	private final Path mDirectory;
+	/**
+	 * The logger to use for logging.
+	 */
+	private final ILogger mLogger;
+
+	/**
+	 * Creates a new archive in the given directory. Use {@link #getInstance()}
+	 * to get the global instance.
+	 * 
+	 * @param directory
+	 *            The directory of the archive, created on first use
+	 */
+	RawPageArchive(final Path directory) {
+		this.mDirectory = directory;
+		this.mLogger = LoggerFactory.getLogger();
+	}
+
+	/**
+	 * Archives the given raw page of the item with the given name. The content
+	 * is only written if the archive does not contain it yet, the index record
+	 * is appended with one write, such that processes of several worlds can
+	 * archive concurrently. Errors are logged.
+	 * 
+	 * @param itemName
+	 *            The unique representation name of the item the page belongs
+	 *            to, see {@link ItemDictionary#applyItemNamePatterns(String)}
+	 * @param content
+	 *            The raw content of the page
+	 * @param fetchTimestamp
+	 *            The timestamp of when the page was fetched
+	 * @param entityTag
+	 *            The entity tag of the page or <tt>null</tt> if not known
+	 * @param lastModified
+	 *            The last modification date of the page or <tt>null</tt> if
+	 *            not known
+	 */
+	public void archive(final String itemName, final String content, final long fetchTimestamp,
+			final String entityTag, final String lastModified) {
+		try {
+			final byte[] contentBytes = content.getBytes(StandardCharsets.UTF_8);
+			final String contentHash = hash(contentBytes);
+			writeContent(contentHash, contentBytes);
+
+			final byte[] record = toRecord(new RawPage(itemName, contentHash, fetchTimestamp, entityTag,
+					lastModified));
+			synchronized (this) {
+				Files.write(this.mDirectory.resolve(FILENAME_INDEX), record, StandardOpenOption.CREATE,
+						StandardOpenOption.APPEND);
+			}
+		} catch (final IOException e) {
+			this.mLogger.logError("Error while archiving raw page of " + itemName + ": " + LoggerUtil.getStackTrace(e));
+		}
+	}
+
+	/**
+	 * Rewrites the index such that it only contains the given entries and
+	 * deletes all page contents none of them refers to. Must not be called
+	 * while other processes archive pages, their records could get lost.
+	 * 
+	 * @param pages
+	 *            The entries to keep, typically the latest page of every item
+	 *            as read by {@link #readIndex()}
+	 * @return The amount of deleted page contents
+	 * @throws IOException
+	 *             If an I/O-Exception occurred while rewriting the index or
+	 *             deleting contents
+	 */
+	public synchronized int compact(final Collection<RawPage> pages) throws IOException {
+		Files.createDirectories(this.mDirectory);
+		final Path temporaryIndex = this.mDirectory.resolve(FILENAME_INDEX_TEMPORARY);
+		final Set<String> referencedHashes = new HashSet<>();
+		try (final OutputStream output = Files.newOutputStream(temporaryIndex)) {
+			for (final RawPage page : pages) {
+				output.write(toRecord(page));
+				referencedHashes.add(page.getContentHash());
+			}
+		}
+		move(temporaryIndex, this.mDirectory.resolve(FILENAME_INDEX));
+
+		final Path objects = this.mDirectory.resolve(DIRECTORY_OBJECTS);
+		if (!Files.isDirectory(objects)) {
+			return 0;
+		}
+		int deletedContents = 0;
+		try (final DirectoryStream<Path> prefixDirectories = Files.newDirectoryStream(objects)) {
+			for (final Path prefixDirectory : prefixDirectories) {
+				try (final DirectoryStream<Path> objectFiles = Files.newDirectoryStream(prefixDirectory)) {
+					for (final Path objectFile : objectFiles) {
+						final String fileName = objectFile.getFileName().toString();
+						final String contentHash = fileName.substring(0,
+								Math.max(0, fileName.length() - OBJECT_EXTENSION.length()));
+						if (!referencedHashes.contains(contentHash)) {
+							Files.delete(objectFile);
+							deletedContents++;
+						}
+					}
+				}
+			}
+		}
+		return deletedContents;
+	}
+
+	/**
+	 * Reads the content of the given archived page.
+	 * 
+	 * @param page
+	 *            The entry of the page to read
+	 * @return The raw content of the page
+	 * @throws IOException
+	 *             If an I/O-Exception occurred while reading the content or if
+	 *             the content is missing
+	 */
+	public String readContent(final RawPage page) throws IOException {
+		final ByteArrayOutputStream content = new ByteArrayOutputStream();
+		try (final InputStream input = new GZIPInputStream(
+				Files.newInputStream(getContentPath(page.getContentHash())))) {
+			final byte[] buffer = new byte[8_192];
+			int readBytes = input.read(buffer);
+			while (readBytes != -1) {
+				content.write(buffer, 0, readBytes);
+				readBytes = input.read(buffer);
+			}
+		}
+		return new String(content.toByteArray(), StandardCharsets.UTF_8);
+	}
+
+	/**
+	 * Reads the index of the archive. An incomplete record at the end of the
+	 * index, as left by a crash while appending, is ignored.
+	 * 
+	 * @return Data-structure that maps the unique representation names of
+	 *         items to the entry of their latest archived page, empty if the
+	 *         archive does not exist
+	 * @throws IOException
+	 *             If an I/O-Exception occurred while reading the index
+	 */
+	public synchronized Map<String, RawPage> readIndex() throws IOException {
+		final Map<String, RawPage> nameToPage = new LinkedHashMap<>();
+		final Path index = this.mDirectory.resolve(FILENAME_INDEX);
+		if (!Files.exists(index)) {
+			return nameToPage;
+		}
+
+		final byte[] content = Files.readAllBytes(index);
+		final ByteArrayInputStream bytes = new ByteArrayInputStream(content);
+		final DataInputStream input = new DataInputStream(bytes);
+		try {
+			while (bytes.available() > 0) {
+				replayRecord(input, nameToPage);
+			}
+		} catch (final EOFException | UTFDataFormatException | IllegalArgumentException e) {
+			// Incomplete or corrupted record at the end, ignore it
+			this.mLogger.logError("Ignoring incomplete end of raw page index: " + e);
+		}
+		return nameToPage;
+	}
+
+	/**
+	 * Gets the path of the file that stores the page content with the given
+	 * hash.
+	 * 
+	 * @param contentHash
+	 *            The hash of the page content
+	 * @return The path of the file of the content
+	 */
+	private Path getContentPath(final String contentHash) {
+		return this.mDirectory.resolve(DIRECTORY_OBJECTS).resolve(contentHash.substring(0, HASH_PREFIX_LENGTH))
+				.resolve(contentHash + OBJECT_EXTENSION);
+	}
+
+	/**
+	 * Writes the given page content compressed under the given hash, unless
+	 * the archive contains it already. The content is written to a temporary
+	 * file first and then moved into place, such that a content file is
+	 * always complete.
+	 * 
+	 * @param contentHash
+	 *            The hash of the content
+	 * @param content
+	 *            The content, encoded in UTF-8
+	 * @throws IOException
+	 *             If an I/O-Exception occurred while writing the content
+	 */
+	private void writeContent(final String contentHash, final byte[] content) throws IOException {
+		final Path path = getContentPath(contentHash);
+		if (Files.exists(path)) {
+			return;
+		}
+
+		Files.createDirectories(path.getParent());
+		final Path temporaryPath = Files.createTempFile(path.getParent(), contentHash, null);
+		try {
+			try (final OutputStream output = new GZIPOutputStream(Files.newOutputStream(temporaryPath))) {
+				output.write(content);
+			}
+			try {
+				Files.move(temporaryPath, path, StandardCopyOption.ATOMIC_MOVE);
+			} catch (final AtomicMoveNotSupportedException e) {
+				Files.move(temporaryPath, path);
+			}
+		} catch (final FileAlreadyExistsException e) {
+			// Another process archived the same content concurrently
+		} finally {
+			Files.deleteIfExists(temporaryPath);
+		}
+	}
+}
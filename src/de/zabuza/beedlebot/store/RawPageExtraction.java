@@ -0,0 +1,47 @@
+package de.zabuza.beedlebot.store;
+
+import java.util.Optional;
+import java.util.concurrent.Callable;
+
+/**
+ * Task that extracts the standard shop price of an item again from its page
+ * in the {@link RawPageArchive}, without network access. Used by the
+ * {@link StandardShopPriceReextractor} to extract many pages in parallel.
+ * 
+ * @author Zabuza {@literal <zabuza.dev@gmail.com>}
+ *
+ */
+public final class RawPageExtraction implements Callable<Optional<Integer>> {
+	/**
+	 * The archive that contains the page.
+	 */
+	private final RawPageArchive mArchive;
+	/**
+	 * The entry of the page to extract the price from.
+	 */
+	private final RawPage mPage;
+
+	/**
+	 * Creates a new task that extracts the standard shop price of the given
+	 * archived page.
+	 * 
+	 * @param archive
+	 *            The archive that contains the page
+	 * @param page
+	 *            The entry of the page to extract the price from
+	 */
+	public RawPageExtraction(final RawPageArchive archive, final RawPage page) {
+		this.mArchive = archive;
+		this.mPage = page;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see java.util.concurrent.Callable#call()
+	 */
+	@Override
+	public Optional<Integer> call() throws Exception {
+		return StandardShopPriceParser.parseStandardShopPrice(this.mArchive.readContent(this.mPage));
+	}
+}
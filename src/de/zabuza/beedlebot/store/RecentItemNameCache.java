@@ -0,0 +1,44 @@
+package de.zabuza.beedlebot.store;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Bounded cache that maps recently used item names to their unique
+ * representation. If the cache is full, the least recently used entry is
+ * evicted. The class is not thread-safe.
+ * 
+ * @author Zabuza {@literal <zabuza.dev@gmail.com>}
+ *
+ */
+public final class RecentItemNameCache extends LinkedHashMap<String, String> {
+	/**
+	 * The serial version UID.
+	 */
+	private static final long serialVersionUID = 1L;
+	/**
+	 * The maximal amount of entries the cache holds.
+	 */
+	private final int mCapacity;
+
+	/**
+	 * Creates a new empty cache.
+	 * 
+	 * @param capacity
+	 *            The maximal amount of entries the cache holds
+	 */
+	public RecentItemNameCache(final int capacity) {
+		super(16, 0.75f, true);
+		this.mCapacity = capacity;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see java.util.LinkedHashMap#removeEldestEntry(java.util.Map.Entry)
+	 */
+	@Override
+	protected boolean removeEldestEntry(final Map.Entry<String, String> eldest) {
+		return size() > this.mCapacity;
+	}
+}
@@ -0,0 +1,101 @@
+package de.zabuza.beedlebot.store;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+
+import de.zabuza.beedlebot.exceptions.ItemPriceLookupInterruptedException;
+
+/**
+ * Fetch of a remote resource whose result is shared by all callers that ask
+ * for the same resource while it is outstanding or shortly after it completed.
+ * Registered at an {@link InFlightTable}.
+ * 
+ * @author Zabuza {@literal <zabuza.dev@gmail.com>}
+ * 
+ * @param <V>
+ *            The type of the result of the fetch
+ */
+public final class SharedFetch<V> {
+	/**
+	 * The timestamp of when the fetch completed successfully or
+	 * <tt>zero</tt> if it did not yet.
+	 */
+	private volatile long mCompletionTimestamp;
+	/**
+	 * The future result of the fetch.
+	 */
+	private final CompletableFuture<V> mResult;
+
+	/**
+	 * Creates a new outstanding fetch.
+	 */
+	public SharedFetch() {
+		this.mResult = new CompletableFuture<>();
+		this.mCompletionTimestamp = 0;
+	}
+
+	/**
+	 * Waits for the fetch to complete and gets its result. If the fetch failed
+	 * the exception of the fetching caller is thrown.
+	 * 
+	 * @return The result of the fetch
+	 * @throws ItemPriceLookupInterruptedException
+	 *             When the current thread got interrupted while waiting for
+	 *             the fetch to complete
+	 */
+	public V await() throws ItemPriceLookupInterruptedException {
+		try {
+			return this.mResult.get();
+		} catch (final InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new ItemPriceLookupInterruptedException(e);
+		} catch (final ExecutionException e) {
+			final Throwable cause = e.getCause();
+			if (cause instanceof RuntimeException) {
+				throw (RuntimeException) cause;
+			}
+			if (cause instanceof Error) {
+				throw (Error) cause;
+			}
+			throw new IllegalStateException(cause);
+		}
+	}
+
+	/**
+	 * Completes the fetch with the given result.
+	 * 
+	 * @param result
+	 *            The result of the fetch
+	 */
+	public void complete(final V result) {
+		this.mCompletionTimestamp = System.currentTimeMillis();
+		this.mResult.complete(result);
+	}
+
+	/**
+	 * Completes the fetch with the given exception.
+	 * 
+	 * @param exception
+	 *            The exception the fetch failed with
+	 */
+	public void fail(final Throwable exception) {
+		this.mResult.completeExceptionally(exception);
+	}
+
+	/**
+	 * Whether the fetch completed successfully longer ago than the given
+	 * retention time, such that its result should not be shared anymore.
+	 * 
+	 * @param now
+	 *            The current timestamp
+	 * @param retentionMillis
+	 *            The time in milliseconds the result of a completed fetch is
+	 *            shared
+	 * @return <tt>True</tt> if the result should not be shared anymore,
+	 *         <tt>false</tt> if not
+	 */
+	public boolean isExpired(final long now, final long retentionMillis) {
+		final long completionTimestamp = this.mCompletionTimestamp;
+		return completionTimestamp != 0 && now - completionTimestamp > retentionMillis;
+	}
+}
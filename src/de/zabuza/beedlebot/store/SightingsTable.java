@@ -0,0 +1,351 @@
+package de.zabuza.beedlebot.store;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Optional;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedOutputStream;
+
+import de.zabuza.beedlebot.exceptions.StorePersistenceUnsuccessfulException;
+import de.zabuza.beedlebot.logging.ILogger;
+import de.zabuza.beedlebot.logging.LoggerFactory;
+import de.zabuza.beedlebot.logging.LoggerUtil;
+import de.zabuza.sparkle.freewar.EWorld;
+
+/**
+ * Table of the items seen at the central traders depot of a world. Holds per
+ * item its {@link ItemSightings}, i.e. the amount of sightings by category,
+ * when it was seen the last time and its typical cost. Items are keyed by
+ * their unique representation names, see
+ * {@link ItemDictionary#applyItemNamePatterns(String)}. The table is the only
+ * record of sightings, it ranks the items for the {@link CacheWarmUp} and the
+ * {@link PricePrefetcher}. It survives restarts, such that both start with the
+ * sightings of previous sessions. Items not seen for {@link #RETENTION_DAYS} are dropped.
+ * The table is persisted in its own file per world, along with the snapshots
+ * of the {@link StoreCache}. The class is thread-safe.
+ * 
+ * @author Zabuza {@literal <zabuza.dev@gmail.com>}
+ *
+ */
+public final class SightingsTable {
+	/**
+	 * The amount of days an item that is not seen anymore stays in the table.
+	 */
+	public static final int RETENTION_DAYS = 90;
+	/**
+	 * The amount of bytes the checksum at the end of the file occupies.
+	 */
+	private static final int CHECKSUM_BYTES = Long.BYTES;
+	/**
+	 * The prefix of the path to the file of the table.
+	 */
+	private static final String FILEPATH_PRE = "depotSightings_";
+	/**
+	 * The suffix of the path to the file of the table.
+	 */
+	private static final String FILEPATH_SUFF = ".bin";
+	/**
+	 * The suffix of the path to the file of the table while it is written.
+	 */
+	private static final String FILEPATH_TEMPORARY_SUFF = ".tmp";
+	/**
+	 * The current version of the file format.
+	 */
+	private static final short FORMAT_VERSION = 1;
+	/**
+	 * The magic number the file starts with, <tt>BBDS</tt> in ASCII.
+	 */
+	private static final int MAGIC_NUMBER = 0x42424453;
+	/**
+	 * Data-structure that maps worlds to their table.
+	 */
+	private static final ConcurrentMap<EWorld, SightingsTable> WORLD_TO_TABLE = new ConcurrentHashMap<>();
+
+	/**
+	 * Gets the reference to the table of the given world. The table is loaded
+	 * from its file on first access.
+	 * 
+	 * @param world
+	 *            The world of the table
+	 * @return The reference to the table of the world
+	 */
+	public static synchronized SightingsTable getInstance(final EWorld world) {
+		SightingsTable table = WORLD_TO_TABLE.get(world);
+		if (table == null) {
+			table = new SightingsTable(world);
+			table.load();
+			WORLD_TO_TABLE.put(world, table);
+		}
+
+		return table;
+	}
+
+	/**
+	 * The path to the file of the table.
+	 */
+	private final Path mFile;
+	/**
+	 * Whether the table contains sightings that were not persisted yet or not.
+	 */
+	private boolean mIsDirty;
+	/**
+	 * The logger to use for logging.
+	 */
+	private final ILogger mLogger;
+	/**
+	 * Data-structure that maps item names to their sightings.
+	 */
+	private final Map<String, ItemSightings> mNameToSightings;
+	/**
+	 * Lock that is held while the table is persisted, such that only one
+	 * thread writes the file at a time.
+	 */
+	private final Object mPersistLock;
+
+	/**
+	 * Creates a new empty table for the given world. Use
+	 * {@link #getInstance(EWorld)} to get the table of a world.
+	 * 
+	 * @param world
+	 *            The world of the table
+	 */
+	private SightingsTable(final EWorld world) {
+		this.mFile = Paths.get(FILEPATH_PRE + world + FILEPATH_SUFF);
+		this.mNameToSightings = new HashMap<>();
+		this.mLogger = LoggerFactory.getLogger();
+		this.mIsDirty = false;
+		this.mPersistLock = new Object();
+	}
+
+	/**
+	 * Gets the names of the most often seen items, see
+	 * {@link ItemSightingsComparator}.
+	 * 
+	 * @param maxItems
+	 *            The maximal amount of item names to get
+	 * @return The names of the most often seen items, most often seen first
+	 */
+	public List<String> getMostSeenItemNames(final int maxItems) {
+		final List<Entry<String, ItemSightings>> entries;
+		synchronized (this) {
+			entries = new ArrayList<>(this.mNameToSightings.entrySet());
+		}
+		Collections.sort(entries, new ItemSightingsComparator());
+
+		final List<String> itemNames = new ArrayList<>(Math.min(maxItems, entries.size()));
+		for (final Entry<String, ItemSightings> entry : entries) {
+			if (itemNames.size() >= maxItems) {
+				break;
+			}
+			itemNames.add(entry.getKey());
+		}
+		return itemNames;
+	}
+
+	/**
+	 * If present gets the sightings of the item with the given name.
+	 * 
+	 * @param itemName
+	 *            The unique representation name of the item, see
+	 *            {@link ItemDictionary#applyItemNamePatterns(String)}
+	 * @return If present the sightings of the item, if not present the item
+	 *         was not seen yet
+	 */
+	public synchronized Optional<ItemSightings> getSightings(final String itemName) {
+		return Optional.ofNullable(this.mNameToSightings.get(itemName));
+	}
+
+	/**
+	 * Persists the table if it contains sightings that were not persisted yet.
+	 * Items not seen for {@link #RETENTION_DAYS} are dropped before. The file
+	 * is replaced atomically.
+	 * 
+	 * @throws StorePersistenceUnsuccessfulException
+	 *             If persisting the table was unsuccessful
+	 */
+	public void persist() throws StorePersistenceUnsuccessfulException {
+		synchronized (this.mPersistLock) {
+			final Map<String, ItemSightings> nameToSightings;
+			synchronized (this) {
+				if (!this.mIsDirty) {
+					return;
+				}
+				this.mIsDirty = false;
+
+				final long oldestLastSeen = System.currentTimeMillis() - TimeUnit.DAYS.toMillis(RETENTION_DAYS);
+				final Iterator<ItemSightings> sightings = this.mNameToSightings.values().iterator();
+				while (sightings.hasNext()) {
+					if (sightings.next().getLastSeenTimestamp() < oldestLastSeen) {
+						sightings.remove();
+					}
+				}
+				nameToSightings = new HashMap<>(this.mNameToSightings);
+			}
+
+			try {
+				writeFile(nameToSightings);
+			} catch (final IOException e) {
+				synchronized (this) {
+					this.mIsDirty = true;
+				}
+				throw new StorePersistenceUnsuccessfulException(e);
+			}
+		}
+	}
+
+	/**
+	 * Records that the item with the given name was seen at the depot.
+	 * 
+	 * @param itemName
+	 *            The unique representation name of the item, see
+	 *            {@link ItemDictionary#applyItemNamePatterns(String)}
+	 * @param category
+	 *            The category the item was seen in
+	 * @param cost
+	 *            The cost of the item
+	 */
+	public synchronized void recordSighting(final String itemName, final EItemCategory category, final int cost) {
+		ItemSightings sightings = this.mNameToSightings.get(itemName);
+		if (sightings == null) {
+			sightings = new ItemSightings();
+		}
+		this.mNameToSightings.put(itemName, sightings.record(category, cost, System.currentTimeMillis()));
+		this.mIsDirty = true;
+	}
+
+	/**
+	 * Gets the amount of items in the table.
+	 * 
+	 * @return The amount of items in the table
+	 */
+	public synchronized int size() {
+		return this.mNameToSightings.size();
+	}
+
+	/**
+	 * Loads the content of the file of the table, if it exists. An unreadable
+	 * file is logged and ignored, it gets replaced when the table is
+	 * persisted. Sightings of unknown categories are dropped.
+	 */
+	private void load() {
+		if (!Files.exists(this.mFile)) {
+			return;
+		}
+		try {
+			final byte[] content = Files.readAllBytes(this.mFile);
+			if (content.length < CHECKSUM_BYTES) {
+				throw new IOException("Sightings file is truncated: " + this.mFile);
+			}
+			final int contentLength = content.length - CHECKSUM_BYTES;
+			final CRC32 checksum = new CRC32();
+			checksum.update(content, 0, contentLength);
+			if (checksum.getValue() != ByteBuffer.wrap(content, contentLength, CHECKSUM_BYTES).getLong()) {
+				throw new IOException("Sightings file is corrupted: " + this.mFile);
+			}
+
+			final DataInputStream input = new DataInputStream(new ByteArrayInputStream(content, 0, contentLength));
+			if (input.readInt() != MAGIC_NUMBER) {
+				throw new IOException("File is no sightings file: " + this.mFile);
+			}
+			final short version = input.readShort();
+			if (version != FORMAT_VERSION) {
+				throw new IOException("Unsupported sightings file version " + version + ": " + this.mFile);
+			}
+
+			final int size = input.readInt();
+			final Map<String, ItemSightings> nameToSightings = new HashMap<>(size);
+			for (int i = 0; i < size; i++) {
+				final String itemName = input.readUTF();
+				final long lastSeenTimestamp = input.readLong();
+				final int typicalCost = input.readInt();
+				final int[] categoryToSightings = new int[EItemCategory.values().length];
+				final int categories = input.readInt();
+				for (int j = 0; j < categories; j++) {
+					final String categoryName = input.readUTF();
+					final int sightings = input.readInt();
+					try {
+						categoryToSightings[EItemCategory.valueOf(categoryName).ordinal()] = sightings;
+					} catch (final IllegalArgumentException e) {
+						// The category does not exist anymore
+					}
+				}
+				nameToSightings.put(itemName, new ItemSightings(categoryToSightings, lastSeenTimestamp, typicalCost));
+			}
+			synchronized (this) {
+				this.mNameToSightings.putAll(nameToSightings);
+			}
+			this.mLogger.logInfo("Loaded depot sightings: " + nameToSightings.size());
+		} catch (final IOException e) {
+			this.mLogger.logError("Error while loading depot sightings: " + LoggerUtil.getStackTrace(e));
+		}
+	}
+
+	/**
+	 * Writes the given sightings to the file of the table, replacing it
+	 * atomically.
+	 * 
+	 * @param nameToSightings
+	 *            Data-structure that maps item names to their sightings
+	 * @throws IOException
+	 *             If an I/O-Exception occurred while writing the file
+	 */
+	private void writeFile(final Map<String, ItemSightings> nameToSightings) throws IOException {
+		final Path temporaryPath = Paths.get(this.mFile.toString() + FILEPATH_TEMPORARY_SUFF);
+		final CRC32 checksum = new CRC32();
+		try (final DataOutputStream output = new DataOutputStream(new CheckedOutputStream(
+				new BufferedOutputStream(new FileOutputStream(temporaryPath.toFile())), checksum))) {
+			output.writeInt(MAGIC_NUMBER);
+			output.writeShort(FORMAT_VERSION);
+			output.writeInt(nameToSightings.size());
+			for (final Entry<String, ItemSightings> entry : nameToSightings.entrySet()) {
+				final ItemSightings sightings = entry.getValue();
+				output.writeUTF(entry.getKey());
+				output.writeLong(sightings.getLastSeenTimestamp());
+				output.writeInt(sightings.getTypicalCost());
+
+				// Categories are written by name, such that the file stays
+				// readable if categories are added
+				int categories = 0;
+				for (final EItemCategory category : EItemCategory.values()) {
+					if (sightings.getSightings(category) > 0) {
+						categories++;
+					}
+				}
+				output.writeInt(categories);
+				for (final EItemCategory category : EItemCategory.values()) {
+					if (sightings.getSightings(category) > 0) {
+						output.writeUTF(category.name());
+						output.writeInt(sightings.getSightings(category));
+					}
+				}
+			}
+			output.writeLong(checksum.getValue());
+		}
+
+		try {
+			Files.move(temporaryPath, this.mFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		} catch (final AtomicMoveNotSupportedException e) {
+			Files.move(temporaryPath, this.mFile, StandardCopyOption.REPLACE_EXISTING);
+		}
+	}
+}
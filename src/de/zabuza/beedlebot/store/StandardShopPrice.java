@@ -0,0 +1,136 @@
+package de.zabuza.beedlebot.store;
+
+import java.util.Optional;
+
+/**
+ * Holds the standard shop price of an item as found in the FwWiki, which is
+ * the same in every world. If known, the validators of the wiki page the
+ * price was parsed from are held along with it, such that the price can be
+ * revalidated with a conditional request once it expired.
+ * 
+ * @author Zabuza {@literal <zabuza.dev@gmail.com>}
+ *
+ */
+public final class StandardShopPrice {
+	/**
+	 * The entity tag of the wiki page the price was parsed from or
+	 * <tt>null</tt> if not known.
+	 */
+	private final String mEntityTag;
+	/**
+	 * The last modification date of the wiki page the price was parsed from,
+	 * as sent by the wiki, or <tt>null</tt> if not known.
+	 */
+	private final String mLastModified;
+	/**
+	 * The timestamp of when the standard shop price was looked up.
+	 */
+	private final long mLookupTimestamp;
+	/**
+	 * The standard shop price of the item.
+	 */
+	private final int mPrice;
+
+	/**
+	 * Creates a new standard shop price for an item without validators.
+	 * 
+	 * @param price
+	 *            The standard shop price of the item
+	 * @param lookupTimestamp
+	 *            The timestamp of when the standard shop price was looked up
+	 */
+	public StandardShopPrice(final int price, final long lookupTimestamp) {
+		this(price, lookupTimestamp, null, null);
+	}
+
+	/**
+	 * Creates a new standard shop price for an item.
+	 * 
+	 * @param price
+	 *            The standard shop price of the item
+	 * @param lookupTimestamp
+	 *            The timestamp of when the standard shop price was looked up
+	 * @param entityTag
+	 *            The entity tag of the wiki page the price was parsed from or
+	 *            <tt>null</tt> if not known
+	 * @param lastModified
+	 *            The last modification date of the wiki page the price was
+	 *            parsed from, as sent by the wiki, or <tt>null</tt> if not
+	 *            known
+	 */
+	public StandardShopPrice(final int price, final long lookupTimestamp, final String entityTag,
+			final String lastModified) {
+		this.mPrice = price;
+		this.mLookupTimestamp = lookupTimestamp;
+		this.mEntityTag = entityTag;
+		this.mLastModified = lastModified;
+	}
+
+	/**
+	 * If known gets the entity tag of the wiki page the price was parsed from.
+	 * 
+	 * @return If known the entity tag of the wiki page
+	 */
+	public Optional<String> getEntityTag() {
+		return Optional.ofNullable(this.mEntityTag);
+	}
+
+	/**
+	 * If known gets the last modification date of the wiki page the price was
+	 * parsed from, as sent by the wiki.
+	 * 
+	 * @return If known the last modification date of the wiki page
+	 */
+	public Optional<String> getLastModified() {
+		return Optional.ofNullable(this.mLastModified);
+	}
+
+	/**
+	 * Gets the timestamp of when the standard shop price was looked up.
+	 * 
+	 * @return The timestamp of when the standard shop price was looked up
+	 */
+	public long getLookupTimestamp() {
+		return this.mLookupTimestamp;
+	}
+
+	/**
+	 * Gets the standard shop price of the item.
+	 * 
+	 * @return The standard shop price of the item
+	 */
+	public int getPrice() {
+		return this.mPrice;
+	}
+
+	/**
+	 * Whether validators of the wiki page the price was parsed from are known
+	 * or not.
+	 * 
+	 * @return <tt>True</tt> if the entity tag or the last modification date of
+	 *         the wiki page is known, <tt>false</tt> otherwise
+	 */
+	public boolean hasValidators() {
+		return this.mEntityTag != null || this.mLastModified != null;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see java.lang.Object#toString()
+	 */
+	@Override
+	public String toString() {
+		final StringBuilder builder = new StringBuilder();
+		builder.append("StandardShopPrice [entityTag=");
+		builder.append(this.mEntityTag);
+		builder.append(", lastModified=");
+		builder.append(this.mLastModified);
+		builder.append(", lookupTimestamp=");
+		builder.append(this.mLookupTimestamp);
+		builder.append(", price=");
+		builder.append(this.mPrice);
+		builder.append("]");
+		return builder.toString();
+	}
+}
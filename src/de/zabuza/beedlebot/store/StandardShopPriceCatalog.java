@@ -0,0 +1,198 @@
+package de.zabuza.beedlebot.store;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Optional;
+import java.util.SortedMap;
+import java.util.TreeMap;
+
+import de.zabuza.beedlebot.logging.ILogger;
+import de.zabuza.beedlebot.logging.LoggerFactory;
+import de.zabuza.beedlebot.logging.LoggerUtil;
+
+/**
+ * Read-only catalog of standard shop prices that is bundled with the tool,
+ * such that fresh installations and new worlds do not need to look up known
+ * items at the FwWiki. The catalog is a UTF-8 text file with one
+ * <tt>item name TAB price</tt> entry per line, lines starting with
+ * <tt>#</tt> are comments. It is built from a dump of the wiki by the tool
+ * <tt>StandardShopPriceCatalogBuilder</tt> and loaded into a compact index of
+ * sorted arrays. The class is immutable and thus thread-safe.
+ * 
+ * @author Zabuza {@literal <zabuza.dev@gmail.com>}
+ *
+ */
+public final class StandardShopPriceCatalog {
+	/**
+	 * The path to the file of the bundled catalog.
+	 */
+	public static final String FILEPATH = "res/catalog/standardShopPrices.tsv";
+	/**
+	 * The prefix of comment lines.
+	 */
+	private static final String COMMENT_PREFIX = "#";
+	/**
+	 * The separator between the item name and its price.
+	 */
+	private static final char SEPARATOR = '\t';
+	/**
+	 * Singleton for the bundled catalog instance.
+	 */
+	private static StandardShopPriceCatalog catalogInstance = null;
+
+	/**
+	 * Gets the reference to the bundled catalog instance. The instance is
+	 * loaded from its file on first access, if the file is missing or
+	 * unreadable the catalog is empty.
+	 * 
+	 * @return The reference to the bundled catalog instance
+	 */
+	public static synchronized StandardShopPriceCatalog getInstance() {
+		if (catalogInstance == null) {
+			final ILogger logger = LoggerFactory.getLogger();
+			final SortedMap<String, Integer> nameToStandardShopPrice = new TreeMap<>();
+			try {
+				read(Paths.get(FILEPATH), nameToStandardShopPrice);
+				logger.logInfo("Loaded standard shop price catalog: " + nameToStandardShopPrice.size());
+			} catch (final IOException e) {
+				logger.logError("Error while loading standard shop price catalog: " + LoggerUtil.getStackTrace(e));
+			}
+			catalogInstance = new StandardShopPriceCatalog(nameToStandardShopPrice);
+		}
+
+		return catalogInstance;
+	}
+
+	/**
+	 * Writes the given standard shop prices as catalog to the given file,
+	 * replacing its content.
+	 * 
+	 * @param path
+	 *            The file to write
+	 * @param header
+	 *            Text written as comment at the beginning of the file, one
+	 *            comment line per line of the text
+	 * @param nameToStandardShopPrice
+	 *            Data-structure that maps item names to their standard shop
+	 *            price, names must not contain line breaks or tabulators
+	 * @throws IOException
+	 *             If an I/O-Exception occurred while writing the file
+	 */
+	public static void write(final Path path, final String header,
+			final SortedMap<String, Integer> nameToStandardShopPrice) throws IOException {
+		try (final BufferedWriter writer = Files.newBufferedWriter(path, StandardCharsets.UTF_8)) {
+			for (final String line : header.split("\n")) {
+				writer.write(COMMENT_PREFIX + " " + line);
+				writer.newLine();
+			}
+			for (final Entry<String, Integer> entry : nameToStandardShopPrice.entrySet()) {
+				writer.write(entry.getKey());
+				writer.write(SEPARATOR);
+				writer.write(entry.getValue().toString());
+				writer.newLine();
+			}
+		}
+	}
+
+	/**
+	 * Reads the catalog of the given file.
+	 * 
+	 * @param path
+	 *            The file to read
+	 * @param nameToStandardShopPrice
+	 *            Data-structure to store the read entries in
+	 * @throws IOException
+	 *             If an I/O-Exception occurred while reading the file or if
+	 *             it contains a malformed entry
+	 */
+	private static void read(final Path path, final Map<String, Integer> nameToStandardShopPrice)
+			throws IOException {
+		try (final BufferedReader reader = Files.newBufferedReader(path, StandardCharsets.UTF_8)) {
+			int lineNumber = 0;
+			while (true) {
+				final String line = reader.readLine();
+				if (line == null) {
+					break;
+				}
+				lineNumber++;
+				if (line.isEmpty() || line.startsWith(COMMENT_PREFIX)) {
+					continue;
+				}
+
+				final int separatorIndex = line.lastIndexOf(SEPARATOR);
+				if (separatorIndex <= 0) {
+					throw new IOException("Malformed catalog entry in line " + lineNumber + ": " + line);
+				}
+				try {
+					nameToStandardShopPrice.put(line.substring(0, separatorIndex),
+							Integer.valueOf(line.substring(separatorIndex + 1).trim()));
+				} catch (final NumberFormatException e) {
+					throw new IOException("Malformed catalog entry in line " + lineNumber + ": " + line, e);
+				}
+			}
+		}
+	}
+
+	/**
+	 * The names of all items of the catalog in ascending order.
+	 */
+	private final String[] mItemNames;
+	/**
+	 * The standard shop prices of the items, at the index of the name of
+	 * their item in {@link #mItemNames}.
+	 */
+	private final int[] mPrices;
+
+	/**
+	 * Creates a new catalog of the given standard shop prices. Use
+	 * {@link #getInstance()} to get the bundled catalog.
+	 * 
+	 * @param nameToStandardShopPrice
+	 *            Data-structure that maps item names to their standard shop
+	 *            price, in ascending order of the names
+	 */
+	StandardShopPriceCatalog(final SortedMap<String, Integer> nameToStandardShopPrice) {
+		this.mItemNames = new String[nameToStandardShopPrice.size()];
+		this.mPrices = new int[nameToStandardShopPrice.size()];
+		int index = 0;
+		for (final Entry<String, Integer> entry : nameToStandardShopPrice.entrySet()) {
+			this.mItemNames[index] = entry.getKey();
+			this.mPrices[index] = entry.getValue().intValue();
+			index++;
+		}
+	}
+
+	/**
+	 * If contained gets the standard shop price of the item with the given
+	 * name.
+	 * 
+	 * @param itemName
+	 *            The unique representation name of the item, see
+	 *            {@link ItemDictionary#applyItemNamePatterns(String)}
+	 * @return If contained the standard shop price of the item
+	 */
+	public Optional<Integer> getStandardShopPrice(final String itemName) {
+		final int index = Arrays.binarySearch(this.mItemNames, itemName);
+		if (index < 0) {
+			return Optional.empty();
+		}
+		return Optional.of(Integer.valueOf(this.mPrices[index]));
+	}
+
+	/**
+	 * Gets the amount of items contained in the catalog.
+	 * 
+	 * @return The amount of items contained in the catalog
+	 */
+	public int size() {
+		return this.mItemNames.length;
+	}
+}
@@ -1,11 +1,26 @@
 package de.zabuza.beedlebot.store;
 
-import java.io.BufferedReader;
 import java.io.IOException;
-import java.io.InputStreamReader;
+import java.net.HttpURLConnection;
 import java.net.MalformedURLException;
 import java.net.URL;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
 import java.util.Optional;
+import java.util.Set;
+import java.util.StringJoiner;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParseException;
+import com.google.gson.JsonParser;
 
 import de.zabuza.beedlebot.exceptions.StandardShopPriceServiceUnavailableException;
 import de.zabuza.beedlebot.logging.ILogger;
@@ -13,29 +28,111 @@ import de.zabuza.beedlebot.logging.LoggerFactory;
 
 /**
  * Service which finds standard shop prices for given items. Use
- * {@link #findStandardShopPrice(String)} to access the service.
+ * {@link #findStandardShopPrice(String)} or
+ * {@link #findStandardShopPrices(Collection)} to access the service. Single
+ * pages are fetched as raw wiki text. The validators of fetched pages are
+ * stored along with the price in the {@link StandardShopPriceStore}, such that
+ * expired prices are revalidated with conditional requests and only refetched
+ * if their page changed. Several pages are fetched at once with the query
+ * module of the MediaWiki API. Fetched pages are kept in the
+ * {@link RawPageArchive}, such that prices can be extracted again offline.
  * 
  * @author Zabuza {@literal <zabuza.dev@gmail.com>}
  *
  */
 public final class StandardShopPriceFinder {
 	/**
-	 * First pattern that matches the end of the standard shop price content.
+	 * The file of the MediaWiki API on the server of the service.
+	 */
+	private static final String API_FILE = "api.php";
+	/**
+	 * The query to send to the API for fetching the content of several pages,
+	 * followed by the titles of the pages.
+	 */
+	private static final String API_QUERY_PRE = "?action=query&format=json&prop=revisions&rvprop=content&titles=";
+	/**
+	 * The maximal amount of titles the API accepts in one request.
+	 */
+	private static final int BATCH_TITLES_MAX = 50;
+	/**
+	 * The time in milliseconds the result of a completed fetch is shared with
+	 * back-to-back lookups of the same item.
+	 */
+	private static final long FETCH_RETENTION = 60_000;
+	/**
+	 * The name of the response header that contains the entity tag of a page.
+	 */
+	private static final String HEADER_ENTITY_TAG = "ETag";
+	/**
+	 * The name of the request header that makes a request conditional on the
+	 * last modification date of a page.
+	 */
+	private static final String HEADER_IF_MODIFIED_SINCE = "If-Modified-Since";
+	/**
+	 * The name of the request header that makes a request conditional on the
+	 * entity tag of a page.
+	 */
+	private static final String HEADER_IF_NONE_MATCH = "If-None-Match";
+	/**
+	 * The name of the response header that contains the last modification
+	 * date of a page.
+	 */
+	private static final String HEADER_LAST_MODIFIED = "Last-Modified";
+	/**
+	 * The key of the content of a revision in answers of the API in format
+	 * version 2.
+	 */
+	private static final String KEY_CONTENT = "content";
+	/**
+	 * The key of the content of a revision in answers of the API in format
+	 * version 1.
+	 */
+	private static final String KEY_CONTENT_LEGACY = "*";
+	/**
+	 * The key of the source title of a title normalization.
+	 */
+	private static final String KEY_FROM = "from";
+	/**
+	 * The key of the flag that marks a page as invalid.
+	 */
+	private static final String KEY_INVALID = "invalid";
+	/**
+	 * The key of the flag that marks a page as missing.
+	 */
+	private static final String KEY_MISSING = "missing";
+	/**
+	 * The key of the title normalizations the API applied to the requested
+	 * titles.
 	 */
-	private static final String CONTENT_END_PATTERN_FIRST = "|";
+	private static final String KEY_NORMALIZED = "normalized";
 	/**
-	 * Second pattern that matches the end of the standard shop price content.
+	 * The key of the pages of an answer of the API.
 	 */
-	private static final String CONTENT_END_PATTERN_SECOND = "}";
+	private static final String KEY_PAGES = "pages";
 	/**
-	 * Pattern that if present indicates that the item is a pet and should be
-	 * ignored, yielding a standard shop price of <tt>zero</tt>.
+	 * The key of the result of a query of the API.
 	 */
-	private static final String CONTENT_IGNORE_PET_PATTERN = "{{NPC/Layout|";
+	private static final String KEY_QUERY = "query";
 	/**
-	 * Pattern that matches the start of the standard shop price content.
+	 * The key of the revisions of a page.
 	 */
-	private static final String CONTENT_START_PATTERN = "|VerkPreis=";
+	private static final String KEY_REVISIONS = "revisions";
+	/**
+	 * The key of the title of a page.
+	 */
+	private static final String KEY_TITLE = "title";
+	/**
+	 * The key of the target title of a title normalization.
+	 */
+	private static final String KEY_TO = "to";
+	/**
+	 * The separator between titles in a query of the API, URL encoded.
+	 */
+	private static final String QUERY_TITLE_SEPARATOR = "%7C";
+	/**
+	 * The file on the server of the service that serves single pages.
+	 */
+	private static final String SERVER_FILE = "index.php";
 	/**
 	 * The prefix of the query to send to the server.
 	 */
@@ -43,16 +140,75 @@ public final class StandardShopPriceFinder {
 	/**
 	 * The suffix of the query to send to the server.
 	 */
-	private static final String SERVER_QUERY_SUFF = "&action=edit";
+	private static final String SERVER_QUERY_SUFF = "&action=raw";
 	/**
-	 * The URL of the service to use.
+	 * The URL of the server of the service to use.
 	 */
-	private static final String SERVER_URL = "http://www.fwwiki.de/index.php";
+	private static final String WIKI_URL = "http://www.fwwiki.de/";
+
 	/**
-	 * Pattern that matches symbols to strip from integers before parsing them.
+	 * If present gets the content of the latest revision of the given page of
+	 * an answer of the API.
+	 * 
+	 * @param page
+	 *            The page of the answer
+	 * @return If present the content of the latest revision of the page
 	 */
-	private static final String STRIP_INTEGER_PATTERN = "[\\s\\.,]";
+	private static Optional<String> getContent(final JsonObject page) {
+		if (!page.has(KEY_REVISIONS) || !page.get(KEY_REVISIONS).isJsonArray()) {
+			return Optional.empty();
+		}
+		final JsonArray revisions = page.getAsJsonArray(KEY_REVISIONS);
+		if (revisions.size() == 0) {
+			return Optional.empty();
+		}
 
+		final JsonObject revision = revisions.get(0).getAsJsonObject();
+		if (revision.has(KEY_CONTENT)) {
+			return Optional.of(revision.get(KEY_CONTENT).getAsString());
+		}
+		if (revision.has(KEY_CONTENT_LEGACY)) {
+			return Optional.of(revision.get(KEY_CONTENT_LEGACY).getAsString());
+		}
+		return Optional.empty();
+	}
+
+	/**
+	 * Whether the given answer to a batch request definitely indicates that
+	 * the API does not support batch requests. Other failures, like errors of
+	 * the server or throttling answers, are temporary and do not count.
+	 * 
+	 * @param response
+	 *            The answer to a batch request
+	 * @return <tt>True</tt> if the API does not support batch requests,
+	 *         <tt>false</tt> if not
+	 */
+	private static boolean isBatchUnsupported(final HttpResponse response) {
+		final int statusCode = response.getStatusCode();
+		return statusCode == HttpURLConnection.HTTP_BAD_REQUEST || statusCode == HttpURLConnection.HTTP_NOT_FOUND
+				|| statusCode == HttpURLConnection.HTTP_NOT_IMPLEMENTED;
+	}
+
+	/**
+	 * The bundled catalog of standard shop prices, consulted before the
+	 * service.
+	 */
+	private final StandardShopPriceCatalog mCatalog;
+	/**
+	 * The client to use for sending requests.
+	 */
+	private final StoreHttpClient mHttpClient;
+	/**
+	 * Table of outstanding fetches, keyed by the unique representation name of
+	 * the item.
+	 */
+	private final InFlightTable<Optional<Integer>> mInFlightFetches;
+	/**
+	 * Whether the API is assumed to support batch requests or not. This is the
+	 * case until the API answered a batch request with a status code that
+	 * indicates that batch requests are not supported.
+	 */
+	private volatile boolean mIsBatchSupported;
 	/**
 	 * The dictionary to use for exceptional items.
 	 */
@@ -61,21 +217,84 @@ public final class StandardShopPriceFinder {
 	 * The logger to use for logging.
 	 */
 	private final ILogger mLogger;
+	/**
+	 * The global archive to keep fetched pages in.
+	 */
+	private final RawPageArchive mRawPageArchive;
+	/**
+	 * The global store of standard shop prices which holds the validators of
+	 * fetched pages.
+	 */
+	private final StandardShopPriceStore mStandardShopPriceStore;
+	/**
+	 * The URL of the server of the service to use, ending with a slash.
+	 */
+	private final String mWikiUrl;
 
 	/**
 	 * Creates a new standard shop price finder which is able to find standard
-	 * shop prices for given items.
+	 * shop prices for given items by using the FwWiki.
 	 * 
 	 * @param itemDictionary
 	 *            The dictionary to use for exceptional items
+	 * @param catalog
+	 *            The bundled catalog of standard shop prices, consulted
+	 *            before the service
+	 * @param standardShopPriceStore
+	 *            The global store of standard shop prices which holds the
+	 *            validators of fetched pages
+	 * @param rawPageArchive
+	 *            The global archive to keep fetched pages in
+	 * @param httpClient
+	 *            The client to use for sending requests
 	 */
-	public StandardShopPriceFinder(final ItemDictionary itemDictionary) {
+	public StandardShopPriceFinder(final ItemDictionary itemDictionary, final StandardShopPriceCatalog catalog,
+			final StandardShopPriceStore standardShopPriceStore, final RawPageArchive rawPageArchive,
+			final StoreHttpClient httpClient) {
+		this(itemDictionary, catalog, standardShopPriceStore, rawPageArchive, httpClient, WIKI_URL);
+	}
+
+	/**
+	 * Creates a new standard shop price finder which is able to find standard
+	 * shop prices for given items by using the wiki on the given server.
+	 * 
+	 * @param itemDictionary
+	 *            The dictionary to use for exceptional items
+	 * @param catalog
+	 *            The bundled catalog of standard shop prices, consulted
+	 *            before the service
+	 * @param standardShopPriceStore
+	 *            The global store of standard shop prices which holds the
+	 *            validators of fetched pages
+	 * @param rawPageArchive
+	 *            The global archive to keep fetched pages in
+	 * @param httpClient
+	 *            The client to use for sending requests
+	 * @param wikiUrl
+	 *            URL to the server of the wiki that provides the pages of the
+	 *            items and the MediaWiki API. It must end with a slash.
+	 */
+	public StandardShopPriceFinder(final ItemDictionary itemDictionary, final StandardShopPriceCatalog catalog,
+			final StandardShopPriceStore standardShopPriceStore, final RawPageArchive rawPageArchive,
+			final StoreHttpClient httpClient, final String wikiUrl) {
 		this.mItemDictionary = itemDictionary;
+		this.mCatalog = catalog;
+		this.mWikiUrl = wikiUrl;
+		this.mStandardShopPriceStore = standardShopPriceStore;
+		this.mRawPageArchive = rawPageArchive;
+		this.mIsBatchSupported = true;
+		this.mHttpClient = httpClient;
+		this.mInFlightFetches = new InFlightTable<>(FETCH_RETENTION);
 		this.mLogger = LoggerFactory.getLogger();
 	}
 
 	/**
 	 * Tries to find the standard shop price of the item with the given name.
+	 * Only items neither contained in the dictionary nor in the bundled
+	 * catalog are fetched from the service.
+	 * Lookups of items with the same unique representation name, see
+	 * {@link ItemDictionary#applyItemNamePatterns(String)}, that run
+	 * concurrently or back-to-back share one fetch.
 	 * 
 	 * @param itemName
 	 *            The name of the item to find its standard shop price
@@ -91,82 +310,461 @@ public final class StandardShopPriceFinder {
 			this.mLogger.logDebug("Finding standard shop price: " + itemName);
 		}
 
-		Integer shopPrice = null;
-
 		final String parsedItemName = this.mItemDictionary.applyItemNamePatterns(itemName);
 
-		// Process exceptional items
-		if (this.mItemDictionary.containsStandardShopPrice(parsedItemName)) {
-			return this.mItemDictionary.getStandardShopPrice(parsedItemName);
+		final Optional<Integer> knownShopPrice = findKnownStandardShopPrice(parsedItemName);
+		if (knownShopPrice.isPresent()) {
+			return knownShopPrice;
+		}
+
+		// Share the fetch with other lookups of the same item
+		final SharedFetch<Optional<Integer>> fetch = new SharedFetch<>();
+		final Optional<SharedFetch<Optional<Integer>>> sharedFetch = this.mInFlightFetches.register(parsedItemName,
+				fetch);
+		if (sharedFetch.isPresent()) {
+			if (this.mLogger.isDebugEnabled()) {
+				this.mLogger.logDebug("Sharing standard shop price fetch: " + parsedItemName);
+			}
+			return sharedFetch.get().await();
+		}
+
+		try {
+			final Optional<Integer> shopPrice = fetchStandardShopPrice(parsedItemName);
+			this.mInFlightFetches.complete(fetch, shopPrice);
+			return shopPrice;
+		} catch (final RuntimeException | Error e) {
+			this.mInFlightFetches.fail(parsedItemName, fetch, e);
+			throw e;
+		}
+	}
+
+	/**
+	 * Tries to find the standard shop prices of all items with the given
+	 * names. Items that are neither contained in the dictionary nor in the
+	 * bundled catalog are fetched with batch requests of up to
+	 * {@link #BATCH_TITLES_MAX} pages to the API. If the API does not support
+	 * batch requests the method falls back to single requests and uses this
+	 * mode for all further requests. If the API sends an answer that can not
+	 * be parsed, only the items of this batch are fetched with single
+	 * requests. Items with the same unique representation name are only
+	 * fetched once and fetches are shared with concurrent lookups, like
+	 * {@link #findStandardShopPrice(String)} does.
+	 * 
+	 * @param itemNames
+	 *            The names of the items to find their standard shop prices
+	 * @return Data-structure which maps item names to their standard shop
+	 *         price. Items without a standard shop price are not contained.
+	 * @throws StandardShopPriceServiceUnavailableException
+	 *             When the service used to fetch standard shop price data is
+	 *             unavailable such that a connection could not be established
+	 *             or when it answered with an error or a throttling answer
+	 */
+	public Map<String, Integer> findStandardShopPrices(final Collection<String> itemNames)
+			throws StandardShopPriceServiceUnavailableException {
+		if (this.mLogger.isDebugEnabled()) {
+			this.mLogger.logDebug("Finding standard shop prices: " + itemNames);
+		}
+
+		// Resolve the unique representation names and the known prices
+		final Map<String, String> nameToParsedName = new LinkedHashMap<>();
+		final Map<String, Optional<Integer>> parsedNameToShopPrice = new HashMap<>();
+		final Set<String> parsedItemNamesToFetch = new LinkedHashSet<>();
+		for (final String itemName : itemNames) {
+			final String parsedItemName = this.mItemDictionary.applyItemNamePatterns(itemName);
+			nameToParsedName.put(itemName, parsedItemName);
+			if (parsedNameToShopPrice.containsKey(parsedItemName)) {
+				continue;
+			}
+			final Optional<Integer> knownShopPrice = findKnownStandardShopPrice(parsedItemName);
+			if (knownShopPrice.isPresent()) {
+				parsedNameToShopPrice.put(parsedItemName, knownShopPrice);
+			} else {
+				parsedItemNamesToFetch.add(parsedItemName);
+			}
 		}
 
-		final String itemToUrl = parsedItemName.replaceAll("\\s", "_");
+		// Share fetches with other lookups of the same items
+		final Map<String, SharedFetch<Optional<Integer>>> parsedNameToFetch = new LinkedHashMap<>();
+		final Map<String, SharedFetch<Optional<Integer>>> parsedNameToSharedFetch = new LinkedHashMap<>();
+		for (final String parsedItemName : parsedItemNamesToFetch) {
+			final SharedFetch<Optional<Integer>> fetch = new SharedFetch<>();
+			final Optional<SharedFetch<Optional<Integer>>> sharedFetch = this.mInFlightFetches
+					.register(parsedItemName, fetch);
+			if (sharedFetch.isPresent()) {
+				parsedNameToSharedFetch.put(parsedItemName, sharedFetch.get());
+			} else {
+				parsedNameToFetch.put(parsedItemName, fetch);
+			}
+		}
+
+		if (!parsedNameToFetch.isEmpty()) {
+			try {
+				parsedNameToShopPrice.putAll(fetchStandardShopPrices(parsedNameToFetch.keySet()));
+			} catch (final RuntimeException | Error e) {
+				for (final Entry<String, SharedFetch<Optional<Integer>>> entry : parsedNameToFetch.entrySet()) {
+					this.mInFlightFetches.fail(entry.getKey(), entry.getValue(), e);
+				}
+				throw e;
+			}
+			for (final Entry<String, SharedFetch<Optional<Integer>>> entry : parsedNameToFetch.entrySet()) {
+				this.mInFlightFetches.complete(entry.getValue(), parsedNameToShopPrice.get(entry.getKey()));
+			}
+		}
+		for (final Entry<String, SharedFetch<Optional<Integer>>> entry : parsedNameToSharedFetch.entrySet()) {
+			parsedNameToShopPrice.put(entry.getKey(), entry.getValue().await());
+		}
+
+		final Map<String, Integer> nameToShopPrice = new HashMap<>();
+		for (final Entry<String, String> entry : nameToParsedName.entrySet()) {
+			final Optional<Integer> shopPrice = parsedNameToShopPrice.get(entry.getValue());
+			if (shopPrice.isPresent()) {
+				nameToShopPrice.put(entry.getKey(), shopPrice.get());
+			}
+		}
+		return nameToShopPrice;
+	}
+
+	/**
+	 * Gets the amount of lookups that shared the outstanding fetch of another
+	 * lookup of the same item instead of sending their own request.
+	 * 
+	 * @return The amount of lookups that shared a fetch
+	 */
+	public long getSharedFetches() {
+		return this.mInFlightFetches.getSharedFetches();
+	}
+
+	/**
+	 * Whether the API is assumed to support batch requests as used by
+	 * {@link #findStandardShopPrices(Collection)} or not. This is the case
+	 * until the API answered a batch request with a status code that
+	 * indicates that batch requests are not supported.
+	 * 
+	 * @return <tt>True</tt> if the API is assumed to support batch requests,
+	 *         <tt>false</tt> if not
+	 */
+	public boolean isBatchSupported() {
+		return this.mIsBatchSupported;
+	}
+
+	/**
+	 * Fetches the standard shop price of the item with the given name from
+	 * the service. If validators of its page are known, the request is
+	 * conditional and an unchanged page only extends the known price. Fetched
+	 * prices are stored in the global store along with the validators of
+	 * their page, fetched pages are archived.
+	 * 
+	 * @param parsedItemName
+	 *            The unique representation name of the item, see
+	 *            {@link ItemDictionary#applyItemNamePatterns(String)}
+	 * @return If present the standard shop price of the given item, if not
+	 *         present there is no
+	 * @throws StandardShopPriceServiceUnavailableException
+	 *             When the service used to fetch standard shop price data is
+	 *             unavailable such that a connection could not be established
+	 */
+	private Optional<Integer> fetchStandardShopPrice(final String parsedItemName)
+			throws StandardShopPriceServiceUnavailableException {
+		// Titles need to be encoded, else non-ASCII characters are sent as '?'
+		final String itemToUrl = StoreUtil.encodeUtf8(parsedItemName.replaceAll("\\s", "_"));
 		URL url;
 		try {
-			url = new URL(SERVER_URL + SERVER_QUERY_PRE + itemToUrl + SERVER_QUERY_SUFF);
+			url = new URL(this.mWikiUrl + SERVER_FILE + SERVER_QUERY_PRE + itemToUrl + SERVER_QUERY_SUFF);
 		} catch (final MalformedURLException e) {
 			throw new StandardShopPriceServiceUnavailableException(e);
 		}
 
-		try (final BufferedReader br = new BufferedReader(new InputStreamReader(url.openStream()))) {
-			// Find shop price parameter
-			final StringBuilder shopPriceContent = new StringBuilder();
-			int startIndex = -1;
-			while (br.ready()) {
-				final String line = br.readLine();
-				if (line == null) {
-					break;
-				}
+		// Revalidate the known price if its page has validators
+		final Optional<StandardShopPrice> knownStandardShopPrice = this.mStandardShopPriceStore
+				.getStandardShopPrice(parsedItemName);
+		final Map<String, String> requestHeaders = new HashMap<>();
+		if (knownStandardShopPrice.isPresent()) {
+			final Optional<String> entityTag = knownStandardShopPrice.get().getEntityTag();
+			if (entityTag.isPresent()) {
+				requestHeaders.put(HEADER_IF_NONE_MATCH, entityTag.get());
+			}
+			final Optional<String> lastModified = knownStandardShopPrice.get().getLastModified();
+			if (lastModified.isPresent()) {
+				requestHeaders.put(HEADER_IF_MODIFIED_SINCE, lastModified.get());
+			}
+		}
 
-				// The item is a pet
-				if (line.indexOf(CONTENT_IGNORE_PET_PATTERN) != -1) {
-					return Optional.of(Integer.valueOf(0));
-				}
+		final HttpResponse response;
+		try {
+			response = this.mHttpClient.get(url, requestHeaders);
+		} catch (final IOException e) {
+			throw new StandardShopPriceServiceUnavailableException(e);
+		}
+		final long lookupTimestamp = System.currentTimeMillis();
 
-				startIndex = line.indexOf(CONTENT_START_PATTERN);
+		if (response.isNotModified() && !requestHeaders.isEmpty()) {
+			final StandardShopPrice standardShopPrice = knownStandardShopPrice.get();
+			if (this.mLogger.isDebugEnabled()) {
+				this.mLogger.logDebug("Standard shop price not modified: " + parsedItemName);
+			}
+			// The response may update the validators
+			final String entityTag = response.getHeader(HEADER_ENTITY_TAG)
+					.orElse(standardShopPrice.getEntityTag().orElse(null));
+			final String lastModified = response.getHeader(HEADER_LAST_MODIFIED)
+					.orElse(standardShopPrice.getLastModified().orElse(null));
+			this.mStandardShopPriceStore.putStandardShopPrice(parsedItemName,
+					new StandardShopPrice(standardShopPrice.getPrice(), lookupTimestamp, entityTag, lastModified));
+			return Optional.of(Integer.valueOf(standardShopPrice.getPrice()));
+		}
+		// The raw page of an item that has no page does not exist
+		if (response.getStatusCode() == HttpURLConnection.HTTP_NOT_FOUND) {
+			return Optional.empty();
+		}
+		if (!response.isSuccessful()) {
+			throw new StandardShopPriceServiceUnavailableException(
+					new IOException("Unexpected answer of " + url + ": " + response));
+		}
 
-				if (startIndex != -1) {
-					// Add rest of line
-					shopPriceContent.append(line.substring(startIndex + CONTENT_START_PATTERN.length()));
-					break;
-				}
+		final String entityTag = response.getHeader(HEADER_ENTITY_TAG).orElse(null);
+		final String lastModified = response.getHeader(HEADER_LAST_MODIFIED).orElse(null);
+		final String pageContent;
+		final Optional<Integer> shopPrice;
+		try {
+			pageContent = response.getBodyAsText();
+			// Archive the page before parsing it, such that a page the
+			// parser fails on can be extracted again once it was fixed
+			this.mRawPageArchive.archive(parsedItemName, pageContent, lookupTimestamp, entityTag, lastModified);
+			shopPrice = StandardShopPriceParser.parseStandardShopPrice(pageContent);
+		} catch (final IOException e) {
+			throw new StandardShopPriceServiceUnavailableException(e);
+		}
+		if (shopPrice.isPresent()) {
+			this.mStandardShopPriceStore.putStandardShopPrice(parsedItemName,
+					new StandardShopPrice(shopPrice.get().intValue(), lookupTimestamp, entityTag, lastModified));
+		}
+		return shopPrice;
+	}
+
+	/**
+	 * Fetches the standard shop prices of the items with the given names from
+	 * the service. Uses batch requests to the API while it supports them,
+	 * items the API did not answer are fetched with single requests.
+	 * 
+	 * @param parsedItemNames
+	 *            The unique representation names of the items, see
+	 *            {@link ItemDictionary#applyItemNamePatterns(String)}
+	 * @return Data-structure which maps all given names to their standard
+	 *         shop price, if not present there is no
+	 * @throws StandardShopPriceServiceUnavailableException
+	 *             When the service used to fetch standard shop price data is
+	 *             unavailable such that a connection could not be established
+	 */
+	private Map<String, Optional<Integer>> fetchStandardShopPrices(final Collection<String> parsedItemNames)
+			throws StandardShopPriceServiceUnavailableException {
+		final Map<String, Optional<Integer>> parsedNameToShopPrice = new HashMap<>();
+
+		final List<String> batch = new ArrayList<>(BATCH_TITLES_MAX);
+		for (final String parsedItemName : parsedItemNames) {
+			if (!this.mIsBatchSupported) {
+				break;
 			}
-			if (startIndex == -1) {
+			batch.add(parsedItemName);
+			if (batch.size() < BATCH_TITLES_MAX) {
+				continue;
+			}
+			requestBatch(batch, parsedNameToShopPrice);
+			batch.clear();
+		}
+		if (this.mIsBatchSupported && !batch.isEmpty()) {
+			requestBatch(batch, parsedNameToShopPrice);
+		}
+
+		// Fall back to single requests
+		for (final String parsedItemName : parsedItemNames) {
+			if (!parsedNameToShopPrice.containsKey(parsedItemName)) {
+				parsedNameToShopPrice.put(parsedItemName, fetchStandardShopPrice(parsedItemName));
+			}
+		}
+		return parsedNameToShopPrice;
+	}
+
+	/**
+	 * If present gets the standard shop price of the given item without
+	 * fetching it, i.e. from the dictionary or the bundled catalog.
+	 * 
+	 * @param parsedItemName
+	 *            The unique representation name of the item, see
+	 *            {@link ItemDictionary#applyItemNamePatterns(String)}
+	 * @return If present the known standard shop price of the given item, if
+	 *         not present it needs to be fetched
+	 */
+	private Optional<Integer> findKnownStandardShopPrice(final String parsedItemName) {
+		// Process exceptional items
+		if (this.mItemDictionary.containsStandardShopPrice(parsedItemName)) {
+			return this.mItemDictionary.getStandardShopPrice(parsedItemName);
+		}
+
+		// Items of the bundled catalog do not need to be fetched
+		return this.mCatalog.getStandardShopPrice(parsedItemName);
+	}
+
+	/**
+	 * Sends one batch request to the API and stores the standard shop prices
+	 * of all answered items. Items that are not answered need to be fetched
+	 * with single requests.
+	 * 
+	 * @param parsedItemNames
+	 *            The unique representation names of the items, at most
+	 *            {@link #BATCH_TITLES_MAX}
+	 * @param parsedNameToShopPrice
+	 *            Data-structure to store the standard shop prices of the
+	 *            answered items in
+	 * @throws StandardShopPriceServiceUnavailableException
+	 *             When the service used to fetch standard shop price data is
+	 *             unavailable such that a connection could not be established
+	 */
+	private void requestBatch(final List<String> parsedItemNames,
+			final Map<String, Optional<Integer>> parsedNameToShopPrice)
+			throws StandardShopPriceServiceUnavailableException {
+		final Optional<Map<String, Optional<Integer>>> batchResult = requestStandardShopPrices(parsedItemNames);
+		if (!batchResult.isPresent()) {
+			return;
+		}
+
+		final long lookupTimestamp = System.currentTimeMillis();
+		for (final Entry<String, Optional<Integer>> entry : batchResult.get().entrySet()) {
+			parsedNameToShopPrice.put(entry.getKey(), entry.getValue());
+			if (entry.getValue().isPresent()) {
+				this.mStandardShopPriceStore.putStandardShopPrice(entry.getKey(),
+						new StandardShopPrice(entry.getValue().get().intValue(), lookupTimestamp));
+			}
+		}
+	}
+
+	/**
+	 * Requests the content of the pages of the given items with one request to
+	 * the API, archives the pages and parses their standard shop prices. If
+	 * the API does not support batch requests, batch requests are disabled for
+	 * all further requests.
+	 * 
+	 * @param parsedItemNames
+	 *            The unique representation names of the items, at most
+	 *            {@link #BATCH_TITLES_MAX}
+	 * @return If present data-structure which maps the names of all answered
+	 *         items to their standard shop price, if not present there is no
+	 *         or it can not be parsed from its page.
+	 *         If not present the API does not support batch requests or sent
+	 *         an answer that can not be parsed.
+	 * @throws StandardShopPriceServiceUnavailableException
+	 *             When the service used to fetch standard shop price data is
+	 *             unavailable such that a connection could not be established
+	 *             or when it answered with an error or a throttling answer
+	 */
+	private Optional<Map<String, Optional<Integer>>> requestStandardShopPrices(
+			final Collection<String> parsedItemNames) throws StandardShopPriceServiceUnavailableException {
+		try {
+			final StringJoiner titles = new StringJoiner(QUERY_TITLE_SEPARATOR);
+			for (final String parsedItemName : parsedItemNames) {
+				titles.add(StoreUtil.encodeUtf8(parsedItemName));
+			}
+			final URL url = new URL(this.mWikiUrl + API_FILE + API_QUERY_PRE + titles.toString());
+
+			final HttpResponse response = this.mHttpClient.get(url);
+			if (isBatchUnsupported(response)) {
+				this.mLogger.logInfo("Standard shop price batch service unsupported, falling back to single requests: "
+						+ response);
+				this.mIsBatchSupported = false;
 				return Optional.empty();
 			}
+			if (!response.isSuccessful()) {
+				// Errors of the server and throttling are temporary, the batch
+				// service is used again by the next call
+				throw new IOException("Unexpected answer of " + url + ": " + response);
+			}
 
-			// Find shop price parameter ending
-			int endIndex = -1;
-			while (br.ready()) {
-				final String line = br.readLine();
-				if (line == null) {
-					break;
-				}
-				endIndex = line.indexOf(CONTENT_END_PATTERN_FIRST);
-				if (endIndex == -1) {
-					// Try next pattern
-					endIndex = line.indexOf(CONTENT_END_PATTERN_SECOND);
+			JsonElement answer;
+			try {
+				answer = new JsonParser().parse(response.getBodyAsText());
+			} catch (final JsonParseException e) {
+				answer = null;
+			}
+			if (answer == null || !answer.isJsonObject() || !answer.getAsJsonObject().has(KEY_QUERY)
+					|| !answer.getAsJsonObject().get(KEY_QUERY).isJsonObject()) {
+				this.mLogger.logError(
+						"Unparsable answer of standard shop price batch service, using single requests: " + response);
+				return Optional.empty();
+			}
+			final JsonObject query = answer.getAsJsonObject().getAsJsonObject(KEY_QUERY);
+
+			// The API normalizes titles, for example by capitalizing them
+			final Map<String, String> titleToNormalizedTitle = new HashMap<>();
+			if (query.has(KEY_NORMALIZED) && query.get(KEY_NORMALIZED).isJsonArray()) {
+				for (final JsonElement normalization : query.getAsJsonArray(KEY_NORMALIZED)) {
+					final JsonObject normalizationObject = normalization.getAsJsonObject();
+					titleToNormalizedTitle.put(normalizationObject.get(KEY_FROM).getAsString(),
+							normalizationObject.get(KEY_TO).getAsString());
 				}
+			}
 
-				if (endIndex != -1) {
-					// Add beginning of line
-					shopPriceContent.append(line.substring(0, endIndex));
-					break;
+			// Pages are an array in format version 2 and an object keyed by
+			// their id in format version 1
+			final List<JsonElement> pages = new ArrayList<>();
+			final JsonElement pagesElement = query.get(KEY_PAGES);
+			if (pagesElement != null && pagesElement.isJsonArray()) {
+				for (final JsonElement page : pagesElement.getAsJsonArray()) {
+					pages.add(page);
+				}
+			} else if (pagesElement != null && pagesElement.isJsonObject()) {
+				for (final Entry<String, JsonElement> page : pagesElement.getAsJsonObject().entrySet()) {
+					pages.add(page.getValue());
 				}
-				// Add whole line
-				shopPriceContent.append(line);
 			}
-			if (endIndex == -1) {
-				return Optional.empty();
+
+			final Map<String, Optional<String>> titleToContent = new HashMap<>();
+			for (final JsonElement page : pages) {
+				final JsonObject pageObject = page.getAsJsonObject();
+				if (!pageObject.has(KEY_TITLE)) {
+					continue;
+				}
+				final String title = pageObject.get(KEY_TITLE).getAsString();
+				if (pageObject.has(KEY_MISSING) || pageObject.has(KEY_INVALID)) {
+					titleToContent.put(title, Optional.empty());
+					continue;
+				}
+				final Optional<String> content = getContent(pageObject);
+				if (content.isPresent()) {
+					titleToContent.put(title, content);
+				}
 			}
 
-			// Price extracted, format it
-			final String shopPriceText = shopPriceContent.toString();
-			shopPrice = new Integer(shopPriceText.replaceAll(STRIP_INTEGER_PATTERN, ""));
+			final long fetchTimestamp = System.currentTimeMillis();
+			final Map<String, Optional<Integer>> parsedNameToShopPrice = new HashMap<>();
+			for (final String parsedItemName : parsedItemNames) {
+				String title = parsedItemName;
+				if (titleToNormalizedTitle.containsKey(title)) {
+					title = titleToNormalizedTitle.get(title);
+				}
+				final Optional<String> content = titleToContent.get(title);
+				if (content == null) {
+					continue;
+				}
+				if (!content.isPresent()) {
+					parsedNameToShopPrice.put(parsedItemName, Optional.empty());
+					continue;
+				}
+				this.mRawPageArchive.archive(parsedItemName, content.get(), fetchTimestamp, null, null);
+				// A page whose price can not be parsed must not discard the
+				// other pages of the batch, it stays archived for re-extraction
+				try {
+					parsedNameToShopPrice.put(parsedItemName,
+							StandardShopPriceParser.parseStandardShopPrice(content.get()));
+				} catch (final NumberFormatException e) {
+					this.mLogger.logError("Unparsable standard shop price on page of " + parsedItemName + ": " + e);
+					parsedNameToShopPrice.put(parsedItemName, Optional.empty());
+				}
+			}
+			return Optional.of(parsedNameToShopPrice);
 		} catch (final IOException e) {
 			throw new StandardShopPriceServiceUnavailableException(e);
+		} catch (final IllegalStateException | ClassCastException | UnsupportedOperationException e) {
+			this.mLogger.logError("Answer of standard shop price batch service has an unexpected structure, "
+					+ "using single requests: " + e);
+			return Optional.empty();
 		}
-
-		return Optional.of(shopPrice);
 	}
 }
@@ -0,0 +1,119 @@
+package de.zabuza.beedlebot.store;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.Optional;
+
+/**
+ * Utility class that parses the standard shop price out of the content of an
+ * item page of the FwWiki. Shared by the {@link StandardShopPriceFinder}, which
+ * parses pages fetched from the wiki, the {@link StandardShopPriceReextractor},
+ * which parses archived pages again, and the tool
+ * <tt>StandardShopPriceCatalogBuilder</tt>, which parses pages of a wiki dump.
+ * 
+ * @author Zabuza {@literal <zabuza.dev@gmail.com>}
+ *
+ */
+public final class StandardShopPriceParser {
+	/**
+	 * First pattern that matches the end of the standard shop price content.
+	 */
+	private static final String CONTENT_END_PATTERN_FIRST = "|";
+	/**
+	 * Second pattern that matches the end of the standard shop price content.
+	 */
+	private static final String CONTENT_END_PATTERN_SECOND = "}";
+	/**
+	 * Pattern that if present indicates that the item is a pet and should be
+	 * ignored, yielding a standard shop price of <tt>zero</tt>.
+	 */
+	private static final String CONTENT_IGNORE_PET_PATTERN = "{{NPC/Layout|";
+	/**
+	 * Pattern that matches the start of the standard shop price content.
+	 */
+	private static final String CONTENT_START_PATTERN = "|VerkPreis=";
+	/**
+	 * Pattern that matches symbols to strip from integers before parsing them.
+	 */
+	private static final String STRIP_INTEGER_PATTERN = "[\\s\\.,]";
+
+	/**
+	 * Parses the standard shop price out of the given content of an item page.
+	 * 
+	 * @param pageContent
+	 *            The content of the page, either its wiki text or the HTML of
+	 *            its edit page
+	 * @return If present the standard shop price of the item, if not present
+	 *         the page contains none
+	 * @throws IOException
+	 *             If an I/O-Exception occurred while reading the content
+	 * @throws NumberFormatException
+	 *             If the standard shop price of the page is no integer
+	 */
+	public static Optional<Integer> parseStandardShopPrice(final String pageContent) throws IOException {
+		try (final BufferedReader br = new BufferedReader(new StringReader(pageContent))) {
+			// Find shop price parameter
+			final StringBuilder shopPriceContent = new StringBuilder();
+			int startIndex = -1;
+			while (br.ready()) {
+				final String line = br.readLine();
+				if (line == null) {
+					break;
+				}
+
+				// The item is a pet
+				if (line.indexOf(CONTENT_IGNORE_PET_PATTERN) != -1) {
+					return Optional.of(Integer.valueOf(0));
+				}
+
+				startIndex = line.indexOf(CONTENT_START_PATTERN);
+
+				if (startIndex != -1) {
+					// Add rest of line
+					shopPriceContent.append(line.substring(startIndex + CONTENT_START_PATTERN.length()));
+					break;
+				}
+			}
+			if (startIndex == -1) {
+				return Optional.empty();
+			}
+
+			// Find shop price parameter ending
+			int endIndex = -1;
+			while (br.ready()) {
+				final String line = br.readLine();
+				if (line == null) {
+					break;
+				}
+				endIndex = line.indexOf(CONTENT_END_PATTERN_FIRST);
+				if (endIndex == -1) {
+					// Try next pattern
+					endIndex = line.indexOf(CONTENT_END_PATTERN_SECOND);
+				}
+
+				if (endIndex != -1) {
+					// Add beginning of line
+					shopPriceContent.append(line.substring(0, endIndex));
+					break;
+				}
+				// Add whole line
+				shopPriceContent.append(line);
+			}
+			if (endIndex == -1) {
+				return Optional.empty();
+			}
+
+			// Price extracted, format it
+			final String shopPriceText = shopPriceContent.toString();
+			return Optional.of(Integer.valueOf(shopPriceText.replaceAll(STRIP_INTEGER_PATTERN, "")));
+		}
+	}
+
+	/**
+	 * Utility class. No implementation.
+	 */
+	private StandardShopPriceParser() {
+
+	}
+}
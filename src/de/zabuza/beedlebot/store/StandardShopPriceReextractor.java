@@ -0,0 +1,139 @@
+package de.zabuza.beedlebot.store;
+
+import java.io.IOException;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Optional;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import de.zabuza.beedlebot.logging.ILogger;
+import de.zabuza.beedlebot.logging.LoggerFactory;
+
+/**
+ * Tool that rebuilds the standard shop prices of the
+ * {@link StandardShopPriceStore} from the pages of the {@link RawPageArchive},
+ * without network access. Run it after fixing the
+ * {@link StandardShopPriceParser}, such that the fix applies to all prices
+ * that were fetched already instead of expiring them and fetching every page
+ * again. Pages are extracted in parallel. Changed prices replace the stored
+ * ones and count as looked up now, the validators of their page are kept, and
+ * the {@link Store}s of all worlds take them over at their next start. Pages
+ * are archived under the unique representation names of their items, see
+ * {@link ItemDictionary#applyItemNamePatterns(String)}, which is the key the
+ * {@link Store}s look shared prices up with. The tool must not run while bots
+ * are running. Afterwards the archive is compacted.
+ * 
+ * @author Zabuza {@literal <zabuza.dev@gmail.com>}
+ *
+ */
+public final class StandardShopPriceReextractor {
+	/**
+	 * The prefix of the names of the extraction threads.
+	 */
+	private static final String THREAD_NAME_PRE = "BeedleBot-Reextraction-";
+
+	/**
+	 * Rebuilds the standard shop prices from the archived pages.
+	 * 
+	 * @param args
+	 *            Optionally the amount of threads to extract pages with,
+	 *            defaults to the amount of available processors
+	 * @throws IOException
+	 *             If an I/O-Exception occurred while reading the index of the
+	 *             archive or compacting it
+	 * @throws InterruptedException
+	 *             If the thread got interrupted while waiting for the
+	 *             extraction
+	 */
+	public static void main(final String[] args) throws IOException, InterruptedException {
+		if (args.length > 1) {
+			throw new IllegalArgumentException("Usage: StandardShopPriceReextractor [<threads>]");
+		}
+		int threads = Runtime.getRuntime().availableProcessors();
+		if (args.length > 0) {
+			threads = Integer.parseInt(args[0]);
+		}
+
+		final ILogger logger = LoggerFactory.getLogger();
+		final RawPageArchive archive = RawPageArchive.getInstance();
+		final StandardShopPriceStore store = StandardShopPriceStore.getInstance();
+		final Map<String, RawPage> nameToPage = archive.readIndex();
+
+		final ExecutorService executor = Executors.newFixedThreadPool(threads,
+				new LookupThreadFactory(THREAD_NAME_PRE));
+		final Map<RawPage, Future<Optional<Integer>>> pageToExtraction = new LinkedHashMap<>();
+		for (final RawPage page : nameToPage.values()) {
+			pageToExtraction.put(page, executor.submit(new RawPageExtraction(archive, page)));
+		}
+		executor.shutdown();
+
+		final long lookupTimestamp = System.currentTimeMillis();
+		int changedPrices = 0;
+		int failedPages = 0;
+		for (final Entry<RawPage, Future<Optional<Integer>>> entry : pageToExtraction.entrySet()) {
+			final RawPage page = entry.getKey();
+			final Optional<Integer> standardShopPrice;
+			try {
+				standardShopPrice = entry.getValue().get();
+			} catch (final ExecutionException e) {
+				logger.logError("Skipping archived page of " + page.getItemName() + ": " + e.getCause());
+				failedPages++;
+				continue;
+			}
+			if (!standardShopPrice.isPresent()) {
+				continue;
+			}
+
+			final Optional<StandardShopPrice> storedStandardShopPrice = store
+					.getStandardShopPrice(page.getItemName());
+			if (storedStandardShopPrice.isPresent()) {
+				if (storedStandardShopPrice.get().getPrice() == standardShopPrice.get().intValue()) {
+					continue;
+				}
+				if (isOutdated(page, storedStandardShopPrice.get())) {
+					continue;
+				}
+			}
+			store.replaceStandardShopPrice(page.getItemName(),
+					new StandardShopPrice(standardShopPrice.get().intValue(), lookupTimestamp,
+							page.getEntityTag().orElse(null), page.getLastModified().orElse(null)));
+			changedPrices++;
+		}
+		store.persist();
+
+		final int deletedContents = archive.compact(nameToPage.values());
+		logger.logInfo("Re-extracted standard shop prices of " + nameToPage.size() + " archived pages, changed: "
+				+ changedPrices + ", failed: " + failedPages + ", deleted unreferenced pages: " + deletedContents);
+	}
+
+	/**
+	 * Whether the given archived page is outdated by the given stored
+	 * standard shop price, i.e. the price was looked up later from a
+	 * different version of the page.
+	 * 
+	 * @param page
+	 *            The archived page
+	 * @param storedStandardShopPrice
+	 *            The stored standard shop price of the item of the page
+	 * @return <tt>True</tt> if the page is outdated, <tt>false</tt> otherwise
+	 */
+	private static boolean isOutdated(final RawPage page, final StandardShopPrice storedStandardShopPrice) {
+		if (storedStandardShopPrice.getLookupTimestamp() <= page.getFetchTimestamp()
+				|| !storedStandardShopPrice.hasValidators()) {
+			return false;
+		}
+		return !storedStandardShopPrice.getEntityTag().equals(page.getEntityTag())
+				|| !storedStandardShopPrice.getLastModified().equals(page.getLastModified());
+	}
+
+	/**
+	 * Utility class. No implementation.
+	 */
+	private StandardShopPriceReextractor() {
+
+	}
+}
@@ -0,0 +1,459 @@
+package de.zabuza.beedlebot.store;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Optional;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedOutputStream;
+
+import de.zabuza.beedlebot.exceptions.StorePersistenceUnsuccessfulException;
+import de.zabuza.beedlebot.logging.ILogger;
+import de.zabuza.beedlebot.logging.LoggerFactory;
+import de.zabuza.beedlebot.logging.LoggerUtil;
+
+/**
+ * Global store of standard shop prices which is shared by the {@link Store}s
+ * of all worlds, since the standard shop price of an item found in the FwWiki
+ * is the same in every world. Prices are stored under the representations of
+ * the item names, see {@link ItemDictionary#applyItemNamePatterns(String)},
+ * such that all items sharing a representation share one price. Player prices
+ * stay in the cache of each world. The store is persisted in its own file,
+ * which is merged with the content written by other processes whenever it is
+ * persisted, such that bots running on several worlds share their lookups.
+ * The class is thread-safe.
+ * 
+ * @author Zabuza {@literal <zabuza.dev@gmail.com>}
+ *
+ */
+public final class StandardShopPriceStore {
+	/**
+	 * The amount of bytes the checksum at the end of the file occupies.
+	 */
+	private static final int CHECKSUM_BYTES = Long.BYTES;
+	/**
+	 * The path to the directory of the global store.
+	 */
+	private static final String DIRECTORY = ".";
+	/**
+	 * The path to the file of the store, relative to its directory.
+	 */
+	private static final String FILEPATH = "standardShopPrices.bin";
+	/**
+	 * The path to the file that is locked while the store is persisted,
+	 * relative to the directory of the store.
+	 */
+	private static final String FILEPATH_LOCK = "standardShopPrices.lock";
+	/**
+	 * The path to the file of the store while it is written, relative to its
+	 * directory.
+	 */
+	private static final String FILEPATH_TEMPORARY = "standardShopPrices.tmp";
+	/**
+	 * The current version of the file format. Version 2 added the validators
+	 * of the wiki pages the prices were parsed from.
+	 */
+	private static final short FORMAT_VERSION = 2;
+	/**
+	 * The version of the file format without validators, which can still be
+	 * read.
+	 */
+	private static final short FORMAT_VERSION_WITHOUT_VALIDATORS = 1;
+	/**
+	 * The magic number the file starts with, <tt>BBSP</tt> in ASCII.
+	 */
+	private static final int MAGIC_NUMBER = 0x42425350;
+	/**
+	 * Singleton for the global store instance.
+	 */
+	private static StandardShopPriceStore storeInstance = null;
+
+	/**
+	 * Gets the reference to the global store instance. The instance is loaded
+	 * from its file on first access.
+	 * 
+	 * @return The reference to the global store instance
+	 */
+	public static synchronized StandardShopPriceStore getInstance() {
+		if (storeInstance == null) {
+			storeInstance = new StandardShopPriceStore(Paths.get(DIRECTORY));
+			storeInstance.load();
+		}
+
+		return storeInstance;
+	}
+
+	/**
+	 * Reads the file of the store, if it exists.
+	 * 
+	 * @param directory
+	 *            The directory of the store
+	 * @return Data-structure that maps item names to their standard shop price
+	 *         as stored in the file, empty if the file does not exist
+	 * @throws IOException
+	 *             If an I/O-Exception occurred while reading the file or if
+	 *             the file is corrupted or of an unknown version
+	 */
+	private static Map<String, StandardShopPrice> readFile(final Path directory) throws IOException {
+		final Map<String, StandardShopPrice> nameToStandardShopPrice = new HashMap<>();
+		final Path path = directory.resolve(FILEPATH);
+		if (!Files.exists(path)) {
+			return nameToStandardShopPrice;
+		}
+
+		final byte[] content = Files.readAllBytes(path);
+		if (content.length < CHECKSUM_BYTES) {
+			throw new IOException("Standard shop price file is truncated: " + path);
+		}
+		final int contentLength = content.length - CHECKSUM_BYTES;
+		final CRC32 checksum = new CRC32();
+		checksum.update(content, 0, contentLength);
+		if (checksum.getValue() != ByteBuffer.wrap(content, contentLength, CHECKSUM_BYTES).getLong()) {
+			throw new IOException("Standard shop price file is corrupted: " + path);
+		}
+
+		final DataInputStream input = new DataInputStream(new ByteArrayInputStream(content, 0, contentLength));
+		if (input.readInt() != MAGIC_NUMBER) {
+			throw new IOException("File is no standard shop price file: " + path);
+		}
+		final short version = input.readShort();
+		if (version != FORMAT_VERSION && version != FORMAT_VERSION_WITHOUT_VALIDATORS) {
+			throw new IOException("Unsupported standard shop price file version " + version + ": " + path);
+		}
+
+		final String[] itemNames = new String[input.readInt()];
+		for (int i = 0; i < itemNames.length; i++) {
+			itemNames[i] = input.readUTF();
+		}
+		final int[] prices = new int[itemNames.length];
+		for (int i = 0; i < itemNames.length; i++) {
+			prices[i] = input.readInt();
+		}
+		final long[] lookupTimestamps = new long[itemNames.length];
+		for (int i = 0; i < itemNames.length; i++) {
+			lookupTimestamps[i] = input.readLong();
+		}
+		for (int i = 0; i < itemNames.length; i++) {
+			String entityTag = null;
+			String lastModified = null;
+			if (version != FORMAT_VERSION_WITHOUT_VALIDATORS) {
+				entityTag = readOptionalString(input);
+				lastModified = readOptionalString(input);
+			}
+			nameToStandardShopPrice.put(itemNames[i],
+					new StandardShopPrice(prices[i], lookupTimestamps[i], entityTag, lastModified));
+		}
+		return nameToStandardShopPrice;
+	}
+
+	/**
+	 * Reads a string that was written by
+	 * {@link #writeOptionalString(DataOutputStream, Optional)}.
+	 * 
+	 * @param input
+	 *            The stream to read from
+	 * @return The string or <tt>null</tt> if it was not present
+	 * @throws IOException
+	 *             If an I/O-Exception occurred while reading
+	 */
+	private static String readOptionalString(final DataInputStream input) throws IOException {
+		if (!input.readBoolean()) {
+			return null;
+		}
+		return input.readUTF();
+	}
+
+	/**
+	 * Selects the more recently looked up of the given standard shop prices of
+	 * the same item. If the selected price has no validators but the other
+	 * one, which holds the same price, has, the validators are taken over.
+	 * 
+	 * @param storedStandardShopPrice
+	 *            The stored standard shop price or <tt>null</tt> if there is
+	 *            none
+	 * @param standardShopPrice
+	 *            The other standard shop price, loses ties
+	 * @return The selected standard shop price, the stored instance if it is
+	 *         selected unchanged
+	 */
+	private static StandardShopPrice selectNewer(final StandardShopPrice storedStandardShopPrice,
+			final StandardShopPrice standardShopPrice) {
+		if (storedStandardShopPrice == null) {
+			return standardShopPrice;
+		}
+
+		final StandardShopPrice newer;
+		final StandardShopPrice older;
+		if (storedStandardShopPrice.getLookupTimestamp() >= standardShopPrice.getLookupTimestamp()) {
+			newer = storedStandardShopPrice;
+			older = standardShopPrice;
+		} else {
+			newer = standardShopPrice;
+			older = storedStandardShopPrice;
+		}
+		if (newer.hasValidators() || !older.hasValidators() || newer.getPrice() != older.getPrice()) {
+			return newer;
+		}
+		return new StandardShopPrice(newer.getPrice(), newer.getLookupTimestamp(),
+				older.getEntityTag().orElse(null), older.getLastModified().orElse(null));
+	}
+
+	/**
+	 * Writes the given standard shop prices to the file of the store,
+	 * replacing it atomically.
+	 * 
+	 * @param directory
+	 *            The directory of the store
+	 * @param nameToStandardShopPrice
+	 *            Data-structure that maps item names to their standard shop
+	 *            price
+	 * @throws IOException
+	 *             If an I/O-Exception occurred while writing the file
+	 */
+	private static void writeFile(final Path directory, final Map<String, StandardShopPrice> nameToStandardShopPrice)
+			throws IOException {
+		final Path temporaryPath = directory.resolve(FILEPATH_TEMPORARY);
+		final CRC32 checksum = new CRC32();
+		try (final DataOutputStream output = new DataOutputStream(new CheckedOutputStream(
+				new BufferedOutputStream(new FileOutputStream(temporaryPath.toFile())), checksum))) {
+			output.writeInt(MAGIC_NUMBER);
+			output.writeShort(FORMAT_VERSION);
+			output.writeInt(nameToStandardShopPrice.size());
+			for (final String itemName : nameToStandardShopPrice.keySet()) {
+				output.writeUTF(itemName);
+			}
+			for (final StandardShopPrice standardShopPrice : nameToStandardShopPrice.values()) {
+				output.writeInt(standardShopPrice.getPrice());
+			}
+			for (final StandardShopPrice standardShopPrice : nameToStandardShopPrice.values()) {
+				output.writeLong(standardShopPrice.getLookupTimestamp());
+			}
+			for (final StandardShopPrice standardShopPrice : nameToStandardShopPrice.values()) {
+				writeOptionalString(output, standardShopPrice.getEntityTag());
+				writeOptionalString(output, standardShopPrice.getLastModified());
+			}
+			output.writeLong(checksum.getValue());
+		}
+
+		final Path path = directory.resolve(FILEPATH);
+		try {
+			Files.move(temporaryPath, path, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+		} catch (final AtomicMoveNotSupportedException e) {
+			Files.move(temporaryPath, path, StandardCopyOption.REPLACE_EXISTING);
+		}
+	}
+
+	/**
+	 * Writes the given optional string, such that it can be read by
+	 * {@link #readOptionalString(DataInputStream)}.
+	 * 
+	 * @param output
+	 *            The stream to write to
+	 * @param text
+	 *            The optional string to write
+	 * @throws IOException
+	 *             If an I/O-Exception occurred while writing
+	 */
+	private static void writeOptionalString(final DataOutputStream output, final Optional<String> text)
+			throws IOException {
+		output.writeBoolean(text.isPresent());
+		if (text.isPresent()) {
+			output.writeUTF(text.get());
+		}
+	}
+
+	/**
+	 * The directory that contains the file of the store.
+	 */
+	private final Path mDirectory;
+	/**
+	 * Whether the store contains standard shop prices that were not persisted
+	 * yet or not.
+	 */
+	private boolean mIsDirty;
+	/**
+	 * The logger to use for logging.
+	 */
+	private final ILogger mLogger;
+	/**
+	 * Data-structure that maps item names to their standard shop price.
+	 */
+	private final Map<String, StandardShopPrice> mNameToStandardShopPrice;
+	/**
+	 * Lock that is held while the store is persisted, such that only one
+	 * thread of this process locks the file at a time.
+	 */
+	private final Object mPersistLock;
+
+	/**
+	 * Creates a new empty store whose file is in the given directory. Use
+	 * {@link #getInstance()} to get the global instance.
+	 * 
+	 * @param directory
+	 *            The directory that contains the file of the store
+	 */
+	StandardShopPriceStore(final Path directory) {
+		this.mDirectory = directory;
+		this.mNameToStandardShopPrice = new HashMap<>();
+		this.mLogger = LoggerFactory.getLogger();
+		this.mIsDirty = false;
+		this.mPersistLock = new Object();
+	}
+
+	/**
+	 * If present gets the standard shop price of the item with the given name.
+	 * 
+	 * @param itemName
+	 *            The unique representation name of the item, see
+	 *            {@link ItemDictionary#applyItemNamePatterns(String)}
+	 * @return If present the standard shop price of the item
+	 */
+	public synchronized Optional<StandardShopPrice> getStandardShopPrice(final String itemName) {
+		return Optional.ofNullable(this.mNameToStandardShopPrice.get(itemName));
+	}
+
+	/**
+	 * Persists the store if it contains standard shop prices that were not
+	 * persisted yet. The file is locked while it is read, merged with the
+	 * content of the store and written, such that processes of several worlds
+	 * do not lose updates of each other. Of two prices for the same item the
+	 * more recently looked up one wins.
+	 * 
+	 * @throws StorePersistenceUnsuccessfulException
+	 *             If persisting the store was unsuccessful
+	 */
+	@SuppressWarnings("try")
+	public void persist() throws StorePersistenceUnsuccessfulException {
+		synchronized (this.mPersistLock) {
+			synchronized (this) {
+				if (!this.mIsDirty) {
+					return;
+				}
+				this.mIsDirty = false;
+			}
+
+			try (final FileChannel lockChannel = FileChannel.open(this.mDirectory.resolve(FILEPATH_LOCK),
+					StandardOpenOption.CREATE, StandardOpenOption.WRITE); final FileLock lock = lockChannel.lock()) {
+				Map<String, StandardShopPrice> nameToStandardShopPrice;
+				try {
+					nameToStandardShopPrice = readFile(this.mDirectory);
+				} catch (final IOException e) {
+					this.mLogger.logError(
+							"Discarding unreadable standard shop price file: " + LoggerUtil.getStackTrace(e));
+					nameToStandardShopPrice = new HashMap<>();
+				}
+
+				synchronized (this) {
+					merge(nameToStandardShopPrice);
+					nameToStandardShopPrice = new HashMap<>(this.mNameToStandardShopPrice);
+				}
+				writeFile(this.mDirectory, nameToStandardShopPrice);
+			} catch (final IOException e) {
+				synchronized (this) {
+					this.mIsDirty = true;
+				}
+				throw new StorePersistenceUnsuccessfulException(e);
+			}
+		}
+	}
+
+	/**
+	 * Stores the given standard shop price of the item with the given name,
+	 * unless the store already contains a more recently looked up one. Known
+	 * validators of an unchanged price are kept.
+	 * 
+	 * @param itemName
+	 *            The unique representation name of the item, see
+	 *            {@link ItemDictionary#applyItemNamePatterns(String)}
+	 * @param standardShopPrice
+	 *            The standard shop price of the item
+	 */
+	public synchronized void putStandardShopPrice(final String itemName, final StandardShopPrice standardShopPrice) {
+		final StandardShopPrice storedStandardShopPrice = this.mNameToStandardShopPrice.get(itemName);
+		final StandardShopPrice selectedStandardShopPrice = selectNewer(storedStandardShopPrice, standardShopPrice);
+		if (selectedStandardShopPrice == storedStandardShopPrice) {
+			return;
+		}
+		this.mNameToStandardShopPrice.put(itemName, selectedStandardShopPrice);
+		this.mIsDirty = true;
+	}
+
+	/**
+	 * Stores the given standard shop price of the item with the given name,
+	 * replacing the stored one regardless of when it was looked up. Used to
+	 * roll out corrected prices, which should thus be more recently looked up
+	 * than the prices stored by other processes.
+	 * 
+	 * @param itemName
+	 *            The unique representation name of the item, see
+	 *            {@link ItemDictionary#applyItemNamePatterns(String)}
+	 * @param standardShopPrice
+	 *            The standard shop price of the item
+	 */
+	public synchronized void replaceStandardShopPrice(final String itemName,
+			final StandardShopPrice standardShopPrice) {
+		this.mNameToStandardShopPrice.put(itemName, standardShopPrice);
+		this.mIsDirty = true;
+	}
+
+	/**
+	 * Gets the amount of standard shop prices stored.
+	 * 
+	 * @return The amount of standard shop prices stored
+	 */
+	public synchronized int size() {
+		return this.mNameToStandardShopPrice.size();
+	}
+
+	/**
+	 * Loads the content of the file of the store. An unreadable file is
+	 * logged and ignored, it gets replaced when the store is persisted.
+	 */
+	private void load() {
+		try {
+			final Map<String, StandardShopPrice> nameToStandardShopPrice = readFile(this.mDirectory);
+			synchronized (this) {
+				merge(nameToStandardShopPrice);
+			}
+			this.mLogger.logInfo("Loaded standard shop prices: " + nameToStandardShopPrice.size());
+		} catch (final IOException e) {
+			this.mLogger.logError("Error while loading standard shop prices: " + LoggerUtil.getStackTrace(e));
+		}
+	}
+
+	/**
+	 * Merges the given standard shop prices into the store. Of two prices for
+	 * the same item the more recently looked up one wins, see
+	 * {@link #selectNewer(StandardShopPrice, StandardShopPrice)}. Must be
+	 * called while holding the lock of the store.
+	 * 
+	 * @param nameToStandardShopPrice
+	 *            Data-structure that maps item names to their standard shop
+	 *            price
+	 */
+	private void merge(final Map<String, StandardShopPrice> nameToStandardShopPrice) {
+		for (final Entry<String, StandardShopPrice> entry : nameToStandardShopPrice.entrySet()) {
+			final StandardShopPrice storedStandardShopPrice = this.mNameToStandardShopPrice.get(entry.getKey());
+			final StandardShopPrice selectedStandardShopPrice = selectNewer(storedStandardShopPrice,
+					entry.getValue());
+			if (selectedStandardShopPrice != storedStandardShopPrice) {
+				this.mNameToStandardShopPrice.put(entry.getKey(), selectedStandardShopPrice);
+			}
+		}
+	}
+}
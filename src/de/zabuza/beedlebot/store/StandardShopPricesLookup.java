@@ -0,0 +1,49 @@
+package de.zabuza.beedlebot.store;
+
+import java.util.Collection;
+import java.util.Map;
+import java.util.concurrent.Callable;
+
+/**
+ * Task that looks up the standard shop prices of several items at once by
+ * using {@link StandardShopPriceFinder#findStandardShopPrices(Collection)}.
+ * Items that are fetched by a concurrent lookup already share its fetch.
+ * 
+ * @author Zabuza {@literal <zabuza.dev@gmail.com>}
+ *
+ */
+public final class StandardShopPricesLookup implements Callable<Map<String, Integer>> {
+	/**
+	 * The names of the items to lookup their standard shop prices.
+	 */
+	private final Collection<String> mItemNames;
+	/**
+	 * The service to use for finding the standard shop prices.
+	 */
+	private final StandardShopPriceFinder mStandardShopPriceFinder;
+
+	/**
+	 * Creates a new task that looks up the standard shop prices of the given
+	 * items.
+	 * 
+	 * @param standardShopPriceFinder
+	 *            The service to use for finding the standard shop prices
+	 * @param itemNames
+	 *            The names of the items to lookup their standard shop prices
+	 */
+	public StandardShopPricesLookup(final StandardShopPriceFinder standardShopPriceFinder,
+			final Collection<String> itemNames) {
+		this.mStandardShopPriceFinder = standardShopPriceFinder;
+		this.mItemNames = itemNames;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see java.util.concurrent.Callable#call()
+	 */
+	@Override
+	public Map<String, Integer> call() {
+		return this.mStandardShopPriceFinder.findStandardShopPrices(this.mItemNames);
+	}
+}
@@ -1,9 +1,31 @@
 package de.zabuza.beedlebot.store;
 
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
 import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
 
+import de.zabuza.beedlebot.exceptions.ItemPriceLookupInterruptedException;
 import de.zabuza.beedlebot.exceptions.NoStandardShopPriceException;
+import de.zabuza.beedlebot.exceptions.PlayerPriceServiceAnswerWrongFormatException;
+import de.zabuza.beedlebot.exceptions.PlayerPriceServiceUnavailableException;
+import de.zabuza.beedlebot.exceptions.StandardShopPriceServiceUnavailableException;
 import de.zabuza.beedlebot.logging.ILogger;
 import de.zabuza.beedlebot.logging.LoggerFactory;
 import de.zabuza.sparkle.freewar.EWorld;
@@ -22,21 +44,40 @@ public final class Store {
 	 * that determines when such an item is considered to be sold to players.
 	 */
 	private static final int CONSIDER_PLAYER_PRICE_COST_ABS = 200;
+	/**
+	 * The prefix of the names of threads that finish lookups in the background
+	 * which exceeded the latency budget of their caller.
+	 */
+	private static final String DEFERRED_LOOKUP_THREAD_NAME_PRE = "BeedleBot-DeferredPriceLookup-";
+	/**
+	 * The maximal amount of item price lookups that are executed concurrently.
+	 * Bounds the load put on the remote services when resolving a whole page
+	 * of unknown items at once.
+	 */
+	private static final int LOOKUP_THREADS_MAX = 8;
 	/**
 	 * The expected discount factor of shops when selling items. Also used to
 	 * compute whether an item is accepted to be purchased or not.
 	 */
 	private static final double SHOP_DISCOUNT_FACTOR = 1.14;
 	/**
-	 * The validity of cached items in days. Whenever it expires an item price
-	 * request will not be fetched from the cache.
+	 * The validity of cached entries of items without standard shop price in
+	 * days. Whenever it expires the standard shop price of such an item is
+	 * looked up again, since the wiki may have been completed in the meantime.
+	 */
+	private static final int STORED_ITEM_NO_STANDARD_SHOP_PRICE_VALIDITY_DAYS = 3;
+	/**
+	 * The maximal age of expired cached item price data in days, such that it
+	 * may still be served stale while it is refreshed in the background. Older
+	 * data is looked up synchronously.
 	 */
-	private static final int STORED_ITEM_LOOKUP_VALIDITY_DAYS = 10;
+	private static final int STORED_ITEM_STALE_SERVING_VALIDITY_DAYS = 90;
 	/**
-	 * The validity of player price data in days. Whenever it expires an player
-	 * price request will not be considered.
+	 * The validity of the cached standard shop price tier of items in days.
+	 * Standard shop prices almost never change, whenever it expires the
+	 * standard shop price of the item is looked up again.
 	 */
-	private static final int STORED_ITEM_PLAYER_PRICE_VALIDITY_DAYS = 30;
+	private static final int STORED_ITEM_STANDARD_SHOP_PRICE_VALIDITY_DAYS = 60;
 
 	/**
 	 * Computes the full shop price of the given standard shop price when the
@@ -73,57 +114,173 @@ public final class Store {
 	}
 
 	/**
-	 * Whether the given item price data is valid or not. If it is not valid a
-	 * cached value should be rejected and marked as expired.
+	 * Gets the exception to rethrow for the given failed lookup, i.e. its
+	 * unwrapped cause. Errors are thrown directly.
 	 * 
-	 * @param itemPrice
-	 *            The item price in question
-	 * @return <tt>True</tt> if the given item price is valid, <tt>false</tt> if
-	 *         not
+	 * @param failure
+	 *            The failure of the lookup
+	 * @return The exception to rethrow
 	 */
-	private static boolean isItemPriceValid(final ItemPrice itemPrice) {
-		final long now = System.currentTimeMillis();
-
-		// First check lookup validity
-		final long lookupTimestamp = itemPrice.getLookupTimestamp();
-		final long lookupDiff = now - lookupTimestamp;
-
-		final boolean isLookupValid = TimeUnit.MILLISECONDS.toDays(lookupDiff) <= STORED_ITEM_LOOKUP_VALIDITY_DAYS;
+	private static RuntimeException getLookupFailure(final ExecutionException failure) {
+		final Throwable cause = failure.getCause();
+		if (cause instanceof RuntimeException) {
+			return (RuntimeException) cause;
+		}
+		if (cause instanceof Error) {
+			throw (Error) cause;
+		}
+		return new IllegalStateException(cause);
+	}
 
-		if (isLookupValid) {
-			return true;
+	/**
+	 * Waits for the given lookup to complete and gets its result. Exceptions
+	 * thrown by the lookup are rethrown unwrapped.
+	 * 
+	 * @param <T>
+	 *            The type of the result of the lookup
+	 * @param lookup
+	 *            The lookup to wait for
+	 * @return The result of the lookup
+	 * @throws ItemPriceLookupInterruptedException
+	 *             When the current thread got interrupted while waiting for
+	 *             the lookup to complete
+	 */
+	private static <T> T joinLookup(final Future<T> lookup) throws ItemPriceLookupInterruptedException {
+		try {
+			return lookup.get();
+		} catch (final InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new ItemPriceLookupInterruptedException(e);
+		} catch (final ExecutionException e) {
+			throw getLookupFailure(e);
 		}
+	}
 
-		// Check player to player price validity
-		if (!itemPrice.hasPlayerPrice()) {
-			return false;
+	/**
+	 * Waits for the given lookup to complete, at most for the given time, and
+	 * gets its result. Exceptions thrown by the lookup are rethrown unwrapped.
+	 * 
+	 * @param <T>
+	 *            The type of the result of the lookup
+	 * @param lookup
+	 *            The lookup to wait for
+	 * @param timeoutMillis
+	 *            The maximal time to wait for the lookup, in milliseconds
+	 * @return If present the result of the lookup, if not present the lookup
+	 *         did not complete in time and is still running
+	 * @throws ItemPriceLookupInterruptedException
+	 *             When the current thread got interrupted while waiting for
+	 *             the lookup to complete
+	 */
+	private static <T> Optional<T> joinLookup(final Future<T> lookup, final long timeoutMillis)
+			throws ItemPriceLookupInterruptedException {
+		try {
+			return Optional.of(lookup.get(timeoutMillis, TimeUnit.MILLISECONDS));
+		} catch (final TimeoutException e) {
+			return Optional.empty();
+		} catch (final InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new ItemPriceLookupInterruptedException(e);
+		} catch (final ExecutionException e) {
+			throw getLookupFailure(e);
 		}
-		final long playerTimestamp = itemPrice.getPlayerPrice().get().getTimestamp();
-		final long playerDiff = now - playerTimestamp;
+	}
 
-		return TimeUnit.MILLISECONDS.toDays(playerDiff) <= STORED_ITEM_PLAYER_PRICE_VALIDITY_DAYS;
+	/**
+	 * Whether the standard shop price tier of the given item price data is
+	 * valid or not. If it is not valid the standard shop price should be
+	 * looked up again.
+	 * 
+	 * @param itemPrice
+	 *            The item price in question
+	 * @param validityTimestamp
+	 *            The timestamp at which the tier should be valid, usually the
+	 *            current time
+	 * @return <tt>True</tt> if the standard shop price tier of the given item
+	 *         price is valid, <tt>false</tt> if not
+	 */
+	private static boolean isStandardShopPriceValid(final ItemPrice itemPrice, final long validityTimestamp) {
+		final long lookupDiff = validityTimestamp - itemPrice.getStandardShopPriceLookupTimestamp();
+		return TimeUnit.MILLISECONDS.toDays(lookupDiff) <= STORED_ITEM_STANDARD_SHOP_PRICE_VALIDITY_DAYS;
 	}
 
+	/**
+	 * The warm-up that revalidates the cached price data of the most often
+	 * seen items after startup.
+	 */
+	private final CacheWarmUp mCacheWarmUp;
+	/**
+	 * Set of names of items whose lookup exceeded the latency budget of its
+	 * caller and is finished in the background. Used to not lookup such items
+	 * again before the deferred lookup completed.
+	 */
+	private final Set<String> mDeferredItemNames;
+	/**
+	 * The executor to use for finishing lookups in the background that
+	 * exceeded the latency budget of their caller.
+	 */
+	private final ExecutorService mDeferredLookupExecutor;
+	/**
+	 * The client to use for all requests of the services of the store.
+	 */
+	private final StoreHttpClient mHttpClient;
+	/**
+	 * Whether expired cached item price data is served stale while it is
+	 * refreshed in the background or not.
+	 */
+	private volatile boolean mIsServingStalePrices;
 	/**
 	 * The dictionary to use for exceptional items.
 	 */
 	private final ItemDictionary mItemDictionary;
+	/**
+	 * Set of names of items whose price data is currently refreshed in the
+	 * background. Used to not queue several refreshes for the same item.
+	 */
+	private final Set<String> mItemNamesBeingRefreshed;
 	/**
 	 * The logger to use for logging.
 	 */
 	private final ILogger mLogger;
+	/**
+	 * The executor to use for looking up item price data concurrently.
+	 */
+	private final ExecutorService mLookupExecutor;
 	/**
 	 * The service to use for finding player prices of items.
 	 */
 	private final PlayerPriceFinder mPlayerPriceFinder;
+	/**
+	 * The tracker of the volatility of player prices, which determines the
+	 * validity of the player price tier of items.
+	 */
+	private final PlayerPriceVolatilityTracker mPlayerPriceVolatilityTracker;
+	/**
+	 * The prefetcher that refreshes cached item price data in idle times.
+	 */
+	private final PricePrefetcher mPricePrefetcher;
 	/**
 	 * The service to use for registering item purchases.
 	 */
 	private final PurchaseRegister mPurchaseRegister;
+	/**
+	 * The table of the items seen at the central traders depot, which
+	 * survives restarts.
+	 */
+	private final SightingsTable mSightingsTable;
+	/**
+	 * The bundled catalog of standard shop prices.
+	 */
+	private final StandardShopPriceCatalog mStandardShopPriceCatalog;
 	/**
 	 * The service to use for finding standard shop prices of items.
 	 */
 	private final StandardShopPriceFinder mStandardShopPriceFinder;
+	/**
+	 * The global store of standard shop prices shared with the stores of all
+	 * other worlds.
+	 */
+	private final StandardShopPriceStore mStandardShopPriceStore;
 	/**
 	 * The cache to use for storing and retrieving item price data.
 	 */
@@ -148,20 +305,59 @@ public final class Store {
 		this.mLogger = LoggerFactory.getLogger();
 		this.mWorld = world;
 		this.mItemDictionary = new ItemDictionary();
-		this.mStandardShopPriceFinder = new StandardShopPriceFinder(this.mItemDictionary);
-		this.mPlayerPriceFinder = new PlayerPriceFinder(this.mItemDictionary);
-		this.mPurchaseRegister = new PurchaseRegister(user, world);
+		this.mHttpClient = new StoreHttpClient();
+		this.mStandardShopPriceStore = StandardShopPriceStore.getInstance();
+		this.mStandardShopPriceCatalog = StandardShopPriceCatalog.getInstance();
+		this.mStandardShopPriceFinder = new StandardShopPriceFinder(this.mItemDictionary,
+				this.mStandardShopPriceCatalog, this.mStandardShopPriceStore, RawPageArchive.getInstance(),
+				this.mHttpClient);
+		this.mPlayerPriceFinder = new PlayerPriceFinder(this.mItemDictionary, this.mHttpClient);
+		this.mPlayerPriceVolatilityTracker = PlayerPriceVolatilityTracker.getInstance(world);
+		this.mPurchaseRegister = new PurchaseRegister(user, world, this.mHttpClient);
+		this.mLookupExecutor = Executors.newFixedThreadPool(LOOKUP_THREADS_MAX, new LookupThreadFactory());
+		this.mItemNamesBeingRefreshed = ConcurrentHashMap.newKeySet();
+		// Deferred lookups wait for the lookup executor and must thus not run
+		// on it, they neither must queue up behind each other
+		this.mDeferredLookupExecutor = Executors
+				.newCachedThreadPool(new LookupThreadFactory(DEFERRED_LOOKUP_THREAD_NAME_PRE));
+		this.mDeferredItemNames = ConcurrentHashMap.newKeySet();
+		this.mIsServingStalePrices = false;
+		this.mSightingsTable = SightingsTable.getInstance(world);
+		// Prefetch the items seen at the depot, including previous sessions
+		this.mPricePrefetcher = new PricePrefetcher(this, this.mSightingsTable);
 
-		// Try to create cache from serialized content
-		if (StoreCache.hasSerializedCache(this.mWorld)) {
-			this.mStoreCache = StoreCache.deserialize(this.mWorld);
-		} else {
-			this.mStoreCache = new StoreCache(this.mWorld);
+		// Load the cache from its snapshot and journal, if present
+		this.mStoreCache = StoreCache.load(this.mWorld);
+		this.mStoreCache.setMaximalAges(TimeUnit.DAYS.toMillis(STORED_ITEM_STALE_SERVING_VALIDITY_DAYS),
+				TimeUnit.DAYS.toMillis(STORED_ITEM_NO_STANDARD_SHOP_PRICE_VALIDITY_DAYS));
+
+		// Share the standard shop prices known to this world with all worlds
+		// and take over more recent ones, like re-extracted prices. The global
+		// store is keyed by the representations of the item names.
+		for (final ItemPrice itemPrice : this.mStoreCache.getAllItemPrices()) {
+			final String parsedItemName = this.mItemDictionary.applyItemNamePatterns(itemPrice.getName());
+			this.mStandardShopPriceStore.putStandardShopPrice(parsedItemName, new StandardShopPrice(
+					itemPrice.getStandardShopPrice(), itemPrice.getStandardShopPriceLookupTimestamp()));
+			final StandardShopPrice sharedStandardShopPrice = this.mStandardShopPriceStore
+					.getStandardShopPrice(parsedItemName).get();
+			if (sharedStandardShopPrice.getLookupTimestamp() > itemPrice.getStandardShopPriceLookupTimestamp()
+					&& sharedStandardShopPrice.getPrice() != itemPrice.getStandardShopPrice()) {
+				this.mStoreCache.putItemPrice(new ItemPrice(itemPrice.getName(), sharedStandardShopPrice.getPrice(),
+						itemPrice.getPlayerPrice().orElse(null), true, sharedStandardShopPrice.getLookupTimestamp(),
+						itemPrice.getPlayerPriceLookupTimestamp()));
+			}
 		}
+
+		this.mCacheWarmUp = new CacheWarmUp(this, this.mSightingsTable);
+		this.mCacheWarmUp.start();
+		this.mPricePrefetcher.start();
+		this.mPurchaseRegister.start();
 	}
 
 	/**
-	 * Gets item price data for the item with the given name.
+	 * Gets item price data for the item with the given name. If
+	 * {@link #isServingStalePrices()} expired cached data may be returned
+	 * flagged as stale while it is refreshed in the background.
 	 * 
 	 * @param itemName
 	 *            The name of the item to get its price data
@@ -174,6 +370,59 @@ public final class Store {
 		return getItemPrice(itemName, false);
 	}
 
+	/**
+	 * Gets item price data for all items with the given names. Items that are
+	 * not cached or whose cached data is not valid anymore are looked up
+	 * concurrently, player prices with one batch request if supported, such
+	 * that resolving several items costs about one lookup instead of one for
+	 * each item.
+	 * 
+	 * @param itemNames
+	 *            The names of the items to get their price data, duplicates
+	 *            are only resolved once
+	 * @return Data-structure which maps all given item names to their price
+	 *         data. If a price service is unavailable, items are served
+	 *         {@link ItemPrice#isDegraded()} from expired cached data or from
+	 *         the data known without the services. Items for which no such
+	 *         data exists are not contained then, neither are items that
+	 *         have no standard shop price.
+	 * @throws ItemPriceLookupInterruptedException
+	 *             When the current thread got interrupted while waiting for
+	 *             the lookups to complete
+	 */
+	public Map<String, ItemPrice> getItemPrices(final Collection<String> itemNames)
+			throws ItemPriceLookupInterruptedException {
+		return getItemPrices(itemNames, Optional.empty());
+	}
+
+	/**
+	 * Gets item price data for all items with the given names like
+	 * {@link #getItemPrices(Collection)}, but waits at most for the given
+	 * latency budget for items that need to be looked up. If the lookup does
+	 * not complete in time, the items that could already be priced, from the
+	 * cache or by lookups that did complete, are returned and the remaining
+	 * lookups are finished in the background. Their results are cached, such
+	 * that later calls find them.
+	 * 
+	 * @param itemNames
+	 *            The names of the items to get their price data, duplicates
+	 *            are only resolved once
+	 * @param latencyBudgetMillis
+	 *            The maximal time to wait for items that need to be looked up,
+	 *            in milliseconds
+	 * @return Data-structure which maps the given item names to their price
+	 *         data. Items whose lookup exceeded the budget or is still
+	 *         deferred from an earlier call are not contained, neither are
+	 *         items that have no standard shop price.
+	 * @throws ItemPriceLookupInterruptedException
+	 *             When the current thread got interrupted while waiting for
+	 *             the lookups to complete
+	 */
+	public Map<String, ItemPrice> getItemPrices(final Collection<String> itemNames, final long latencyBudgetMillis)
+			throws ItemPriceLookupInterruptedException {
+		return getItemPrices(itemNames, Optional.of(Long.valueOf(latencyBudgetMillis)));
+	}
+
 	/**
 	 * Whether the given item is considered to be sold to the shop or to
 	 * players.
@@ -212,7 +461,29 @@ public final class Store {
 	}
 
 	/**
-	 * Registers the purchase of the given item.
+	 * Records that the given item was seen at the central traders depot. The
+	 * sighting is kept in the persistent {@link SightingsTable} under the
+	 * unique representation name of the item, see
+	 * {@link ItemDictionary#applyItemNamePatterns(String)}. The table ranks
+	 * the items to warm up at startup and to prefetch. The cached price data
+	 * of the item counts as used again, see
+	 * {@link StoreCache#recordSighting(String)}.
+	 * 
+	 * @param itemName
+	 *            The name of the item that was seen
+	 * @param category
+	 *            The category the item was seen in
+	 * @param cost
+	 *            The cost of the item
+	 */
+	public void recordDepotSighting(final String itemName, final EItemCategory category, final int cost) {
+		this.mSightingsTable.recordSighting(this.mItemDictionary.applyItemNamePatterns(itemName), category, cost);
+		this.mStoreCache.recordSighting(itemName);
+	}
+
+	/**
+	 * Registers the purchase of the given item. Does not block on the network,
+	 * the purchase is queued in a durable outbox and sent in the background.
 	 * 
 	 * @param item
 	 *            The item whose purchase is to be registered
@@ -222,19 +493,288 @@ public final class Store {
 	}
 
 	/**
-	 * Saves the store data like serializing cache data.
+	 * Gets the client that is used for all requests of the services of the
+	 * store. Can be used to configure timeouts or to access the latency
+	 * accounting of the remote services.
+	 * 
+	 * @return The client that is used for all requests of the store
+	 */
+	public StoreHttpClient getHttpClient() {
+		return this.mHttpClient;
+	}
+
+	/**
+	 * Gets the prefetcher that refreshes cached item price data in idle times.
+	 * Can be used to configure its request budget.
+	 * 
+	 * @return The prefetcher of the store
+	 */
+	public PricePrefetcher getPricePrefetcher() {
+		return this.mPricePrefetcher;
+	}
+
+	/**
+	 * Whether expired cached item price data is served stale while it is
+	 * refreshed in the background or not.
+	 * 
+	 * @return <tt>True</tt> if expired cached item price data is served stale,
+	 *         <tt>false</tt> if it is looked up synchronously
+	 */
+	public boolean isServingStalePrices() {
+		return this.mIsServingStalePrices;
+	}
+
+	/**
+	 * Saves the store data like compacting cache data. Changes of the cache
+	 * are already persisted by its journal, the compaction runs in the
+	 * background.
 	 */
 	public void save() {
-		this.mStoreCache.serialize();
+		this.mStoreCache.requestCompaction();
+		logStatistics();
+	}
+
+	/**
+	 * Sets whether the store is allowed to prefetch item price data in the
+	 * background or not. Should only be allowed while the bot is idle, since
+	 * prefetching competes with regular lookups for the remote services.
+	 * 
+	 * @param isPrefetching
+	 *            <tt>True</tt> if prefetching is allowed, <tt>false</tt> if it
+	 *            should pause
+	 */
+	public void setPrefetching(final boolean isPrefetching) {
+		this.mPricePrefetcher.setActive(isPrefetching);
+	}
+
+	/**
+	 * Sets whether expired cached item price data is served stale while it is
+	 * refreshed in the background or not. Stale data is flagged by
+	 * {@link ItemPrice#isStale()} and only served if it is not older than
+	 * {@link #STORED_ITEM_STALE_SERVING_VALIDITY_DAYS}.
+	 * 
+	 * @param isServingStalePrices
+	 *            <tt>True</tt> if expired cached item price data should be
+	 *            served stale, <tt>false</tt> if it should be looked up
+	 *            synchronously
+	 */
+	public void setServingStalePrices(final boolean isServingStalePrices) {
+		this.mIsServingStalePrices = isServingStalePrices;
 	}
 
 	/**
-	 * Shuts the store down. The method will automatically call {@link #save()}
-	 * at shutdown. Afterwards this object should not be used anymore, instead
-	 * create a new instance.
+	 * Shuts the store down. The method will automatically compact and close
+	 * the cache at shutdown, without blocking on disk I/O. Afterwards this
+	 * object should not be used anymore, instead create a new instance.
 	 */
 	public void shutdown() {
-		save();
+		this.mCacheWarmUp.stopWarmUp();
+		this.mPricePrefetcher.stopPrefetcher();
+		this.mLookupExecutor.shutdownNow();
+		this.mDeferredLookupExecutor.shutdownNow();
+		this.mPurchaseRegister.shutdown();
+		this.mStoreCache.close();
+		logStatistics();
+	}
+
+	/**
+	 * Gets the amount of price tiers of the item with the given name that
+	 * would need to be looked up when prefetching it, i.e. the tiers that are
+	 * not valid anymore at the given timestamp. Items known to have no
+	 * standard shop price are not prefetched.
+	 * 
+	 * @param itemName
+	 *            The name of the item in question
+	 * @param validityTimestamp
+	 *            The timestamp at which the price data should still be valid
+	 * @return The amount of tiers to lookup, <tt>zero</tt> if the item does
+	 *         not need to be prefetched
+	 */
+	int getTiersToPrefetch(final String itemName, final long validityTimestamp) {
+		if (this.mStoreCache.hasNoStandardShopPrice(itemName)) {
+			return 0;
+		}
+		final Optional<ItemPrice> knownItemPrice = withSharedStandardShopPrice(itemName,
+				Optional.ofNullable(this.mStoreCache.getItemPrice(itemName)), validityTimestamp);
+		if (!knownItemPrice.isPresent()) {
+			return 2;
+		}
+
+		int tiers = 0;
+		if (!isStandardShopPriceValid(knownItemPrice.get(), validityTimestamp)) {
+			tiers++;
+		}
+		if (!isPlayerPriceValid(knownItemPrice.get(), validityTimestamp)) {
+			tiers++;
+		}
+		return tiers;
+	}
+
+	/**
+	 * Looks up the price data for the item with the given name from outside
+	 * of the cache. If expired cached price data is given, only its tiers that
+	 * are not valid anymore are looked up, the others are taken over. The
+	 * cache is not updated by this method. The method is thread-safe and used
+	 * by {@link ItemPriceLookup} tasks.
+	 * 
+	 * @param itemName
+	 *            The name of the item to lookup its price data
+	 * @param expiredItemPrice
+	 *            If present the expired cached price data of the item
+	 * @return The item price data for the item with the given name
+	 * @throws NoStandardShopPriceException
+	 *             When the given item has no standard shop price though every
+	 *             item needs to have such a price
+	 */
+	ItemPrice lookupItemPrice(final String itemName, final Optional<ItemPrice> expiredItemPrice)
+			throws NoStandardShopPriceException {
+		return lookupItemPrice(itemName, expiredItemPrice, System.currentTimeMillis());
+	}
+
+	/**
+	 * Prefetches the price data for the item with the given name and updates
+	 * the cache with the result. Only the tiers that are not valid anymore at
+	 * the given timestamp are looked up, see
+	 * {@link #getTiersToPrefetch(String, long)}. Errors of the remote services
+	 * are logged. The method is thread-safe and used by the
+	 * {@link PricePrefetcher}.
+	 * 
+	 * @param itemName
+	 *            The name of the item to prefetch its price data
+	 * @param validityTimestamp
+	 *            The timestamp at which the price data should still be valid
+	 */
+	void prefetchItemPrice(final String itemName, final long validityTimestamp) {
+		if (!this.mItemNamesBeingRefreshed.add(itemName)) {
+			return;
+		}
+
+		try {
+			Optional<ItemPrice> cachedItemPrice = Optional.empty();
+			if (this.mStoreCache.hasItemPrice(itemName)) {
+				cachedItemPrice = Optional.of(this.mStoreCache.getItemPrice(itemName));
+			}
+			refreshItemPrice(itemName, cachedItemPrice, validityTimestamp);
+		} finally {
+			this.mItemNamesBeingRefreshed.remove(itemName);
+		}
+	}
+
+	/**
+	 * Refreshes the expired cached price data of the item with the given name
+	 * and updates the cache with the result. Only the expired tiers are looked
+	 * up. Errors of the remote services are logged, the stale data then stays
+	 * in the cache. The method is thread-safe and used by
+	 * {@link ItemPriceRefresh} tasks.
+	 * 
+	 * @param itemName
+	 *            The name of the item to refresh its price data
+	 * @param expiredItemPrice
+	 *            The expired cached price data of the item
+	 */
+	void refreshItemPrice(final String itemName, final ItemPrice expiredItemPrice) {
+		try {
+			refreshItemPrice(itemName, Optional.of(expiredItemPrice), System.currentTimeMillis());
+		} finally {
+			this.mItemNamesBeingRefreshed.remove(itemName);
+		}
+	}
+
+	/**
+	 * Looks up the price data of the items with the given names and caches
+	 * it, like {@link #resolveItemPrices(Set, Map)}, and afterwards removes
+	 * them from the deferred items. The method is thread-safe and used by
+	 * {@link DeferredItemPricesLookup} tasks.
+	 * 
+	 * @param itemNames
+	 *            The names of the items to lookup their price data
+	 * @param nameToExpiredItemPrice
+	 *            Data-structure which maps item names to their expired cached
+	 *            price data, if present
+	 * @return Data-structure which maps the item names to their price data,
+	 *         items without any known data or without standard shop price
+	 *         are not contained
+	 */
+	Map<String, ItemPrice> resolveDeferredItemPrices(final Set<String> itemNames,
+			final Map<String, ItemPrice> nameToExpiredItemPrice) {
+		try {
+			return resolveItemPrices(itemNames, nameToExpiredItemPrice);
+		} finally {
+			this.mDeferredItemNames.removeAll(itemNames);
+		}
+	}
+
+	/**
+	 * Looks up the price data of the items with the given names with batch
+	 * requests and caches it, like {@link #resolveItemPrices(Set, Map)}. Items
+	 * that are refreshed already are skipped. Errors of the remote services
+	 * are logged. The method is thread-safe and used by the
+	 * {@link CacheWarmUp}.
+	 * 
+	 * @param itemNames
+	 *            The names of the items to warm up
+	 * @param validityTimestamp
+	 *            The timestamp at which the price data should still be valid
+	 */
+	void warmUpItemPrices(final Collection<String> itemNames, final long validityTimestamp) {
+		final Set<String> itemNamesToLookup = new LinkedHashSet<>();
+		final Map<String, ItemPrice> nameToExpiredItemPrice = new HashMap<>();
+		for (final String itemName : itemNames) {
+			if (!this.mItemNamesBeingRefreshed.add(itemName)) {
+				continue;
+			}
+			itemNamesToLookup.add(itemName);
+			final ItemPrice cachedItemPrice = this.mStoreCache.getItemPrice(itemName);
+			if (cachedItemPrice != null) {
+				nameToExpiredItemPrice.put(itemName, cachedItemPrice);
+			}
+		}
+
+		try {
+			resolveItemPrices(itemNamesToLookup, nameToExpiredItemPrice);
+		} catch (final IllegalStateException e) {
+			this.mLogger.logError("Error while warming up item prices: " + e);
+		} finally {
+			this.mItemNamesBeingRefreshed.removeAll(itemNamesToLookup);
+		}
+	}
+
+	/**
+	 * Stores a version of the given item price data, which was looked up from
+	 * outside of the cache, in the cache.
+	 * 
+	 * @param itemPrice
+	 *            The item price data to cache
+	 */
+	private void cacheItemPrice(final ItemPrice itemPrice) {
+		// Track how much the player price changed since the previous lookup
+		final ItemPrice previousItemPrice = this.mStoreCache.getItemPrice(itemPrice.getName());
+		if (previousItemPrice != null && previousItemPrice.hasPlayerPrice() && itemPrice.hasPlayerPrice()
+				&& itemPrice.getPlayerPriceLookupTimestamp() > previousItemPrice.getPlayerPriceLookupTimestamp()) {
+			this.mPlayerPriceVolatilityTracker.recordLookup(itemPrice.getName(),
+					previousItemPrice.getPlayerPrice().get().getPrice(),
+					previousItemPrice.getPlayerPriceLookupTimestamp(), itemPrice.getPlayerPrice().get().getPrice(),
+					itemPrice.getPlayerPriceLookupTimestamp());
+		}
+
+		final ItemPrice cacheItemPrice = itemPrice.clone();
+		cacheItemPrice.setIsCached(true);
+		// Missing tiers of degraded data keep their old lookup timestamp and
+		// are looked up again anyway
+		cacheItemPrice.setIsDegraded(false);
+		this.mStoreCache.putItemPrice(cacheItemPrice);
+	}
+
+	/**
+	 * Stores in the cache that the item with the given name has no standard
+	 * shop price, such that it is not looked up again until the entry
+	 * expires.
+	 * 
+	 * @param itemName
+	 *            The name of the item that has no standard shop price
+	 */
+	private void cacheNoStandardShopPrice(final String itemName) {
+		this.mStoreCache.putNoStandardShopPrice(itemName, System.currentTimeMillis());
 	}
 
 	/**
@@ -256,42 +796,732 @@ public final class Store {
 			this.mLogger.logDebug("Getting item price: " + itemName + ", " + ignoreCache);
 		}
 
-		ItemPrice itemPrice = null;
 		// Try to use the cache first
-		if (!ignoreCache && this.mStoreCache.hasItemPrice(itemName)) {
+		Optional<ItemPrice> expiredItemPrice = Optional.empty();
+		if (!ignoreCache) {
+			if (isNoStandardShopPriceKnown(itemName)) {
+				throw new NoStandardShopPriceException(itemName);
+			}
+
+			if (this.mStoreCache.hasItemPrice(itemName)) {
+				final ItemPrice storedItemPrice = this.mStoreCache.getItemPrice(itemName);
+				if (isItemPriceValid(storedItemPrice)) {
+					return storedItemPrice;
+				}
+				final Optional<ItemPrice> staleItemPrice = serveStaleItemPrice(itemName, storedItemPrice);
+				if (staleItemPrice.isPresent()) {
+					return staleItemPrice.get();
+				}
+				expiredItemPrice = Optional.of(storedItemPrice);
+			}
+		}
+
+		// Lookup the price if item is not cached or not valid, only refreshing
+		// the expired tiers
+		final ItemPrice itemPrice;
+		try {
+			itemPrice = lookupItemPrice(itemName, expiredItemPrice);
+		} catch (final NoStandardShopPriceException e) {
+			cacheNoStandardShopPrice(itemName);
+			throw e;
+		} catch (final StandardShopPriceServiceUnavailableException | PlayerPriceServiceUnavailableException
+				| PlayerPriceServiceAnswerWrongFormatException e) {
+			final Optional<ItemPrice> degradedItemPrice = serveDegradedItemPrice(itemName, expiredItemPrice);
+			if (!degradedItemPrice.isPresent()) {
+				throw e;
+			}
+			this.mLogger.logError("Price service unavailable, serving degraded item price: " + e);
+			return degradedItemPrice.get();
+		}
+		cacheItemPrice(itemPrice);
+
+		return itemPrice;
+	}
+
+	/**
+	 * Gets item price data for all items with the given names, see
+	 * {@link #getItemPrices(Collection)} and
+	 * {@link #getItemPrices(Collection, long)}.
+	 * 
+	 * @param itemNames
+	 *            The names of the items to get their price data, duplicates
+	 *            are only resolved once
+	 * @param latencyBudgetMillis
+	 *            If present the maximal time to wait for items that need to be
+	 *            looked up, in milliseconds, if not present there is no budget
+	 * @return Data-structure which maps the given item names to their price
+	 *         data, items that have no standard shop price are not contained
+	 * @throws ItemPriceLookupInterruptedException
+	 *             When the current thread got interrupted while waiting for
+	 *             the lookups to complete
+	 */
+	private Map<String, ItemPrice> getItemPrices(final Collection<String> itemNames,
+			final Optional<Long> latencyBudgetMillis) throws ItemPriceLookupInterruptedException {
+		if (this.mLogger.isDebugEnabled()) {
+			this.mLogger.logDebug("Getting item prices: " + itemNames);
+		}
+
+		final Map<String, ItemPrice> nameToItemPrice = new HashMap<>();
+		final Set<String> itemNamesToLookup = new LinkedHashSet<>();
+		final Map<String, ItemPrice> nameToExpiredItemPrice = new HashMap<>();
+
+		// Use the cache first and collect all other items
+		for (final String itemName : itemNames) {
+			if (nameToItemPrice.containsKey(itemName) || itemNamesToLookup.contains(itemName)) {
+				continue;
+			}
+			if (isNoStandardShopPriceKnown(itemName)) {
+				if (this.mLogger.isDebugEnabled()) {
+					this.mLogger.logDebug("Skipping item without standard shop price: " + itemName);
+				}
+				continue;
+			}
+
+			if (!this.mStoreCache.hasItemPrice(itemName)) {
+				itemNamesToLookup.add(itemName);
+				continue;
+			}
 			final ItemPrice storedItemPrice = this.mStoreCache.getItemPrice(itemName);
 			if (isItemPriceValid(storedItemPrice)) {
-				itemPrice = storedItemPrice;
+				nameToItemPrice.put(itemName, storedItemPrice);
+				continue;
+			}
+			final Optional<ItemPrice> staleItemPrice = serveStaleItemPrice(itemName, storedItemPrice);
+			if (staleItemPrice.isPresent()) {
+				nameToItemPrice.put(itemName, staleItemPrice.get());
+			} else {
+				itemNamesToLookup.add(itemName);
+				nameToExpiredItemPrice.put(itemName, storedItemPrice);
 			}
 		}
 
-		// Lookup the price if item is not cached or not valid
-		if (itemPrice == null) {
-			// Lookup standard price in FwWiki
-			final Optional<Integer> standardShopPrice = this.mStandardShopPriceFinder.findStandardShopPrice(itemName);
+		if (itemNamesToLookup.isEmpty()) {
+			return nameToItemPrice;
+		}
+
+		if (!latencyBudgetMillis.isPresent()) {
+			nameToItemPrice.putAll(resolveItemPrices(itemNamesToLookup, nameToExpiredItemPrice));
+			return nameToItemPrice;
+		}
+
+		// Items of a deferred lookup are already resolved in the background
+		itemNamesToLookup.removeAll(this.mDeferredItemNames);
+		if (!itemNamesToLookup.isEmpty()) {
+			nameToItemPrice.putAll(resolveItemPricesWithinBudget(itemNamesToLookup, nameToExpiredItemPrice,
+					latencyBudgetMillis.get().longValue()));
+		}
+		return nameToItemPrice;
+	}
+
+	/**
+	 * Whether the given item price data is valid or not, i.e. whether both,
+	 * its standard shop price tier and its player price tier, are valid. If it
+	 * is not valid a cached value should be rejected and the expired tiers
+	 * refreshed.
+	 * 
+	 * @param itemPrice
+	 *            The item price in question
+	 * @return <tt>True</tt> if the given item price is valid, <tt>false</tt> if
+	 *         not
+	 */
+	private boolean isItemPriceValid(final ItemPrice itemPrice) {
+		final long now = System.currentTimeMillis();
+		return isStandardShopPriceValid(itemPrice, now) && isPlayerPriceValid(itemPrice, now);
+	}
+
+	/**
+	 * Whether the cache knows that the item with the given name has no
+	 * standard shop price and the entry is still valid. Expired entries are
+	 * removed from the cache.
+	 * 
+	 * @param itemName
+	 *            The name of the item in question
+	 * @return <tt>True</tt> if the item is known to have no standard shop
+	 *         price, <tt>false</tt> if not
+	 */
+	private boolean isNoStandardShopPriceKnown(final String itemName) {
+		final Optional<Long> lookupTimestamp = this.mStoreCache.getNoStandardShopPriceTimestamp(itemName);
+		if (!lookupTimestamp.isPresent()) {
+			return false;
+		}
+
+		final long lookupDiff = System.currentTimeMillis() - lookupTimestamp.get().longValue();
+		if (TimeUnit.MILLISECONDS.toDays(lookupDiff) <= STORED_ITEM_NO_STANDARD_SHOP_PRICE_VALIDITY_DAYS) {
+			return true;
+		}
+
+		this.mStoreCache.removeNoStandardShopPrice(itemName);
+		return false;
+	}
+
+	/**
+	 * Whether the player price tier of the given item price data is valid or
+	 * not. If it is not valid the player price should be looked up again. The
+	 * validity adapts to the volatility of the player price of the item, see
+	 * {@link PlayerPriceVolatilityTracker}.
+	 * 
+	 * @param itemPrice
+	 *            The item price in question
+	 * @param validityTimestamp
+	 *            The timestamp at which the tier should be valid, usually the
+	 *            current time
+	 * @return <tt>True</tt> if the player price tier of the given item price
+	 *         is valid, <tt>false</tt> if not
+	 */
+	private boolean isPlayerPriceValid(final ItemPrice itemPrice, final long validityTimestamp) {
+		// First check lookup validity
+		final long lookupTimestamp = itemPrice.getPlayerPriceLookupTimestamp();
+		final long lookupDiff = validityTimestamp - lookupTimestamp;
+
+		final boolean isLookupValid = lookupDiff <= this.mPlayerPriceVolatilityTracker
+				.getPlayerPriceLookupValidity(itemPrice.getName());
+
+		if (isLookupValid) {
+			return true;
+		}
+
+		// Check player to player price validity
+		if (!itemPrice.hasPlayerPrice()) {
+			return false;
+		}
+		final long playerTimestamp = itemPrice.getPlayerPrice().get().getTimestamp();
+		final long playerDiff = validityTimestamp - playerTimestamp;
+
+		return playerDiff <= this.mPlayerPriceVolatilityTracker.getPlayerPriceValidity(itemPrice.getName());
+	}
+
+	/**
+	 * Logs the statistics of the cache, of shared fetches and of the network.
+	 */
+	private void logStatistics() {
+		this.mLogger.logInfo("Cache statistics: " + this.mStoreCache.getStatistics());
+		this.mLogger.logInfo("Shared fetches: standardShopPrices=" + this.mStandardShopPriceFinder.getSharedFetches()
+				+ ", playerPrices=" + this.mPlayerPriceFinder.getSharedFetches());
 
-			if (!standardShopPrice.isPresent()) {
+		for (final HostStatistics statistics : this.mHttpClient.getStatistics()) {
+			this.mLogger.logInfo("Network statistics: " + statistics);
+		}
+		for (final CircuitBreaker circuitBreaker : this.mHttpClient.getCircuitBreakers()) {
+			this.mLogger.logInfo("Circuit breaker: " + circuitBreaker);
+		}
+		for (final HostRateLimiter rateLimiter : this.mHttpClient.getRateLimiters()) {
+			this.mLogger.logInfo("Rate limiter: " + rateLimiter);
+		}
+		this.mLogger.logInfo("Pending purchases: " + this.mPurchaseRegister.getPendingPurchases());
+		this.mLogger.logInfo("Player price volatility tracked items: " + this.mPlayerPriceVolatilityTracker.size());
+		this.mLogger.logInfo("Depot sightings: " + this.mSightingsTable.size());
+	}
+
+	/**
+	 * Looks up the price data for the item with the given name from outside
+	 * of the cache. If cached price data is given, only its tiers that are not
+	 * valid anymore at the given timestamp are looked up, the others are taken
+	 * over. A valid standard shop price of the global store shared by all
+	 * worlds is taken over as well. The cache is not updated by this method.
+	 * 
+	 * @param itemName
+	 *            The name of the item to lookup its price data
+	 * @param cachedItemPrice
+	 *            If present the cached price data of the item
+	 * @param validityTimestamp
+	 *            The timestamp at which the taken over tiers should still be
+	 *            valid, usually the current time
+	 * @return The item price data for the item with the given name
+	 * @throws NoStandardShopPriceException
+	 *             When the given item has no standard shop price though every
+	 *             item needs to have such a price
+	 */
+	private ItemPrice lookupItemPrice(final String itemName, final Optional<ItemPrice> cachedItemPrice,
+			final long validityTimestamp) throws NoStandardShopPriceException {
+		final Optional<ItemPrice> knownItemPrice = withSharedStandardShopPrice(itemName, cachedItemPrice,
+				validityTimestamp);
+
+		// Lookup standard price in FwWiki, if its tier expired
+		final int standardShopPrice;
+		final long standardShopPriceLookupTimestamp;
+		if (knownItemPrice.isPresent() && isStandardShopPriceValid(knownItemPrice.get(), validityTimestamp)) {
+			standardShopPrice = knownItemPrice.get().getStandardShopPrice();
+			standardShopPriceLookupTimestamp = knownItemPrice.get().getStandardShopPriceLookupTimestamp();
+		} else {
+			final Optional<Integer> foundStandardShopPrice = this.mStandardShopPriceFinder
+					.findStandardShopPrice(itemName);
+			if (!foundStandardShopPrice.isPresent()) {
 				throw new NoStandardShopPriceException(itemName);
 			}
+			standardShopPrice = foundStandardShopPrice.get().intValue();
+			standardShopPriceLookupTimestamp = System.currentTimeMillis();
+			this.mStandardShopPriceStore.putStandardShopPrice(this.mItemDictionary.applyItemNamePatterns(itemName),
+					new StandardShopPrice(standardShopPrice, standardShopPriceLookupTimestamp));
+		}
+
+		// Lookup player to player price in MPLogger interface, if its tier
+		// expired
+		final Optional<PlayerPrice> playerPrice;
+		final long playerPriceLookupTimestamp;
+		if (knownItemPrice.isPresent() && isPlayerPriceValid(knownItemPrice.get(), validityTimestamp)) {
+			playerPrice = knownItemPrice.get().getPlayerPrice();
+			playerPriceLookupTimestamp = knownItemPrice.get().getPlayerPriceLookupTimestamp();
+		} else {
+			playerPrice = this.mPlayerPriceFinder.findPlayerPrice(itemName, this.mWorld);
+			playerPriceLookupTimestamp = System.currentTimeMillis();
+		}
+
+		return new ItemPrice(itemName, standardShopPrice, playerPrice.orElse(null), false,
+				standardShopPriceLookupTimestamp, playerPriceLookupTimestamp);
+	}
+
+	/**
+	 * Looks up the price data for all items with the given names from outside
+	 * of the cache concurrently. If the player price service supports batch
+	 * requests all player prices are resolved with one request while the
+	 * standard shop prices are looked up in parallel, else each item is looked
+	 * up completely by its own {@link ItemPriceLookup}. Of items with expired
+	 * cached price data only the tiers that are not valid anymore are looked
+	 * up. Standard shop prices that are valid in the global store shared by
+	 * all worlds are not looked up either. The cache is not updated with the
+	 * item price data by this method, but all items that turn out to have no
+	 * standard shop price are stored in it.
+	 * 
+	 * @param itemNames
+	 *            The names of the items to lookup their price data, without
+	 *            duplicates
+	 * @param nameToExpiredItemPrice
+	 *            Data-structure that maps names of the given items to their
+	 *            expired cached price data, if present
+	 * @return The item price data of all given items that have a standard
+	 *         shop price
+	 * @throws ItemPriceLookupInterruptedException
+	 *             When the current thread got interrupted while waiting for
+	 *             the lookups to complete
+	 */
+	private List<ItemPrice> lookupItemPrices(final Collection<String> itemNames,
+			final Map<String, ItemPrice> nameToExpiredItemPrice) throws ItemPriceLookupInterruptedException {
+		final List<ItemPrice> itemPrices = new ArrayList<>(itemNames.size());
+		final List<Future<?>> lookups = new ArrayList<>();
+		try {
+			// Take over valid standard shop prices found by other worlds
+			final long validityTimestamp = System.currentTimeMillis();
+			final Map<String, ItemPrice> nameToKnownItemPrice = new HashMap<>();
+			for (final String itemName : itemNames) {
+				final Optional<ItemPrice> knownItemPrice = withSharedStandardShopPrice(itemName,
+						Optional.ofNullable(nameToExpiredItemPrice.get(itemName)), validityTimestamp);
+				if (knownItemPrice.isPresent()) {
+					nameToKnownItemPrice.put(itemName, knownItemPrice.get());
+				}
+			}
 
-			// Lookup player to player price in MPLogger interface
-			final Optional<PlayerPrice> playerPrice = this.mPlayerPriceFinder.findPlayerPrice(itemName, this.mWorld);
+			if (!this.mPlayerPriceFinder.isBatchSupported()) {
+				final Map<String, Future<ItemPrice>> nameToItemPriceLookup = new LinkedHashMap<>();
+				for (final String itemName : itemNames) {
+					final Optional<ItemPrice> expiredItemPrice = Optional
+							.ofNullable(nameToKnownItemPrice.get(itemName));
+					final Future<ItemPrice> itemPriceLookup = this.mLookupExecutor
+							.submit(new ItemPriceLookup(this, itemName, expiredItemPrice));
+					nameToItemPriceLookup.put(itemName, itemPriceLookup);
+					lookups.add(itemPriceLookup);
+				}
 
-			// Create data
-			if (playerPrice.isPresent()) {
-				itemPrice = new ItemPrice(itemName, standardShopPrice.get().intValue(), playerPrice.get(), false,
-						System.currentTimeMillis());
+				// Join all lookups such that every item without standard shop
+				// price gets known to the cache and is left out
+				for (final Entry<String, Future<ItemPrice>> entry : nameToItemPriceLookup.entrySet()) {
+					try {
+						itemPrices.add(joinLookup(entry.getValue()));
+					} catch (final NoStandardShopPriceException e) {
+						cacheNoStandardShopPrice(entry.getKey());
+					}
+				}
+				return itemPrices;
+			}
+
+			// Lookup all expired player prices with one batch request in
+			// parallel to the expired standard shop prices, which are looked
+			// up with batch requests too
+			final Set<String> playerPriceItemNames = new LinkedHashSet<>();
+			final Set<String> standardShopPriceItemNames = new LinkedHashSet<>();
+			for (final String itemName : itemNames) {
+				final ItemPrice expiredItemPrice = nameToKnownItemPrice.get(itemName);
+				if (expiredItemPrice == null || !isPlayerPriceValid(expiredItemPrice, validityTimestamp)) {
+					playerPriceItemNames.add(itemName);
+				}
+				if (expiredItemPrice == null || !isStandardShopPriceValid(expiredItemPrice, validityTimestamp)) {
+					standardShopPriceItemNames.add(itemName);
+				}
+			}
+			Future<Map<String, Integer>> standardShopPricesLookup = null;
+			if (!standardShopPriceItemNames.isEmpty()) {
+				standardShopPricesLookup = this.mLookupExecutor.submit(
+						new StandardShopPricesLookup(this.mStandardShopPriceFinder, standardShopPriceItemNames));
+				lookups.add(standardShopPricesLookup);
+			}
+			Future<Map<String, PlayerPrice>> playerPricesLookup = null;
+			if (!playerPriceItemNames.isEmpty()) {
+				playerPricesLookup = this.mLookupExecutor
+						.submit(new PlayerPricesLookup(this.mPlayerPriceFinder, playerPriceItemNames, this.mWorld));
+				lookups.add(playerPricesLookup);
+			}
+
+			Map<String, Integer> nameToStandardShopPrice = Collections.emptyMap();
+			if (standardShopPricesLookup != null) {
+				nameToStandardShopPrice = joinLookup(standardShopPricesLookup);
+			}
+			final Set<String> missingItemNames = new HashSet<>();
+			for (final String itemName : standardShopPriceItemNames) {
+				if (!nameToStandardShopPrice.containsKey(itemName)) {
+					cacheNoStandardShopPrice(itemName);
+					missingItemNames.add(itemName);
+				}
+			}
+
+			// An unavailable player price service only degrades the result
+			Map<String, PlayerPrice> nameToPlayerPrice = Collections.emptyMap();
+			boolean isPlayerPriceServiceAvailable = true;
+			if (playerPricesLookup != null) {
+				try {
+					nameToPlayerPrice = joinLookup(playerPricesLookup);
+				} catch (final PlayerPriceServiceUnavailableException
+						| PlayerPriceServiceAnswerWrongFormatException e) {
+					this.mLogger.logError("Player price service unavailable, serving degraded item prices: " + e);
+					isPlayerPriceServiceAvailable = false;
+				}
+			}
+
+			// Combine the looked up tiers with the still valid cached tiers
+			final long lookupTimestamp = System.currentTimeMillis();
+			for (final String itemName : itemNames) {
+				if (missingItemNames.contains(itemName)) {
+					continue;
+				}
+				final ItemPrice expiredItemPrice = nameToKnownItemPrice.get(itemName);
+
+				final int standardShopPrice;
+				final long standardShopPriceLookupTimestamp;
+				if (nameToStandardShopPrice.containsKey(itemName)) {
+					standardShopPrice = nameToStandardShopPrice.get(itemName).intValue();
+					standardShopPriceLookupTimestamp = lookupTimestamp;
+					this.mStandardShopPriceStore.putStandardShopPrice(
+							this.mItemDictionary.applyItemNamePatterns(itemName),
+							new StandardShopPrice(standardShopPrice, standardShopPriceLookupTimestamp));
+				} else {
+					standardShopPrice = expiredItemPrice.getStandardShopPrice();
+					standardShopPriceLookupTimestamp = expiredItemPrice.getStandardShopPriceLookupTimestamp();
+				}
+
+				final PlayerPrice playerPrice;
+				final long playerPriceLookupTimestamp;
+				final boolean isDegraded = playerPriceItemNames.contains(itemName) && !isPlayerPriceServiceAvailable;
+				if (playerPriceItemNames.contains(itemName) && isPlayerPriceServiceAvailable) {
+					playerPrice = nameToPlayerPrice.get(itemName);
+					playerPriceLookupTimestamp = lookupTimestamp;
+				} else if (expiredItemPrice != null) {
+					playerPrice = expiredItemPrice.getPlayerPrice().orElse(null);
+					playerPriceLookupTimestamp = expiredItemPrice.getPlayerPriceLookupTimestamp();
+				} else {
+					playerPrice = null;
+					playerPriceLookupTimestamp = 0;
+				}
+
+				final ItemPrice itemPrice = new ItemPrice(itemName, standardShopPrice, playerPrice, false,
+						standardShopPriceLookupTimestamp, playerPriceLookupTimestamp);
+				itemPrice.setIsDegraded(isDegraded);
+				itemPrices.add(itemPrice);
+			}
+			return itemPrices;
+		} finally {
+			// Abort lookups that are not needed anymore
+			for (final Future<?> lookup : lookups) {
+				lookup.cancel(true);
+			}
+		}
+	}
+
+	/**
+	 * Queues a refresh of the expired cached price data of the item with the
+	 * given name in the background, unless such a refresh is already pending.
+	 * 
+	 * @param itemName
+	 *            The name of the item to refresh its price data
+	 * @param expiredItemPrice
+	 *            The expired cached price data of the item
+	 */
+	private void queueItemPriceRefresh(final String itemName, final ItemPrice expiredItemPrice) {
+		if (!this.mItemNamesBeingRefreshed.add(itemName)) {
+			return;
+		}
+
+		try {
+			this.mLookupExecutor.execute(new ItemPriceRefresh(this, itemName, expiredItemPrice));
+		} catch (final RejectedExecutionException e) {
+			// The store is shutting down, the refresh is not needed anymore
+			this.mItemNamesBeingRefreshed.remove(itemName);
+		}
+	}
+
+	/**
+	 * Refreshes the cached price data of the item with the given name and
+	 * updates the cache with the result. Only the tiers that are not valid
+	 * anymore at the given timestamp are looked up. Errors of the remote
+	 * services are logged, the cached data then stays as it is.
+	 * 
+	 * @param itemName
+	 *            The name of the item to refresh its price data
+	 * @param cachedItemPrice
+	 *            If present the cached price data of the item
+	 * @param validityTimestamp
+	 *            The timestamp at which the taken over tiers should still be
+	 *            valid, usually the current time
+	 */
+	private void refreshItemPrice(final String itemName, final Optional<ItemPrice> cachedItemPrice,
+			final long validityTimestamp) {
+		try {
+			cacheItemPrice(lookupItemPrice(itemName, cachedItemPrice, validityTimestamp));
+		} catch (final NoStandardShopPriceException e) {
+			cacheNoStandardShopPrice(itemName);
+		} catch (final IllegalStateException e) {
+			this.mLogger.logError("Error while refreshing item price of " + itemName + ": " + e);
+		}
+	}
+
+	/**
+	 * Looks up the price data of the items with the given names and caches
+	 * it. If a price service is unavailable, degraded price data is served
+	 * instead and not cached, see
+	 * {@link #serveDegradedItemPrice(String, Optional)}.
+	 * 
+	 * @param itemNames
+	 *            The names of the items to lookup their price data
+	 * @param nameToExpiredItemPrice
+	 *            Data-structure which maps item names to their expired cached
+	 *            price data, if present
+	 * @return Data-structure which maps the item names to their price data,
+	 *         items without any known data or without standard shop price
+	 *         are not contained
+	 * @throws ItemPriceLookupInterruptedException
+	 *             When the current thread got interrupted while waiting for
+	 *             the lookups to complete
+	 */
+	private Map<String, ItemPrice> resolveItemPrices(final Set<String> itemNames,
+			final Map<String, ItemPrice> nameToExpiredItemPrice) throws ItemPriceLookupInterruptedException {
+		final Map<String, ItemPrice> nameToItemPrice = new HashMap<>();
+		final List<ItemPrice> itemPrices;
+		try {
+			itemPrices = lookupItemPrices(itemNames, nameToExpiredItemPrice);
+		} catch (final StandardShopPriceServiceUnavailableException | PlayerPriceServiceUnavailableException
+				| PlayerPriceServiceAnswerWrongFormatException e) {
+			this.mLogger.logError("Price service unavailable, serving degraded item prices: " + e);
+			for (final String itemName : itemNames) {
+				final Optional<ItemPrice> degradedItemPrice = serveDegradedItemPrice(itemName,
+						Optional.ofNullable(nameToExpiredItemPrice.get(itemName)));
+				if (degradedItemPrice.isPresent()) {
+					nameToItemPrice.put(itemName, degradedItemPrice.get());
+				}
+			}
+			return nameToItemPrice;
+		}
+
+		for (final ItemPrice itemPrice : itemPrices) {
+			cacheItemPrice(itemPrice);
+			nameToItemPrice.put(itemPrice.getName(), itemPrice);
+		}
+		return nameToItemPrice;
+	}
+
+	/**
+	 * Looks up the price data of the items with the given names like
+	 * {@link #resolveItemPrices(Set, Map)}, but waits at most for the given
+	 * latency budget. The items are looked up by
+	 * {@link DeferredItemPricesLookup}s, all together if the player price
+	 * service supports batch requests, else each item by its own. Lookups
+	 * that complete in time contribute their result, the others are finished
+	 * in the background and their items are remembered as deferred until
+	 * then.
+	 * 
+	 * @param itemNames
+	 *            The names of the items to lookup their price data
+	 * @param nameToExpiredItemPrice
+	 *            Data-structure which maps item names to their expired cached
+	 *            price data, if present
+	 * @param latencyBudgetMillis
+	 *            The maximal time to wait for the lookup, in milliseconds
+	 * @return Data-structure which maps the item names to their price data,
+	 *         items whose lookup exceeded the budget are not contained
+	 * @throws ItemPriceLookupInterruptedException
+	 *             When the current thread got interrupted while waiting for
+	 *             the lookup to complete
+	 */
+	private Map<String, ItemPrice> resolveItemPricesWithinBudget(final Set<String> itemNames,
+			final Map<String, ItemPrice> nameToExpiredItemPrice, final long latencyBudgetMillis)
+			throws ItemPriceLookupInterruptedException {
+		// Group the items by the lookups that resolve them
+		final List<Set<String>> itemNameGroups = new ArrayList<>();
+		if (this.mPlayerPriceFinder.isBatchSupported()) {
+			itemNameGroups.add(itemNames);
+		} else {
+			for (final String itemName : itemNames) {
+				itemNameGroups.add(Collections.singleton(itemName));
+			}
+		}
+
+		this.mDeferredItemNames.addAll(itemNames);
+		final List<Future<Map<String, ItemPrice>>> lookups = new ArrayList<>(itemNameGroups.size());
+		for (final Set<String> itemNameGroup : itemNameGroups) {
+			try {
+				lookups.add(this.mDeferredLookupExecutor
+						.submit(new DeferredItemPricesLookup(this, itemNameGroup, nameToExpiredItemPrice)));
+			} catch (final RejectedExecutionException e) {
+				// The store is shutting down, resolve the items directly
+				lookups.add(null);
+			}
+		}
+
+		// Collect the results of all lookups that complete within the budget
+		final Map<String, ItemPrice> nameToItemPrice = new HashMap<>();
+		final long deadline = System.currentTimeMillis() + latencyBudgetMillis;
+		int deferredItems = 0;
+		for (int i = 0; i < lookups.size(); i++) {
+			final Future<Map<String, ItemPrice>> lookup = lookups.get(i);
+			if (lookup == null) {
+				nameToItemPrice.putAll(resolveDeferredItemPrices(itemNameGroups.get(i), nameToExpiredItemPrice));
+				continue;
+			}
+
+			final long remainingBudget = Math.max(0, deadline - System.currentTimeMillis());
+			final Optional<Map<String, ItemPrice>> groupNameToItemPrice = joinLookup(lookup, remainingBudget);
+			if (groupNameToItemPrice.isPresent()) {
+				nameToItemPrice.putAll(groupNameToItemPrice.get());
 			} else {
-				itemPrice = new ItemPrice(itemName, standardShopPrice.get().intValue(), false,
-						System.currentTimeMillis());
+				deferredItems += itemNameGroups.get(i).size();
 			}
+		}
 
-			// Create a version for the cache and update it
-			final ItemPrice cacheItemPrice = itemPrice.clone();
-			cacheItemPrice.setIsCached(true);
-			this.mStoreCache.putItemPrice(cacheItemPrice);
+		if (deferredItems > 0) {
+			this.mLogger.logInfo("Latency budget of " + latencyBudgetMillis + "ms exceeded, deferred lookup of "
+					+ deferredItems + " item prices");
 		}
+		return nameToItemPrice;
+	}
 
-		return itemPrice;
+	/**
+	 * Serves price data of the item with the given name while a price service
+	 * is unavailable, flagged as {@link ItemPrice#isDegraded()}. Uses the
+	 * given expired cached price data regardless of its age if present, else
+	 * a standard shop price known without the services, from the global store
+	 * regardless of its age, the dictionary or the bundled catalog. The
+	 * returned data is not cached.
+	 * 
+	 * @param itemName
+	 *            The name of the item
+	 * @param expiredItemPrice
+	 *            If present the expired cached price data of the item
+	 * @return If present degraded price data of the item, if not present
+	 *         there is no data known without the services
+	 */
+	private Optional<ItemPrice> serveDegradedItemPrice(final String itemName,
+			final Optional<ItemPrice> expiredItemPrice) {
+		if (expiredItemPrice.isPresent()) {
+			final ItemPrice degradedItemPrice = expiredItemPrice.get().clone();
+			degradedItemPrice.setIsDegraded(true);
+			return Optional.of(degradedItemPrice);
+		}
+
+		final int standardShopPrice;
+		long standardShopPriceLookupTimestamp = 0;
+		final String parsedItemName = this.mItemDictionary.applyItemNamePatterns(itemName);
+		final Optional<StandardShopPrice> sharedStandardShopPrice = this.mStandardShopPriceStore
+				.getStandardShopPrice(parsedItemName);
+		if (sharedStandardShopPrice.isPresent()) {
+			standardShopPrice = sharedStandardShopPrice.get().getPrice();
+			standardShopPriceLookupTimestamp = sharedStandardShopPrice.get().getLookupTimestamp();
+		} else {
+			Optional<Integer> knownStandardShopPrice = this.mItemDictionary.getStandardShopPrice(parsedItemName);
+			if (!knownStandardShopPrice.isPresent()) {
+				knownStandardShopPrice = this.mStandardShopPriceCatalog.getStandardShopPrice(parsedItemName);
+			}
+			if (!knownStandardShopPrice.isPresent()) {
+				return Optional.empty();
+			}
+			standardShopPrice = knownStandardShopPrice.get().intValue();
+		}
+
+		PlayerPrice playerPrice = null;
+		final Optional<Integer> knownPlayerPrice = this.mItemDictionary.getPlayerPrice(itemName);
+		if (knownPlayerPrice.isPresent()) {
+			playerPrice = new PlayerPrice(knownPlayerPrice.get().intValue(), System.currentTimeMillis(), this.mWorld);
+		}
+
+		final ItemPrice degradedItemPrice = new ItemPrice(itemName, standardShopPrice, playerPrice, false,
+				standardShopPriceLookupTimestamp, 0);
+		degradedItemPrice.setIsDegraded(true);
+		return Optional.of(degradedItemPrice);
+	}
+
+	/**
+	 * Serves the given expired cached price data of the item with the given
+	 * name stale, if stale serving is enabled and the data is not too old.
+	 * In this case a refresh of the data is queued in the background.
+	 * 
+	 * @param itemName
+	 *            The name of the item
+	 * @param expiredItemPrice
+	 *            The expired cached price data of the item
+	 * @return If present a stale flagged version of the given price data,
+	 *         else the data needs to be looked up synchronously
+	 */
+	private Optional<ItemPrice> serveStaleItemPrice(final String itemName, final ItemPrice expiredItemPrice) {
+		if (!this.mIsServingStalePrices) {
+			return Optional.empty();
+		}
+		final long lookupDiff = System.currentTimeMillis() - expiredItemPrice.getLookupTimestamp();
+		if (TimeUnit.MILLISECONDS.toDays(lookupDiff) > STORED_ITEM_STALE_SERVING_VALIDITY_DAYS) {
+			return Optional.empty();
+		}
+
+		queueItemPriceRefresh(itemName, expiredItemPrice);
+
+		final ItemPrice staleItemPrice = expiredItemPrice.clone();
+		staleItemPrice.setIsStale(true);
+		return Optional.of(staleItemPrice);
+	}
+
+	/**
+	 * Takes over the standard shop price of the item with the given name from
+	 * the global store shared by all worlds, if the cached price data has no
+	 * valid standard shop price at the given timestamp but the global store
+	 * has.
+	 * 
+	 * @param itemName
+	 *            The name of the item
+	 * @param cachedItemPrice
+	 *            If present the cached price data of the item
+	 * @param validityTimestamp
+	 *            The timestamp at which the standard shop price should still
+	 *            be valid, usually the current time
+	 * @return The cached price data with the standard shop price of the global
+	 *         store if it was taken over, else the cached price data as given.
+	 *         If only the global store knows the item, the returned data has
+	 *         no valid player price tier.
+	 */
+	private Optional<ItemPrice> withSharedStandardShopPrice(final String itemName,
+			final Optional<ItemPrice> cachedItemPrice, final long validityTimestamp) {
+		if (cachedItemPrice.isPresent() && isStandardShopPriceValid(cachedItemPrice.get(), validityTimestamp)) {
+			return cachedItemPrice;
+		}
+		final Optional<StandardShopPrice> sharedStandardShopPrice = this.mStandardShopPriceStore
+				.getStandardShopPrice(this.mItemDictionary.applyItemNamePatterns(itemName));
+		if (!sharedStandardShopPrice.isPresent()) {
+			return cachedItemPrice;
+		}
+
+		PlayerPrice playerPrice = null;
+		long playerPriceLookupTimestamp = 0;
+		if (cachedItemPrice.isPresent()) {
+			playerPrice = cachedItemPrice.get().getPlayerPrice().orElse(null);
+			playerPriceLookupTimestamp = cachedItemPrice.get().getPlayerPriceLookupTimestamp();
+		}
+		final ItemPrice knownItemPrice = new ItemPrice(itemName, sharedStandardShopPrice.get().getPrice(),
+				playerPrice, false, sharedStandardShopPrice.get().getLookupTimestamp(), playerPriceLookupTimestamp);
+		if (!isStandardShopPriceValid(knownItemPrice, validityTimestamp)) {
+			return cachedItemPrice;
+		}
+		return Optional.of(knownItemPrice);
 	}
 }
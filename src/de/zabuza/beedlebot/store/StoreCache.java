@@ -2,28 +2,87 @@ package de.zabuza.beedlebot.store;
 
 import java.io.File;
 import java.io.FileInputStream;
-import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.ObjectInputStream;
-import java.io.ObjectOutputStream;
 import java.io.Serializable;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
 import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map.Entry;
+import java.util.Optional;
 
 import de.zabuza.beedlebot.exceptions.StoreCacheDeserializationUnsuccessfulException;
 import de.zabuza.beedlebot.exceptions.StoreCacheSerializationUnsuccessfulException;
 import de.zabuza.beedlebot.logging.ILogger;
 import de.zabuza.beedlebot.logging.LoggerFactory;
+import de.zabuza.beedlebot.logging.LoggerUtil;
 import de.zabuza.sparkle.freewar.EWorld;
 
 /**
- * Cache that stores item price data for a {@link Store}.
+ * Cache that stores item price data for a {@link Store}. The class is
+ * thread-safe, such that lookups that complete in the background can update
+ * it.<br>
+ * <br>
+ * A cache created by {@link #load(EWorld)} persists every change immediately
+ * by appending it to a {@link StoreCacheJournal}. Once the journal grew large
+ * enough it is folded into the serialized snapshot of the cache by a
+ * {@link StorePersistenceWriter} in the background, see
+ * {@link #requestCompaction()}. The snapshot is stored in the format of
+ * {@link StoreCacheFile}, caches serialized by older versions with Java
+ * serialization are migrated by the first compaction. The tool
+ * <tt>StoreCacheBenchmark</tt> of the <tt>tools</tt> source folder measures
+ * how long both formats take to load.<br>
+ * <br>
+ * The amount of cached item price data is bounded by {@link #getCapacity()}.
+ * Entries are evicted by a segmented LRU policy: new entries enter a
+ * probationary segment and are promoted to a protected segment when the item
+ * is seen again, see {@link #recordSighting(String)}. Victims are taken from
+ * the least recently used end of the probationary segment, preferring
+ * expired entries. Expired entries are removed whenever a snapshot is
+ * persisted, see {@link #setMaximalAges(long, long)}.
  * 
  * @author Zabuza {@literal <zabuza.dev@gmail.com>}
  *
  */
 public final class StoreCache implements Serializable {
+	/**
+	 * The amount of records after which the journal gets compacted into the
+	 * snapshot of the cache.
+	 */
+	private static final int COMPACTION_JOURNAL_RECORDS = 500;
+	/**
+	 * The default maximal amount of item price data entries of the cache.
+	 */
+	private static final int DEFAULT_CAPACITY = 10_000;
+	/**
+	 * The amount of least recently used entries of the probationary segment
+	 * that are searched for an expired entry when selecting a victim for
+	 * eviction.
+	 */
+	private static final int EVICTION_SCAN_LIMIT = 16;
+	/**
+	 * Suffix of the file-path to a journal that is currently compacted.
+	 */
+	private static final String FILEPATH_COMPACTING_JOURNAL_SUFF = ".journal.compacting";
+	/**
+	 * Suffix of the file-path to the journal of a cache.
+	 */
+	private static final String FILEPATH_JOURNAL_SUFF = ".journal";
+	/**
+	 * Suffix of the file-path to a cache serialized by older versions with
+	 * Java serialization.
+	 */
+	private static final String FILEPATH_LEGACY_SERIALIZATION_SUFF = ".ser";
 	/**
 	 * Prefix of the file-path to a serialized cache.
 	 */
@@ -31,17 +90,27 @@ public final class StoreCache implements Serializable {
 	/**
 	 * Suffix of the file-path to a serialized cache.
 	 */
-	private static final String FILEPATH_SERIALIZATION_SUFF = ".ser";
+	private static final String FILEPATH_SERIALIZATION_SUFF = ".bin";
+	/**
+	 * Suffix of the file-path to a snapshot that is currently written.
+	 */
+	private static final String FILEPATH_TEMPORARY_SUFF = ".tmp";
+	/**
+	 * The share of the capacity reserved for the protected segment, which
+	 * holds entries of items that were seen more than once.
+	 */
+	private static final double PROTECTED_SEGMENT_SHARE = 0.8;
 	/**
 	 * Serial version UID.
 	 */
 	private static final long serialVersionUID = 1L;
 
 	/**
-	 * Deserializes the cache for the given world. Before attempting to call
-	 * this method ensure there is a cache with
-	 * {@link #hasSerializedCache(EWorld)}. Serialization can be done with
-	 * {@link #serialize()}.
+	 * Deserializes the snapshot of the cache for the given world, without
+	 * replaying its journal. Before attempting to call this method ensure
+	 * there is a cache with {@link #hasSerializedCache(EWorld)}. Serialization
+	 * can be done with {@link #serialize()}. Use {@link #load(EWorld)} to get
+	 * the complete cache.
 	 * 
 	 * @param world
 	 *            The world of the cache to deserialize
@@ -52,11 +121,15 @@ public final class StoreCache implements Serializable {
 	public static StoreCache deserialize(final EWorld world) throws StoreCacheDeserializationUnsuccessfulException {
 		LoggerFactory.getLogger().logInfo("Deserializing StoreCache");
 
-		StoreCache cache = null;
-		try (final ObjectInputStream ois = new ObjectInputStream(new FileInputStream(buildSerializationPath(world)))) {
-			cache = (StoreCache) ois.readObject();
-			cache.refreshLogger();
-		} catch (final IOException | ClassNotFoundException e) {
+		final File cacheFile = new File(buildSerializationPath(world));
+		if (!cacheFile.exists()) {
+			return deserializeLegacy(world);
+		}
+
+		final StoreCache cache = new StoreCache(world);
+		try {
+			StoreCacheFile.read(cacheFile, world, cache);
+		} catch (final IOException e) {
 			throw new StoreCacheDeserializationUnsuccessfulException(e);
 		}
 		return cache;
@@ -74,7 +147,66 @@ public final class StoreCache implements Serializable {
 	 */
 	public static boolean hasSerializedCache(final EWorld world) {
 		final File cacheFile = new File(buildSerializationPath(world));
-		return cacheFile.exists() && !cacheFile.isDirectory();
+		return (cacheFile.exists() && !cacheFile.isDirectory()) || hasLegacySerializedCache(world);
+	}
+
+	/**
+	 * Loads the cache for the given world. Deserializes its snapshot if
+	 * present and replays the journal of all changes made afterwards on top of
+	 * it. The returned cache journals all further changes.
+	 * 
+	 * @param world
+	 *            The world of the cache to load
+	 * @return The loaded cache for the given world
+	 * @throws StoreCacheDeserializationUnsuccessfulException
+	 *             If the deserialization of the cache or the replay of its
+	 *             journal was unsuccessful
+	 */
+	public static StoreCache load(final EWorld world) throws StoreCacheDeserializationUnsuccessfulException {
+		// The final snapshot of a previous instance may still be written
+		try {
+			StorePersistenceWriter.awaitWriter(world);
+		} catch (final InterruptedException e) {
+			throw new StoreCacheDeserializationUnsuccessfulException(e);
+		}
+
+		final StoreCache cache;
+		if (hasSerializedCache(world)) {
+			cache = deserialize(world);
+		} else {
+			cache = new StoreCache(world);
+		}
+
+		// Replay changes of an interrupted compaction first, they are older
+		final int compactingJournalRecords = replayJournal(new File(buildCompactingJournalPath(world)), cache);
+		final int journalRecords = replayJournal(new File(buildJournalPath(world)), cache);
+
+		synchronized (cache) {
+			// The journal keeps growing across sessions until it is compacted
+			cache.openJournal(journalRecords);
+			cache.mWriter = new StorePersistenceWriter(cache, world);
+			cache.mWriter.start();
+			if (hasLegacySerializedCache(world)) {
+				// Migrate the cache to the current format
+				cache.requestCompaction();
+			} else if (compactingJournalRecords > 0 || journalRecords >= COMPACTION_JOURNAL_RECORDS) {
+				// Finish an interrupted compaction or fold a large journal
+				cache.requestCompaction();
+			}
+		}
+		return cache;
+	}
+
+	/**
+	 * Builds the path to the cache for the given world that was serialized by
+	 * older versions with Java serialization.
+	 * 
+	 * @param world
+	 *            The world of the cache
+	 * @return The path to the cache serialized by older versions
+	 */
+	static String buildLegacySerializationPath(final EWorld world) {
+		return FILEPATH_SERIALIZATION_PRE + world + FILEPATH_LEGACY_SERIALIZATION_SUFF;
 	}
 
 	/**
@@ -84,25 +216,186 @@ public final class StoreCache implements Serializable {
 	 *            The world of the cache
 	 * @return The path to the serialized cache for the given world
 	 */
-	private static String buildSerializationPath(final EWorld world) {
+	static String buildSerializationPath(final EWorld world) {
 		return FILEPATH_SERIALIZATION_PRE + world + FILEPATH_SERIALIZATION_SUFF;
 	}
 
+	/**
+	 * Builds the path to the journal of the given world that is currently
+	 * compacted.
+	 * 
+	 * @param world
+	 *            The world of the cache
+	 * @return The path to the journal that is currently compacted
+	 */
+	private static String buildCompactingJournalPath(final EWorld world) {
+		return FILEPATH_SERIALIZATION_PRE + world + FILEPATH_COMPACTING_JOURNAL_SUFF;
+	}
+
+	/**
+	 * Builds the path to the journal of the cache for the given world.
+	 * 
+	 * @param world
+	 *            The world of the cache
+	 * @return The path to the journal of the cache for the given world
+	 */
+	private static String buildJournalPath(final EWorld world) {
+		return FILEPATH_SERIALIZATION_PRE + world + FILEPATH_JOURNAL_SUFF;
+	}
+
+	/**
+	 * Builds the path to the snapshot of the cache for the given world that
+	 * is currently written.
+	 * 
+	 * @param world
+	 *            The world of the cache
+	 * @return The path to the snapshot that is currently written
+	 */
+	private static String buildTemporaryPath(final EWorld world) {
+		return FILEPATH_SERIALIZATION_PRE + world + FILEPATH_TEMPORARY_SUFF;
+	}
+
+	/**
+	 * Deserializes the cache for the given world that was serialized by older
+	 * versions with Java serialization.
+	 * 
+	 * @param world
+	 *            The world of the cache to deserialize
+	 * @return The deserialized instance of the cache for the given world
+	 * @throws StoreCacheDeserializationUnsuccessfulException
+	 *             If the deserialization of the cache was unsuccessful
+	 */
+	private static StoreCache deserializeLegacy(final EWorld world)
+			throws StoreCacheDeserializationUnsuccessfulException {
+		StoreCache cache = null;
+		try (final ObjectInputStream ois = new ObjectInputStream(
+				new FileInputStream(buildLegacySerializationPath(world)))) {
+			cache = (StoreCache) ois.readObject();
+			cache.completeDeserialization();
+		} catch (final IOException | ClassNotFoundException e) {
+			throw new StoreCacheDeserializationUnsuccessfulException(e);
+		}
+		return cache;
+	}
+
+	/**
+	 * Whether there is a cache for the given world that was serialized by
+	 * older versions with Java serialization and not yet migrated or not.
+	 * 
+	 * @param world
+	 *            The world of the cache
+	 * @return <tt>True</tt> if there is a cache serialized by older versions,
+	 *         <tt>false</tt> if not
+	 */
+	private static boolean hasLegacySerializedCache(final EWorld world) {
+		final File cacheFile = new File(buildLegacySerializationPath(world));
+		return cacheFile.exists() && !cacheFile.isDirectory();
+	}
+
+	/**
+	 * Replays the given journal file on the given cache, if it exists.
+	 * 
+	 * @param journalFile
+	 *            The journal file to replay
+	 * @param cache
+	 *            The cache to replay the journal on
+	 * @return The amount of replayed records, <tt>0</tt> if the journal file
+	 *         does not exist
+	 * @throws StoreCacheDeserializationUnsuccessfulException
+	 *             If the replay of the journal was unsuccessful
+	 */
+	private static int replayJournal(final File journalFile, final StoreCache cache)
+			throws StoreCacheDeserializationUnsuccessfulException {
+		if (!journalFile.exists()) {
+			return 0;
+		}
+		try {
+			final int records = StoreCacheJournal.replay(journalFile, cache);
+			cache.mLogger.logInfo("Replayed StoreCache journal " + journalFile + ": " + records + " records");
+			return records;
+		} catch (final IOException e) {
+			throw new StoreCacheDeserializationUnsuccessfulException(e);
+		}
+	}
+
+	/**
+	 * The maximal amount of item price data entries of the cache.
+	 */
+	private transient int mCapacity;
+	/**
+	 * Lock that is held while the cache is compacted, such that only one
+	 * compaction runs at a time. Not final since it is not contained in
+	 * serialized objects, see {@link #completeDeserialization()}.
+	 */
+	private transient Object mCompactionLock;
+	/**
+	 * The amount of entries evicted since the cache was created or
+	 * deserialized.
+	 */
+	private transient long mEvictions;
+	/**
+	 * The amount of expired entries removed since the cache was created or
+	 * deserialized.
+	 */
+	private transient long mExpirations;
+	/**
+	 * The journal to append all changes to or <tt>null</tt> if changes are not
+	 * journaled, like while replaying a journal.
+	 */
+	private transient StoreCacheJournal mJournal;
 	/**
 	 * The logger to use for logging which is not contained in serialized
-	 * objects, instead use {@link #refreshLogger()} to initialize the logger if
-	 * deserializing a store cache.
+	 * objects, instead use {@link #completeDeserialization()} to initialize
+	 * the logger if deserializing a store cache.
 	 */
 	private transient ILogger mLogger;
+	/**
+	 * The maximal age of item price data in milliseconds, counted from the
+	 * lookup of its most recent tier. Older entries are expired.
+	 */
+	private transient long mMaxItemPriceAge;
+	/**
+	 * The maximal age of entries of items without standard shop price in
+	 * milliseconds. Older entries are expired.
+	 */
+	private transient long mMaxNoStandardShopPriceAge;
 
+	/**
+	 * Data-structure that maps names of items which have no standard shop
+	 * price to the timestamp of when this was looked up. Not final since
+	 * caches serialized by older versions do not contain it, see
+	 * {@link #completeDeserialization()}.
+	 */
+	private HashMap<String, Long> mNameToNoStandardShopPriceTimestamp;
 	/**
 	 * Data-structure that maps item names to their cached price data.
 	 */
 	private final HashMap<String, ItemPrice> mNameToPriceData;
+	/**
+	 * The amount of lookups that were answered by an entry of an item without
+	 * standard shop price, counted since the cache was created or
+	 * deserialized.
+	 */
+	private transient long mNoStandardShopPriceHits;
+	/**
+	 * Names of cached items that were not seen again since they were cached,
+	 * ordered from least to most recently used.
+	 */
+	private transient LinkedHashSet<String> mProbationaryNames;
+	/**
+	 * Names of cached items that were seen again since they were cached,
+	 * ordered from least to most recently used.
+	 */
+	private transient LinkedHashSet<String> mProtectedNames;
 	/**
 	 * The world the price data of the cache belongs to.
 	 */
 	private final EWorld mWorld;
+	/**
+	 * The thread that persists snapshots of the cache in the background or
+	 * <tt>null</tt> if the cache was not created by {@link #load(EWorld)}.
+	 */
+	private transient StorePersistenceWriter mWriter;
 
 	/**
 	 * Creates a new empty store cache for the given world which can cache item
@@ -113,26 +406,77 @@ public final class StoreCache implements Serializable {
 	 */
 	public StoreCache(final EWorld world) {
 		this.mNameToPriceData = new HashMap<>();
+		this.mNameToNoStandardShopPriceTimestamp = new HashMap<>();
+		this.mNoStandardShopPriceHits = 0;
 		this.mWorld = world;
 		this.mLogger = LoggerFactory.getLogger();
+		this.mCompactionLock = new Object();
+		this.mJournal = null;
+		this.mWriter = null;
+		this.mProbationaryNames = new LinkedHashSet<>();
+		this.mProtectedNames = new LinkedHashSet<>();
+		this.mCapacity = DEFAULT_CAPACITY;
+		this.mMaxItemPriceAge = Long.MAX_VALUE;
+		this.mMaxNoStandardShopPriceAge = Long.MAX_VALUE;
+		this.mEvictions = 0;
+		this.mExpirations = 0;
 	}
 
 	/**
-	 * Clears the cache, i.e. removing all item price data from it.
+	 * Clears the cache, i.e. removing all item price data and all entries of
+	 * items without standard shop price from it.
 	 */
-	public void clear() {
+	public synchronized void clear() {
 		this.mNameToPriceData.clear();
+		this.mNameToNoStandardShopPriceTimestamp.clear();
+		this.mProbationaryNames.clear();
+		this.mProtectedNames.clear();
+
+		if (this.mJournal != null) {
+			try {
+				this.mJournal.appendClear();
+				handleJournalAppend();
+			} catch (final IOException e) {
+				handleJournalError(e);
+			}
+		}
+	}
+
+	/**
+	 * Closes the cache. Compacts the journal into a final snapshot of the
+	 * cache and closes it, afterwards changes are not persisted anymore. Does
+	 * not block if the cache was created by {@link #load(EWorld)}, its writer
+	 * then persists the final snapshot in the background.
+	 * 
+	 * @throws StoreCacheSerializationUnsuccessfulException
+	 *             If the compaction of the cache was unsuccessful
+	 */
+	public void close() throws StoreCacheSerializationUnsuccessfulException {
+		if (this.mWriter != null) {
+			this.mWriter.stopWriter();
+			return;
+		}
+		persistSnapshot(true);
 	}
 
 	/**
-	 * Gets an unmodifiable collection of all item price data this cache has
+	 * Gets an unmodifiable snapshot of all item price data this cache has
 	 * stored.
 	 * 
-	 * @return An unmodifiable collection of all item price data this cache has
+	 * @return An unmodifiable snapshot of all item price data this cache has
 	 *         stored
 	 */
-	public Collection<ItemPrice> getAllItemPrices() {
-		return Collections.unmodifiableCollection(this.mNameToPriceData.values());
+	public synchronized Collection<ItemPrice> getAllItemPrices() {
+		return Collections.unmodifiableCollection(new ArrayList<>(this.mNameToPriceData.values()));
+	}
+
+	/**
+	 * Gets the maximal amount of item price data entries of the cache.
+	 * 
+	 * @return The maximal amount of item price data entries of the cache
+	 */
+	public synchronized int getCapacity() {
+		return this.mCapacity;
 	}
 
 	/**
@@ -142,13 +486,42 @@ public final class StoreCache implements Serializable {
 	 *            The name of the item to get its price
 	 * @return The item price data for the item with the given name
 	 */
-	public ItemPrice getItemPrice(final String itemName) {
+	public synchronized ItemPrice getItemPrice(final String itemName) {
 		if (this.mLogger.isDebugEnabled()) {
 			this.mLogger.logDebug("Get item price from cache: " + itemName);
 		}
 		return this.mNameToPriceData.get(itemName);
 	}
 
+	/**
+	 * If present gets the timestamp of when it was looked up that the item
+	 * with the given name has no standard shop price. Every call that finds an
+	 * entry counts as lookup answered by the cache in the statistics.
+	 * 
+	 * @param itemName
+	 *            The name of the item in question
+	 * @return If present the timestamp of when it was looked up that the item
+	 *         has no standard shop price
+	 */
+	public synchronized Optional<Long> getNoStandardShopPriceTimestamp(final String itemName) {
+		final Long lookupTimestamp = this.mNameToNoStandardShopPriceTimestamp.get(itemName);
+		if (lookupTimestamp == null) {
+			return Optional.empty();
+		}
+		this.mNoStandardShopPriceHits++;
+		return Optional.of(lookupTimestamp);
+	}
+
+	/**
+	 * Gets a snapshot of the statistics of this cache.
+	 * 
+	 * @return A snapshot of the statistics of this cache
+	 */
+	public synchronized StoreCacheStatistics getStatistics() {
+		return new StoreCacheStatistics(this.mNameToPriceData.size(), this.mNameToNoStandardShopPriceTimestamp.size(),
+				this.mNoStandardShopPriceHits, this.mEvictions, this.mExpirations);
+	}
+
 	/**
 	 * Whether the cache has stored item price data for the item with the given
 	 * name or not.
@@ -158,37 +531,197 @@ public final class StoreCache implements Serializable {
 	 * @return <tt>True</tt> if the cache has stored item price data for the
 	 *         item with the given name, <tt>false</tt> if not
 	 */
-	public boolean hasItemPrice(final String itemName) {
+	public synchronized boolean hasItemPrice(final String itemName) {
 		return this.mNameToPriceData.containsKey(itemName);
 	}
 
 	/**
-	 * Stores the given item price data in the cache.
+	 * Whether the cache has stored that the item with the given name has no
+	 * standard shop price or not.
+	 * 
+	 * @param itemName
+	 *            The name of the item in question
+	 * @return <tt>True</tt> if the cache has stored that the item has no
+	 *         standard shop price, <tt>false</tt> if not
+	 */
+	public synchronized boolean hasNoStandardShopPrice(final String itemName) {
+		return this.mNameToNoStandardShopPriceTimestamp.containsKey(itemName);
+	}
+
+	/**
+	 * Stores the given item price data in the cache. An entry stating that
+	 * the item has no standard shop price is removed. New entries enter the
+	 * probationary segment, if the cache exceeds its capacity afterwards an
+	 * entry is evicted.
 	 * 
 	 * @param itemPrice
 	 *            The item price data to store in the cache
 	 */
-	public void putItemPrice(final ItemPrice itemPrice) {
-		this.mNameToPriceData.put(itemPrice.getName(), itemPrice);
+	public synchronized void putItemPrice(final ItemPrice itemPrice) {
+		final String itemName = itemPrice.getName();
+		if (this.mNameToPriceData.put(itemName, itemPrice) == null) {
+			this.mProbationaryNames.add(itemName);
+		}
+		this.mNameToNoStandardShopPriceTimestamp.remove(itemName);
+
+		if (this.mJournal != null) {
+			try {
+				this.mJournal.appendItemPrice(itemPrice);
+				handleJournalAppend();
+			} catch (final IOException e) {
+				handleJournalError(e);
+			}
+		}
+
+		evictIfNeeded();
 	}
 
 	/**
-	 * Serializes this store. Afterwards instances of this store can be created
-	 * by using {@link #hasSerializedCache(EWorld)} and
-	 * {@link #deserialize(EWorld)}.
+	 * Stores in the cache that the item with the given name has no standard
+	 * shop price, such that it does not need to be looked up again until the
+	 * entry expires.
+	 * 
+	 * @param itemName
+	 *            The name of the item that has no standard shop price
+	 * @param lookupTimestamp
+	 *            The timestamp of when this was looked up
+	 */
+	public synchronized void putNoStandardShopPrice(final String itemName, final long lookupTimestamp) {
+		this.mNameToNoStandardShopPriceTimestamp.put(itemName, Long.valueOf(lookupTimestamp));
+
+		if (this.mJournal != null) {
+			try {
+				this.mJournal.appendNoStandardShopPrice(itemName, lookupTimestamp);
+				handleJournalAppend();
+			} catch (final IOException e) {
+				handleJournalError(e);
+			}
+		}
+	}
+
+	/**
+	 * Records that the item with the given name was seen, for example at the
+	 * central traders depot. Its entry becomes the most recently used one and
+	 * is promoted to the protected segment if it was probationary.
+	 * 
+	 * @param itemName
+	 *            The name of the item that was seen
+	 */
+	public synchronized void recordSighting(final String itemName) {
+		if (this.mProtectedNames.remove(itemName)) {
+			this.mProtectedNames.add(itemName);
+			return;
+		}
+		if (!this.mProbationaryNames.remove(itemName)) {
+			return;
+		}
+		this.mProtectedNames.add(itemName);
+
+		// Demote the least recently used protected entry if the segment is full
+		final int protectedCapacity = (int) (this.mCapacity * PROTECTED_SEGMENT_SHARE);
+		if (this.mProtectedNames.size() > protectedCapacity) {
+			final Iterator<String> protectedNames = this.mProtectedNames.iterator();
+			final String demotedName = protectedNames.next();
+			protectedNames.remove();
+			this.mProbationaryNames.add(demotedName);
+		}
+	}
+
+	/**
+	 * Removes the item price data for the item with the given name from the
+	 * cache, if present.
+	 * 
+	 * @param itemName
+	 *            The name of the item
+	 */
+	public synchronized void removeItemPrice(final String itemName) {
+		if (!removeEntry(itemName) || this.mJournal == null) {
+			return;
+		}
+		try {
+			this.mJournal.appendRemoveItemPrice(itemName);
+			handleJournalAppend();
+		} catch (final IOException e) {
+			handleJournalError(e);
+		}
+	}
+
+	/**
+	 * Removes the entry stating that the item with the given name has no
+	 * standard shop price from the cache, if present.
+	 * 
+	 * @param itemName
+	 *            The name of the item
+	 */
+	public synchronized void removeNoStandardShopPrice(final String itemName) {
+		if (this.mNameToNoStandardShopPriceTimestamp.remove(itemName) == null || this.mJournal == null) {
+			return;
+		}
+		try {
+			this.mJournal.appendRemoveNoStandardShopPrice(itemName);
+			handleJournalAppend();
+		} catch (final IOException e) {
+			handleJournalError(e);
+		}
+	}
+
+	/**
+	 * Requests a compaction of the cache, which folds the journal into the
+	 * snapshot of the cache in the background. Does not block, requests that
+	 * arrive while a compaction is running are combined. The request is
+	 * ignored if the cache was not created by {@link #load(EWorld)}.
+	 */
+	public void requestCompaction() {
+		if (this.mWriter != null) {
+			this.mWriter.requestSave();
+		}
+	}
+
+	/**
+	 * Serializes this store synchronously, folding its journal into the
+	 * snapshot. Afterwards instances of this store can be created by using
+	 * {@link #load(EWorld)}.
 	 * 
 	 * @throws StoreCacheSerializationUnsuccessfulException
 	 *             If the serialization of the cache was unsuccessful
 	 */
 	public void serialize() throws StoreCacheSerializationUnsuccessfulException {
-		this.mLogger.logInfo("Serializing StoreCache");
+		persistSnapshot(false);
+	}
 
-		try (final ObjectOutputStream oos = new ObjectOutputStream(
-				new FileOutputStream(buildSerializationPath(this.mWorld)))) {
-			oos.writeObject(this);
-		} catch (final IOException e) {
-			throw new StoreCacheSerializationUnsuccessfulException(e);
+	/**
+	 * Sets the maximal amount of item price data entries of the cache. Entries
+	 * are evicted immediately if the cache exceeds the new capacity.
+	 * 
+	 * @param capacity
+	 *            The maximal amount of item price data entries, must be
+	 *            positive
+	 * @throws IllegalArgumentException
+	 *             If the given capacity is not positive
+	 */
+	public synchronized void setCapacity(final int capacity) throws IllegalArgumentException {
+		if (capacity <= 0) {
+			throw new IllegalArgumentException("Capacity must be positive: " + capacity);
 		}
+		this.mCapacity = capacity;
+		evictIfNeeded();
+	}
+
+	/**
+	 * Sets the maximal ages of entries after which they are expired and
+	 * removed when the next snapshot is persisted. Expired entries are also
+	 * preferred when selecting a victim for eviction.
+	 * 
+	 * @param maxItemPriceAge
+	 *            The maximal age of item price data in milliseconds, counted
+	 *            from the lookup of its most recent tier
+	 * @param maxNoStandardShopPriceAge
+	 *            The maximal age of entries of items without standard shop
+	 *            price in milliseconds
+	 */
+	public synchronized void setMaximalAges(final long maxItemPriceAge, final long maxNoStandardShopPriceAge) {
+		this.mMaxItemPriceAge = maxItemPriceAge;
+		this.mMaxNoStandardShopPriceAge = maxNoStandardShopPriceAge;
 	}
 
 	/**
@@ -198,14 +731,289 @@ public final class StoreCache implements Serializable {
 	 * @return The size of this cache, i.e. the amount of item price data stored
 	 *         in this cache
 	 */
-	public int size() {
+	public synchronized int size() {
 		return this.mNameToPriceData.size();
 	}
 
 	/**
-	 * Refreshes the internal reference to the logger.
+	 * Folds the journal into the snapshot of the cache. A point-in-time copy
+	 * of the cache is taken and the journal is rotated while holding the lock
+	 * of the cache, such that no change is lost. The snapshot is written to a
+	 * temporary file without holding the lock, which then atomically replaces
+	 * the old snapshot. Only afterwards the rotated journal is deleted.
+	 * 
+	 * @param isClosing
+	 *            <tt>True</tt> if this is the final snapshot and the journal
+	 *            should be closed instead of reopened, <tt>false</tt> if not
+	 * @throws StoreCacheSerializationUnsuccessfulException
+	 *             If the compaction of the cache was unsuccessful
+	 */
+	void persistSnapshot(final boolean isClosing) throws StoreCacheSerializationUnsuccessfulException {
+		synchronized (this.mCompactionLock) {
+			final Path compactingJournalPath = Paths.get(buildCompactingJournalPath(this.mWorld));
+			final List<ItemPrice> itemPrices;
+			final HashMap<String, Long> nameToNoStandardShopPriceTimestamp;
+			synchronized (this) {
+				removeExpired(System.currentTimeMillis());
+				this.mLogger.logInfo("Serializing StoreCache: " + getStatistics());
+
+				// Least recently used first, such that loading restores the order
+				itemPrices = new ArrayList<>(this.mNameToPriceData.size());
+				for (final String itemName : this.mProbationaryNames) {
+					itemPrices.add(this.mNameToPriceData.get(itemName));
+				}
+				for (final String itemName : this.mProtectedNames) {
+					itemPrices.add(this.mNameToPriceData.get(itemName));
+				}
+				nameToNoStandardShopPriceTimestamp = new HashMap<>(this.mNameToNoStandardShopPriceTimestamp);
+				try {
+					rotateJournal(compactingJournalPath, isClosing);
+				} catch (final IOException e) {
+					throw new StoreCacheSerializationUnsuccessfulException(e);
+				}
+			}
+
+			final Path temporaryPath = Paths.get(buildTemporaryPath(this.mWorld));
+			final Path serializationPath = Paths.get(buildSerializationPath(this.mWorld));
+			try {
+				StoreCacheFile.write(temporaryPath.toFile(), this.mWorld, itemPrices,
+						nameToNoStandardShopPriceTimestamp);
+				try {
+					Files.move(temporaryPath, serializationPath, StandardCopyOption.REPLACE_EXISTING,
+							StandardCopyOption.ATOMIC_MOVE);
+				} catch (final AtomicMoveNotSupportedException e) {
+					Files.move(temporaryPath, serializationPath, StandardCopyOption.REPLACE_EXISTING);
+				}
+				Files.deleteIfExists(compactingJournalPath);
+				Files.deleteIfExists(Paths.get(buildLegacySerializationPath(this.mWorld)));
+			} catch (final IOException e) {
+				throw new StoreCacheSerializationUnsuccessfulException(e);
+			}
+		}
+	}
+
+	/**
+	 * Closes the journal if present. Afterwards changes are not journaled until
+	 * {@link #openJournal(int)} is called.
 	 */
-	private void refreshLogger() {
+	private void closeJournal() {
+		if (this.mJournal == null) {
+			return;
+		}
+		try {
+			this.mJournal.close();
+		} catch (final IOException e) {
+			this.mLogger.logError("Error while closing StoreCache journal: " + LoggerUtil.getStackTrace(e));
+		}
+		this.mJournal = null;
+	}
+
+	/**
+	 * Completes the deserialization of this cache. Refreshes the internal
+	 * reference to the logger and initializes data that is missing in caches
+	 * serialized by older versions.
+	 */
+	private void completeDeserialization() {
 		this.mLogger = LoggerFactory.getLogger();
+		this.mCompactionLock = new Object();
+		if (this.mNameToNoStandardShopPriceTimestamp == null) {
+			this.mNameToNoStandardShopPriceTimestamp = new HashMap<>();
+		}
+		this.mProbationaryNames = new LinkedHashSet<>(this.mNameToPriceData.keySet());
+		this.mProtectedNames = new LinkedHashSet<>();
+		this.mCapacity = DEFAULT_CAPACITY;
+		this.mMaxItemPriceAge = Long.MAX_VALUE;
+		this.mMaxNoStandardShopPriceAge = Long.MAX_VALUE;
+	}
+
+	/**
+	 * Evicts entries while the cache exceeds its capacity. Victims are taken
+	 * from the least recently used end of the probationary segment, preferring
+	 * expired entries, or from the protected segment if the probationary
+	 * segment is empty.
+	 */
+	private void evictIfNeeded() {
+		while (this.mNameToPriceData.size() > this.mCapacity) {
+			final String victimName = selectVictim(System.currentTimeMillis());
+			if (this.mLogger.isDebugEnabled()) {
+				this.mLogger.logDebug("Evicting item price from cache: " + victimName);
+			}
+			removeItemPrice(victimName);
+			this.mEvictions++;
+		}
+	}
+
+	/**
+	 * Handles a record that was appended to the journal. Requests a compaction
+	 * once the journal grew too large.
+	 */
+	private void handleJournalAppend() {
+		if (this.mJournal.getRecords() >= COMPACTION_JOURNAL_RECORDS) {
+			requestCompaction();
+		}
+	}
+
+	/**
+	 * Handles an error that occurred while appending to the journal. The
+	 * change is still contained in the cache and persisted by the next
+	 * compaction, which is requested.
+	 * 
+	 * @param e
+	 *            The error that occurred
+	 */
+	private void handleJournalError(final IOException e) {
+		this.mLogger.logError("Error while appending to StoreCache journal: " + LoggerUtil.getStackTrace(e));
+		requestCompaction();
+	}
+
+	/**
+	 * Whether the given item price data is expired at the given timestamp,
+	 * i.e. whether its most recent tier is older than the maximal age.
+	 * 
+	 * @param itemPrice
+	 *            The item price data in question
+	 * @param now
+	 *            The current timestamp
+	 * @return <tt>True</tt> if the item price data is expired, <tt>false</tt>
+	 *         if not
+	 */
+	private boolean isExpired(final ItemPrice itemPrice, final long now) {
+		final long newestLookupTimestamp = Math.max(itemPrice.getStandardShopPriceLookupTimestamp(),
+				itemPrice.getPlayerPriceLookupTimestamp());
+		return now - newestLookupTimestamp > this.mMaxItemPriceAge;
+	}
+
+	/**
+	 * Opens the journal of the cache, such that changes are journaled. If the
+	 * journal can not be opened, changes are only persisted by compactions.
+	 * 
+	 * @param records
+	 *            The amount of records the journal file already contains
+	 */
+	private void openJournal(final int records) {
+		try {
+			this.mJournal = new StoreCacheJournal(new File(buildJournalPath(this.mWorld)), records);
+		} catch (final IOException e) {
+			this.mLogger.logError("Error while opening StoreCache journal: " + LoggerUtil.getStackTrace(e));
+			this.mJournal = null;
+		}
+	}
+
+	/**
+	 * Removes the item price data for the item with the given name from the
+	 * cache and its segments, without journaling it.
+	 * 
+	 * @param itemName
+	 *            The name of the item
+	 * @return <tt>True</tt> if there was item price data to remove,
+	 *         <tt>false</tt> if not
+	 */
+	private boolean removeEntry(final String itemName) {
+		if (this.mNameToPriceData.remove(itemName) == null) {
+			return false;
+		}
+		if (!this.mProbationaryNames.remove(itemName)) {
+			this.mProtectedNames.remove(itemName);
+		}
+		return true;
+	}
+
+	/**
+	 * Removes all entries that are expired at the given timestamp, without
+	 * journaling it. Must only be called right before a snapshot is taken,
+	 * which then contains the removal.
+	 * 
+	 * @param now
+	 *            The current timestamp
+	 */
+	private void removeExpired(final long now) {
+		final Iterator<ItemPrice> itemPrices = this.mNameToPriceData.values().iterator();
+		while (itemPrices.hasNext()) {
+			final ItemPrice itemPrice = itemPrices.next();
+			if (isExpired(itemPrice, now)) {
+				itemPrices.remove();
+				if (!this.mProbationaryNames.remove(itemPrice.getName())) {
+					this.mProtectedNames.remove(itemPrice.getName());
+				}
+				this.mExpirations++;
+			}
+		}
+
+		final Iterator<Entry<String, Long>> noStandardShopPrices = this.mNameToNoStandardShopPriceTimestamp.entrySet()
+				.iterator();
+		while (noStandardShopPrices.hasNext()) {
+			if (now - noStandardShopPrices.next().getValue().longValue() > this.mMaxNoStandardShopPriceAge) {
+				noStandardShopPrices.remove();
+				this.mExpirations++;
+			}
+		}
+	}
+
+	/**
+	 * Rotates the journal, such that it can be compacted while further
+	 * changes are appended to a fresh journal. If the journal of a previous
+	 * compaction is still present, since it was interrupted, the journal is
+	 * appended to it instead. Does nothing if the cache does not journal its
+	 * changes.
+	 * 
+	 * @param compactingJournalPath
+	 *            The path to rotate the journal to
+	 * @param isClosing
+	 *            <tt>True</tt> if the journal should be closed instead of
+	 *            reopened, <tt>false</tt> if not
+	 * @throws IOException
+	 *             If an I/O-Exception occurred while rotating the journal
+	 */
+	private void rotateJournal(final Path compactingJournalPath, final boolean isClosing) throws IOException {
+		if (this.mJournal == null) {
+			return;
+		}
+		closeJournal();
+		try {
+			final Path journalPath = Paths.get(buildJournalPath(this.mWorld));
+			if (!Files.exists(journalPath)) {
+				return;
+			}
+			if (Files.exists(compactingJournalPath)) {
+				Files.write(compactingJournalPath, Files.readAllBytes(journalPath), StandardOpenOption.APPEND);
+				Files.delete(journalPath);
+			} else {
+				Files.move(journalPath, compactingJournalPath);
+			}
+		} finally {
+			if (!isClosing) {
+				// The rotated journal file is not appended to anymore
+				openJournal(0);
+			}
+		}
+	}
+
+	/**
+	 * Selects the entry to evict next. Searches the least recently used
+	 * entries of the probationary segment for an expired entry and falls back
+	 * to the least recently used one. If the probationary segment is empty,
+	 * the least recently used entry of the protected segment is selected.
+	 * 
+	 * @param now
+	 *            The current timestamp
+	 * @return The name of the item whose entry to evict
+	 */
+	private String selectVictim(final long now) {
+		if (this.mProbationaryNames.isEmpty()) {
+			return this.mProtectedNames.iterator().next();
+		}
+
+		final Iterator<String> probationaryNames = this.mProbationaryNames.iterator();
+		final String leastRecentlyUsedName = probationaryNames.next();
+		if (isExpired(this.mNameToPriceData.get(leastRecentlyUsedName), now)) {
+			return leastRecentlyUsedName;
+		}
+		for (int i = 1; i < EVICTION_SCAN_LIMIT && probationaryNames.hasNext(); i++) {
+			final String itemName = probationaryNames.next();
+			if (isExpired(this.mNameToPriceData.get(itemName), now)) {
+				return itemName;
+			}
+		}
+		return leastRecentlyUsedName;
 	}
 }
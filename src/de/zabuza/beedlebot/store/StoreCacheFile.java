@@ -0,0 +1,284 @@
+package de.zabuza.beedlebot.store;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Optional;
+import java.util.zip.CRC32;
+import java.util.zip.CheckedOutputStream;
+
+import de.zabuza.sparkle.freewar.EWorld;
+
+/**
+ * Reads and writes the snapshot of a {@link StoreCache} in a compact,
+ * versioned binary format. All names are stored once in a string table and
+ * referenced by their index, prices and timestamps are stored as primitive
+ * columns. The layout of version 1 is:
+ * 
+ * <pre>
+ * int     magic number
+ * short   format version
+ * UTF     name of the world
+ * int     amount of strings, followed by the strings as UTF
+ * int     amount of item prices n
+ * int[n]  string index of the item name
+ * int[n]  standard shop price
+ * long[n] lookup timestamp of the standard shop price
+ * long[n] lookup timestamp of the player price
+ * int     amount of player prices p
+ * int[p]  index of the item price the player price belongs to
+ * int[p]  player price
+ * long[p] timestamp of the player price
+ * int[p]  string index of the world of the player price
+ * int     amount of items without standard shop price m
+ * int[m]  string index of the item name
+ * long[m] lookup timestamp
+ * long    CRC32 checksum of all preceding bytes
+ * </pre>
+ * 
+ * @author Zabuza {@literal <zabuza.dev@gmail.com>}
+ *
+ */
+public final class StoreCacheFile {
+	/**
+	 * The amount of bytes the checksum at the end of a file occupies.
+	 */
+	private static final int CHECKSUM_BYTES = Long.BYTES;
+	/**
+	 * The current version of the format, written by
+	 * {@link #write(File, EWorld, Collection, Map)}.
+	 */
+	private static final short FORMAT_VERSION = 1;
+	/**
+	 * The magic number every file of the format starts with, <tt>BBSC</tt> in
+	 * ASCII.
+	 */
+	private static final int MAGIC_NUMBER = 0x42425343;
+
+	/**
+	 * Reads the snapshot of the given file and stores all of its data in the
+	 * given cache.
+	 * 
+	 * @param file
+	 *            The file to read
+	 * @param world
+	 *            The world the snapshot must belong to
+	 * @param cache
+	 *            The cache to store the data in, must not journal itself
+	 * @throws IOException
+	 *             If an I/O-Exception occurred while reading the file or if
+	 *             the file is corrupted, of an unknown version or belongs to
+	 *             a different world
+	 */
+	public static void read(final File file, final EWorld world, final StoreCache cache) throws IOException {
+		final byte[] content = Files.readAllBytes(file.toPath());
+		if (content.length < CHECKSUM_BYTES) {
+			throw new IOException("StoreCache file is truncated: " + file);
+		}
+		final int contentLength = content.length - CHECKSUM_BYTES;
+		final CRC32 checksum = new CRC32();
+		checksum.update(content, 0, contentLength);
+		if (checksum.getValue() != ByteBuffer.wrap(content, contentLength, CHECKSUM_BYTES).getLong()) {
+			throw new IOException("StoreCache file is corrupted: " + file);
+		}
+
+		final DataInputStream input = new DataInputStream(new ByteArrayInputStream(content, 0, contentLength));
+		if (input.readInt() != MAGIC_NUMBER) {
+			throw new IOException("File is no StoreCache file: " + file);
+		}
+		final short version = input.readShort();
+		if (version != FORMAT_VERSION) {
+			throw new IOException("Unsupported StoreCache file version " + version + ": " + file);
+		}
+		final String fileWorld = input.readUTF();
+		if (!fileWorld.equals(world.name())) {
+			throw new IOException("StoreCache file belongs to world " + fileWorld + ": " + file);
+		}
+
+		final String[] strings = new String[input.readInt()];
+		for (int i = 0; i < strings.length; i++) {
+			strings[i] = input.readUTF();
+		}
+
+		final int itemPrices = input.readInt();
+		final String[] itemNames = new String[itemPrices];
+		for (int i = 0; i < itemPrices; i++) {
+			itemNames[i] = strings[input.readInt()];
+		}
+		final int[] standardShopPrices = new int[itemPrices];
+		for (int i = 0; i < itemPrices; i++) {
+			standardShopPrices[i] = input.readInt();
+		}
+		final long[] standardShopPriceLookupTimestamps = new long[itemPrices];
+		for (int i = 0; i < itemPrices; i++) {
+			standardShopPriceLookupTimestamps[i] = input.readLong();
+		}
+		final long[] playerPriceLookupTimestamps = new long[itemPrices];
+		for (int i = 0; i < itemPrices; i++) {
+			playerPriceLookupTimestamps[i] = input.readLong();
+		}
+
+		final PlayerPrice[] playerPrices = new PlayerPrice[itemPrices];
+		final int[] playerPriceRows = new int[input.readInt()];
+		for (int i = 0; i < playerPriceRows.length; i++) {
+			playerPriceRows[i] = input.readInt();
+		}
+		final int[] prices = new int[playerPriceRows.length];
+		for (int i = 0; i < playerPriceRows.length; i++) {
+			prices[i] = input.readInt();
+		}
+		final long[] timestamps = new long[playerPriceRows.length];
+		for (int i = 0; i < playerPriceRows.length; i++) {
+			timestamps[i] = input.readLong();
+		}
+		try {
+			for (int i = 0; i < playerPriceRows.length; i++) {
+				final EWorld playerPriceWorld = EWorld.valueOf(strings[input.readInt()]);
+				playerPrices[playerPriceRows[i]] = new PlayerPrice(prices[i], timestamps[i], playerPriceWorld);
+			}
+		} catch (final IllegalArgumentException e) {
+			throw new IOException("StoreCache file contains an unknown world: " + file, e);
+		}
+
+		for (int i = 0; i < itemPrices; i++) {
+			cache.putItemPrice(new ItemPrice(itemNames[i], standardShopPrices[i], playerPrices[i], true,
+					standardShopPriceLookupTimestamps[i], playerPriceLookupTimestamps[i]));
+		}
+
+		final int noStandardShopPrices = input.readInt();
+		final String[] noStandardShopPriceNames = new String[noStandardShopPrices];
+		for (int i = 0; i < noStandardShopPrices; i++) {
+			noStandardShopPriceNames[i] = strings[input.readInt()];
+		}
+		for (int i = 0; i < noStandardShopPrices; i++) {
+			cache.putNoStandardShopPrice(noStandardShopPriceNames[i], input.readLong());
+		}
+	}
+
+	/**
+	 * Writes a snapshot of the given cache data to the given file, replacing
+	 * its content.
+	 * 
+	 * @param file
+	 *            The file to write
+	 * @param world
+	 *            The world the cache data belongs to
+	 * @param itemPrices
+	 *            The item price data of the cache
+	 * @param nameToNoStandardShopPriceTimestamp
+	 *            Data-structure that maps names of items which have no standard
+	 *            shop price to the timestamp of when this was looked up
+	 * @throws IOException
+	 *             If an I/O-Exception occurred while writing the file
+	 */
+	public static void write(final File file, final EWorld world, final Collection<ItemPrice> itemPrices,
+			final Map<String, Long> nameToNoStandardShopPriceTimestamp) throws IOException {
+		final List<String> strings = new ArrayList<>();
+		final Map<String, Integer> stringToIndex = new HashMap<>();
+		final List<ItemPrice> rows = new ArrayList<>(itemPrices);
+		final List<Integer> playerPriceRows = new ArrayList<>();
+		for (int i = 0; i < rows.size(); i++) {
+			final ItemPrice itemPrice = rows.get(i);
+			addString(itemPrice.getName(), strings, stringToIndex);
+			final Optional<PlayerPrice> playerPrice = itemPrice.getPlayerPrice();
+			if (playerPrice.isPresent()) {
+				addString(playerPrice.get().getWorld().name(), strings, stringToIndex);
+				playerPriceRows.add(Integer.valueOf(i));
+			}
+		}
+		for (final String itemName : nameToNoStandardShopPriceTimestamp.keySet()) {
+			addString(itemName, strings, stringToIndex);
+		}
+
+		final CRC32 checksum = new CRC32();
+		try (final DataOutputStream output = new DataOutputStream(
+				new CheckedOutputStream(new BufferedOutputStream(new FileOutputStream(file)), checksum))) {
+			output.writeInt(MAGIC_NUMBER);
+			output.writeShort(FORMAT_VERSION);
+			output.writeUTF(world.name());
+
+			output.writeInt(strings.size());
+			for (final String text : strings) {
+				output.writeUTF(text);
+			}
+
+			output.writeInt(rows.size());
+			for (final ItemPrice itemPrice : rows) {
+				output.writeInt(stringToIndex.get(itemPrice.getName()).intValue());
+			}
+			for (final ItemPrice itemPrice : rows) {
+				output.writeInt(itemPrice.getStandardShopPrice());
+			}
+			for (final ItemPrice itemPrice : rows) {
+				output.writeLong(itemPrice.getStandardShopPriceLookupTimestamp());
+			}
+			for (final ItemPrice itemPrice : rows) {
+				output.writeLong(itemPrice.getPlayerPriceLookupTimestamp());
+			}
+
+			output.writeInt(playerPriceRows.size());
+			for (final Integer row : playerPriceRows) {
+				output.writeInt(row.intValue());
+			}
+			for (final Integer row : playerPriceRows) {
+				output.writeInt(rows.get(row.intValue()).getPlayerPrice().get().getPrice());
+			}
+			for (final Integer row : playerPriceRows) {
+				output.writeLong(rows.get(row.intValue()).getPlayerPrice().get().getTimestamp());
+			}
+			for (final Integer row : playerPriceRows) {
+				final EWorld playerPriceWorld = rows.get(row.intValue()).getPlayerPrice().get().getWorld();
+				output.writeInt(stringToIndex.get(playerPriceWorld.name()).intValue());
+			}
+
+			output.writeInt(nameToNoStandardShopPriceTimestamp.size());
+			for (final String itemName : nameToNoStandardShopPriceTimestamp.keySet()) {
+				output.writeInt(stringToIndex.get(itemName).intValue());
+			}
+			for (final Entry<String, Long> entry : nameToNoStandardShopPriceTimestamp.entrySet()) {
+				output.writeLong(entry.getValue().longValue());
+			}
+
+			output.writeLong(checksum.getValue());
+		}
+	}
+
+	/**
+	 * Adds the given text to the string table, if not already contained.
+	 * 
+	 * @param text
+	 *            The text to add
+	 * @param strings
+	 *            The string table
+	 * @param stringToIndex
+	 *            Data-structure that maps the texts of the string table to
+	 *            their index
+	 */
+	private static void addString(final String text, final List<String> strings,
+			final Map<String, Integer> stringToIndex) {
+		if (stringToIndex.containsKey(text)) {
+			return;
+		}
+		stringToIndex.put(text, Integer.valueOf(strings.size()));
+		strings.add(text);
+	}
+
+	/**
+	 * Utility class. No implementation.
+	 */
+	private StoreCacheFile() {
+
+	}
+}
@@ -0,0 +1,279 @@
+package de.zabuza.beedlebot.store;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.UTFDataFormatException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardOpenOption;
+import java.util.Optional;
+
+import de.zabuza.sparkle.freewar.EWorld;
+
+/**
+ * Append-only journal of the changes made to a {@link StoreCache}. Every
+ * change is appended as a compact record and flushed immediately, such that a
+ * crash loses no cached data. The journal is folded into the snapshot of the
+ * cache by compaction and replayed on top of the snapshot at startup, see
+ * {@link #replay(File, StoreCache)}.
+ * 
+ * @author Zabuza {@literal <zabuza.dev@gmail.com>}
+ *
+ */
+public final class StoreCacheJournal {
+	/**
+	 * Type of a record that clears the cache.
+	 */
+	private static final byte RECORD_CLEAR = 4;
+	/**
+	 * Type of a record that stores item price data.
+	 */
+	private static final byte RECORD_PUT_ITEM_PRICE = 1;
+	/**
+	 * Type of a record that stores that an item has no standard shop price.
+	 */
+	private static final byte RECORD_PUT_NO_STANDARD_SHOP_PRICE = 2;
+	/**
+	 * Type of a record that removes item price data.
+	 */
+	private static final byte RECORD_REMOVE_ITEM_PRICE = 5;
+	/**
+	 * Type of a record that removes the entry of an item without standard shop
+	 * price.
+	 */
+	private static final byte RECORD_REMOVE_NO_STANDARD_SHOP_PRICE = 3;
+
+	/**
+	 * Replays all complete records of the given journal file on the given
+	 * cache. An incomplete record at the end of the file, as left by a crash
+	 * while appending, is ignored and truncated from the file, such that
+	 * further records can be appended.
+	 * 
+	 * @param file
+	 *            The journal file to replay
+	 * @param cache
+	 *            The cache to replay the records on, must not journal itself
+	 * @return The amount of replayed records
+	 * @throws IOException
+	 *             If an I/O-Exception occurred while reading or truncating the
+	 *             file
+	 */
+	public static int replay(final File file, final StoreCache cache) throws IOException {
+		final byte[] content = Files.readAllBytes(file.toPath());
+		final ByteArrayInputStream bytes = new ByteArrayInputStream(content);
+		final DataInputStream input = new DataInputStream(bytes);
+
+		int records = 0;
+		int validLength = 0;
+		try {
+			while (bytes.available() > 0) {
+				replayRecord(input, cache);
+				records++;
+				validLength = content.length - bytes.available();
+			}
+		} catch (final EOFException | UTFDataFormatException | IllegalArgumentException e) {
+			// Incomplete or corrupted record at the end, drop it
+			try (final FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.WRITE)) {
+				channel.truncate(validLength);
+			}
+		}
+		return records;
+	}
+
+	/**
+	 * Reads the next record from the given input and replays it on the given
+	 * cache. The record is only applied once it was read completely.
+	 * 
+	 * @param input
+	 *            The input to read the record from
+	 * @param cache
+	 *            The cache to replay the record on
+	 * @throws IOException
+	 *             If an I/O-Exception occurred while reading the record
+	 * @throws IllegalArgumentException
+	 *             If the record is of an unknown format
+	 */
+	private static void replayRecord(final DataInputStream input, final StoreCache cache)
+			throws IOException, IllegalArgumentException {
+		final byte type = input.readByte();
+		switch (type) {
+		case RECORD_PUT_ITEM_PRICE:
+			final String itemName = input.readUTF();
+			final int standardShopPrice = input.readInt();
+			final long standardShopPriceLookupTimestamp = input.readLong();
+			final long playerPriceLookupTimestamp = input.readLong();
+			PlayerPrice playerPrice = null;
+			if (input.readBoolean()) {
+				final int price = input.readInt();
+				final long timestamp = input.readLong();
+				final EWorld world = EWorld.valueOf(input.readUTF());
+				playerPrice = new PlayerPrice(price, timestamp, world);
+			}
+			cache.putItemPrice(new ItemPrice(itemName, standardShopPrice, playerPrice, true,
+					standardShopPriceLookupTimestamp, playerPriceLookupTimestamp));
+			break;
+		case RECORD_PUT_NO_STANDARD_SHOP_PRICE:
+			final String noPriceItemName = input.readUTF();
+			cache.putNoStandardShopPrice(noPriceItemName, input.readLong());
+			break;
+		case RECORD_REMOVE_ITEM_PRICE:
+			cache.removeItemPrice(input.readUTF());
+			break;
+		case RECORD_REMOVE_NO_STANDARD_SHOP_PRICE:
+			cache.removeNoStandardShopPrice(input.readUTF());
+			break;
+		case RECORD_CLEAR:
+			cache.clear();
+			break;
+		default:
+			throw new IllegalArgumentException("Unknown journal record type: " + type);
+		}
+	}
+
+	/**
+	 * The stream to append records to.
+	 */
+	private final DataOutputStream mOutput;
+	/**
+	 * The amount of records of the journal file, including the ones it
+	 * already contained when it was opened.
+	 */
+	private int mRecords;
+
+	/**
+	 * Opens the given journal file for appending records. The file is created
+	 * if it does not exist.
+	 * 
+	 * @param file
+	 *            The journal file to append records to
+	 * @param records
+	 *            The amount of records the file already contains, as returned
+	 *            by {@link #replay(File, StoreCache)}
+	 * @throws IOException
+	 *             If an I/O-Exception occurred while opening the file
+	 */
+	public StoreCacheJournal(final File file, final int records) throws IOException {
+		this.mOutput = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file, true)));
+		this.mRecords = records;
+	}
+
+	/**
+	 * Appends a record that clears the cache.
+	 * 
+	 * @throws IOException
+	 *             If an I/O-Exception occurred while appending the record
+	 */
+	public void appendClear() throws IOException {
+		this.mOutput.writeByte(RECORD_CLEAR);
+		endRecord();
+	}
+
+	/**
+	 * Appends a record that stores the given item price data.
+	 * 
+	 * @param itemPrice
+	 *            The item price data to store
+	 * @throws IOException
+	 *             If an I/O-Exception occurred while appending the record
+	 */
+	public void appendItemPrice(final ItemPrice itemPrice) throws IOException {
+		this.mOutput.writeByte(RECORD_PUT_ITEM_PRICE);
+		this.mOutput.writeUTF(itemPrice.getName());
+		this.mOutput.writeInt(itemPrice.getStandardShopPrice());
+		this.mOutput.writeLong(itemPrice.getStandardShopPriceLookupTimestamp());
+		this.mOutput.writeLong(itemPrice.getPlayerPriceLookupTimestamp());
+		final Optional<PlayerPrice> playerPrice = itemPrice.getPlayerPrice();
+		this.mOutput.writeBoolean(playerPrice.isPresent());
+		if (playerPrice.isPresent()) {
+			this.mOutput.writeInt(playerPrice.get().getPrice());
+			this.mOutput.writeLong(playerPrice.get().getTimestamp());
+			this.mOutput.writeUTF(playerPrice.get().getWorld().name());
+		}
+		endRecord();
+	}
+
+	/**
+	 * Appends a record that stores that the item with the given name has no
+	 * standard shop price.
+	 * 
+	 * @param itemName
+	 *            The name of the item that has no standard shop price
+	 * @param lookupTimestamp
+	 *            The timestamp of when this was looked up
+	 * @throws IOException
+	 *             If an I/O-Exception occurred while appending the record
+	 */
+	public void appendNoStandardShopPrice(final String itemName, final long lookupTimestamp) throws IOException {
+		this.mOutput.writeByte(RECORD_PUT_NO_STANDARD_SHOP_PRICE);
+		this.mOutput.writeUTF(itemName);
+		this.mOutput.writeLong(lookupTimestamp);
+		endRecord();
+	}
+
+	/**
+	 * Appends a record that removes the item price data of the item with the
+	 * given name.
+	 * 
+	 * @param itemName
+	 *            The name of the item
+	 * @throws IOException
+	 *             If an I/O-Exception occurred while appending the record
+	 */
+	public void appendRemoveItemPrice(final String itemName) throws IOException {
+		this.mOutput.writeByte(RECORD_REMOVE_ITEM_PRICE);
+		this.mOutput.writeUTF(itemName);
+		endRecord();
+	}
+
+	/**
+	 * Appends a record that removes the entry of the item with the given name
+	 * stating that it has no standard shop price.
+	 * 
+	 * @param itemName
+	 *            The name of the item
+	 * @throws IOException
+	 *             If an I/O-Exception occurred while appending the record
+	 */
+	public void appendRemoveNoStandardShopPrice(final String itemName) throws IOException {
+		this.mOutput.writeByte(RECORD_REMOVE_NO_STANDARD_SHOP_PRICE);
+		this.mOutput.writeUTF(itemName);
+		endRecord();
+	}
+
+	/**
+	 * Closes the journal. Afterwards no further records can be appended.
+	 * 
+	 * @throws IOException
+	 *             If an I/O-Exception occurred while closing the file
+	 */
+	public void close() throws IOException {
+		this.mOutput.close();
+	}
+
+	/**
+	 * Gets the amount of records of the journal file, including the ones it
+	 * already contained when it was opened.
+	 * 
+	 * @return The amount of records of the journal file
+	 */
+	public int getRecords() {
+		return this.mRecords;
+	}
+
+	/**
+	 * Ends the current record by flushing it to the file.
+	 * 
+	 * @throws IOException
+	 *             If an I/O-Exception occurred while flushing the record
+	 */
+	private void endRecord() throws IOException {
+		this.mOutput.flush();
+		this.mRecords++;
+	}
+}
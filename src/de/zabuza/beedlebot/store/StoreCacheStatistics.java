@@ -0,0 +1,135 @@
+package de.zabuza.beedlebot.store;
+
+/**
+ * Snapshot of statistics of a {@link StoreCache}.
+ * 
+ * @author Zabuza {@literal <zabuza.dev@gmail.com>}
+ *
+ */
+public final class StoreCacheStatistics {
+	/**
+	 * The amount of entries evicted since the cache was created or
+	 * deserialized.
+	 */
+	private final long mEvictions;
+	/**
+	 * The amount of expired entries removed since the cache was created or
+	 * deserialized.
+	 */
+	private final long mExpirations;
+	/**
+	 * The amount of item price data entries stored in the cache.
+	 */
+	private final int mItemPrices;
+	/**
+	 * The amount of lookups that were answered by an entry of an item without
+	 * standard shop price instead of asking the remote service again.
+	 */
+	private final long mNoStandardShopPriceHits;
+	/**
+	 * The amount of entries of items without standard shop price stored in the
+	 * cache.
+	 */
+	private final int mNoStandardShopPrices;
+
+	/**
+	 * Creates a new snapshot of statistics of a cache.
+	 * 
+	 * @param itemPrices
+	 *            The amount of item price data entries stored in the cache
+	 * @param noStandardShopPrices
+	 *            The amount of entries of items without standard shop price
+	 *            stored in the cache
+	 * @param noStandardShopPriceHits
+	 *            The amount of lookups that were answered by an entry of an
+	 *            item without standard shop price instead of asking the remote
+	 *            service again
+	 * @param evictions
+	 *            The amount of entries evicted since the cache was created or
+	 *            deserialized
+	 * @param expirations
+	 *            The amount of expired entries removed since the cache was
+	 *            created or deserialized
+	 */
+	public StoreCacheStatistics(final int itemPrices, final int noStandardShopPrices,
+			final long noStandardShopPriceHits, final long evictions, final long expirations) {
+		this.mItemPrices = itemPrices;
+		this.mNoStandardShopPrices = noStandardShopPrices;
+		this.mNoStandardShopPriceHits = noStandardShopPriceHits;
+		this.mEvictions = evictions;
+		this.mExpirations = expirations;
+	}
+
+	/**
+	 * Gets the amount of entries evicted since the cache was created or
+	 * deserialized.
+	 * 
+	 * @return The amount of entries evicted
+	 */
+	public long getEvictions() {
+		return this.mEvictions;
+	}
+
+	/**
+	 * Gets the amount of expired entries removed since the cache was created
+	 * or deserialized.
+	 * 
+	 * @return The amount of expired entries removed
+	 */
+	public long getExpirations() {
+		return this.mExpirations;
+	}
+
+	/**
+	 * Gets the amount of item price data entries stored in the cache.
+	 * 
+	 * @return The amount of item price data entries stored in the cache
+	 */
+	public int getItemPrices() {
+		return this.mItemPrices;
+	}
+
+	/**
+	 * Gets the amount of lookups that were answered by an entry of an item
+	 * without standard shop price instead of asking the remote service again.
+	 * 
+	 * @return The amount of lookups that were answered by an entry of an item
+	 *         without standard shop price
+	 */
+	public long getNoStandardShopPriceHits() {
+		return this.mNoStandardShopPriceHits;
+	}
+
+	/**
+	 * Gets the amount of entries of items without standard shop price stored in
+	 * the cache.
+	 * 
+	 * @return The amount of entries of items without standard shop price
+	 *         stored in the cache
+	 */
+	public int getNoStandardShopPrices() {
+		return this.mNoStandardShopPrices;
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see java.lang.Object#toString()
+	 */
+	@Override
+	public String toString() {
+		final StringBuilder builder = new StringBuilder();
+		builder.append("StoreCacheStatistics [itemPrices=");
+		builder.append(this.mItemPrices);
+		builder.append(", noStandardShopPrices=");
+		builder.append(this.mNoStandardShopPrices);
+		builder.append(", noStandardShopPriceHits=");
+		builder.append(this.mNoStandardShopPriceHits);
+		builder.append(", evictions=");
+		builder.append(this.mEvictions);
+		builder.append(", expirations=");
+		builder.append(this.mExpirations);
+		builder.append("]");
+		return builder.toString();
+	}
+}
@@ -0,0 +1,546 @@
+package de.zabuza.beedlebot.store;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.SocketTimeoutException;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+import de.zabuza.beedlebot.logging.ILogger;
+import de.zabuza.beedlebot.logging.LoggerFactory;
+
+/**
+ * HTTP client that is shared by all network services of a {@link Store}.
+ * Connections are kept alive and reused per host, responses are requested
+ * gzip compressed and every request is bound by a connect and read timeout.
+ * The latency of all requests is accounted per host, use
+ * {@link #getStatistics()} to access it. Each host is guarded by a
+ * {@link CircuitBreaker}, requests to a host that failed repeatedly are
+ * rejected immediately with an {@link IOException} until its cool-down
+ * expired. Requests to each endpoint of a host, i.e. to each path, are
+ * throttled by a {@link HostRateLimiter}, which adapts the amount of
+ * concurrent requests to what the endpoint sustains. Endpoints are throttled
+ * separately since their latencies differ, a cheap page fetch would otherwise
+ * be judged by the latency of a large batch request to the same host.
+ * Requests cancelled by the client, by interrupting the sending thread, are
+ * neither accounted nor count as failure of the host. The class is
+ * thread-safe.
+ * 
+ * @author Zabuza {@literal <zabuza.dev@gmail.com>}
+ *
+ */
+public final class StoreHttpClient {
+	/**
+	 * The default timeout in milliseconds for establishing a connection.
+	 */
+	public static final int DEFAULT_CONNECT_TIMEOUT_MILLIS = 5_000;
+	/**
+	 * The default timeout in milliseconds for reading from an established
+	 * connection.
+	 */
+	public static final int DEFAULT_READ_TIMEOUT_MILLIS = 10_000;
+	/**
+	 * The name of the encoding for gzip compressed content.
+	 */
+	private static final String ENCODING_GZIP = "gzip";
+	/**
+	 * Request type for form post requests.
+	 */
+	private static final String FORM_CONTENT_TYPE = "application/x-www-form-urlencoded; charset=UTF-8";
+	/**
+	 * The name of the header that lists accepted encodings.
+	 */
+	private static final String HEADER_ACCEPT_ENCODING = "Accept-Encoding";
+	/**
+	 * The name of the header that specifies the encoding of the content.
+	 */
+	private static final String HEADER_CONTENT_ENCODING = "Content-Encoding";
+	/**
+	 * The name of the header that specifies the type of the content.
+	 */
+	private static final String HEADER_CONTENT_TYPE = "Content-Type";
+	/**
+	 * The name of the system property that configures the amount of idle
+	 * connections kept alive per host.
+	 */
+	private static final String KEEP_ALIVE_PROPERTY = "http.maxConnections";
+	/**
+	 * The maximal amount of idle connections that are kept alive per host.
+	 */
+	private static final int MAX_KEEP_ALIVE_CONNECTIONS = 8;
+	/**
+	 * Name of the get protocol.
+	 */
+	private static final String PROTOCOL_GET = "GET";
+	/**
+	 * Name of the post protocol.
+	 */
+	private static final String PROTOCOL_POST = "POST";
+	/**
+	 * The size of the buffer used for reading responses.
+	 */
+	private static final int READ_BUFFER_SIZE = 4_096;
+	/**
+	 * The smallest status code that indicates an error of the server.
+	 */
+	private static final int STATUS_CODE_SERVER_ERROR_START = 500;
+	/**
+	 * The status code that indicates that the client sent too many requests.
+	 */
+	private static final int STATUS_CODE_TOO_MANY_REQUESTS = 429;
+
+	static {
+		// Needs to be set before the first connection is kept alive
+		if (System.getProperty(KEEP_ALIVE_PROPERTY) == null) {
+			System.setProperty(KEEP_ALIVE_PROPERTY, Integer.toString(MAX_KEEP_ALIVE_CONNECTIONS));
+		}
+	}
+
+	/**
+	 * Reads the given stream completely. Reading the body completely is
+	 * required for the underlying connection to be reused.
+	 * 
+	 * @param input
+	 *            The stream to read, it will be closed afterwards
+	 * @return The content of the stream
+	 * @throws IOException
+	 *             If an I/O-Exception occurred
+	 */
+	private static byte[] readFully(final InputStream input) throws IOException {
+		try (final InputStream inputToClose = input) {
+			final ByteArrayOutputStream output = new ByteArrayOutputStream();
+			final byte[] buffer = new byte[READ_BUFFER_SIZE];
+			int read = inputToClose.read(buffer);
+			while (read != -1) {
+				output.write(buffer, 0, read);
+				read = inputToClose.read(buffer);
+			}
+			return output.toByteArray();
+		}
+	}
+
+	/**
+	 * The timeout in milliseconds for establishing a connection.
+	 */
+	private volatile int mConnectTimeoutMillis;
+	/**
+	 * Data-structure that maps endpoints, given by the host name followed by
+	 * the path, to the rate limiter throttling requests sent to them.
+	 */
+	private final ConcurrentMap<String, HostRateLimiter> mEndpointToRateLimiter;
+	/**
+	 * Data-structure that maps host names to the circuit breaker guarding
+	 * requests sent to them.
+	 */
+	private final ConcurrentMap<String, CircuitBreaker> mHostToCircuitBreaker;
+	/**
+	 * Data-structure that maps host names to the latency accounting of
+	 * requests sent to them.
+	 */
+	private final ConcurrentMap<String, HostStatistics> mHostToStatistics;
+	/**
+	 * The logger to use for logging.
+	 */
+	private final ILogger mLogger;
+	/**
+	 * The timeout in milliseconds for reading from an established connection.
+	 */
+	private volatile int mReadTimeoutMillis;
+
+	/**
+	 * Creates a new HTTP client which uses the default timeouts
+	 * {@link #DEFAULT_CONNECT_TIMEOUT_MILLIS} and
+	 * {@link #DEFAULT_READ_TIMEOUT_MILLIS}.
+	 */
+	public StoreHttpClient() {
+		this(DEFAULT_CONNECT_TIMEOUT_MILLIS, DEFAULT_READ_TIMEOUT_MILLIS);
+	}
+
+	/**
+	 * Creates a new HTTP client which uses the given timeouts.
+	 * 
+	 * @param connectTimeoutMillis
+	 *            The timeout in milliseconds for establishing a connection
+	 * @param readTimeoutMillis
+	 *            The timeout in milliseconds for reading from an established
+	 *            connection
+	 */
+	public StoreHttpClient(final int connectTimeoutMillis, final int readTimeoutMillis) {
+		this.mConnectTimeoutMillis = connectTimeoutMillis;
+		this.mReadTimeoutMillis = readTimeoutMillis;
+		this.mHostToStatistics = new ConcurrentHashMap<>();
+		this.mHostToCircuitBreaker = new ConcurrentHashMap<>();
+		this.mEndpointToRateLimiter = new ConcurrentHashMap<>();
+		this.mLogger = LoggerFactory.getLogger();
+	}
+
+	/**
+	 * Sends a get request to the given URL.
+	 * 
+	 * @param url
+	 *            The URL to send the request to
+	 * @return The response to the request, regardless of its status code
+	 * @throws IOException
+	 *             If an I/O-Exception occurred, for example if the host could
+	 *             not be reached within the timeouts
+	 */
+	public HttpResponse get(final URL url) throws IOException {
+		return send(url, PROTOCOL_GET, Collections.emptyMap(), null, null);
+	}
+
+	/**
+	 * Sends a get request with the given additional headers to the given URL,
+	 * for example to send a conditional request.
+	 * 
+	 * @param url
+	 *            The URL to send the request to
+	 * @param requestHeaders
+	 *            Data-structure that maps names of additional headers to send
+	 *            to their values
+	 * @return The response to the request, regardless of its status code
+	 * @throws IOException
+	 *             If an I/O-Exception occurred, for example if the host could
+	 *             not be reached within the timeouts
+	 */
+	public HttpResponse get(final URL url, final Map<String, String> requestHeaders) throws IOException {
+		return send(url, PROTOCOL_GET, requestHeaders, null, null);
+	}
+
+	/**
+	 * Gets an unmodifiable view of the circuit breakers of all hosts this
+	 * client has sent requests to.
+	 * 
+	 * @return An unmodifiable view of the circuit breakers of all hosts
+	 */
+	public Collection<CircuitBreaker> getCircuitBreakers() {
+		return Collections.unmodifiableCollection(this.mHostToCircuitBreaker.values());
+	}
+
+	/**
+	 * Gets the timeout in milliseconds for establishing a connection.
+	 * 
+	 * @return The timeout in milliseconds for establishing a connection
+	 */
+	public int getConnectTimeoutMillis() {
+		return this.mConnectTimeoutMillis;
+	}
+
+	/**
+	 * Gets the rate limiters of all endpoints requests were sent to.
+	 * 
+	 * @return The rate limiters of all endpoints requests were sent to
+	 */
+	public Collection<HostRateLimiter> getRateLimiters() {
+		return Collections.unmodifiableCollection(this.mEndpointToRateLimiter.values());
+	}
+
+	/**
+	 * Gets the timeout in milliseconds for reading from an established
+	 * connection.
+	 * 
+	 * @return The timeout in milliseconds for reading from an established
+	 *         connection
+	 */
+	public int getReadTimeoutMillis() {
+		return this.mReadTimeoutMillis;
+	}
+
+	/**
+	 * Gets an unmodifiable view of the latency accounting of all hosts this
+	 * client has sent requests to.
+	 * 
+	 * @return An unmodifiable view of the latency accounting of all hosts
+	 */
+	public Collection<HostStatistics> getStatistics() {
+		return Collections.unmodifiableCollection(this.mHostToStatistics.values());
+	}
+
+	/**
+	 * Sends a post request with the given body to the given URL.
+	 * 
+	 * @param url
+	 *            The URL to send the request to
+	 * @param body
+	 *            The body of the request
+	 * @param contentType
+	 *            The type of the content of the body
+	 * @return The response to the request, regardless of its status code
+	 * @throws IOException
+	 *             If an I/O-Exception occurred, for example if the host could
+	 *             not be reached within the timeouts
+	 */
+	public HttpResponse post(final URL url, final byte[] body, final String contentType) throws IOException {
+		return send(url, PROTOCOL_POST, Collections.emptyMap(), body, contentType);
+	}
+
+	/**
+	 * Sends a form post request with the given arguments to the given URL.
+	 * 
+	 * @param url
+	 *            The URL to send the request to
+	 * @param arguments
+	 *            The arguments to send as key value pairs
+	 * @return The response to the request, regardless of its status code
+	 * @throws IOException
+	 *             If an I/O-Exception occurred, for example if the host could
+	 *             not be reached within the timeouts
+	 */
+	public HttpResponse postForm(final URL url, final Map<String, String> arguments) throws IOException {
+		final StringBuilder form = new StringBuilder();
+		StoreUtil.appendFormEncoded(form, arguments);
+		return post(url, form.toString().getBytes(StandardCharsets.UTF_8), FORM_CONTENT_TYPE);
+	}
+
+	/**
+	 * Sends a post request with the given body gzip compressed to the given
+	 * URL. The server must support compressed request bodies.
+	 * 
+	 * @param url
+	 *            The URL to send the request to
+	 * @param body
+	 *            The uncompressed body of the request
+	 * @param contentType
+	 *            The type of the content of the body
+	 * @return The response to the request, regardless of its status code
+	 * @throws IOException
+	 *             If an I/O-Exception occurred, for example if the host could
+	 *             not be reached within the timeouts
+	 */
+	public HttpResponse postCompressed(final URL url, final byte[] body, final String contentType)
+			throws IOException {
+		final ByteArrayOutputStream compressedBody = new ByteArrayOutputStream();
+		try (final GZIPOutputStream output = new GZIPOutputStream(compressedBody)) {
+			output.write(body);
+		}
+		return send(url, PROTOCOL_POST, Collections.singletonMap(HEADER_CONTENT_ENCODING, ENCODING_GZIP),
+				compressedBody.toByteArray(), contentType);
+	}
+
+	/**
+	 * Sets the timeout in milliseconds for establishing a connection. Affects
+	 * all requests sent afterwards.
+	 * 
+	 * @param connectTimeoutMillis
+	 *            The timeout to set
+	 */
+	public void setConnectTimeoutMillis(final int connectTimeoutMillis) {
+		this.mConnectTimeoutMillis = connectTimeoutMillis;
+	}
+
+	/**
+	 * Sets the timeout in milliseconds for reading from an established
+	 * connection. Affects all requests sent afterwards.
+	 * 
+	 * @param readTimeoutMillis
+	 *            The timeout to set
+	 */
+	public void setReadTimeoutMillis(final int readTimeoutMillis) {
+		this.mReadTimeoutMillis = readTimeoutMillis;
+	}
+
+	/**
+	 * Gets the circuit breaker of the given host, creating it if not present.
+	 * 
+	 * @param host
+	 *            The name of the host
+	 * @return The circuit breaker of the given host
+	 */
+	private CircuitBreaker getCircuitBreaker(final String host) {
+		CircuitBreaker circuitBreaker = this.mHostToCircuitBreaker.get(host);
+		if (circuitBreaker == null) {
+			final CircuitBreaker newCircuitBreaker = new CircuitBreaker(host);
+			circuitBreaker = this.mHostToCircuitBreaker.putIfAbsent(host, newCircuitBreaker);
+			if (circuitBreaker == null) {
+				circuitBreaker = newCircuitBreaker;
+			}
+		}
+		return circuitBreaker;
+	}
+
+	/**
+	 * Gets the rate limiter of the endpoint of the given URL, creating it if
+	 * not present. The endpoint is given by the host and the path of the URL,
+	 * the query is ignored.
+	 * 
+	 * @param url
+	 *            The URL of the request
+	 * @return The rate limiter of the endpoint
+	 */
+	private HostRateLimiter getRateLimiter(final URL url) {
+		final String endpoint = url.getHost() + url.getPath();
+		HostRateLimiter rateLimiter = this.mEndpointToRateLimiter.get(endpoint);
+		if (rateLimiter == null) {
+			final HostRateLimiter newRateLimiter = new HostRateLimiter(url.getHost(), url.getPath());
+			rateLimiter = this.mEndpointToRateLimiter.putIfAbsent(endpoint, newRateLimiter);
+			if (rateLimiter == null) {
+				rateLimiter = newRateLimiter;
+			}
+		}
+		return rateLimiter;
+	}
+
+	/**
+	 * Gets the latency accounting of the given host, creating it if not
+	 * present.
+	 * 
+	 * @param host
+	 *            The name of the host
+	 * @return The latency accounting of the given host
+	 */
+	private HostStatistics getStatistics(final String host) {
+		HostStatistics statistics = this.mHostToStatistics.get(host);
+		if (statistics == null) {
+			final HostStatistics newStatistics = new HostStatistics(host);
+			statistics = this.mHostToStatistics.putIfAbsent(host, newStatistics);
+			if (statistics == null) {
+				statistics = newStatistics;
+			}
+		}
+		return statistics;
+	}
+
+	/**
+	 * Sends a request to the given URL and reads the response completely, such
+	 * that the connection can be reused for further requests to the same
+	 * host.
+	 * 
+	 * @param url
+	 *            The URL to send the request to
+	 * @param protocol
+	 *            The name of the protocol to use
+	 * @param requestHeaders
+	 *            Data-structure that maps names of additional headers to send
+	 *            to their values
+	 * @param body
+	 *            The body of the request or <tt>null</tt> if the request has
+	 *            no body
+	 * @param contentType
+	 *            The type of the content of the body or <tt>null</tt> if the
+	 *            request has no body
+	 * @return The response to the request, regardless of its status code
+	 * @throws IOException
+	 *             If an I/O-Exception occurred or if the circuit of the host
+	 *             is open
+	 */
+	private HttpResponse send(final URL url, final String protocol, final Map<String, String> requestHeaders,
+			final byte[] body, final String contentType) throws IOException {
+		final CircuitBreaker circuitBreaker = getCircuitBreaker(url.getHost());
+		if (!circuitBreaker.allowRequest(System.currentTimeMillis())) {
+			throw new IOException("Circuit open, rejected request to " + url);
+		}
+
+		final HostRateLimiter rateLimiter = getRateLimiter(url);
+		long startNanos = System.nanoTime();
+		boolean isPermitAcquired = false;
+		boolean wasSuccessful = false;
+		boolean isServerAvailable = false;
+		boolean isThrottled = false;
+		boolean isInterrupted = false;
+		try {
+			rateLimiter.acquire();
+			isPermitAcquired = true;
+			startNanos = System.nanoTime();
+
+			final HttpURLConnection connection = (HttpURLConnection) url.openConnection();
+			connection.setConnectTimeout(this.mConnectTimeoutMillis);
+			connection.setReadTimeout(this.mReadTimeoutMillis);
+			connection.setRequestMethod(protocol);
+			connection.setRequestProperty(HEADER_ACCEPT_ENCODING, ENCODING_GZIP);
+			for (final Entry<String, String> header : requestHeaders.entrySet()) {
+				connection.setRequestProperty(header.getKey(), header.getValue());
+			}
+
+			if (body != null) {
+				connection.setDoOutput(true);
+				connection.setFixedLengthStreamingMode(body.length);
+				connection.setRequestProperty(HEADER_CONTENT_TYPE, contentType);
+				try (final OutputStream output = connection.getOutputStream()) {
+					output.write(body);
+				}
+			}
+
+			final int statusCode = connection.getResponseCode();
+			final Map<String, String> headers = new HashMap<>();
+			for (final Entry<String, List<String>> header : connection.getHeaderFields().entrySet()) {
+				// The status line is contained with a null key
+				if (header.getKey() == null || header.getValue().isEmpty()) {
+					continue;
+				}
+				headers.put(header.getKey().toLowerCase(Locale.ROOT), header.getValue().get(0));
+			}
+
+			// Error responses need to be consumed too for the connection to be
+			// reused
+			InputStream input;
+			if (statusCode >= HttpURLConnection.HTTP_BAD_REQUEST) {
+				input = connection.getErrorStream();
+			} else {
+				input = connection.getInputStream();
+			}
+			final byte[] responseBody;
+			if (input == null) {
+				responseBody = new byte[0];
+			} else {
+				if (ENCODING_GZIP.equalsIgnoreCase(connection.getHeaderField(HEADER_CONTENT_ENCODING))) {
+					input = new GZIPInputStream(input);
+				}
+				responseBody = readFully(input);
+			}
+
+			wasSuccessful = true;
+			isServerAvailable = statusCode < STATUS_CODE_SERVER_ERROR_START;
+			isThrottled = statusCode == STATUS_CODE_TOO_MANY_REQUESTS;
+			return new HttpResponse(statusCode, headers, responseBody);
+		} catch (final InterruptedIOException e) {
+			// A timeout is a failure of the host, other interruptions are
+			// cancellations by the client
+			isInterrupted = !(e instanceof SocketTimeoutException);
+			throw e;
+		} finally {
+			final long latencyNanos = System.nanoTime() - startNanos;
+			final boolean isCancelled = !wasSuccessful
+					&& (!isPermitAcquired || isInterrupted || Thread.currentThread().isInterrupted());
+			if (isCancelled) {
+				// Cancellations tell nothing about the host
+				if (isPermitAcquired) {
+					rateLimiter.releaseCancelled();
+				}
+				circuitBreaker.recordCancellation();
+				if (this.mLogger.isDebugEnabled()) {
+					this.mLogger.logDebug("HTTP " + protocol + " " + url + " cancelled");
+				}
+			} else {
+				if (isPermitAcquired) {
+					rateLimiter.release(latencyNanos, isServerAvailable && !isThrottled);
+				}
+				if (isServerAvailable) {
+					if (circuitBreaker.recordSuccess()) {
+						this.mLogger.logInfo("Circuit closed, host available again: " + url.getHost());
+					}
+				} else if (circuitBreaker.recordFailure(System.currentTimeMillis())) {
+					this.mLogger.logInfo("Circuit opened, host unavailable: " + url.getHost());
+				}
+				getStatistics(url.getHost()).recordRequest(latencyNanos, wasSuccessful);
+				if (this.mLogger.isDebugEnabled()) {
+					this.mLogger.logDebug("HTTP " + protocol + " " + url + " took " + latencyNanos / 1_000_000
+							+ "ms, successful: " + wasSuccessful);
+				}
+			}
+		}
+	}
+}
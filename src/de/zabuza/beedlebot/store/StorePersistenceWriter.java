@@ -0,0 +1,230 @@
+package de.zabuza.beedlebot.store;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+import de.zabuza.beedlebot.exceptions.StoreCacheSerializationUnsuccessfulException;
+import de.zabuza.beedlebot.exceptions.StorePersistenceUnsuccessfulException;
+import de.zabuza.beedlebot.logging.ILogger;
+import de.zabuza.beedlebot.logging.LoggerFactory;
+import de.zabuza.beedlebot.logging.LoggerUtil;
+import de.zabuza.sparkle.freewar.EWorld;
+
+/**
+ * Thread that persists the data of a {@link Store} on request, such that
+ * callers never block on disk I/O. It persists snapshots of the
+ * {@link StoreCache} and along with each snapshot the global
+ * {@link StandardShopPriceStore}, the {@link PlayerPriceVolatilityTracker} and
+ * the {@link SightingsTable} of the world. Failures are logged per part. When
+ * stopped it persists a final snapshot and closes the journal of the cache
+ * before it ends. The thread is no daemon, the application does not exit
+ * before the final snapshot was written. Use {@link #start()} to start the
+ * thread and {@link #stopWriter()} to stop it.
+ * 
+ * @author Zabuza {@literal <zabuza.dev@gmail.com>}
+ *
+ */
+public final class StorePersistenceWriter extends Thread {
+	/**
+	 * The name of the thread.
+	 */
+	private static final String NAME = "BeedleBot-StorePersistenceWriter";
+	/**
+	 * Data-structure that maps worlds to the writer of their cache that did
+	 * not end yet.
+	 */
+	private static final ConcurrentMap<EWorld, StorePersistenceWriter> WORLD_TO_WRITER = new ConcurrentHashMap<>();
+
+	/**
+	 * Waits until the writer of the cache of the given world, if present, has
+	 * ended. Must be called before the files of the cache are read, such that a
+	 * final snapshot of a previous instance is not read while it is written.
+	 * 
+	 * @param world
+	 *            The world of the cache
+	 * @throws InterruptedException
+	 *             If the thread got interrupted while waiting
+	 */
+	public static void awaitWriter(final EWorld world) throws InterruptedException {
+		final StorePersistenceWriter writer = WORLD_TO_WRITER.get(world);
+		if (writer != null) {
+			writer.join();
+		}
+	}
+
+	/**
+	 * Internal flag whether the writer should run or not. If set to
+	 * <tt>false</tt> the writer persists a final snapshot and stops.
+	 */
+	private volatile boolean mDoRun;
+	/**
+	 * Whether a snapshot was requested that was not persisted yet. Guarded by
+	 * {@link #mLock}.
+	 */
+	private boolean mIsSaveRequested;
+	/**
+	 * Lock to wait on while there is nothing to persist, notified when a
+	 * snapshot is requested or the writer is stopped.
+	 */
+	private final Object mLock;
+	/**
+	 * The logger to use for logging.
+	 */
+	private final ILogger mLogger;
+	/**
+	 * The cache to persist snapshots of.
+	 */
+	private final StoreCache mStoreCache;
+	/**
+	 * The world of the cache.
+	 */
+	private final EWorld mWorld;
+
+	/**
+	 * Creates a new writer for the given cache. Call {@link #start()} to start
+	 * the thread and {@link #stopWriter()} to stop it.
+	 * 
+	 * @param storeCache
+	 *            The cache to persist snapshots of
+	 * @param world
+	 *            The world of the cache
+	 */
+	public StorePersistenceWriter(final StoreCache storeCache, final EWorld world) {
+		super(NAME);
+		setDaemon(false);
+		this.mStoreCache = storeCache;
+		this.mWorld = world;
+		this.mLogger = LoggerFactory.getLogger();
+		this.mLock = new Object();
+		this.mIsSaveRequested = false;
+		this.mDoRun = true;
+	}
+
+	/**
+	 * Requests the writer to persist a snapshot of the cache. Does not block,
+	 * multiple requests that arrive while a snapshot is persisted are combined
+	 * into one.
+	 */
+	public void requestSave() {
+		synchronized (this.mLock) {
+			this.mIsSaveRequested = true;
+			this.mLock.notifyAll();
+		}
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see java.lang.Thread#run()
+	 */
+	@Override
+	public void run() {
+		try {
+			while (this.mDoRun) {
+				try {
+					if (!waitForRequest()) {
+						continue;
+					}
+					this.mStoreCache.persistSnapshot(false);
+					persistStandardShopPrices();
+					persistPlayerPriceVolatilities();
+					persistDepotSightings();
+				} catch (final InterruptedException e) {
+					this.mDoRun = false;
+				} catch (final StoreCacheSerializationUnsuccessfulException e) {
+					this.mLogger.logError("Error while saving StoreCache: " + LoggerUtil.getStackTrace(e));
+				}
+			}
+
+			// Persist the final snapshot
+			try {
+				this.mStoreCache.persistSnapshot(true);
+			} catch (final StoreCacheSerializationUnsuccessfulException e) {
+				this.mLogger.logError("Error while saving StoreCache: " + LoggerUtil.getStackTrace(e));
+			}
+			persistStandardShopPrices();
+			persistPlayerPriceVolatilities();
+			persistDepotSightings();
+		} finally {
+			WORLD_TO_WRITER.remove(this.mWorld, this);
+		}
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see java.lang.Thread#start()
+	 */
+	@Override
+	public synchronized void start() {
+		WORLD_TO_WRITER.put(this.mWorld, this);
+		super.start();
+	}
+
+	/**
+	 * Requests the writer to stop. Does not block, the writer persists a final
+	 * snapshot of the cache and closes its journal before it ends.
+	 */
+	public void stopWriter() {
+		synchronized (this.mLock) {
+			this.mDoRun = false;
+			this.mLock.notifyAll();
+		}
+	}
+
+	/**
+	 * Persists the table of the items seen at the depot of the world. Errors
+	 * are logged.
+	 */
+	private void persistDepotSightings() {
+		try {
+			SightingsTable.getInstance(this.mWorld).persist();
+		} catch (final StorePersistenceUnsuccessfulException e) {
+			this.mLogger.logError("Error while saving depot sightings: " + LoggerUtil.getStackTrace(e));
+		}
+	}
+
+	/**
+	 * Persists the tracker of the volatility of player prices of the world.
+	 * Errors are logged.
+	 */
+	private void persistPlayerPriceVolatilities() {
+		try {
+			PlayerPriceVolatilityTracker.getInstance(this.mWorld).persist();
+		} catch (final StorePersistenceUnsuccessfulException e) {
+			this.mLogger.logError("Error while saving player price volatilities: " + LoggerUtil.getStackTrace(e));
+		}
+	}
+
+	/**
+	 * Persists the global store of standard shop prices. Errors are logged.
+	 */
+	private void persistStandardShopPrices() {
+		try {
+			StandardShopPriceStore.getInstance().persist();
+		} catch (final StorePersistenceUnsuccessfulException e) {
+			this.mLogger.logError("Error while saving standard shop prices: " + LoggerUtil.getStackTrace(e));
+		}
+	}
+
+	/**
+	 * Waits until a snapshot is requested or the writer is stopped.
+	 * 
+	 * @return <tt>True</tt> if a snapshot was requested and should be
+	 *         persisted now, <tt>false</tt> if the writer was stopped
+	 * @throws InterruptedException
+	 *             If the thread got interrupted while waiting
+	 */
+	private boolean waitForRequest() throws InterruptedException {
+		synchronized (this.mLock) {
+			while (this.mDoRun && !this.mIsSaveRequested) {
+				this.mLock.wait();
+			}
+			if (!this.mDoRun) {
+				return false;
+			}
+			this.mIsSaveRequested = false;
+			return true;
+		}
+	}
+}
@@ -1,16 +1,10 @@
 package de.zabuza.beedlebot.store;
 
-import java.io.IOException;
-import java.io.OutputStream;
 import java.io.UnsupportedEncodingException;
-import java.net.HttpURLConnection;
-import java.net.URL;
-import java.net.URLConnection;
 import java.net.URLEncoder;
 import java.nio.charset.StandardCharsets;
 import java.util.Map;
 import java.util.Map.Entry;
-import java.util.StringJoiner;
 
 import de.zabuza.beedlebot.exceptions.StoreUnsupportedWorldException;
 import de.zabuza.beedlebot.exceptions.UnexpectedUnsupportedEncodingException;
@@ -47,23 +41,37 @@ public final class StoreUtil {
 	 * URL to the server that provides all services.
 	 */
 	public static final String SERVER_URL = "http://www.zabuza.square7.ch/freewar/";
-	/**
-	 * Name of the post protocol.
-	 */
-	private static final String POST_PROTOCOL = "POST";
-	/**
-	 * Request type for post requests.
-	 */
-	private static final String POST_REQUEST_TYPE = "application/x-www-form-urlencoded; charset=UTF-8";
-	/**
-	 * Type property for post requests.
-	 */
-	private static final String POST_REQUEST_TYPE_PROPERTY = "Content-Type";
 	/**
 	 * Factor that converts seconds to milliseconds if multiplied with.
 	 */
 	private static final int SECOND_TO_MILLIS_FACTOR = 1_000;
 
+	/**
+	 * Appends the given arguments form-encoded in UTF-8 to the given builder,
+	 * as key value pairs separated by {@link #QUERY_SEPARATOR}. Allows several
+	 * forms to share one builder.
+	 * 
+	 * @param builder
+	 *            The builder to append to
+	 * @param arguments
+	 *            The arguments to append as key value pairs
+	 * @throws UnexpectedUnsupportedEncodingException
+	 *             If the UTF-8 char-set is unexpectedly not supported
+	 */
+	public static void appendFormEncoded(final StringBuilder builder, final Map<String, String> arguments)
+			throws UnexpectedUnsupportedEncodingException {
+		boolean isFirst = true;
+		for (final Entry<String, String> entry : arguments.entrySet()) {
+			if (!isFirst) {
+				builder.append(QUERY_SEPARATOR);
+			}
+			isFirst = false;
+			builder.append(encodeUtf8(entry.getKey()));
+			builder.append(QUERY_ALLOCATION);
+			builder.append(encodeUtf8(entry.getValue()));
+		}
+	}
+
 	/**
 	 * Encodes the given text in UTF-8.
 	 * 
@@ -103,39 +111,6 @@ public final class StoreUtil {
 		return seconds * SECOND_TO_MILLIS_FACTOR;
 	}
 
-	/**
-	 * Sends a post request with the given arguments to the given URL.
-	 * 
-	 * @param url
-	 *            The URL to send the request to
-	 * @param arguments
-	 *            The arguments to send as key value pairs
-	 * @throws IOException
-	 *             If an I/O-Exception occurred
-	 */
-	public static void sendPostRequest(final URL url, final Map<String, String> arguments) throws IOException {
-		final URLConnection con = url.openConnection();
-		final HttpURLConnection http = (HttpURLConnection) con;
-		http.setRequestMethod(POST_PROTOCOL);
-		http.setDoOutput(true);
-
-		final StringJoiner queryJoiner = new StringJoiner(QUERY_SEPARATOR);
-		for (final Entry<String, String> entry : arguments.entrySet()) {
-			queryJoiner.add(encodeUtf8(entry.getKey()) + QUERY_ALLOCATION + encodeUtf8(entry.getValue()));
-		}
-		final byte[] out = queryJoiner.toString().getBytes(StandardCharsets.UTF_8);
-		final int length = out.length;
-
-		http.setFixedLengthStreamingMode(length);
-		http.setRequestProperty(POST_REQUEST_TYPE_PROPERTY, POST_REQUEST_TYPE);
-
-		http.connect();
-		try (final OutputStream os = http.getOutputStream()) {
-			os.write(out);
-		}
-		http.disconnect();
-	}
-
 	/**
 	 * Gets the representative number to the given world.
 	 * 
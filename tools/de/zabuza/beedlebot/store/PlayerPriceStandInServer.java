@@ -0,0 +1,358 @@
+package de.zabuza.beedlebot.store;
+
+import java.io.IOException;
+import java.net.HttpURLConnection;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.google.gson.JsonObject;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+
+import de.zabuza.beedlebot.exceptions.PlayerPriceServiceUnavailableException;
+import de.zabuza.beedlebot.logging.ILogger;
+import de.zabuza.beedlebot.logging.LoggerFactory;
+import de.zabuza.sparkle.freewar.EWorld;
+
+/**
+ * Local stand-in for the MPLogger player price service, serving fixture
+ * prices on a {@link StandInServer}. It offers the single item service
+ * <tt>itemPrice.php</tt> and the batch service <tt>itemPrices.php</tt> of
+ * the {@link PlayerPriceFinder}. The batch service can be disabled and
+ * scripted to fail, each request is delayed to resemble the latency of the
+ * remote server. Run {@link #main(String[])} to verify and benchmark the
+ * batched lookups offline.
+ * 
+ * @author Zabuza {@literal <zabuza.dev@gmail.com>}
+ *
+ */
+public final class PlayerPriceStandInServer implements HttpHandler {
+	/**
+	 * The amount of fixture items used for the benchmark.
+	 */
+	private static final int BENCHMARK_ITEMS = 20;
+	/**
+	 * The body of answers that are scripted to fail.
+	 */
+	private static final String FAILURE_BODY = "Stand-in failure";
+	/**
+	 * The prefix of the names of fixture items.
+	 */
+	private static final String FIXTURE_ITEM_NAME_PRE = "Stand-in Item ";
+	/**
+	 * The player price of the first fixture item, further items cost one more
+	 * each.
+	 */
+	private static final int FIXTURE_PRICE_START = 100;
+	/**
+	 * The time in milliseconds each request is delayed, resembling the latency
+	 * of the remote server.
+	 */
+	private static final long LATENCY_MILLIS = 50;
+	/**
+	 * The query key for an item name value.
+	 */
+	private static final String QUERY_PARAMETER_ITEM = "item";
+	/**
+	 * The query key for one of several item name values of a batch request.
+	 */
+	private static final String QUERY_PARAMETER_ITEMS = "items[]";
+	/**
+	 * The result key for a price value.
+	 */
+	private static final String RESULT_KEY_PRICE = "price";
+	/**
+	 * The result key for a timestamp value.
+	 */
+	private static final String RESULT_KEY_TIMESTAMP = "ts";
+	/**
+	 * The path to the batch service on the server.
+	 */
+	private static final String SERVER_PATH_BATCH = "/" + StoreUtil.PLAYER_PRICE_SERVICE + "itemPrices.php";
+	/**
+	 * The path to the single item service on the server.
+	 */
+	private static final String SERVER_PATH_SINGLE = "/" + StoreUtil.PLAYER_PRICE_SERVICE + "itemPrice.php";
+	/**
+	 * The status code of a throttling answer.
+	 */
+	private static final int STATUS_CODE_TOO_MANY_REQUESTS = 429;
+	/**
+	 * The world the fixture prices belong to.
+	 */
+	private static final EWorld WORLD = EWorld.ONE;
+
+	/**
+	 * Starts a stand-in server, verifies how the {@link PlayerPriceFinder}
+	 * handles the answers of the batch service and benchmarks batched against
+	 * single lookups. The results are logged, a failed verification throws.
+	 * 
+	 * @param args
+	 *            Not supported
+	 * @throws IOException
+	 *             If the stand-in server could not be started
+	 * @throws IllegalStateException
+	 *             If the finder did not behave as expected
+	 */
+	public static void main(final String[] args) throws IOException, IllegalStateException {
+		final ILogger logger = LoggerFactory.getLogger();
+		final Map<String, Integer> nameToPlayerPrice = new LinkedHashMap<>();
+		for (int i = 0; i < BENCHMARK_ITEMS; i++) {
+			nameToPlayerPrice.put(FIXTURE_ITEM_NAME_PRE + i, Integer.valueOf(FIXTURE_PRICE_START + i));
+		}
+		nameToPlayerPrice.put("Stand-in Bltterteig", Integer.valueOf(FIXTURE_PRICE_START));
+
+		final PlayerPriceStandInServer handler = new PlayerPriceStandInServer(nameToPlayerPrice);
+		final StandInServer server = new StandInServer(handler);
+		server.start();
+		try {
+			final List<String> itemNames = new ArrayList<>(nameToPlayerPrice.keySet());
+
+			// Benchmark batched against single lookups, each with a new finder
+			// such that no fetch is shared
+			long startNanos = System.nanoTime();
+			final Map<String, PlayerPrice> batchResult = handler.createFinder(server).findPlayerPrices(itemNames,
+					WORLD);
+			final long batchMillis = (System.nanoTime() - startNanos) / 1_000_000;
+			verifyPrices(batchResult, nameToPlayerPrice);
+			final int batchRequests = handler.resetRequests();
+
+			final PlayerPriceFinder singleFinder = handler.createFinder(server);
+			startNanos = System.nanoTime();
+			final Map<String, PlayerPrice> singleResult = new LinkedHashMap<>();
+			for (final String itemName : itemNames) {
+				singleResult.put(itemName, singleFinder.findPlayerPrice(itemName, WORLD).get());
+			}
+			final long singleMillis = (System.nanoTime() - startNanos) / 1_000_000;
+			verifyPrices(singleResult, nameToPlayerPrice);
+			final int singleRequests = handler.resetRequests();
+			logger.logInfo("Player prices of " + itemNames.size() + " items: batched " + batchMillis + "ms with "
+					+ batchRequests + " requests, single " + singleMillis + "ms with " + singleRequests + " requests");
+
+			// Errors of the server and throttling are temporary
+			final PlayerPriceFinder finder = handler.createFinder(server);
+			for (final int statusCode : new int[] { HttpURLConnection.HTTP_UNAVAILABLE,
+					STATUS_CODE_TOO_MANY_REQUESTS }) {
+				handler.scriptBatchFailure(statusCode);
+				try {
+					finder.findPlayerPrices(itemNames, WORLD);
+					throw new IllegalStateException("Batch answer " + statusCode + " was not reported as failure");
+				} catch (final PlayerPriceServiceUnavailableException e) {
+					verify(finder.isBatchSupported(), "Batch answer " + statusCode + " disabled batching");
+				}
+			}
+			verifyPrices(finder.findPlayerPrices(itemNames, WORLD), nameToPlayerPrice);
+			verify(handler.resetRequests() == 3, "Batch requests were not retried");
+			// Batched fetches are shared back-to-back like single ones
+			verifyPrices(finder.findPlayerPrices(itemNames, WORLD), nameToPlayerPrice);
+			verify(handler.resetRequests() == 0, "Batched fetches were not shared");
+
+			// An unparsable answer only falls back for one call
+			handler.scriptBatchFailure(HttpURLConnection.HTTP_OK);
+			verifyPrices(handler.createFinder(server).findPlayerPrices(itemNames, WORLD), nameToPlayerPrice);
+			verify(handler.resetRequests() == 1 + itemNames.size(), "Unparsable answer did not fall back");
+			logger.logInfo("Player price batch failures are retried, batching stays enabled");
+
+			// A missing batch service disables batching
+			handler.setBatchSupported(false);
+			final PlayerPriceFinder fallbackFinder = handler.createFinder(server);
+			verifyPrices(fallbackFinder.findPlayerPrices(itemNames, WORLD), nameToPlayerPrice);
+			verify(!fallbackFinder.isBatchSupported(), "Missing batch service did not disable batching");
+			handler.resetRequests();
+			verifyPrices(fallbackFinder.findPlayerPrices(itemNames, WORLD), nameToPlayerPrice);
+			// The single fetches are shared back-to-back, only a batch request
+			// would reach the server
+			verify(handler.resetRequests() == 0, "Batch service was requested again");
+			logger.logInfo("Player price batch service unsupported, falling back to single requests");
+		} finally {
+			server.stop();
+			logger.flush();
+		}
+	}
+
+	/**
+	 * Verifies the given condition.
+	 * 
+	 * @param condition
+	 *            The condition to verify
+	 * @param message
+	 *            The message to throw if the condition does not hold
+	 * @throws IllegalStateException
+	 *             If the condition does not hold
+	 */
+	private static void verify(final boolean condition, final String message) throws IllegalStateException {
+		if (!condition) {
+			throw new IllegalStateException(message);
+		}
+	}
+
+	/**
+	 * Verifies that the given found player prices match the given fixture
+	 * prices.
+	 * 
+	 * @param nameToPlayerPrice
+	 *            The found player prices
+	 * @param nameToFixturePrice
+	 *            The fixture prices
+	 * @throws IllegalStateException
+	 *             If the prices do not match
+	 */
+	private static void verifyPrices(final Map<String, PlayerPrice> nameToPlayerPrice,
+			final Map<String, Integer> nameToFixturePrice) throws IllegalStateException {
+		verify(nameToPlayerPrice.size() == nameToFixturePrice.size(), "Unexpected amount of player prices: "
+				+ nameToPlayerPrice.size());
+		for (final Entry<String, Integer> entry : nameToFixturePrice.entrySet()) {
+			final PlayerPrice playerPrice = nameToPlayerPrice.get(entry.getKey());
+			verify(playerPrice != null && playerPrice.getPrice() == entry.getValue().intValue(),
+					"Unexpected player price of " + entry.getKey() + ": " + playerPrice);
+		}
+	}
+
+	/**
+	 * The status codes the next batch requests are answered with instead of
+	 * the fixture prices, in order. The status code of a successful answer
+	 * sends a body that can not be parsed.
+	 */
+	private final Queue<Integer> mBatchFailures;
+	/**
+	 * Whether the batch service is offered or not.
+	 */
+	private volatile boolean mIsBatchSupported;
+	/**
+	 * Data-structure that maps the names of the fixture items to their player
+	 * price.
+	 */
+	private final Map<String, Integer> mNameToPlayerPrice;
+	/**
+	 * The amount of requests answered since the last reset.
+	 */
+	private final AtomicInteger mRequests;
+
+	/**
+	 * Creates a new stand-in that serves the given player prices and offers
+	 * the batch service.
+	 * 
+	 * @param nameToPlayerPrice
+	 *            Data-structure that maps the names of the fixture items to
+	 *            their player price
+	 */
+	public PlayerPriceStandInServer(final Map<String, Integer> nameToPlayerPrice) {
+		this.mNameToPlayerPrice = Collections.unmodifiableMap(new LinkedHashMap<>(nameToPlayerPrice));
+		this.mBatchFailures = new ConcurrentLinkedQueue<>();
+		this.mIsBatchSupported = true;
+		this.mRequests = new AtomicInteger(0);
+	}
+
+	/**
+	 * Creates a new finder that uses the given stand-in server.
+	 * 
+	 * @param server
+	 *            The server this stand-in runs on
+	 * @return A new finder that uses the server
+	 */
+	public PlayerPriceFinder createFinder(final StandInServer server) {
+		return new PlayerPriceFinder(new ItemDictionary(), new StoreHttpClient(), server.getUrl());
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see
+	 * com.sun.net.httpserver.HttpHandler#handle(com.sun.net.httpserver.HttpExchange)
+	 */
+	@Override
+	public void handle(final HttpExchange exchange) throws IOException {
+		this.mRequests.incrementAndGet();
+		try {
+			Thread.sleep(LATENCY_MILLIS);
+		} catch (final InterruptedException e) {
+			// The server is stopped
+			exchange.close();
+			return;
+		}
+
+		final String path = exchange.getRequestURI().getPath();
+		final Map<String, List<String>> query = StandInServer.parseQuery(exchange.getRequestURI().getRawQuery());
+		if (path.equals(SERVER_PATH_SINGLE) && query.containsKey(QUERY_PARAMETER_ITEM)) {
+			StandInServer.respond(exchange, HttpURLConnection.HTTP_OK,
+					toAnswer(query.get(QUERY_PARAMETER_ITEM).get(0)).toString());
+			return;
+		}
+		if (!path.equals(SERVER_PATH_BATCH) || !this.mIsBatchSupported) {
+			StandInServer.respond(exchange, HttpURLConnection.HTTP_NOT_FOUND, FAILURE_BODY);
+			return;
+		}
+
+		final Integer failure = this.mBatchFailures.poll();
+		if (failure != null) {
+			StandInServer.respond(exchange, failure.intValue(), FAILURE_BODY);
+			return;
+		}
+		final JsonObject answer = new JsonObject();
+		if (query.containsKey(QUERY_PARAMETER_ITEMS)) {
+			for (final String itemName : query.get(QUERY_PARAMETER_ITEMS)) {
+				answer.add(itemName, toAnswer(itemName));
+			}
+		}
+		StandInServer.respond(exchange, HttpURLConnection.HTTP_OK, answer.toString());
+	}
+
+	/**
+	 * Gets the amount of requests answered since the last reset and resets
+	 * it.
+	 * 
+	 * @return The amount of requests answered since the last reset
+	 */
+	public int resetRequests() {
+		return this.mRequests.getAndSet(0);
+	}
+
+	/**
+	 * Scripts the next batch request that is not answered by an earlier script
+	 * to be answered with the given status code. The status code of a
+	 * successful answer sends a body that can not be parsed.
+	 * 
+	 * @param statusCode
+	 *            The status code to answer with
+	 */
+	public void scriptBatchFailure(final int statusCode) {
+		this.mBatchFailures.add(Integer.valueOf(statusCode));
+	}
+
+	/**
+	 * Sets whether the batch service is offered or not. If not, batch
+	 * requests are answered with {@link HttpURLConnection#HTTP_NOT_FOUND}.
+	 * 
+	 * @param isBatchSupported
+	 *            <tt>True</tt> if the batch service should be offered,
+	 *            <tt>false</tt> if not
+	 */
+	public void setBatchSupported(final boolean isBatchSupported) {
+		this.mIsBatchSupported = isBatchSupported;
+	}
+
+	/**
+	 * Creates the answer of the single item service for the given item.
+	 * 
+	 * @param itemName
+	 *            The name of the item
+	 * @return The answer for the item, empty if it has no fixture price
+	 */
+	private JsonObject toAnswer(final String itemName) {
+		final JsonObject answer = new JsonObject();
+		final Integer playerPrice = this.mNameToPlayerPrice.get(itemName);
+		if (playerPrice != null) {
+			answer.addProperty(RESULT_KEY_PRICE, playerPrice);
+			answer.addProperty(RESULT_KEY_TIMESTAMP,
+					Long.valueOf(StoreUtil.millisToSeconds(System.currentTimeMillis())));
+		}
+		return answer;
+	}
+}
@@ -0,0 +1,364 @@
+package de.zabuza.beedlebot.store;
+
+import java.io.File;
+import java.io.IOException;
+import java.net.HttpURLConnection;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+
+import de.zabuza.beedlebot.exceptions.PurchaseRegisterUnavailableException;
+import de.zabuza.beedlebot.logging.ILogger;
+import de.zabuza.beedlebot.logging.LoggerFactory;
+import de.zabuza.sparkle.freewar.EWorld;
+
+/**
+ * Local stand-in for the BeedleBot purchase register service, running on a
+ * {@link StandInServer}. It offers the service <tt>registerPurchase.php</tt>
+ * of the {@link PurchaseRegister} for single purchases and for gzip compressed
+ * batches. Requests can be scripted to fail, throttling answers ask to retry
+ * after {@link #RETRY_AFTER_SECONDS}. Run {@link #main(String[])} to verify
+ * offline which answers make the register fall back to single purchases. The
+ * registers use an outbox with a temporary journal file, such that the outbox
+ * of the world is not touched.
+ * 
+ * @author Zabuza {@literal <zabuza.dev@gmail.com>}
+ *
+ */
+public final class PurchaseRegisterStandInServer implements HttpHandler {
+	/**
+	 * The body of answers.
+	 */
+	private static final String ANSWER_BODY = "Stand-in answer";
+	/**
+	 * The amount of fixture purchases used for the verification.
+	 */
+	private static final int FIXTURE_PURCHASES = 5;
+	/**
+	 * The name of the header that asks to wait before retrying a request.
+	 */
+	private static final String HEADER_RETRY_AFTER = "Retry-After";
+	/**
+	 * The query key that marks a request as batch.
+	 */
+	private static final String QUERY_PARAMETER_BATCH = "batch";
+	/**
+	 * The form key for the cost of the purchased item.
+	 */
+	private static final String QUERY_PARAMETER_COST = "cost";
+	/**
+	 * The form key for the name of the purchased item.
+	 */
+	private static final String QUERY_PARAMETER_ITEM = "item";
+	/**
+	 * The time in seconds throttling answers ask to wait before retrying.
+	 */
+	private static final int RETRY_AFTER_SECONDS = 2;
+	/**
+	 * The separator between the purchases of a batch request.
+	 */
+	private static final String SEPARATOR_PURCHASE = "\n";
+	/**
+	 * The path to the service on the server.
+	 */
+	private static final String SERVER_PATH = "/" + StoreUtil.BEEDLE_BOT_SERVICE + "registerPurchase.php";
+	/**
+	 * The status code of a request timeout answer.
+	 */
+	private static final int STATUS_CODE_REQUEST_TIMEOUT = 408;
+	/**
+	 * The status code of a throttling answer.
+	 */
+	private static final int STATUS_CODE_TOO_MANY_REQUESTS = 429;
+	/**
+	 * The status code of an answer that rejects the type of the content of a
+	 * request.
+	 */
+	private static final int STATUS_CODE_UNSUPPORTED_MEDIA_TYPE = 415;
+	/**
+	 * The prefix of the name of the temporary journal file of the outboxes.
+	 */
+	private static final String TEMPORARY_FILE_PRE = "purchaseOutboxStandIn";
+	/**
+	 * The suffix of the name of the temporary journal file of the outboxes.
+	 */
+	private static final String TEMPORARY_FILE_SUFF = ".journal";
+	/**
+	 * The user the fixture purchases belong to.
+	 */
+	private static final String USER = "Stand-in User";
+	/**
+	 * The world the fixture purchases belong to.
+	 */
+	private static final EWorld WORLD = EWorld.ONE;
+
+	/**
+	 * Starts a stand-in server and verifies how the {@link PurchaseRegister}
+	 * handles the answers of the service. Only answers that indicate that the
+	 * server does not support batches may disable batching, temporary
+	 * failures must be retried. The results are logged, a failed verification
+	 * throws.
+	 * 
+	 * @param args
+	 *            Not supported
+	 * @throws IOException
+	 *             If the stand-in server could not be started or a purchase
+	 *             could not be sent
+	 * @throws IllegalStateException
+	 *             If the register did not behave as expected
+	 */
+	public static void main(final String[] args) throws IOException, IllegalStateException {
+		final ILogger logger = LoggerFactory.getLogger();
+		final List<PurchaseRecord> records = new ArrayList<>();
+		for (int i = 0; i < FIXTURE_PURCHASES; i++) {
+			records.add(createRecord(i, "Stand-in Item " + i));
+		}
+		records.add(createRecord(FIXTURE_PURCHASES, "Stand-in Bltterteig"));
+
+		final PurchaseRegisterStandInServer handler = new PurchaseRegisterStandInServer();
+		final StandInServer server = new StandInServer(handler);
+		final File outboxJournalFile = File.createTempFile(TEMPORARY_FILE_PRE, TEMPORARY_FILE_SUFF);
+		server.start();
+		try {
+			final PurchaseRegister register = handler.createRegister(server, outboxJournalFile);
+			try {
+				verify(register.sendPurchases(records), "Batch of purchases was not registered");
+				verify(handler.resetRequests() == 1, "Batch of purchases was not sent with one request");
+				verify(handler.resetPurchases() == records.size(), "Not all purchases of the batch arrived");
+
+				// Errors of the server, timeouts and throttling are temporary
+				for (final int statusCode : new int[] { HttpURLConnection.HTTP_UNAVAILABLE,
+						STATUS_CODE_REQUEST_TIMEOUT, STATUS_CODE_TOO_MANY_REQUESTS }) {
+					handler.scriptFailure(statusCode);
+					try {
+						register.sendPurchases(records);
+						throw new IllegalStateException("Batch answer " + statusCode + " was not retried");
+					} catch (final PurchaseRegisterUnavailableException e) {
+						verify(register.isBatchSupported(), "Batch answer " + statusCode + " disabled batching");
+						verifyRetryAfter(e.getRetryAfterMillis(), statusCode);
+					}
+				}
+				handler.scriptFailure(STATUS_CODE_TOO_MANY_REQUESTS);
+				try {
+					register.sendPurchase(records.get(0));
+					throw new IllegalStateException("Throttled purchase was not retried");
+				} catch (final PurchaseRegisterUnavailableException e) {
+					verifyRetryAfter(e.getRetryAfterMillis(), STATUS_CODE_TOO_MANY_REQUESTS);
+				}
+				register.sendPurchase(records.get(0));
+				verify(handler.resetPurchases() == 1, "Single purchase did not arrive");
+				handler.resetRequests();
+
+				// Other errors of the client count as sent, such that no
+				// purchase is sent twice
+				handler.scriptFailure(HttpURLConnection.HTTP_FORBIDDEN);
+				verify(register.sendPurchases(records), "Forbidden batch was not counted as sent");
+				verify(register.isBatchSupported(), "Forbidden batch disabled batching");
+				verify(handler.resetRequests() == 1, "Forbidden batch was sent again");
+				verify(register.sendPurchases(records), "Batch of purchases was not registered again");
+				verify(handler.resetPurchases() == records.size(), "Not all purchases of the batch arrived");
+				handler.resetRequests();
+			} finally {
+				register.shutdown();
+			}
+			logger.logInfo("Purchase batch failures are retried, batching stays enabled");
+
+			// Only a missing batch format disables batching
+			for (final int statusCode : new int[] { HttpURLConnection.HTTP_BAD_REQUEST,
+					STATUS_CODE_UNSUPPORTED_MEDIA_TYPE, HttpURLConnection.HTTP_NOT_IMPLEMENTED }) {
+				final PurchaseRegister fallbackRegister = handler.createRegister(server, outboxJournalFile);
+				try {
+					handler.scriptFailure(statusCode);
+					verify(!fallbackRegister.sendPurchases(records), "Batch answer " + statusCode
+							+ " was reported as registered");
+					verify(!fallbackRegister.isBatchSupported(), "Batch answer " + statusCode
+							+ " did not disable batching");
+					verify(!fallbackRegister.sendPurchases(records), "Disabled batch was reported as registered");
+					verify(handler.resetRequests() == 1, "Batch service was requested again");
+				} finally {
+					fallbackRegister.shutdown();
+				}
+			}
+			logger.logInfo("Purchase batch format unsupported, falling back to single requests");
+		} finally {
+			server.stop();
+			if (!outboxJournalFile.delete()) {
+				logger.logError("Could not delete temporary outbox journal: " + outboxJournalFile);
+			}
+			logger.flush();
+		}
+	}
+
+	/**
+	 * Creates a fixture purchase of the given item.
+	 * 
+	 * @param id
+	 *            The id of the purchase
+	 * @param itemName
+	 *            The name of the purchased item
+	 * @return The fixture purchase
+	 */
+	private static PurchaseRecord createRecord(final int id, final String itemName) {
+		final Map<String, String> arguments = new LinkedHashMap<>();
+		arguments.put(QUERY_PARAMETER_ITEM, itemName);
+		arguments.put(QUERY_PARAMETER_COST, Integer.toString(id));
+		return new PurchaseRecord(id, arguments);
+	}
+
+	/**
+	 * Verifies the given condition.
+	 * 
+	 * @param condition
+	 *            The condition to verify
+	 * @param message
+	 *            The message to throw if the condition does not hold
+	 * @throws IllegalStateException
+	 *             If the condition does not hold
+	 */
+	private static void verify(final boolean condition, final String message) throws IllegalStateException {
+		if (!condition) {
+			throw new IllegalStateException(message);
+		}
+	}
+
+	/**
+	 * Verifies that the given time to wait before retrying matches the time
+	 * asked for by an answer with the given status code.
+	 * 
+	 * @param retryAfterMillis
+	 *            If present the time in milliseconds to wait before retrying
+	 * @param statusCode
+	 *            The status code of the answer
+	 * @throws IllegalStateException
+	 *             If the time does not match
+	 */
+	private static void verifyRetryAfter(final Optional<Long> retryAfterMillis, final int statusCode)
+			throws IllegalStateException {
+		if (statusCode == STATUS_CODE_TOO_MANY_REQUESTS) {
+			verify(retryAfterMillis.isPresent() && retryAfterMillis.get().longValue() == RETRY_AFTER_SECONDS * 1_000L,
+					"Retry-After of answer " + statusCode + " was not passed on: " + retryAfterMillis);
+		} else {
+			verify(!retryAfterMillis.isPresent(), "Answer " + statusCode + " has no Retry-After: " + retryAfterMillis);
+		}
+	}
+
+	/**
+	 * The status codes the next requests are answered with instead of
+	 * registering the purchases, in order.
+	 */
+	private final Queue<Integer> mFailures;
+	/**
+	 * The amount of purchases registered since the last reset.
+	 */
+	private final AtomicInteger mPurchases;
+	/**
+	 * The amount of requests answered since the last reset.
+	 */
+	private final AtomicInteger mRequests;
+
+	/**
+	 * Creates a new stand-in that registers every purchase it receives.
+	 */
+	public PurchaseRegisterStandInServer() {
+		this.mFailures = new ConcurrentLinkedQueue<>();
+		this.mPurchases = new AtomicInteger(0);
+		this.mRequests = new AtomicInteger(0);
+	}
+
+	/**
+	 * Creates a new register that uses the given stand-in server. It is not
+	 * started, purchases need to be sent directly.
+	 * 
+	 * @param server
+	 *            The server this stand-in runs on
+	 * @param outboxJournalFile
+	 *            The journal file of the outbox of the register, used instead
+	 *            of the one of its world
+	 * @return A new register that uses the server
+	 */
+	public PurchaseRegister createRegister(final StandInServer server, final File outboxJournalFile) {
+		return new PurchaseRegister(USER, WORLD, new StoreHttpClient(), server.getUrl(), outboxJournalFile);
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see
+	 * com.sun.net.httpserver.HttpHandler#handle(com.sun.net.httpserver.HttpExchange)
+	 */
+	@Override
+	public void handle(final HttpExchange exchange) throws IOException {
+		this.mRequests.incrementAndGet();
+		final String body = StandInServer.readBody(exchange);
+		if (!exchange.getRequestURI().getPath().equals(SERVER_PATH)) {
+			StandInServer.respond(exchange, HttpURLConnection.HTTP_NOT_FOUND, ANSWER_BODY);
+			return;
+		}
+
+		final Integer failure = this.mFailures.poll();
+		if (failure != null) {
+			if (failure.intValue() == STATUS_CODE_TOO_MANY_REQUESTS) {
+				exchange.getResponseHeaders().set(HEADER_RETRY_AFTER, Integer.toString(RETRY_AFTER_SECONDS));
+			}
+			StandInServer.respond(exchange, failure.intValue(), ANSWER_BODY);
+			return;
+		}
+
+		final Map<String, List<String>> query = StandInServer.parseQuery(exchange.getRequestURI().getRawQuery());
+		final String[] purchases;
+		if (query.containsKey(QUERY_PARAMETER_BATCH)) {
+			purchases = body.split(SEPARATOR_PURCHASE);
+		} else {
+			purchases = new String[] { body };
+		}
+		for (final String purchase : purchases) {
+			if (!StandInServer.parseQuery(purchase).containsKey(QUERY_PARAMETER_ITEM)) {
+				StandInServer.respond(exchange, HttpURLConnection.HTTP_BAD_REQUEST, ANSWER_BODY);
+				return;
+			}
+		}
+		this.mPurchases.addAndGet(purchases.length);
+		StandInServer.respond(exchange, HttpURLConnection.HTTP_OK, ANSWER_BODY);
+	}
+
+	/**
+	 * Gets the amount of purchases registered since the last reset and resets
+	 * it.
+	 * 
+	 * @return The amount of purchases registered since the last reset
+	 */
+	public int resetPurchases() {
+		return this.mPurchases.getAndSet(0);
+	}
+
+	/**
+	 * Gets the amount of requests answered since the last reset and resets
+	 * it.
+	 * 
+	 * @return The amount of requests answered since the last reset
+	 */
+	public int resetRequests() {
+		return this.mRequests.getAndSet(0);
+	}
+
+	/**
+	 * Scripts the next request that is not answered by an earlier script to be
+	 * answered with the given status code. Answers with
+	 * {@link #STATUS_CODE_TOO_MANY_REQUESTS} ask to retry after
+	 * {@link #RETRY_AFTER_SECONDS}.
+	 * 
+	 * @param statusCode
+	 *            The status code to answer with
+	 */
+	public void scriptFailure(final int statusCode) {
+		this.mFailures.add(Integer.valueOf(statusCode));
+	}
+}
@@ -0,0 +1,212 @@
+package de.zabuza.beedlebot.store;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UnsupportedEncodingException;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.zip.GZIPInputStream;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+/**
+ * Local stand-in for a remote service of the store, such that the services
+ * can be tested and benchmarked offline. The server listens on a free port of
+ * the loopback interface and passes every request to the given handler. Use
+ * {@link #getUrl()} to point a service at the server, {@link #start()} to
+ * start it and {@link #stop()} to stop it.
+ * 
+ * @author Zabuza {@literal <zabuza.dev@gmail.com>}
+ *
+ */
+public final class StandInServer {
+	/**
+	 * The type of the content of answers.
+	 */
+	private static final String CONTENT_TYPE = "text/plain; charset=UTF-8";
+	/**
+	 * The name of the encoding for gzip compressed content.
+	 */
+	private static final String ENCODING_GZIP = "gzip";
+	/**
+	 * The name of the header that specifies the encoding of the content.
+	 */
+	private static final String HEADER_CONTENT_ENCODING = "Content-Encoding";
+	/**
+	 * The name of the header that specifies the type of the content.
+	 */
+	private static final String HEADER_CONTENT_TYPE = "Content-Type";
+	/**
+	 * The address of the loopback interface the server listens on.
+	 */
+	private static final String HOST = "127.0.0.1";
+	/**
+	 * The separator between the key and the value of a query parameter.
+	 */
+	private static final char PARAMETER_ALLOCATION = '=';
+	/**
+	 * The separator between query parameters.
+	 */
+	private static final String PARAMETER_SEPARATOR = "&";
+	/**
+	 * The size of the buffer used for reading requests.
+	 */
+	private static final int READ_BUFFER_SIZE = 4_096;
+	/**
+	 * The prefix of the names of the threads that answer requests.
+	 */
+	private static final String THREAD_NAME_PRE = "BeedleBot-StandInServer-";
+
+	/**
+	 * Parses the given form-encoded query, like the query of an URL or the
+	 * body of a form post request.
+	 * 
+	 * @param query
+	 *            The query to parse, may be <tt>null</tt>
+	 * @return Data-structure that maps the keys of the query to their values,
+	 *         in order of their occurrence
+	 */
+	public static Map<String, List<String>> parseQuery(final String query) {
+		final Map<String, List<String>> keyToValues = new LinkedHashMap<>();
+		if (query == null || query.isEmpty()) {
+			return keyToValues;
+		}
+
+		try {
+			for (final String parameter : query.split(PARAMETER_SEPARATOR)) {
+				final int allocation = parameter.indexOf(PARAMETER_ALLOCATION);
+				final String key;
+				final String value;
+				if (allocation == -1) {
+					key = URLDecoder.decode(parameter, StandardCharsets.UTF_8.name());
+					value = "";
+				} else {
+					key = URLDecoder.decode(parameter.substring(0, allocation), StandardCharsets.UTF_8.name());
+					value = URLDecoder.decode(parameter.substring(allocation + 1), StandardCharsets.UTF_8.name());
+				}
+				List<String> values = keyToValues.get(key);
+				if (values == null) {
+					values = new ArrayList<>();
+					keyToValues.put(key, values);
+				}
+				values.add(value);
+			}
+		} catch (final UnsupportedEncodingException e) {
+			// UTF-8 is supported by every platform
+			throw new IllegalStateException(e);
+		}
+		return keyToValues;
+	}
+
+	/**
+	 * Reads the body of the given request completely, decompressing it if it
+	 * is gzip compressed.
+	 * 
+	 * @param exchange
+	 *            The exchange of the request
+	 * @return The body of the request as text
+	 * @throws IOException
+	 *             If an I/O-Exception occurred
+	 */
+	public static String readBody(final HttpExchange exchange) throws IOException {
+		InputStream input = exchange.getRequestBody();
+		if (ENCODING_GZIP.equalsIgnoreCase(exchange.getRequestHeaders().getFirst(HEADER_CONTENT_ENCODING))) {
+			input = new GZIPInputStream(input);
+		}
+		try (final InputStream inputToClose = input) {
+			final ByteArrayOutputStream output = new ByteArrayOutputStream();
+			final byte[] buffer = new byte[READ_BUFFER_SIZE];
+			int read = inputToClose.read(buffer);
+			while (read != -1) {
+				output.write(buffer, 0, read);
+				read = inputToClose.read(buffer);
+			}
+			return new String(output.toByteArray(), StandardCharsets.UTF_8);
+		}
+	}
+
+	/**
+	 * Answers the given request with the given status code and body and
+	 * closes the exchange.
+	 * 
+	 * @param exchange
+	 *            The exchange of the request to answer
+	 * @param statusCode
+	 *            The status code of the answer
+	 * @param body
+	 *            The body of the answer
+	 * @throws IOException
+	 *             If an I/O-Exception occurred
+	 */
+	public static void respond(final HttpExchange exchange, final int statusCode, final String body)
+			throws IOException {
+		final byte[] content = body.getBytes(StandardCharsets.UTF_8);
+		exchange.getResponseHeaders().set(HEADER_CONTENT_TYPE, CONTENT_TYPE);
+		exchange.sendResponseHeaders(statusCode, content.length);
+		try (final OutputStream output = exchange.getResponseBody()) {
+			output.write(content);
+		}
+		exchange.close();
+	}
+
+	/**
+	 * The executor that answers requests.
+	 */
+	private final ExecutorService mExecutor;
+	/**
+	 * The underlying server.
+	 */
+	private final HttpServer mServer;
+
+	/**
+	 * Creates a new stand-in server that passes every request to the given
+	 * handler. Use {@link #start()} to start it.
+	 * 
+	 * @param handler
+	 *            The handler to answer requests with
+	 * @throws IOException
+	 *             If the server could not be bound to a free port
+	 */
+	public StandInServer(final HttpHandler handler) throws IOException {
+		this.mServer = HttpServer.create(new InetSocketAddress(InetAddress.getByName(HOST), 0), 0);
+		this.mServer.createContext("/", handler);
+		this.mExecutor = Executors.newCachedThreadPool(new LookupThreadFactory(THREAD_NAME_PRE));
+		this.mServer.setExecutor(this.mExecutor);
+	}
+
+	/**
+	 * Gets the URL of the root of the server. It ends with a slash.
+	 * 
+	 * @return The URL of the root of the server
+	 */
+	public String getUrl() {
+		return "http://" + HOST + ":" + this.mServer.getAddress().getPort() + "/";
+	}
+
+	/**
+	 * Starts answering requests.
+	 */
+	public void start() {
+		this.mServer.start();
+	}
+
+	/**
+	 * Stops the server. Requests that are still answered are aborted.
+	 */
+	public void stop() {
+		this.mServer.stop(0);
+		this.mExecutor.shutdownNow();
+	}
+}
@@ -0,0 +1,192 @@
+package de.zabuza.beedlebot.store;
+
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.Optional;
+import java.util.SortedMap;
+import java.util.TreeMap;
+import java.util.zip.GZIPInputStream;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+
+import de.zabuza.beedlebot.logging.ILogger;
+import de.zabuza.beedlebot.logging.LoggerFactory;
+import de.zabuza.beedlebot.logging.LoggerUtil;
+
+/**
+ * Tool that builds the {@link StandardShopPriceCatalog} from an XML dump of
+ * the FwWiki, as created by <tt>Special:Export</tt> or <tt>dumpBackup.php</tt>
+ * of MediaWiki, optionally compressed with GZIP. Every article whose wiki
+ * text contains a standard shop price, parsed the same way the
+ * {@link StandardShopPriceFinder} parses fetched pages, becomes an entry of
+ * the catalog. Redirects are skipped, such that items only reachable by them
+ * are still looked up at the wiki.
+ * 
+ * @author Zabuza {@literal <zabuza.dev@gmail.com>}
+ *
+ */
+public final class StandardShopPriceCatalogBuilder {
+	/**
+	 * The file extension of GZIP compressed dumps.
+	 */
+	private static final String GZIP_EXTENSION = ".gz";
+	/**
+	 * The namespace of articles in the wiki.
+	 */
+	private static final String NAMESPACE_ARTICLE = "0";
+	/**
+	 * The name of the element that contains the namespace of a page.
+	 */
+	private static final String TAG_NAMESPACE = "ns";
+	/**
+	 * The name of the element of a page.
+	 */
+	private static final String TAG_PAGE = "page";
+	/**
+	 * The name of the element that marks a page as redirect.
+	 */
+	private static final String TAG_REDIRECT = "redirect";
+	/**
+	 * The name of the element that contains the wiki text of a revision.
+	 */
+	private static final String TAG_TEXT = "text";
+	/**
+	 * The name of the element that contains the title of a page.
+	 */
+	private static final String TAG_TITLE = "title";
+
+	/**
+	 * Builds the catalog from a dump of the wiki.
+	 * 
+	 * @param args
+	 *            The path to the dump, optionally followed by the path of the
+	 *            catalog to write which defaults to
+	 *            {@link StandardShopPriceCatalog#FILEPATH}
+	 * @throws IOException
+	 *             If an I/O-Exception occurred while reading the dump or
+	 *             writing the catalog
+	 * @throws XMLStreamException
+	 *             If the dump is no well-formed XML
+	 */
+	public static void main(final String[] args) throws IOException, XMLStreamException {
+		if (args.length < 1 || args.length > 2) {
+			throw new IllegalArgumentException("Usage: StandardShopPriceCatalogBuilder <dump> [<catalog>]");
+		}
+		final Path dump = Paths.get(args[0]);
+		final Path catalog;
+		if (args.length > 1) {
+			catalog = Paths.get(args[1]);
+		} else {
+			catalog = Paths.get(StandardShopPriceCatalog.FILEPATH);
+		}
+
+		final SortedMap<String, Integer> nameToStandardShopPrice = readDump(dump);
+		if (catalog.getParent() != null) {
+			Files.createDirectories(catalog.getParent());
+		}
+		StandardShopPriceCatalog.write(catalog,
+				"Standard shop prices of the FwWiki, generated by StandardShopPriceCatalogBuilder.\n"
+						+ "Source: " + dump.getFileName() + ", entries: " + nameToStandardShopPrice.size() + "\n"
+						+ "Format: item name TAB standard shop price, items not listed are looked up at the wiki.",
+				nameToStandardShopPrice);
+		LoggerFactory.getLogger().logInfo("Built standard shop price catalog " + catalog + " with "
+				+ nameToStandardShopPrice.size() + " entries");
+	}
+
+	/**
+	 * Reads the standard shop prices of all articles of the given dump.
+	 * 
+	 * @param dump
+	 *            The dump to read
+	 * @return Data-structure that maps item names to their standard shop price
+	 * @throws IOException
+	 *             If an I/O-Exception occurred while reading the dump
+	 * @throws XMLStreamException
+	 *             If the dump is no well-formed XML
+	 */
+	private static SortedMap<String, Integer> readDump(final Path dump) throws IOException, XMLStreamException {
+		final ILogger logger = LoggerFactory.getLogger();
+		final SortedMap<String, Integer> nameToStandardShopPrice = new TreeMap<>();
+
+		try (final InputStream input = openDump(dump)) {
+			final XMLStreamReader reader = XMLInputFactory.newInstance().createXMLStreamReader(input);
+			try {
+				String title = null;
+				String namespace = null;
+				String text = null;
+				boolean isRedirect = false;
+				while (reader.hasNext()) {
+					final int event = reader.next();
+					if (event == XMLStreamConstants.START_ELEMENT) {
+						final String tag = reader.getLocalName();
+						if (tag.equals(TAG_PAGE)) {
+							title = null;
+							namespace = null;
+							text = null;
+							isRedirect = false;
+						} else if (tag.equals(TAG_TITLE)) {
+							title = reader.getElementText();
+						} else if (tag.equals(TAG_NAMESPACE)) {
+							namespace = reader.getElementText();
+						} else if (tag.equals(TAG_REDIRECT)) {
+							isRedirect = true;
+						} else if (tag.equals(TAG_TEXT)) {
+							text = reader.getElementText();
+						}
+					} else if (event == XMLStreamConstants.END_ELEMENT && reader.getLocalName().equals(TAG_PAGE)) {
+						if (title == null || text == null || isRedirect
+								|| (namespace != null && !namespace.equals(NAMESPACE_ARTICLE))) {
+							continue;
+						}
+						try {
+							final Optional<Integer> standardShopPrice = StandardShopPriceParser
+									.parseStandardShopPrice(text);
+							if (standardShopPrice.isPresent()) {
+								nameToStandardShopPrice.put(title, standardShopPrice.get());
+							}
+						} catch (final NumberFormatException e) {
+							logger.logError("Skipping page with malformed standard shop price: " + title + ", "
+									+ LoggerUtil.getStackTrace(e));
+						}
+					}
+				}
+			} finally {
+				reader.close();
+			}
+		}
+
+		return nameToStandardShopPrice;
+	}
+
+	/**
+	 * Opens the given dump for reading, decompressing it if it is GZIP
+	 * compressed.
+	 * 
+	 * @param dump
+	 *            The dump to open
+	 * @return A stream of the XML content of the dump
+	 * @throws IOException
+	 *             If an I/O-Exception occurred while opening the dump
+	 */
+	private static InputStream openDump(final Path dump) throws IOException {
+		final InputStream input = new BufferedInputStream(Files.newInputStream(dump));
+		if (dump.getFileName().toString().endsWith(GZIP_EXTENSION)) {
+			return new GZIPInputStream(input);
+		}
+		return input;
+	}
+
+	/**
+	 * Utility class. No implementation.
+	 */
+	private StandardShopPriceCatalogBuilder() {
+
+	}
+}
@@ -0,0 +1,475 @@
+package de.zabuza.beedlebot.store;
+
+import java.io.IOException;
+import java.net.HttpURLConnection;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Map.Entry;
+import java.util.Optional;
+import java.util.Queue;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.google.gson.JsonArray;
+import com.google.gson.JsonObject;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+
+import de.zabuza.beedlebot.exceptions.StandardShopPriceServiceUnavailableException;
+import de.zabuza.beedlebot.logging.ILogger;
+import de.zabuza.beedlebot.logging.LoggerFactory;
+
+/**
+ * Local stand-in for the FwWiki, serving fixture item pages on a
+ * {@link StandInServer}. It offers the raw pages of <tt>index.php</tt> and
+ * the query module of the MediaWiki API <tt>api.php</tt> as used by the
+ * {@link StandardShopPriceFinder}. The API can be disabled and scripted to
+ * fail, each request is delayed to resemble the latency of the remote
+ * server. Run {@link #main(String[])} to verify and benchmark the batched
+ * lookups offline. The finders of the stand-in use their own
+ * {@link StandardShopPriceStore} and {@link RawPageArchive} in a temporary
+ * directory, such that the global ones are not touched.
+ * 
+ * @author Zabuza {@literal <zabuza.dev@gmail.com>}
+ *
+ */
+public final class StandardShopPriceStandInServer implements HttpHandler {
+	/**
+	 * The name of the directory of the archive of the finders, relative to
+	 * their temporary directory.
+	 */
+	private static final String ARCHIVE_DIRECTORY = "rawPages";
+	/**
+	 * The maximal amount of titles the finder sends in one batch request.
+	 */
+	private static final int BATCH_TITLES_MAX = 50;
+	/**
+	 * The amount of fixture items used for the benchmark, such that the
+	 * lookups need more than one batch request.
+	 */
+	private static final int BENCHMARK_ITEMS = 60;
+	/**
+	 * The body of answers that are scripted to fail.
+	 */
+	private static final String FAILURE_BODY = "Stand-in failure";
+	/**
+	 * The prefix of the names of fixture items.
+	 */
+	private static final String FIXTURE_ITEM_NAME_PRE = "Stand-in Item ";
+	/**
+	 * The standard shop price of the first fixture item, further items cost
+	 * one more each.
+	 */
+	private static final int FIXTURE_PRICE_START = 1_000;
+	/**
+	 * The time in milliseconds each request is delayed, resembling the latency
+	 * of the remote server.
+	 */
+	private static final long LATENCY_MILLIS = 50;
+	/**
+	 * The query key for the title of a single page.
+	 */
+	private static final String QUERY_PARAMETER_TITLE = "title";
+	/**
+	 * The query key for the titles of the pages of a batch request.
+	 */
+	private static final String QUERY_PARAMETER_TITLES = "titles";
+	/**
+	 * The result key for the content of a revision.
+	 */
+	private static final String RESULT_KEY_CONTENT = "content";
+	/**
+	 * The result key for the flag that marks a page as missing.
+	 */
+	private static final String RESULT_KEY_MISSING = "missing";
+	/**
+	 * The result key for the pages of a query.
+	 */
+	private static final String RESULT_KEY_PAGES = "pages";
+	/**
+	 * The result key for the result of a query.
+	 */
+	private static final String RESULT_KEY_QUERY = "query";
+	/**
+	 * The result key for the revisions of a page.
+	 */
+	private static final String RESULT_KEY_REVISIONS = "revisions";
+	/**
+	 * The result key for the title of a page.
+	 */
+	private static final String RESULT_KEY_TITLE = "title";
+	/**
+	 * The path to the MediaWiki API on the server.
+	 */
+	private static final String SERVER_PATH_API = "/api.php";
+	/**
+	 * The path to the raw pages on the server.
+	 */
+	private static final String SERVER_PATH_PAGES = "/index.php";
+	/**
+	 * The status code of a throttling answer.
+	 */
+	private static final int STATUS_CODE_TOO_MANY_REQUESTS = 429;
+	/**
+	 * The prefix of the name of the temporary directory of the finders.
+	 */
+	private static final String TEMPORARY_DIRECTORY_PRE = "standardShopPriceStandIn";
+	/**
+	 * The separator between the titles of a batch request.
+	 */
+	private static final String TITLE_SEPARATOR = "\\|";
+	/**
+	 * The name of an item the wiki has no page for.
+	 */
+	private static final String UNKNOWN_ITEM_NAME = "Stand-in Unknown";
+
+	/**
+	 * Starts a stand-in server, verifies how the
+	 * {@link StandardShopPriceFinder} handles the answers of the API and
+	 * benchmarks batched against single lookups. The results are logged, a
+	 * failed verification throws.
+	 * 
+	 * @param args
+	 *            Not supported
+	 * @throws IOException
+	 *             If the stand-in server or its temporary directory could not
+	 *             be created
+	 * @throws IllegalStateException
+	 *             If the finder did not behave as expected
+	 */
+	public static void main(final String[] args) throws IOException, IllegalStateException {
+		final ILogger logger = LoggerFactory.getLogger();
+		final Map<String, Integer> nameToStandardShopPrice = new LinkedHashMap<>();
+		for (int i = 0; i < BENCHMARK_ITEMS; i++) {
+			nameToStandardShopPrice.put(FIXTURE_ITEM_NAME_PRE + i, Integer.valueOf(FIXTURE_PRICE_START + i));
+		}
+		nameToStandardShopPrice.put("Stand-in Bltterteig", Integer.valueOf(FIXTURE_PRICE_START));
+
+		final StandardShopPriceStandInServer handler = new StandardShopPriceStandInServer(nameToStandardShopPrice);
+		final StandInServer server = new StandInServer(handler);
+		final Path directory = Files.createTempDirectory(TEMPORARY_DIRECTORY_PRE);
+		server.start();
+		try {
+			final List<String> itemNames = new ArrayList<>(nameToStandardShopPrice.keySet());
+			itemNames.add(UNKNOWN_ITEM_NAME);
+			final int batches = (itemNames.size() + BATCH_TITLES_MAX - 1) / BATCH_TITLES_MAX;
+
+			// Benchmark batched against single lookups, each with a new finder
+			// such that no fetch is shared
+			long startNanos = System.nanoTime();
+			final Map<String, Integer> batchResult = handler.createFinder(server, directory)
+					.findStandardShopPrices(itemNames);
+			final long batchMillis = (System.nanoTime() - startNanos) / 1_000_000;
+			verifyPrices(batchResult, nameToStandardShopPrice);
+			final int batchRequests = handler.resetRequests();
+			verify(batchRequests == batches, "Unexpected amount of batch requests: " + batchRequests);
+
+			final StandardShopPriceFinder singleFinder = handler.createFinder(server, directory);
+			startNanos = System.nanoTime();
+			final Map<String, Integer> singleResult = new LinkedHashMap<>();
+			for (final String itemName : itemNames) {
+				final Optional<Integer> standardShopPrice = singleFinder.findStandardShopPrice(itemName);
+				if (standardShopPrice.isPresent()) {
+					singleResult.put(itemName, standardShopPrice.get());
+				}
+			}
+			final long singleMillis = (System.nanoTime() - startNanos) / 1_000_000;
+			verifyPrices(singleResult, nameToStandardShopPrice);
+			final int singleRequests = handler.resetRequests();
+			logger.logInfo("Standard shop prices of " + itemNames.size() + " items: batched " + batchMillis
+					+ "ms with " + batchRequests + " requests, single " + singleMillis + "ms with " + singleRequests
+					+ " requests");
+
+			// Errors of the server and throttling are temporary
+			final StandardShopPriceFinder finder = handler.createFinder(server, directory);
+			for (final int statusCode : new int[] { HttpURLConnection.HTTP_UNAVAILABLE,
+					STATUS_CODE_TOO_MANY_REQUESTS }) {
+				handler.scriptBatchFailure(statusCode);
+				try {
+					finder.findStandardShopPrices(itemNames);
+					throw new IllegalStateException("Batch answer " + statusCode + " was not reported as failure");
+				} catch (final StandardShopPriceServiceUnavailableException e) {
+					verify(finder.isBatchSupported(), "Batch answer " + statusCode + " disabled batching");
+				}
+			}
+			verifyPrices(finder.findStandardShopPrices(itemNames), nameToStandardShopPrice);
+			verify(handler.resetRequests() == 2 + batches, "Batch requests were not retried");
+
+			// An unparsable answer only falls back for the items of its batch
+			handler.scriptBatchFailure(HttpURLConnection.HTTP_OK);
+			final StandardShopPriceFinder unparsableFinder = handler.createFinder(server, directory);
+			verifyPrices(unparsableFinder.findStandardShopPrices(itemNames), nameToStandardShopPrice);
+			verify(unparsableFinder.isBatchSupported(), "Unparsable answer disabled batching");
+			verify(handler.resetRequests() == batches + BATCH_TITLES_MAX, "Unparsable answer did not fall back");
+			logger.logInfo("Standard shop price batch failures are retried, batching stays enabled");
+
+			// A missing API disables batching
+			handler.setBatchSupported(false);
+			final StandardShopPriceFinder fallbackFinder = handler.createFinder(server, directory);
+			verifyPrices(fallbackFinder.findStandardShopPrices(itemNames), nameToStandardShopPrice);
+			verify(!fallbackFinder.isBatchSupported(), "Missing API did not disable batching");
+			verify(handler.resetRequests() == 1 + itemNames.size(), "Missing API did not fall back");
+			verifyPrices(fallbackFinder.findStandardShopPrices(itemNames), nameToStandardShopPrice);
+			// The single fetches are shared back-to-back, only a batch request
+			// would reach the server
+			verify(handler.resetRequests() == 0, "Missing API was requested again");
+			logger.logInfo("Standard shop price batch service unsupported, falling back to single requests");
+
+			// Items of the catalog are not fetched, only the unknown item is,
+			// with a batch request that still finds the API missing and a
+			// single request
+			final StandardShopPriceFinder catalogFinder = handler.createFinder(server, directory,
+					new StandardShopPriceCatalog(new TreeMap<>(nameToStandardShopPrice)));
+			verifyPrices(catalogFinder.findStandardShopPrices(itemNames), nameToStandardShopPrice);
+			verify(handler.resetRequests() == 2, "Items of the catalog were fetched");
+			logger.logInfo("Standard shop prices of the catalog are served without requests");
+		} finally {
+			server.stop();
+			deleteDirectory(directory);
+			logger.flush();
+		}
+	}
+
+	/**
+	 * Deletes the given directory with all of its content.
+	 * 
+	 * @param directory
+	 *            The directory to delete
+	 * @throws IOException
+	 *             If an I/O-Exception occurred while deleting
+	 */
+	private static void deleteDirectory(final Path directory) throws IOException {
+		try (final DirectoryStream<Path> entries = Files.newDirectoryStream(directory)) {
+			for (final Path entry : entries) {
+				if (Files.isDirectory(entry)) {
+					deleteDirectory(entry);
+				} else {
+					Files.delete(entry);
+				}
+			}
+		}
+		Files.delete(directory);
+	}
+
+	/**
+	 * Verifies the given condition.
+	 * 
+	 * @param condition
+	 *            The condition to verify
+	 * @param message
+	 *            The message to throw if the condition does not hold
+	 * @throws IllegalStateException
+	 *             If the condition does not hold
+	 */
+	private static void verify(final boolean condition, final String message) throws IllegalStateException {
+		if (!condition) {
+			throw new IllegalStateException(message);
+		}
+	}
+
+	/**
+	 * Verifies that the given found standard shop prices match the given
+	 * fixture prices.
+	 * 
+	 * @param nameToStandardShopPrice
+	 *            The found standard shop prices
+	 * @param nameToFixturePrice
+	 *            The fixture prices
+	 * @throws IllegalStateException
+	 *             If the prices do not match
+	 */
+	private static void verifyPrices(final Map<String, Integer> nameToStandardShopPrice,
+			final Map<String, Integer> nameToFixturePrice) throws IllegalStateException {
+		verify(nameToStandardShopPrice.size() == nameToFixturePrice.size(),
+				"Unexpected amount of standard shop prices: " + nameToStandardShopPrice.size());
+		for (final Entry<String, Integer> entry : nameToFixturePrice.entrySet()) {
+			verify(entry.getValue().equals(nameToStandardShopPrice.get(entry.getKey())),
+					"Unexpected standard shop price of " + entry.getKey() + ": "
+							+ nameToStandardShopPrice.get(entry.getKey()));
+		}
+	}
+
+	/**
+	 * The status codes the next batch requests are answered with instead of
+	 * the fixture pages, in order. The status code of a successful answer
+	 * sends a body that can not be parsed.
+	 */
+	private final Queue<Integer> mBatchFailures;
+	/**
+	 * Whether the API is offered or not.
+	 */
+	private volatile boolean mIsBatchSupported;
+	/**
+	 * Data-structure that maps the names of the fixture items to their
+	 * standard shop price.
+	 */
+	private final Map<String, Integer> mNameToStandardShopPrice;
+	/**
+	 * The amount of requests answered since the last reset.
+	 */
+	private final AtomicInteger mRequests;
+
+	/**
+	 * Creates a new stand-in that serves pages with the given standard shop
+	 * prices and offers the API.
+	 * 
+	 * @param nameToStandardShopPrice
+	 *            Data-structure that maps the names of the fixture items to
+	 *            their standard shop price
+	 */
+	public StandardShopPriceStandInServer(final Map<String, Integer> nameToStandardShopPrice) {
+		this.mNameToStandardShopPrice = Collections.unmodifiableMap(new LinkedHashMap<>(nameToStandardShopPrice));
+		this.mBatchFailures = new ConcurrentLinkedQueue<>();
+		this.mIsBatchSupported = true;
+		this.mRequests = new AtomicInteger(0);
+	}
+
+	/**
+	 * Creates a new finder that uses the given stand-in server. The finder
+	 * uses an empty catalog, such that every item is fetched, and a new empty
+	 * store and an archive in the given directory instead of the global ones.
+	 * 
+	 * @param server
+	 *            The server this stand-in runs on
+	 * @param directory
+	 *            The directory for the store and the archive of the finder
+	 * @return A new finder that uses the server
+	 */
+	public StandardShopPriceFinder createFinder(final StandInServer server, final Path directory) {
+		return createFinder(server, directory, new StandardShopPriceCatalog(new TreeMap<>()));
+	}
+
+	/**
+	 * Creates a new finder that uses the given stand-in server and catalog.
+	 * The finder uses a new empty store and an archive in the given directory
+	 * instead of the global ones.
+	 * 
+	 * @param server
+	 *            The server this stand-in runs on
+	 * @param directory
+	 *            The directory for the store and the archive of the finder
+	 * @param catalog
+	 *            The catalog of standard shop prices of the finder
+	 * @return A new finder that uses the server
+	 */
+	public StandardShopPriceFinder createFinder(final StandInServer server, final Path directory,
+			final StandardShopPriceCatalog catalog) {
+		return new StandardShopPriceFinder(new ItemDictionary(), catalog, new StandardShopPriceStore(directory),
+				new RawPageArchive(directory.resolve(ARCHIVE_DIRECTORY)), new StoreHttpClient(), server.getUrl());
+	}
+
+	/*
+	 * (non-Javadoc)
+	 * 
+	 * @see
+	 * com.sun.net.httpserver.HttpHandler#handle(com.sun.net.httpserver.HttpExchange)
+	 */
+	@Override
+	public void handle(final HttpExchange exchange) throws IOException {
+		this.mRequests.incrementAndGet();
+		try {
+			Thread.sleep(LATENCY_MILLIS);
+		} catch (final InterruptedException e) {
+			// The server is stopped
+			exchange.close();
+			return;
+		}
+
+		final String path = exchange.getRequestURI().getPath();
+		final Map<String, List<String>> query = StandInServer.parseQuery(exchange.getRequestURI().getRawQuery());
+		if (path.equals(SERVER_PATH_PAGES) && query.containsKey(QUERY_PARAMETER_TITLE)) {
+			final String itemName = query.get(QUERY_PARAMETER_TITLE).get(0).replace('_', ' ');
+			if (this.mNameToStandardShopPrice.containsKey(itemName)) {
+				StandInServer.respond(exchange, HttpURLConnection.HTTP_OK, toPage(itemName));
+			} else {
+				StandInServer.respond(exchange, HttpURLConnection.HTTP_NOT_FOUND, "");
+			}
+			return;
+		}
+		if (!path.equals(SERVER_PATH_API) || !this.mIsBatchSupported) {
+			StandInServer.respond(exchange, HttpURLConnection.HTTP_NOT_FOUND, FAILURE_BODY);
+			return;
+		}
+
+		final Integer failure = this.mBatchFailures.poll();
+		if (failure != null) {
+			StandInServer.respond(exchange, failure.intValue(), FAILURE_BODY);
+			return;
+		}
+		final JsonArray pages = new JsonArray();
+		if (query.containsKey(QUERY_PARAMETER_TITLES)) {
+			for (final String title : query.get(QUERY_PARAMETER_TITLES).get(0).split(TITLE_SEPARATOR)) {
+				final JsonObject page = new JsonObject();
+				page.addProperty(RESULT_KEY_TITLE, title);
+				if (this.mNameToStandardShopPrice.containsKey(title)) {
+					final JsonObject revision = new JsonObject();
+					revision.addProperty(RESULT_KEY_CONTENT, toPage(title));
+					final JsonArray revisions = new JsonArray();
+					revisions.add(revision);
+					page.add(RESULT_KEY_REVISIONS, revisions);
+				} else {
+					page.addProperty(RESULT_KEY_MISSING, Boolean.TRUE);
+				}
+				pages.add(page);
+			}
+		}
+		final JsonObject result = new JsonObject();
+		result.add(RESULT_KEY_PAGES, pages);
+		final JsonObject answer = new JsonObject();
+		answer.add(RESULT_KEY_QUERY, result);
+		StandInServer.respond(exchange, HttpURLConnection.HTTP_OK, answer.toString());
+	}
+
+	/**
+	 * Gets the amount of requests answered since the last reset and resets
+	 * it.
+	 * 
+	 * @return The amount of requests answered since the last reset
+	 */
+	public int resetRequests() {
+		return this.mRequests.getAndSet(0);
+	}
+
+	/**
+	 * Scripts the next batch request that is not answered by an earlier script
+	 * to be answered with the given status code. The status code of a
+	 * successful answer sends a body that can not be parsed.
+	 * 
+	 * @param statusCode
+	 *            The status code to answer with
+	 */
+	public void scriptBatchFailure(final int statusCode) {
+		this.mBatchFailures.add(Integer.valueOf(statusCode));
+	}
+
+	/**
+	 * Sets whether the API is offered or not. If not, batch requests are
+	 * answered with {@link HttpURLConnection#HTTP_NOT_FOUND}.
+	 * 
+	 * @param isBatchSupported
+	 *            <tt>True</tt> if the API should be offered, <tt>false</tt>
+	 *            if not
+	 */
+	public void setBatchSupported(final boolean isBatchSupported) {
+		this.mIsBatchSupported = isBatchSupported;
+	}
+
+	/**
+	 * Creates the wiki text of the page of the given fixture item.
+	 * 
+	 * @param itemName
+	 *            The name of the fixture item
+	 * @return The wiki text of the page of the item
+	 */
+	private String toPage(final String itemName) {
+		return "{{Gegenstand/Layout\n|Name=" + itemName + "\n|VerkPreis=" + this.mNameToStandardShopPrice.get(itemName)
+				+ "\n}}\n";
+	}
+}
@@ -0,0 +1,141 @@
+package de.zabuza.beedlebot.store;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.ObjectOutputStream;
+
+import de.zabuza.beedlebot.exceptions.StoreCacheDeserializationUnsuccessfulException;
+import de.zabuza.beedlebot.exceptions.StoreCacheSerializationUnsuccessfulException;
+import de.zabuza.beedlebot.logging.LoggerFactory;
+import de.zabuza.sparkle.freewar.EWorld;
+
+/**
+ * Tool that measures how long {@link StoreCache#deserialize(EWorld)} takes to
+ * load a snapshot of the cache, either in the format of
+ * {@link StoreCacheFile} or serialized by older versions with Java
+ * serialization. The tool writes a synthetic snapshot with the given amount
+ * of entries, half of them carrying a player price, into the working
+ * directory and loads it repeatedly. The first load is reported as cold,
+ * such that every format should be measured in a fresh JVM, and the best of
+ * all loads as warm. The snapshot is deleted afterwards.
+ * 
+ * @author Zabuza {@literal <zabuza.dev@gmail.com>}
+ *
+ */
+public final class StoreCacheBenchmark {
+	/**
+	 * The name of the format of snapshots in the format of
+	 * {@link StoreCacheFile}.
+	 */
+	private static final String FORMAT_BINARY = "bin";
+	/**
+	 * The name of the format of snapshots serialized by older versions with
+	 * Java serialization.
+	 */
+	private static final String FORMAT_LEGACY = "ser";
+	/**
+	 * The amount of times the snapshot is loaded.
+	 */
+	private static final int LOADS = 7;
+	/**
+	 * The amount of nanoseconds per millisecond.
+	 */
+	private static final long NANOS_PER_MILLI = 1_000_000L;
+	/**
+	 * The world the synthetic snapshot belongs to.
+	 */
+	private static final EWorld WORLD = EWorld.ONE;
+
+	/**
+	 * Measures the load time of a synthetic snapshot of the cache.
+	 * 
+	 * @param args
+	 *            The amount of entries of the snapshot followed by its
+	 *            format, either <tt>bin</tt> or <tt>ser</tt>
+	 * @throws IOException
+	 *             If an I/O-Exception occurred while writing the snapshot
+	 * @throws StoreCacheSerializationUnsuccessfulException
+	 *             If the snapshot could not be written
+	 * @throws StoreCacheDeserializationUnsuccessfulException
+	 *             If the snapshot could not be loaded
+	 */
+	public static void main(final String[] args) throws IOException, StoreCacheSerializationUnsuccessfulException,
+			StoreCacheDeserializationUnsuccessfulException {
+		if (args.length != 2 || !(args[1].equals(FORMAT_BINARY) || args[1].equals(FORMAT_LEGACY))) {
+			throw new IllegalArgumentException("Usage: StoreCacheBenchmark <entries> <bin|ser>");
+		}
+		if (StoreCache.hasSerializedCache(WORLD)) {
+			throw new IllegalStateException("Refusing to overwrite the existing cache of " + WORLD
+					+ ", run the benchmark in an empty working directory");
+		}
+		final int entries = Integer.parseInt(args[0]);
+		final String format = args[1];
+
+		final StoreCache cache = createCache(entries);
+		final File snapshot;
+		if (format.equals(FORMAT_BINARY)) {
+			snapshot = new File(StoreCache.buildSerializationPath(WORLD));
+			cache.serialize();
+		} else {
+			snapshot = new File(StoreCache.buildLegacySerializationPath(WORLD));
+			try (final ObjectOutputStream oos = new ObjectOutputStream(new FileOutputStream(snapshot))) {
+				oos.writeObject(cache);
+			}
+		}
+
+		try {
+			long coldNanos = 0;
+			long warmNanos = Long.MAX_VALUE;
+			for (int i = 0; i < LOADS; i++) {
+				final long start = System.nanoTime();
+				StoreCache.deserialize(WORLD);
+				final long duration = System.nanoTime() - start;
+				if (i == 0) {
+					coldNanos = duration;
+				}
+				warmNanos = Math.min(warmNanos, duration);
+			}
+			LoggerFactory.getLogger()
+					.logInfo("StoreCache with " + entries + " entries as ." + format + ": size " + snapshot.length()
+							+ " bytes, cold " + coldNanos / NANOS_PER_MILLI + "ms, warm "
+							+ warmNanos / NANOS_PER_MILLI + "ms");
+		} finally {
+			LoggerFactory.getLogger().flush();
+			if (!snapshot.delete()) {
+				snapshot.deleteOnExit();
+			}
+		}
+	}
+
+	/**
+	 * Creates a cache with the given amount of synthetic entries, half of them
+	 * carrying a player price.
+	 * 
+	 * @param entries
+	 *            The amount of entries to create
+	 * @return The created cache
+	 */
+	private static StoreCache createCache(final int entries) {
+		final StoreCache cache = new StoreCache(WORLD);
+		cache.setCapacity(entries);
+		final long now = System.currentTimeMillis();
+		for (int i = 0; i < entries; i++) {
+			final PlayerPrice playerPrice;
+			if (i % 2 == 0) {
+				playerPrice = new PlayerPrice(i % 5_000, now - i, WORLD);
+			} else {
+				playerPrice = null;
+			}
+			cache.putItemPrice(new ItemPrice("Item " + i, i % 1_000, playerPrice, false, now - i));
+		}
+		return cache;
+	}
+
+	/**
+	 * Utility class. No implementation.
+	 */
+	private StoreCacheBenchmark() {
+
+	}
+}